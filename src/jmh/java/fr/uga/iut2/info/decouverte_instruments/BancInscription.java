@@ -0,0 +1,64 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Banc d'essai de la validation d'une inscription : les recherches et les
+ * vérifications faites par le menu « inscrire un enfant », sans saisie ni
+ * inscription effective.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BancInscription {
+
+    private static final Jour[] JOURS = Jour.values();
+
+    @Param({"1000", "100000"})
+    public int nbEnfants;
+
+    @Param({"20"})
+    public int nbInstruments;
+
+    private Application app;
+    private int curseur;
+
+    @Setup(Level.Trial)
+    public void preparer() {
+        this.app = DonneesSynthetiques.generer(this.nbEnfants, this.nbInstruments, 42);
+    }
+
+    @Benchmark
+    public ResultatInscription validerInscription() {
+        int i = this.curseur++ & Integer.MAX_VALUE;
+        Enfant enfant = this.app.trouverEnfant(DonneesSynthetiques.nomEnfant(i % this.nbEnfants));
+        Instrument instrument = this.app.trouverInstrument(DonneesSynthetiques.nomInstrument(i % this.nbInstruments));
+        Jour jour = BancInscription.JOURS[i % BancInscription.JOURS.length];
+        return ServiceInscription.verifier(enfant, instrument, jour);
+    }
+
+    @Benchmark
+    public void instrumentsDisponibles(final Blackhole trou) {
+        int i = this.curseur++ & Integer.MAX_VALUE;
+        Enfant enfant = this.app.getEnfant(DonneesSynthetiques.nomEnfant(i % this.nbEnfants));
+        for (Instrument instrument : this.app.getInstrumentsDisponibles(enfant)) {
+            trou.consume(instrument);
+        }
+    }
+}
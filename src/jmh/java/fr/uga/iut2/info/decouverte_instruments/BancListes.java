@@ -0,0 +1,66 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Banc d'essai des listes d'inscriptions du menu, écrites dans un flux qui
+ * ignore tout ce qu'il reçoit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BancListes {
+
+    @Param({"1000", "100000"})
+    public int nbEnfants;
+
+    @Param({"20"})
+    public int nbInstruments;
+
+    private Application app;
+    private PrintStream sortie;
+
+    @Setup(Level.Trial)
+    public void preparer() {
+        this.app = DonneesSynthetiques.generer(this.nbEnfants, this.nbInstruments, 42);
+        this.sortie = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void terminer() {
+        System.setOut(this.sortie);
+    }
+
+    @Benchmark
+    public void afficherInscriptionsEnfants() {
+        try (Instantane instantane = this.app.instantane()) {
+            CLI.afficherInscriptionsEnfants(instantane);
+        }
+    }
+
+    @Benchmark
+    public void afficherInscriptionsInstruments() {
+        try (Instantane instantane = this.app.instantane()) {
+            CLI.afficherInscriptionsInstruments(instantane);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Banc d'essai de l'enregistrement complet de l'état et de sa relecture,
+ * dans un dossier temporaire, avec un fichier unique (0 segment) ou un
+ * dossier segmenté.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BancPersistance {
+
+    @Param({"1000", "10000", "100000"})
+    public int nbEnfants;
+
+    @Param({"20"})
+    public int nbInstruments;
+
+    @Param({"0", "16"})
+    public int nbSegments;
+
+    private Application app;
+    private Path dossier;
+    private PrintStream sortie;
+
+    @Setup(Level.Trial)
+    public void preparer() throws IOException {
+        this.sortie = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        this.dossier = Files.createTempDirectory("bancs-persistance");
+        this.app = DonneesSynthetiques.generer(this.nbEnfants, this.nbInstruments, 42);
+        this.app.setDossierPersistance(this.dossier);
+        this.sauverEtat();
+    }
+
+    @TearDown(Level.Trial)
+    public void terminer() throws IOException {
+        System.setOut(this.sortie);
+        try (Stream<Path> chemins = Files.walk(this.dossier)) {
+            chemins.sorted(Comparator.reverseOrder()).forEach(chemin -> chemin.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void sauverEtat() throws IOException {
+        if (this.nbSegments > 0) {
+            // une persistance neuve réécrit tous les segments
+            this.app.setPersistanceSegmentee(new PersistanceSegmentee(this.dossier.resolve("segments"), this.nbSegments));
+        }
+        Persisteur.sauverEtat(this.app);
+    }
+
+    @Benchmark
+    public int lireEtat() throws ClassNotFoundException, IOException {
+        Application relue = Persisteur.lireEtat(this.dossier);
+        relue.getJournal().close();
+        // force la matérialisation d'un instantané chargé à la demande
+        return relue.getEnfants().size();
+    }
+}
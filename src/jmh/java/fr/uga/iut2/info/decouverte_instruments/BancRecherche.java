@@ -0,0 +1,97 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Banc d'essai des recherches par nom : exactes, insensibles à la casse,
+ * par début de nom et approchées (voir {@link RechercheNoms}). Les noms et
+ * les saisies sont calculés à l'avance, pour ne mesurer que la recherche.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BancRecherche {
+
+    @Param({"1000", "100000", "1000000"})
+    public int nbEnfants;
+
+    @Param({"20"})
+    public int nbInstruments;
+
+    private Application app;
+    private String[] nomsEnfants;
+    private String[] nomsEnfantsMajuscules;
+    private String[] nomsInstruments;
+    private String[] debutsNoms;
+    private String[] nomsApproches;
+    private int curseur;
+
+    @Setup(Level.Trial)
+    public void preparer() {
+        this.app = DonneesSynthetiques.generer(this.nbEnfants, this.nbInstruments, 42);
+        this.nomsEnfants = new String[this.nbEnfants];
+        this.nomsEnfantsMajuscules = new String[this.nbEnfants];
+        for (int i = 0; i < this.nbEnfants; ++i) {
+            this.nomsEnfants[i] = DonneesSynthetiques.nomEnfant(i);
+            this.nomsEnfantsMajuscules[i] = this.nomsEnfants[i].toUpperCase(Locale.ROOT);
+        }
+        this.debutsNoms = new String[this.nbEnfants];
+        this.nomsApproches = new String[this.nbEnfants];
+        for (int i = 0; i < this.nbEnfants; ++i) {
+            String nom = this.nomsEnfants[i];
+            this.debutsNoms[i] = nom.substring(0, nom.length() - 1);
+            // deuxième et troisième lettres du prénom inversées
+            this.nomsApproches[i] = nom.charAt(0) + "" + nom.charAt(2) + nom.charAt(1) + nom.substring(3);
+        }
+        this.nomsInstruments = new String[this.nbInstruments];
+        for (int i = 0; i < this.nbInstruments; ++i) {
+            this.nomsInstruments[i] = DonneesSynthetiques.nomInstrument(i);
+        }
+    }
+
+    private int suivant(final int borne) {
+        return (this.curseur++ & Integer.MAX_VALUE) % borne;
+    }
+
+    @Benchmark
+    public Enfant getEnfant() {
+        return this.app.getEnfant(this.nomsEnfants[this.suivant(this.nbEnfants)]);
+    }
+
+    @Benchmark
+    public Enfant trouverEnfantSansCasse() {
+        return this.app.trouverEnfant(this.nomsEnfantsMajuscules[this.suivant(this.nbEnfants)]);
+    }
+
+    @Benchmark
+    public Instrument getInstrument() {
+        return this.app.getInstrument(this.nomsInstruments[this.suivant(this.nbInstruments)]);
+    }
+
+    @Benchmark
+    public List<String> rechercherDebutNom() {
+        return this.app.rechercherEnfants(this.debutsNoms[this.suivant(this.nbEnfants)], 10);
+    }
+
+    @Benchmark
+    public List<String> rechercherNomApproche() {
+        return this.app.rechercherEnfants(this.nomsApproches[this.suivant(this.nbEnfants)], 10);
+    }
+}
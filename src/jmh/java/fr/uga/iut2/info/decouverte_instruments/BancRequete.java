@@ -0,0 +1,82 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Banc d'essai des requêtes ad hoc (voir {@link Requete}) : filtre par
+ * instrument et jour, enfants présents deux jours donnés, paires
+ * d'instruments et regroupement par instrument et jour. Chaque appel ouvre
+ * et ferme son instantané, dont la prise ne coûte qu'un compteur : un
+ * instantané ne doit pas rester ouvert d'une tâche de JMH à l'autre.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BancRequete {
+
+    @Param({"100000", "1000000"})
+    public int nbEnfants;
+
+    @Param({"20"})
+    public int nbInstruments;
+
+    private Application app;
+    private Requete instrumentJour;
+    private Requete deuxJours;
+    private Requete paires;
+    private Requete parInstrumentJour;
+
+    @Setup(Level.Trial)
+    public void preparer() {
+        this.app = DonneesSynthetiques.generer(this.nbEnfants, this.nbInstruments, 42);
+        this.instrumentJour = Requete.analyser(
+                "instrument=" + DonneesSynthetiques.nomInstrument(0) + " jour=samedi afficher=enfant");
+        this.deuxJours = Requete.analyser("jours=mercredi,samedi afficher=enfant");
+        this.paires = Requete.analyser("par=paire max=10");
+        this.parInstrumentJour = Requete.analyser("par=instrument,jour");
+    }
+
+    @Benchmark
+    public List<Requete.Ligne> enfantsInstrumentJour() {
+        try (Instantane instantane = this.app.instantane()) {
+            return this.instrumentJour.executer(instantane);
+        }
+    }
+
+    @Benchmark
+    public List<Requete.Ligne> enfantsDeuxJours() {
+        try (Instantane instantane = this.app.instantane()) {
+            return this.deuxJours.executer(instantane);
+        }
+    }
+
+    @Benchmark
+    public List<Requete.Ligne> pairesInstruments() {
+        try (Instantane instantane = this.app.instantane()) {
+            return this.paires.executer(instantane);
+        }
+    }
+
+    @Benchmark
+    public List<Requete.Ligne> parInstrumentJour() {
+        try (Instantane instantane = this.app.instantane()) {
+            return this.parInstrumentJour.executer(instantane);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.Random;
+
+/**
+ * La classe DonneesSynthetiques fabrique des applications peuplées pour les
+ * bancs d'essai.
+ * <p>
+ * Les données sont reproductibles : une même graine donne les mêmes
+ * enfants, instruments et séances. Chaque enfant reçoit de zéro à
+ * {@value Enfant#MAX_SEANCES} séances tirées au hasard parmi celles que les
+ * règles d'inscription autorisent.
+ * <p>
+ * C'est une classe utilitaire, toutes les méthodes sont statiques.
+ * La classe n'a pas vocation à être instanciée.
+ */
+final class DonneesSynthetiques {
+
+    private static final String[] INSTRUMENTS = {
+        "violon", "alto", "violoncelle", "contrebasse", "flûte", "hautbois",
+        "clarinette", "basson", "saxophone", "trompette", "cor", "trombone",
+        "tuba", "piano", "orgue", "harpe", "guitare", "batterie",
+        "percussions", "accordéon",
+    };
+
+    private static final String[] PRENOMS = {
+        "Léa", "Hugo", "Chloé", "Louis", "Emma", "Gabriel", "Inès", "Raphaël",
+        "Jade", "Arthur", "Zoé", "Jules", "Alice", "Adam", "Lina", "Noé",
+    };
+
+    private DonneesSynthetiques() {
+        // interdit l'instanciation de la classe utilitaire via un constructeur privé
+        throw new IllegalStateException("Classe utilitaire.");
+    }
+
+    /**
+     * Donne le nom du i-ème instrument synthétique.
+     *
+     * @param i Le rang de l'instrument.
+     *
+     * @return Le nom de l'instrument.
+     */
+    static String nomInstrument(final int i) {
+        String nom = DonneesSynthetiques.INSTRUMENTS[i % DonneesSynthetiques.INSTRUMENTS.length];
+        return (i < DonneesSynthetiques.INSTRUMENTS.length) ? nom : nom + " " + (i / DonneesSynthetiques.INSTRUMENTS.length);
+    }
+
+    /**
+     * Donne le nom du i-ème enfant synthétique.
+     *
+     * @param i Le rang de l'enfant.
+     *
+     * @return Le nom de l'enfant.
+     */
+    static String nomEnfant(final int i) {
+        return DonneesSynthetiques.PRENOMS[i % DonneesSynthetiques.PRENOMS.length] + " " + i;
+    }
+
+    /**
+     * Fabrique une application peuplée, sans journal.
+     *
+     * @param nbEnfants Le nombre d'enfants.
+     *
+     * @param nbInstruments Le nombre d'instruments.
+     *
+     * @param graine La graine du tirage des séances.
+     *
+     * @return L'application peuplée.
+     */
+    static Application generer(final int nbEnfants, final int nbInstruments, final long graine) {
+        Application app = new Application();
+        Instrument[] instruments = new Instrument[nbInstruments];
+        for (int i = 0; i < nbInstruments; ++i) {
+            app.nouvelInstrument(DonneesSynthetiques.nomInstrument(i));
+            instruments[i] = app.getInstrument(DonneesSynthetiques.nomInstrument(i));
+        }
+        Jour[] jours = Jour.values();
+        Random hasard = new Random(graine);
+        for (int i = 0; i < nbEnfants; ++i) {
+            app.nouvelEnfant(DonneesSynthetiques.nomEnfant(i));
+            Enfant enfant = app.getEnfant(DonneesSynthetiques.nomEnfant(i));
+            int nbSeances = hasard.nextInt(Enfant.MAX_SEANCES + 1);
+            for (int s = 0; s < nbSeances; ++s) {
+                // un tirage refusé par les règles laisse simplement une
+                // séance libre
+                app.inscrire(enfant, instruments[hasard.nextInt(nbInstruments)], jours[hasard.nextInt(jours.length)]);
+            }
+        }
+        return app;
+    }
+}
@@ -1,21 +1,141 @@
 package fr.uga.iut2.info.decouverte_instruments;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
+ * Le modèle de l'application : les enfants, les instruments et leurs
+ * séances.
+ * <p>
+ * Le modèle peut être modifié par plusieurs tâches à la fois :
+ * <ul>
+ *   <li>les dictionnaires sont concurrents ;</li>
+ *   <li>les créations de noms sont sérialisées entre elles, car elles sont
+ *       rares ;</li>
+ *   <li>une inscription est vérifiée puis appliquée sous le moniteur de
+ *       l'enfant (voir {@link #inscrire(Enfant, Instrument, Jour)}) : les
+ *       inscriptions d'enfants différents ne se bloquent pas ;</li>
+ *   <li>toutes les mutations partagent un verrou de lecture-écriture, dont
+ *       la sauvegarde prend la partie exclusive pour figer un état complet
+ *       avant de vider le journal ;</li>
+ *   <li>chaque mutation est numérotée par une {@link HorlogeVersions} : les
+ *       lectures qui doivent être cohérentes passent par un
+ *       {@link #instantane() instantané}, sans bloquer les mutations ;
+ *       seules les désinscriptions, qui déplacent des séances, attendent la
+ *       fermeture des instantanés ouverts ;</li>
+ *   <li>chaque instrument a, par jour, une capacité et une liste d'attente
+ *       (voir {@link PlacesInstrument}) : une place est réservée par
+ *       compare-and-set avant l'inscription, et chaque place libérée est
+ *       proposée au premier enfant en attente ;</li>
+ *   <li>chaque création et chaque séance ajoutée ou retirée est publiée,
+ *       sans verrou, dans un {@link #getFlux() flux d'événements}.</li>
+ * </ul>
+ * Le modèle ne contient que la {@link #getSaison() saison courante} ; les
+ * saisons passées sont archivées (voir {@link ArchivesSaisons}) et
+ * consultées à la demande par {@link #instantane(String)}.
  *
  * @author Raphaël Bleuse <raphael.bleuse@univ-grenoble-alpes.fr>
  */
 public class Application implements Serializable {
 
     private static final long serialVersionUID = 1L;  // nécessaire pour la sérialisation
-    private final Map<String, Enfant> enfants;
-    private final Map<String, Instrument> instruments;
+    // non final : les anciens fichiers sérialisés contiennent des HashMap,
+    // remplacés par des dictionnaires concurrents à la lecture
+    private Map<String, Enfant> enfants;
+    private Map<String, Instrument> instruments;
+    private transient volatile Journal journal;
+    private transient volatile RegistreMappe source;
+    private transient Object verrouCreation;
+    private transient ReadWriteLock verrouEtat;
+    private transient HorlogeVersions horloge;
+    private transient volatile boolean sauvegardeAutomatique;
+    private transient PersistanceSegmentee persistanceSegmentee;
+    private transient Path dossierPersistance;
+    private transient ArchivesSaisons archives;
+    private transient Metriques metriques;
+    private transient FluxEvenements flux;
+
+    // index des noms insensibles à la casse, reconstruits au chargement
+    private transient Map<String, Enfant> indexEnfants;
+    private transient Map<String, Instrument> indexInstruments;
+    // index de recherche approchée des noms, alimentés à chaque création
+    private transient RechercheNoms rechercheEnfants;
+    private transient RechercheNoms rechercheInstruments;
+    private transient Eligibilite eligibilite;
+    private transient StockSeances stock;
 
     public Application() {
-        enfants = new HashMap<>();
-        instruments = new HashMap<>();
+        enfants = new ConcurrentHashMap<>();
+        instruments = new ConcurrentHashMap<>();
+        indexEnfants = new ConcurrentHashMap<>();
+        indexInstruments = new ConcurrentHashMap<>();
+        rechercheEnfants = new RechercheNoms();
+        rechercheInstruments = new RechercheNoms();
+        eligibilite = new Eligibilite();
+        horloge = new HorlogeVersions();
+        stock = new StockSeances(horloge);
+        verrouCreation = new Object();
+        verrouEtat = new ReentrantReadWriteLock();
+        metriques = new Metriques();
+        flux = new FluxEvenements(FluxEvenements.CAPACITE_PAR_DEFAUT);
+    }
+
+    /**
+     * Reconstruit le stock de séances et les index lors de la
+     * désérialisation d'un ancien fichier de persistance.
+     */
+    private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
+        ois.defaultReadObject();
+        this.enfants = new ConcurrentHashMap<>(this.enfants);
+        this.instruments = new ConcurrentHashMap<>(this.instruments);
+        this.indexEnfants = new ConcurrentHashMap<>();
+        this.indexInstruments = new ConcurrentHashMap<>();
+        this.rechercheEnfants = new RechercheNoms();
+        this.rechercheInstruments = new RechercheNoms();
+        this.eligibilite = new Eligibilite();
+        this.horloge = new HorlogeVersions();
+        this.stock = new StockSeances(this.horloge);
+        this.verrouCreation = new Object();
+        this.verrouEtat = new ReentrantReadWriteLock();
+        this.metriques = new Metriques();
+        this.flux = new FluxEvenements(FluxEvenements.CAPACITE_PAR_DEFAUT);
+        for (Instrument instrument : this.instruments.values()) {
+            this.indexer(instrument, HorlogeVersions.VERSION_INITIALE);
+        }
+        for (Enfant enfant : this.enfants.values()) {
+            this.indexer(enfant, HorlogeVersions.VERSION_INITIALE);
+        }
+        for (Enfant enfant : this.enfants.values()) {
+            for (Seance seance : enfant.extraireSeancesHeritees()) {
+                this.enregistrerSeance(
+                        enfant,
+                        this.instruments.get(seance.getInstrument()),
+                        Jour.valueOfString(seance.getJour())
+                );
+            }
+        }
+    }
+
+    /**
+     * Calcule la clé d'index d'un nom : deux noms qui ne diffèrent que par la
+     * casse ont la même clé.
+     *
+     * @param nom Le nom d'un enfant ou d'un instrument.
+     *
+     * @return La clé d'index du nom.
+     */
+    static String cle(String nom) {
+        return nom.toLowerCase(Locale.ROOT);
     }
 
     /**
@@ -31,6 +151,8 @@ public class Application implements Serializable {
             cmd = CLI.lireCommande();
 //            System.out.println(cmd);
 //            System.out.flush();
+            long debut = System.nanoTime();
+            boolean reussie = true;
             switch (cmd) {
                 case CREER_INSTRUMENT:
                     this.creerInstrument();
@@ -39,7 +161,7 @@ public class Application implements Serializable {
                     this.creerEnfant();
                     break;
                 case AJOUTER_INSTRUMENT_ENFANT:
-                    this.ajouterInstrumentEnfant();
+                    reussie = this.ajouterInstrumentEnfant();
                     break;
                 case AFFICHER_INSCRIPTIONS_ENFANTS:
                     this.afficherInscriptionsEnfants();
@@ -47,15 +169,58 @@ public class Application implements Serializable {
                 case AFFICHER_INSCRIPTIONS_INSTRUMENTS:
                     this.afficherInscriptionsInstruments();
                     break;
+                case IMPORTER:
+                    reussie = this.importer();
+                    break;
+                case FIXER_CAPACITE:
+                    reussie = this.fixerCapaciteInstrument();
+                    break;
+                case DESINSCRIRE_ENFANT:
+                    reussie = this.desinscrireEnfant();
+                    break;
+                case AFFICHER_OCCUPATION:
+                    CLI.afficherOccupation(this.getInstruments().values(), this.jauges());
+                    break;
+                case INTERROGER:
+                    reussie = this.interroger();
+                    break;
                 case QUITTER:
                     // rien à faire
                     break;
             }
+            // la durée comprend les saisies de l'utilisa·teur/trice
+            this.metriques.commandeExecutee(cmd, debut, reussie);
+            this.compacterJournalSiNecessaire();
         } while (cmd != Commande.QUITTER);
     }
 
+    /**
+     * Replie le journal dans un instantané lorsqu'il devient trop long.
+     * <p>
+     * Un échec n'est pas fatal : le journal reste intact et la compaction sera
+     * retentée après la prochaine commande. Rien n'est fait lorsqu'une
+     * {@link SauvegardePeriodique} s'en charge en arrière-plan.
+     */
+    void compacterJournalSiNecessaire() {
+        if (this.sauvegardeAutomatique) {
+            return;
+        }
+        if (this.journal != null && this.journal.doitEtreCompacte()) {
+            try {
+                Persisteur.sauverEtat(this);
+            }
+            catch (IOException ignored) {
+                CLI.informerUtilisateur("Compaction du journal impossible.", false);
+            }
+        }
+    }
+
     private void creerInstrument() {
-        String nomInstrument = CLI.saisirNouvelInstrument(this.getInstruments().keySet());
+        // sans matérialiser un instantané paresseux
+        String nomInstrument = CLI.saisirNouvelInstrument(
+                saisie -> this.trouverInstrument(saisie) != null,
+                saisie -> this.rechercherInstruments(saisie, CLI.NB_PROPOSITIONS)
+        );
         this.nouvelInstrument(nomInstrument);
         CLI.informerUtilisateur(
                 String.join(" ", List.of("Instrument", nomInstrument, "créé.")),
@@ -64,7 +229,10 @@ public class Application implements Serializable {
     }
 
     private void creerEnfant() {
-        String nomEnfant = CLI.saisirNouvelEnfant(this.getEnfants().keySet());
+        String nomEnfant = CLI.saisirNouvelEnfant(
+                saisie -> this.trouverEnfant(saisie) != null,
+                saisie -> this.rechercherEnfants(saisie, CLI.NB_PROPOSITIONS)
+        );
         this.nouvelEnfant(nomEnfant);
         CLI.informerUtilisateur(
                 String.join(" ", List.of("Enfant", nomEnfant, "créé.")),
@@ -72,128 +240,195 @@ public class Application implements Serializable {
         );
     }
 
-    private void ajouterInstrumentEnfant() {
+    private boolean ajouterInstrumentEnfant() {
+        ServiceInscription service = new ServiceInscription(this);
 
         // Le système propose à l’utilisateur·rice les noms des enfants enregistrés qui peuvent
-        //encore s’inscrire à un instrument (nfants pour lesquels il reste au moins
-        //une séance de libre, et qui ne sont pas déjà inscrits à tous les instruments) ;
-        Scanner scanner = new Scanner(System.in);
-        for (Enfant enfant : enfants.values()) {
-            if (enfant.getNbSeances() <= 3 || instruments.size() != enfant.getNbSeances()) {
-                System.out.println(enfant.getNom());
-            }
+        // encore s’inscrire à un instrument ; l’utilisateur·rice saisit le nom de l’enfant.
+        String nomEnfant = CLI.choisirEnfant(
+                saisie -> this.trouverEnfant(saisie) != null,
+                saisie -> this.rechercherEnfantsEligibles(saisie, CLI.NB_PROPOSITIONS)
+        );
+        Enfant enfant = this.trouverEnfant(nomEnfant);
+        ResultatInscription resultat = (enfant == null)
+                ? ResultatInscription.ENFANT_INCONNU
+                : ServiceInscription.verifier(enfant, null, null);
+        if (!resultat.estAcceptee()) {
+            return Application.refuser(resultat);
         }
 
-
-        //L’utilisateur·rice saisit le nom de l’enfant ;
-        System.out.print("Saisir le nom d'un enfant : ");
-        String nomEnfant = scanner.nextLine();
-
-//        Le système vérifie qu’il existe un enfant de ce nom et qu’elle·il n’est pas déjà inscrit·e
-//        à trois séances de découverte ;
-        for (Enfant enfant : enfants.values()) {
-            if (enfant.getNom().equalsIgnoreCase(nomEnfant)) {
-                System.out.println("L'enfant " + enfant.getNom() + " existe bien !");
-                if (enfant.getNbSeances() == 3) {
-                    System.out.println("L'enfant est déjà inscrit à 3 séances");
-                    return;
-                }
-            }
+        // Le système propose les instruments pour lesquels l’enfant n’est pas encore inscrit.
+        Collection<Instrument> disponibles = service.instrumentsDisponibles(enfant);
+        String nomInstrument = CLI.saisirNom(
+                "Choisissez un instrument : ",
+                () -> disponibles.stream().map(Instrument::getNom).iterator()
+        );
+        Instrument instrument = this.trouverInstrument(nomInstrument);
+        resultat = (instrument == null)
+                ? ResultatInscription.INSTRUMENT_INCONNU
+                : ServiceInscription.verifier(enfant, instrument, null);
+        if (!resultat.estAcceptee()) {
+            return Application.refuser(resultat);
         }
 
-//        Le système propose à l’utilisateur·rice les noms des instruments pour lesquels l’enfant
-//        n’est pas encore inscrit ;
-        for (Instrument instrument : instruments.values()) {
-            if (!enfants.get(nomEnfant).getInstruments().contains(instrument.getNom())) {
-                System.out.println(instrument.getNom());
-            }
+        // Le système propose les jours d’inscription encore possibles pour l’enfant.
+        Jour jour = CLI.saisirJour(service.joursLibres(enfant));
+        if (jour == null) {
+            CLI.informerUtilisateur("Jour inconnu.", false);
+            return false;
         }
 
-        //L’utilisateur·rice saisit le nom de l’instrument ;
-        System.out.print("Choisissez un instrument : ");
-        String nomInstrument = scanner.nextLine();
-
-//        Le système vérifie que l’instrument existe et que l’enfant n’est pas déjà inscrit à une
-//        séance de cet instrument ;
-        for (Instrument instrument : instruments.values()) {
-            if (instrument.getNom().equalsIgnoreCase(nomInstrument)) {
-                System.out.println("L'instrument " + instrument.getNom() + " existe bien !");
-                if (enfants.get(nomEnfant).getInstruments().contains(instrument.getNom())) {
-                    System.out.println("L'enfant est déjà inscrit à cet instrument");
-                    return;
-                }
-            }
+        // Les règles sont vérifiées à nouveau, atomiquement, au moment d'inscrire.
+        resultat = service.inscrire(enfant, instrument, jour);
+        if (resultat.estEnAttente()) {
+            CLI.informerUtilisateur(
+                    "La séance de " + instrument.getNom() + " le " + jour + " est complète : l'enfant "
+                    + enfant.getNom() + " est en liste d'attente et sera inscrit dès qu'une place se libère.",
+                    true
+            );
+            return true;
         }
+        if (!resultat.estAcceptee()) {
+            return Application.refuser(resultat);
+        }
+        CLI.informerUtilisateur(
+                "L'enfant " + enfant.getNom() + " est inscrit à la séance de "
+                + instrument.getNom() + " le " + jour + ".",
+                true
+        );
+        return true;
+    }
 
-//        Le système propose les jours d’inscription (mercredi, vendredi ou samedi) encore possibles pour l’enfant ;
-        System.out.println("Jours d'inscription encore possible pour " + nomEnfant + " : ");
-        for (Enfant enfant : enfants.values()) {
-            // pour l'enfant en question
-            if (enfant.getNom().equalsIgnoreCase(nomEnfant)) {
-                // je savais pas trop comment faire pour afficher les jours restants # méthode de galérien
-                ArrayList<String> jours = new ArrayList<>(Arrays.asList("mercredi", "vendredi", "samedi"));
-                for (Seance seance : enfant.getSeances()) {
-                    jours.remove(seance.getJour());
-                }
-                for (String jour : jours) {
-                    System.out.println("  - " + jour);
-                }
+    /**
+     * Cherche, parmi les enfants dont le nom ressemble à une saisie, ceux qui
+     * peuvent encore s'inscrire à un instrument.
+     */
+    private List<String> rechercherEnfantsEligibles(String saisie, int nbMax) {
+        List<String> eligibles = new ArrayList<>(nbMax);
+        // vue tenue à jour à chaque inscription : un enfant inscrit à tous
+        // les instruments en est exclu, comme un enfant sans séance libre.
+        // Son appartenance ne porte que sur des enfants déjà matérialisés.
+        Collection<Enfant> enfantsEligibles = this.eligibilite.enfantsEligibles(this.compterInstruments());
+        // quelques candidats de plus, certains enfants n'étant plus éligibles
+        for (String nom : this.rechercherEnfants(saisie, 4 * nbMax)) {
+            Enfant enfant = this.getEnfant(nom);
+            if (enfant != null && enfantsEligibles.contains(enfant) && eligibles.size() < nbMax) {
+                eligibles.add(nom);
             }
         }
+        return eligibles;
+    }
 
-        //L’utilisateur·rice saisit le jour d’inscription ;
-        System.out.println("Choisissez un jour");
-        String jour = scanner.nextLine();
+    private static boolean refuser(ResultatInscription resultat) {
+        CLI.informerUtilisateur("Inscription refusée : " + resultat.getMotif() + ".", false);
+        return false;
+    }
 
-//        Le système vérifie que ce jour existe et que l’enfant n’a pas déjà une séance ce même jour
-        // verification que le jour existe
-        for (Jour jour_i : Jour.values()) {
-            if (jour_i.toString().equalsIgnoreCase(jour)) {
-                System.out.println("Le jour " + jour + " existe bien !");
-            }
+    private boolean fixerCapaciteInstrument() {
+        ServiceInscription service = new ServiceInscription(this);
+        String nomInstrument = CLI.choisirInstrument(
+                saisie -> this.trouverInstrument(saisie) != null,
+                saisie -> this.rechercherInstruments(saisie, CLI.NB_PROPOSITIONS)
+        );
+        Instrument instrument = this.trouverInstrument(nomInstrument);
+        if (instrument == null) {
+            CLI.informerUtilisateur("Instrument inconnu.", false);
+            return false;
         }
-        // vérif que l'enfant n'a pas déjà une séance ce même jour
-        for (Enfant enfant : enfants.values()) {
-            if (enfant.getNom().equalsIgnoreCase(nomEnfant)) {
-                for (Seance seance : enfant.getSeances()) {
-                    if (seance.getJour().equalsIgnoreCase(jour)) {
-                        System.out.println("L'enfant a déjà une séance ce jour là");
-                        return;
-                    }
-                }
-            }
+        Jour jour = CLI.saisirJour("Jours de la semaine :", EnumSet.allOf(Jour.class));
+        if (jour == null) {
+            CLI.informerUtilisateur("Jour inconnu.", false);
+            return false;
         }
-
-//      On créer une nouvelle séance avec les infos récupérées
-        Jour jourEnum = Jour.valueOf(jour.toUpperCase());
-        Enfant enfant = enfants.get(nomEnfant);
-        Instrument instrument = instruments.get(nomInstrument);
-
-        Seance seance = new Seance(jourEnum, enfant, instrument);
-
-//        On ajoute une séance à l'enfant et à l'instrument
-        for (Enfant enf : enfants.values()) {
-            if (enf.getNom().equalsIgnoreCase(nomEnfant)) {
-                enf.addSeance(seance);
-            }
+        Integer capacite = CLI.saisirCapacite(instrument.getPlaces().getOccupees(jour));
+        if (capacite == null) {
+            CLI.informerUtilisateur("Capacité invalide.", false);
+            return false;
         }
+        int nbPromus = service.fixerCapacite(instrument, jour, capacite);
+        CLI.informerUtilisateur(
+                "Capacité de " + instrument.getNom() + " le " + jour + " : "
+                + PlacesInstrument.formaterCapacite(capacite) + " place(s)"
+                + ((nbPromus > 0) ? ", " + nbPromus + " enfant(s) inscrit(s) depuis la liste d'attente." : "."),
+                true
+        );
+        return true;
+    }
 
-        for (Instrument instr : instruments.values()) {
-            if (instr.getNom().equalsIgnoreCase(nomInstrument)) {
-                instr.addSeance(seance);
-            }
+    private boolean desinscrireEnfant() {
+        ServiceInscription service = new ServiceInscription(this);
+        String nomEnfant = CLI.choisirEnfant(
+                saisie -> this.trouverEnfant(saisie) != null,
+                saisie -> this.rechercherEnfants(saisie, CLI.NB_PROPOSITIONS)
+        );
+        Enfant enfant = this.trouverEnfant(nomEnfant);
+        if (enfant == null) {
+            return Application.refuser(ResultatInscription.ENFANT_INCONNU);
+        }
+        String nomInstrument = CLI.saisirNom("Choisissez un instrument : ", enfant.getInstruments());
+        Instrument instrument = this.trouverInstrument(nomInstrument);
+        ResultatInscription resultat = (instrument == null)
+                ? ResultatInscription.INSTRUMENT_INCONNU
+                : service.desinscrire(enfant, instrument);
+        if (!resultat.estAcceptee()) {
+            CLI.informerUtilisateur("Désinscription refusée : " + resultat.getMotif() + ".", false);
+            return false;
         }
+        CLI.informerUtilisateur(
+                "L'enfant " + enfant.getNom() + " est désinscrit de " + instrument.getNom() + ".",
+                true
+        );
+        return true;
+    }
 
-        System.out.println("L'enfant " + nomEnfant + " est bien inscrit à la séance de " + nomInstrument + " le " + jour);
+    private boolean importer() {
+        Path source = Paths.get(CLI.saisirFichierImport());
+        Path rejets = Paths.get(source + ".rejets");
+        ImportMasse importMasse = new ImportMasse(this);
+        try {
+            importMasse.importer(source, rejets);
+            CLI.informerUtilisateur(
+                    importMasse.getNbAcceptees() + " ligne(s) importée(s), "
+                    + importMasse.getNbRejetees() + " ligne(s) rejetée(s) (voir " + rejets + ").",
+                    importMasse.getNbRejetees() == 0
+            );
+            return importMasse.getNbRejetees() == 0;
+        }
+        catch (IOException ioe) {
+            CLI.informerUtilisateur(
+                    "Import interrompu : " + ioe.getMessage() + " ("
+                    + importMasse.getNbAcceptees() + " ligne(s) déjà importée(s)).",
+                    false
+            );
+            return false;
+        }
+    }
 
+    private boolean interroger() {
+        Requete requete;
+        try {
+            requete = Requete.analyser(CLI.saisirRequete());
+        }
+        catch (IllegalArgumentException iae) {
+            CLI.informerUtilisateur("Requête invalide : " + iae.getMessage(), false);
+            return false;
+        }
+        try (Instantane instantane = this.instantane()) {
+            CLI.afficherResultat(requete, requete.executer(instantane));
+        }
+        return true;
     }
 
     private void afficherInscriptionsEnfants() {
-        CLI.afficherInscriptionsEnfants(this.getEnfants().values());
+        try (Instantane instantane = this.instantane()) {
+            CLI.afficherInscriptionsEnfants(instantane);
+        }
     }
 
     private void afficherInscriptionsInstruments() {
-        CLI.afficherInscriptionsInstruments(this.getInstruments().values());
+        try (Instantane instantane = this.instantane()) {
+            CLI.afficherInscriptionsInstruments(instantane);
+        }
     }
 
     /**
@@ -203,19 +438,70 @@ public class Application implements Serializable {
      * @return L'instrument dont le nom est nom.
      */
     public Instrument getInstrument(String nom) {
+        RegistreMappe registre = this.source;
+        if (registre != null) {
+            registre.chargerInstrument(nom, this);
+        }
         return this.instruments.get(nom);
     }
 
+    /**
+     * Trouve l'instrument dont le nom est nom, sans tenir compte de la casse.
+     * <p>
+     * Un instrument dont le nom correspond exactement est privilégié.
+     *
+     * @param nom Le nom de l'instrument recherché.
+     * @return L'instrument correspondant, ou null s'il n'existe pas.
+     */
+    public Instrument trouverInstrument(String nom) {
+        Instrument instrument = this.getInstrument(nom);
+        if (instrument == null) {
+            RegistreMappe registre = this.source;
+            if (registre != null) {
+                registre.chargerInstrumentSansCasse(nom, this);
+            }
+            instrument = this.indexInstruments.get(Application.cle(nom));
+        }
+        return instrument;
+    }
+
     /**
      * Ajoute un nouvel instrument dans la liste des instruments connus.
      * <p>
-     * Le nouvel instrument ne doit pas déjà exister dans l'application.
+     * La vérification du nom et la création sont atomiques.
      *
      * @param nom Le nom du nouvel instrument à ajouter dans l'application.
+     *
+     * @return true si l'instrument a été créé, false si le nom existait déjà.
      */
-    public void nouvelInstrument(String nom) {
-        assert !this.instruments.containsKey(nom);
-        this.instruments.put(nom, new Instrument(nom));
+    public boolean nouvelInstrument(String nom) {
+        Lock verrou = this.verrouEtat.readLock();
+        verrou.lock();
+        try {
+            synchronized (this.verrouCreation) {
+                if (this.getInstrument(nom) != null) {
+                    return false;
+                }
+                // journalisé avant d'être visible : une séance qui le
+                // référence ne peut pas précéder sa création dans le journal
+                if (this.journal != null) {
+                    this.journal.instrumentCree(nom);
+                }
+                long version = this.horloge.debuter();
+                try {
+                    this.enregistrerInstrument(nom, version);
+                }
+                finally {
+                    this.horloge.publier(version);
+                }
+                // publié une fois l'instrument visible par ses abonnés
+                this.flux.publier(Evenement.Type.INSTRUMENT_CREE, null, nom, null);
+                return true;
+            }
+        }
+        finally {
+            verrou.unlock();
+        }
     }
 
     /**
@@ -224,6 +510,7 @@ public class Application implements Serializable {
      * @return Un dictionnaire des instruments connus.
      */
     public Map<String, Instrument> getInstruments() {
+        this.chargerTout();
         return this.instruments;
     }
 
@@ -234,19 +521,952 @@ public class Application implements Serializable {
      * @return L'enfant dont le nom est nom.
      */
     public Enfant getEnfant(String nom) {
+        RegistreMappe registre = this.source;
+        if (registre != null) {
+            registre.chargerEnfant(nom, this);
+        }
         return this.enfants.get(nom);
     }
 
+    /**
+     * Trouve l'enfant dont le nom est nom, sans tenir compte de la casse.
+     * <p>
+     * Un enfant dont le nom correspond exactement est privilégié.
+     *
+     * @param nom Le nom de l'enfant recherché.
+     * @return L'enfant correspondant, ou null s'il n'existe pas.
+     */
+    public Enfant trouverEnfant(String nom) {
+        Enfant enfant = this.getEnfant(nom);
+        if (enfant == null) {
+            RegistreMappe registre = this.source;
+            if (registre != null) {
+                registre.chargerEnfantSansCasse(nom, this);
+            }
+            enfant = this.indexEnfants.get(Application.cle(nom));
+        }
+        return enfant;
+    }
+
+    /**
+     * Cherche les enfants dont le nom ressemble à une saisie : début de nom
+     * ou de mot, sans tenir compte de la casse ni des accents, puis noms
+     * approchés (voir {@link RechercheNoms}).
+     * <p>
+     * Sur un instantané paresseux, seuls les noms sont lus : les enfants
+     * proposés ne sont matérialisés que lorsqu'ils sont ensuite trouvés.
+     *
+     * @param saisie Le début d'un nom, ou un nom approximatif.
+     *
+     * @param nbMax Le nombre maximum de noms proposés.
+     *
+     * @return Au plus nbMax noms d'enfant, du plus proche au plus lointain.
+     */
+    public List<String> rechercherEnfants(String saisie, int nbMax) {
+        this.indexerNomsSource();
+        return this.rechercheEnfants.rechercher(saisie, nbMax);
+    }
+
+    /**
+     * Cherche les instruments dont le nom ressemble à une saisie (voir
+     * {@link #rechercherEnfants(String, int)}).
+     *
+     * @param saisie Le début d'un nom, ou un nom approximatif.
+     *
+     * @param nbMax Le nombre maximum de noms proposés.
+     *
+     * @return Au plus nbMax noms d'instrument, du plus proche au plus
+     *     lointain.
+     */
+    public List<String> rechercherInstruments(String saisie, int nbMax) {
+        this.indexerNomsSource();
+        return this.rechercheInstruments.rechercher(saisie, nbMax);
+    }
+
+    /**
+     * Compte les instruments, en ne matérialisant de l'instantané sous-jacent
+     * que leurs noms.
+     */
+    private int compterInstruments() {
+        RegistreMappe registre = this.source;
+        if (registre != null) {
+            registre.chargerInstruments(this);
+        }
+        return this.stock.getNbInstruments();
+    }
+
+    private void indexerNomsSource() {
+        RegistreMappe registre = this.source;
+        if (registre != null) {
+            registre.indexerNoms(this.rechercheEnfants, this.rechercheInstruments);
+        }
+    }
+
     /**
      * Ajoute un nouvel enfant dans la liste des enfants connus.
      * <p>
-     * Le nouvel enfant ne doit pas déjà exister dans l'application.
+     * La vérification du nom et la création sont atomiques.
      *
      * @param nom Le nom du nouvel enfant à ajouter dans l'application.
+     *
+     * @return true si l'enfant a été créé, false si le nom existait déjà.
+     */
+    public boolean nouvelEnfant(String nom) {
+        Lock verrou = this.verrouEtat.readLock();
+        verrou.lock();
+        try {
+            synchronized (this.verrouCreation) {
+                if (this.getEnfant(nom) != null) {
+                    return false;
+                }
+                if (this.journal != null) {
+                    this.journal.enfantCree(nom);
+                }
+                long version = this.horloge.debuter();
+                try {
+                    this.enregistrerEnfant(nom, version);
+                }
+                finally {
+                    this.horloge.publier(version);
+                }
+                this.flux.publier(Evenement.Type.ENFANT_CREE, nom, null, null);
+                return true;
+            }
+        }
+        finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Inscrit un enfant à une séance de découverte d'un instrument, après
+     * avoir vérifié les règles d'inscription (voir
+     * {@link ServiceInscription#verifier(Enfant, Instrument, Jour)}) : trois
+     * séances au plus, une seule par jour, pas deux fois le même instrument.
+     * <p>
+     * La vérification et l'inscription sont atomiques : elles se font sous
+     * le moniteur de l'enfant, si bien que des inscriptions concurrentes du
+     * même enfant ne peuvent pas enfreindre les règles, et que celles
+     * d'enfants différents ne se bloquent pas.
+     * <p>
+     * Si la séance est complète, ou si d'autres enfants attendent déjà une
+     * place, l'enfant est placé en fin de liste d'attente : il sera inscrit
+     * automatiquement dès qu'une place se libère, si les règles le
+     * permettent encore. Une demande en attente ne réserve ni le jour ni
+     * l'instrument de l'enfant.
+     *
+     * @param enfant L'enfant à inscrire.
+     *
+     * @param instrument L'instrument choisi.
+     *
+     * @param jour Le jour de la séance.
+     *
+     * @return {@link ResultatInscription#ACCEPTEE} si l'enfant a été inscrit,
+     *     {@link ResultatInscription#EN_ATTENTE} s'il a été placé en liste
+     *     d'attente, le motif du refus sinon.
+     */
+    public ResultatInscription inscrire(Enfant enfant, Instrument instrument, Jour jour) {
+        Lock verrou = this.verrouEtat.readLock();
+        verrou.lock();
+        try {
+            ResultatInscription resultat;
+            synchronized (enfant) {
+                resultat = ServiceInscription.verifier(enfant, instrument, jour);
+                if (resultat.estAcceptee()) {
+                    resultat = this.admettre(enfant, instrument, jour);
+                }
+            }
+            if (resultat.estEnAttente()) {
+                // une place a pu se libérer avant la mise en attente : elle
+                // n'aurait été proposée à personne
+                this.promouvoir(instrument, jour);
+                if (!instrument.getPlaces().estEnAttente(enfant, jour) && enfant.estInscritA(instrument.getNom())) {
+                    resultat = ResultatInscription.ACCEPTEE;
+                }
+            }
+            return resultat;
+        }
+        finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Inscrit l'enfant si une place est libre et que personne n'attend, le
+     * met en liste d'attente sinon. L'appelant détient le moniteur de
+     * l'enfant et a vérifié les règles d'inscription.
+     */
+    private ResultatInscription admettre(Enfant enfant, Instrument instrument, Jour jour) {
+        PlacesInstrument places = instrument.getPlaces();
+        if (places.estEnAttente(enfant, jour)) {
+            return ResultatInscription.DEJA_EN_ATTENTE;
+        }
+        if (this.occuperPlaceLibre(enfant, instrument, jour)) {
+            return ResultatInscription.ACCEPTEE;
+        }
+        if (this.journal != null) {
+            this.journal.attenteAjoutee(new Seance(jour, enfant, instrument));
+        }
+        places.mettreEnAttente(enfant, jour);
+        return ResultatInscription.EN_ATTENTE;
+    }
+
+    /**
+     * Inscrit un enfant à une séance seulement si une place est libre et que
+     * personne n'attend : contrairement à
+     * {@link #inscrire(Enfant, Instrument, Jour)}, l'enfant n'est jamais mis
+     * en liste d'attente. Les règles d'inscription sont vérifiées et la
+     * place réservée sous le moniteur de l'enfant.
+     *
+     * @param enfant L'enfant à inscrire.
+     *
+     * @param instrument L'instrument choisi.
+     *
+     * @param jour Le jour de la séance.
+     *
+     * @return {@link ResultatInscription#ACCEPTEE} si l'enfant a été inscrit,
+     *     {@link ResultatInscription#SEANCE_COMPLETE} s'il ne reste aucune
+     *     place, le motif du refus sinon.
+     */
+    ResultatInscription inscrireSiPlaceLibre(Enfant enfant, Instrument instrument, Jour jour) {
+        Lock verrou = this.verrouEtat.readLock();
+        verrou.lock();
+        try {
+            synchronized (enfant) {
+                ResultatInscription resultat = ServiceInscription.verifier(enfant, instrument, jour);
+                if (!resultat.estAcceptee()) {
+                    return resultat;
+                }
+                if (instrument.getPlaces().estEnAttente(enfant, jour)) {
+                    return ResultatInscription.DEJA_EN_ATTENTE;
+                }
+                return this.occuperPlaceLibre(enfant, instrument, jour)
+                        ? ResultatInscription.ACCEPTEE
+                        : ResultatInscription.SEANCE_COMPLETE;
+            }
+        }
+        finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Inscrit l'enfant si une place est libre et que personne n'attend.
+     * L'appelant détient le moniteur de l'enfant et a vérifié les règles
+     * d'inscription.
+     *
+     * @return true si l'enfant a été inscrit.
+     */
+    private boolean occuperPlaceLibre(Enfant enfant, Instrument instrument, Jour jour) {
+        PlacesInstrument places = instrument.getPlaces();
+        if (places.getNbEnAttente(jour) > 0 || !places.reserver(jour)) {
+            return false;
+        }
+        try {
+            this.appliquerSeance(enfant, instrument, jour);
+        }
+        catch (RuntimeException e) {
+            places.liberer(jour);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Propose les places libres d'une séance aux premiers enfants en
+     * attente, dans l'ordre d'arrivée. Un enfant que les règles ne
+     * permettent plus d'inscrire (il a entre-temps choisi ce jour, cet
+     * instrument ou sa dernière séance) est retiré de la liste.
+     * <p>
+     * L'appelant détient le verrou des mutations mais aucun moniteur
+     * d'enfant : les moniteurs des enfants promus sont pris l'un après
+     * l'autre.
+     *
+     * @return Le nombre d'enfants inscrits.
+     */
+    private int promouvoir(Instrument instrument, Jour jour) {
+        PlacesInstrument places = instrument.getPlaces();
+        int nbPromus = 0;
+        while (places.getNbEnAttente(jour) > 0 && places.getRestantes(jour) > 0) {
+            Enfant enfant = places.premierEnAttente(jour);
+            if (enfant == null) {
+                break;
+            }
+            synchronized (enfant) {
+                if (!places.estEnAttente(enfant, jour)) {
+                    // promu ou retiré par une autre tâche
+                    continue;
+                }
+                boolean admis = ServiceInscription.verifier(enfant, instrument, jour).estAcceptee();
+                if (admis && !places.reserver(jour)) {
+                    // la place a été prise entre-temps
+                    break;
+                }
+                try {
+                    if (this.journal != null) {
+                        this.journal.attenteRetiree(new Seance(jour, enfant, instrument));
+                    }
+                    places.retirerAttente(enfant, jour);
+                    if (admis) {
+                        this.appliquerSeance(enfant, instrument, jour);
+                        ++nbPromus;
+                    }
+                }
+                catch (RuntimeException e) {
+                    if (admis) {
+                        places.liberer(jour);
+                    }
+                    throw e;
+                }
+            }
+        }
+        return nbPromus;
+    }
+
+    /**
+     * Désinscrit un enfant d'un instrument : sa séance est retirée et il
+     * quitte les listes d'attente de l'instrument. La place libérée est
+     * aussitôt proposée au premier enfant en attente ce jour-là.
+     * <p>
+     * Le retrait n'attend pas la fermeture des {@link Instantane}s ouverts :
+     * la séance est marquée de la version du retrait, et ils continuent de
+     * la voir.
+     *
+     * @param enfant L'enfant à désinscrire.
+     *
+     * @param instrument L'instrument à quitter.
+     *
+     * @return {@link ResultatInscription#ACCEPTEE} si l'enfant a été
+     *     désinscrit, {@link ResultatInscription#NON_INSCRIT} s'il n'était ni
+     *     inscrit ni en attente.
+     */
+    public ResultatInscription desinscrire(Enfant enfant, Instrument instrument) {
+        Lock verrou = this.verrouEtat.readLock();
+        verrou.lock();
+        try {
+            PlacesInstrument places = instrument.getPlaces();
+            boolean enAttente = false;
+            Jour libere;
+            synchronized (enfant) {
+                for (Jour jour : places.joursEnAttente(enfant)) {
+                    if (this.journal != null) {
+                        this.journal.attenteRetiree(new Seance(jour, enfant, instrument));
+                    }
+                    enAttente |= places.retirerAttente(enfant, jour);
+                }
+                if (!enfant.estInscritA(instrument.getNom())) {
+                    return enAttente ? ResultatInscription.ACCEPTEE : ResultatInscription.NON_INSCRIT;
+                }
+                if (this.journal != null) {
+                    this.journal.seanceRetiree(enfant.getNom(), instrument.getNom());
+                }
+                libere = this.retirerSeance(enfant, instrument);
+            }
+            this.promouvoir(instrument, libere);
+            return ResultatInscription.ACCEPTEE;
+        }
+        finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Retire la séance d'un enfant, puis rend sa place. L'appelant détient
+     * le moniteur de l'enfant.
+     *
+     * @return Le jour libéré, ou null si l'enfant n'était pas inscrit.
+     */
+    private Jour retirerSeance(Enfant enfant, Instrument instrument) {
+        Jour jour = this.retirerDuStock(enfant, instrument);
+        if (jour != null) {
+            // publié avant que la place libérée ne profite à un autre enfant
+            this.flux.publier(Evenement.Type.SEANCE_RETIREE, enfant.getNom(), instrument.getNom(), jour);
+            instrument.getPlaces().liberer(jour);
+        }
+        return jour;
+    }
+
+    /**
+     * Retire la séance d'un enfant sous une nouvelle version, sans rendre sa
+     * place. L'appelant détient le moniteur de l'enfant.
+     *
+     * @return Le jour de la séance, ou null si l'enfant n'était pas inscrit.
+     */
+    private Jour retirerDuStock(Enfant enfant, Instrument instrument) {
+        Jour jour;
+        long version = this.horloge.debuter();
+        try {
+            jour = this.stock.retirer(enfant.getId(), instrument.getId(), version);
+            if (jour != null) {
+                this.eligibilite.seanceRetiree(enfant);
+                enfant.setVersionRetrait(version);
+            }
+        }
+        finally {
+            this.horloge.publier(version);
+        }
+        return jour;
+    }
+
+    /**
+     * Fixe le nombre de places d'un instrument un jour donné. Si la
+     * capacité augmente, les places libérées sont aussitôt proposées aux
+     * enfants en attente. Une capacité inférieure au nombre d'enfants déjà
+     * inscrits ne désinscrit personne.
+     *
+     * @param instrument L'instrument concerné.
+     *
+     * @param jour Le jour concerné.
+     *
+     * @param capacite Le nombre de places, positif ou nul, ou
+     *     {@link PlacesInstrument#ILLIMITEE}.
+     *
+     * @return Le nombre d'enfants inscrits depuis la liste d'attente.
+     */
+    public int fixerCapacite(Instrument instrument, Jour jour, int capacite) {
+        if (capacite < 0) {
+            throw new IllegalArgumentException("Capacité négative.");
+        }
+        Lock verrou = this.verrouEtat.readLock();
+        verrou.lock();
+        try {
+            if (this.journal != null) {
+                this.journal.capaciteFixee(instrument.getNom(), jour, capacite);
+            }
+            this.enregistrerCapacite(instrument, jour, capacite);
+            return this.promouvoir(instrument, jour);
+        }
+        finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Inscrit un enfant à une séance de découverte d'un instrument.
+     * <p>
+     * La séance est visible à la fois depuis l'enfant et depuis l'instrument. Les règles
+     * d'inscription (trois séances au plus, une seule par jour, pas deux fois
+     * le même instrument) doivent avoir été vérifiées par l'appelant ; en
+     * présence d'autres tâches, {@link #inscrire(Enfant, Instrument, Jour)}
+     * est préférable. La capacité de la séance n'est pas vérifiée : la place
+     * est comptée même si la séance est complète.
+     *
+     * @param enfant L'enfant à inscrire.
+     *
+     * @param instrument L'instrument choisi.
+     *
+     * @param jour Le jour de la séance.
+     */
+    public void nouvelleSeance(Enfant enfant, Instrument instrument, Jour jour) {
+        Lock verrou = this.verrouEtat.readLock();
+        verrou.lock();
+        try {
+            synchronized (enfant) {
+                this.appliquerSeance(enfant, instrument, jour);
+                instrument.getPlaces().occuper(jour);
+            }
+        }
+        finally {
+            verrou.unlock();
+        }
+    }
+
+    private void appliquerSeance(Enfant enfant, Instrument instrument, Jour jour) {
+        if (this.journal != null) {
+            this.journal.seanceAjoutee(new Seance(jour, enfant, instrument));
+        }
+        // aucune entrée/sortie entre la numérotation et la publication
+        long version = this.horloge.debuter();
+        try {
+            this.enregistrerSeance(enfant, instrument, jour, version);
+        }
+        finally {
+            this.horloge.publier(version);
+        }
+        this.flux.publier(Evenement.Type.SEANCE_AJOUTEE, enfant.getNom(), instrument.getNom(), jour);
+    }
+
+    /**
+     * Prend un instantané de l'application : une vue cohérente et figée de
+     * tous les enfants, instruments et séances, telle qu'après la dernière
+     * mutation publiée.
+     * <p>
+     * La prise d'un instantané ne recopie rien et ne bloque aucune mutation :
+     * l'instantané retient la version publiée et filtre à la lecture les
+     * données estampillées d'une version postérieure. Son coût est donc
+     * indépendant du volume de données ; sa lecture coûte autant qu'une
+     * lecture directe. Il doit être fermé dès qu'il n'est plus lu : tant
+     * qu'il est ouvert, les séances retirées ne sont pas compactées.
+     *
+     * @return L'instantané.
+     */
+    public Instantane instantane() {
+        this.chargerTout();
+        return new Instantane(this.enfants, this.instruments, this.stock, this.stock.ouvrirLecture());
+    }
+
+    /**
+     * Prend un instantané d'une saison : la saison courante (voir
+     * {@link #instantane()}) ou une saison archivée, lue à la demande.
+     *
+     * @param saison Le nom de la saison, ou null pour la saison courante.
+     *
+     * @return L'instantané, à fermer après usage.
+     *
+     * @throws IllegalArgumentException si la saison n'est ni courante ni
+     *     archivée.
+     *
+     * @throws UncheckedIOException si l'archive ne peut pas être lue.
+     */
+    public Instantane instantane(String saison) {
+        if (saison == null || saison.equals(this.getSaison())) {
+            return this.instantane();
+        }
+        if (this.archives == null) {
+            throw new IllegalArgumentException("Saison inconnue : " + saison);
+        }
+        try {
+            return this.archives.ouvrir(saison).instantane();
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Donne le nom de la saison courante, la seule dont les inscriptions
+     * sont en mémoire.
+     *
+     * @return Le nom enregistré dans le dossier de persistance, ou l'année
+     *     scolaire en cours (par exemple « 2025-2026 »).
+     *
+     * @throws UncheckedIOException si le nom ne peut pas être lu.
+     */
+    public String getSaison() {
+        if (this.archives == null) {
+            return ArchivesSaisons.saisonParDefaut(LocalDate.now());
+        }
+        try {
+            return this.archives.getSaisonCourante();
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Donne les saisons archivées, consultables par
+     * {@link #instantane(String)}.
+     *
+     * @return Les noms des saisons, dans l'ordre alphabétique.
+     *
+     * @throws UncheckedIOException si les archives ne peuvent pas être lues.
+     */
+    public List<String> getSaisonsArchivees() {
+        if (this.archives == null) {
+            return new ArrayList<>();
+        }
+        try {
+            return this.archives.lister();
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Donne la version courante de l'application : elle augmente à chaque
+     * mutation.
+     *
+     * @return La dernière version publiée (voir {@link HorlogeVersions}).
+     */
+    long getVersion() {
+        return this.horloge.versionPubliee();
+    }
+
+    /**
+     * Accède aux mesures de l'activité de l'application.
+     *
+     * @return Les métriques de l'application.
+     */
+    public Metriques getMetriques() {
+        return this.metriques;
+    }
+
+    /**
+     * Accède au flux des changements de l'application : créations de noms,
+     * séances ajoutées et retirées. Un changement est publié une fois
+     * visible. Les restaurations (instantané, journal) n'y sont pas
+     * publiées : elles passent par les méthodes réservées à la restauration
+     * (voir {@link #enregistrerSeance(Enfant, Instrument, Jour)}).
+     *
+     * @return Le flux des événements, auquel s'abonner.
+     */
+    public FluxEvenements getFlux() {
+        return this.flux;
+    }
+
+    /**
+     * Relève les effectifs du modèle, en temps constant. Un instantané
+     * paresseux est d'abord matérialisé.
+     *
+     * @return Le nombre d'enfants, d'instruments et de séances par jour,
+     *     et la répartition des enfants selon leur nombre de séances ; les
+     *     mutations en cours peuvent y figurer.
+     */
+    public Metriques.Jauges jauges() {
+        this.chargerTout();
+        return this.jaugesChargees();
+    }
+
+    /**
+     * Relève les effectifs des objets déjà matérialisés, sans charger un
+     * instantané paresseux.
+     *
+     * @return Les effectifs matérialisés.
+     */
+    Metriques.Jauges jaugesChargees() {
+        int[] nbSeancesParJour = new int[Jour.values().length];
+        for (Jour jour : Jour.values()) {
+            nbSeancesParJour[jour.ordinal()] = this.stock.getNbSeances(jour);
+        }
+        int[] nbEnfantsParNbSeances = new int[Enfant.MAX_SEANCES + 1];
+        for (int nb = 0; nb <= Enfant.MAX_SEANCES; ++nb) {
+            nbEnfantsParNbSeances[nb] = this.stock.getNbEnfants(nb);
+        }
+        return new Metriques.Jauges(
+                this.stock.getNbEnfants(), this.stock.getNbInstruments(), nbSeancesParJour, nbEnfantsParNbSeances);
+    }
+
+    /**
+     * Indique qu'une {@link SauvegardePeriodique} replie le journal en
+     * arrière-plan : les compactions synchrones sont alors inutiles.
+     *
+     * @param active true si une sauvegarde périodique est en cours.
+     */
+    void setSauvegardeAutomatique(boolean active) {
+        this.sauvegardeAutomatique = active;
+    }
+
+    /**
+     * Donne le verrou à détenir pour observer ou persister un état complet
+     * et figé de l'application : tant qu'il est détenu, aucune mutation ne
+     * peut commencer ni être en cours.
+     *
+     * @return La partie exclusive du verrou des mutations.
+     */
+    Lock verrouExclusif() {
+        return this.verrouEtat.writeLock();
+    }
+
+    /**
+     * Libère les cases des séances retirées, si aucun {@link Instantane}
+     * n'est ouvert (voir {@link StockSeances#compacter()}). L'appelant ne
+     * doit détenir le moniteur d'aucun enfant.
+     */
+    void compacterSeances() {
+        this.stock.compacter();
+    }
+
+    /**
+     * Ajoute un instrument au modèle, sans le journaliser.
+     * <p>
+     * Réservé à la restauration d'un état déjà persisté.
+     *
+     * @param nom Le nom de l'instrument.
+     *
+     * @return L'instrument ajouté.
+     */
+    Instrument enregistrerInstrument(String nom) {
+        return this.enregistrerInstrument(nom, HorlogeVersions.VERSION_INITIALE);
+    }
+
+    private Instrument enregistrerInstrument(String nom, long version) {
+        Instrument instrument = new Instrument(nom);
+        // rattaché avant d'être visible dans le dictionnaire
+        this.indexer(instrument, version);
+        this.instruments.put(nom, instrument);
+        return instrument;
+    }
+
+    private void indexer(Instrument instrument, long version) {
+        instrument.attacher(this.stock, this.stock.enregistrerInstrument(instrument), version);
+        this.indexInstruments.putIfAbsent(Application.cle(instrument.getNom()), instrument);
+        this.rechercheInstruments.ajouter(instrument.getNom());
+    }
+
+    /**
+     * Ajoute un enfant au modèle, sans le journaliser.
+     * <p>
+     * Réservé à la restauration d'un état déjà persisté.
+     *
+     * @param nom Le nom de l'enfant.
+     *
+     * @return L'enfant ajouté.
+     */
+    Enfant enregistrerEnfant(String nom) {
+        return this.enregistrerEnfant(nom, HorlogeVersions.VERSION_INITIALE);
+    }
+
+    private Enfant enregistrerEnfant(String nom, long version) {
+        Enfant enfant = new Enfant(nom);
+        this.indexer(enfant, version);
+        this.enfants.put(nom, enfant);
+        return enfant;
+    }
+
+    private void indexer(Enfant enfant, long version) {
+        enfant.attacher(this.stock, this.stock.enregistrerEnfant(enfant), version);
+        this.indexEnfants.putIfAbsent(Application.cle(enfant.getNom()), enfant);
+        this.rechercheEnfants.ajouter(enfant.getNom());
+        this.eligibilite.enfantAjoute(enfant);
+    }
+
+    /**
+     * Ajoute une séance au modèle, sans la journaliser.
+     * <p>
+     * Réservé à la restauration d'un état déjà persisté.
+     *
+     * @param enfant L'enfant inscrit.
+     *
+     * @param instrument L'instrument choisi.
+     *
+     * @param jour Le jour de la séance.
+     *
+     * @return La séance ajoutée.
+     */
+    Seance enregistrerSeance(Enfant enfant, Instrument instrument, Jour jour) {
+        instrument.getPlaces().occuper(jour);
+        return this.enregistrerSeance(enfant, instrument, jour, HorlogeVersions.VERSION_INITIALE);
+    }
+
+    private Seance enregistrerSeance(Enfant enfant, Instrument instrument, Jour jour, long version) {
+        this.stock.ajouter(enfant.getId(), instrument.getId(), jour, version);
+        this.eligibilite.seanceAjoutee(enfant);
+        return new Seance(jour, enfant, instrument);
+    }
+
+    /**
+     * Retire une séance du modèle, sans la journaliser ni promouvoir
+     * d'enfant en attente : les promotions sont elles-mêmes journalisées.
+     * <p>
+     * Réservé à la restauration d'un état déjà persisté.
+     *
+     * @param enfant L'enfant désinscrit.
+     *
+     * @param instrument L'instrument quitté.
+     *
+     * @return true si l'enfant était inscrit à l'instrument.
+     */
+    boolean enregistrerRetrait(Enfant enfant, Instrument instrument) {
+        Lock verrou = this.verrouEtat.readLock();
+        verrou.lock();
+        try {
+            synchronized (enfant) {
+                Jour jour = this.retirerDuStock(enfant, instrument);
+                if (jour == null) {
+                    return false;
+                }
+                instrument.getPlaces().liberer(jour);
+                return true;
+            }
+        }
+        finally {
+            verrou.unlock();
+        }
+    }
+
+    /**
+     * Fixe une capacité, sans la journaliser ni promouvoir d'enfant en
+     * attente. Une capacité limitée matérialise d'abord tout l'instantané
+     * sous-jacent, afin que toutes les places occupées soient comptées.
+     *
+     * @param instrument L'instrument concerné.
+     *
+     * @param jour Le jour concerné.
+     *
+     * @param capacite Le nombre de places, ou
+     *     {@link PlacesInstrument#ILLIMITEE}.
+     */
+    void enregistrerCapacite(Instrument instrument, Jour jour, int capacite) {
+        if (capacite != PlacesInstrument.ILLIMITEE) {
+            this.chargerTout();
+        }
+        instrument.getPlaces().setCapacite(jour, capacite);
+    }
+
+    /**
+     * Ajoute un enfant en fin de liste d'attente, sans le journaliser.
+     * <p>
+     * Réservé à la restauration d'un état déjà persisté.
+     *
+     * @param enfant L'enfant en attente.
+     *
+     * @param instrument L'instrument demandé.
+     *
+     * @param jour Le jour demandé.
+     */
+    void enregistrerAttente(Enfant enfant, Instrument instrument, Jour jour) {
+        instrument.getPlaces().mettreEnAttente(enfant, jour);
+    }
+
+    /**
+     * Retire un enfant d'une liste d'attente, sans le journaliser.
+     * <p>
+     * Réservé à la restauration d'un état déjà persisté.
+     *
+     * @param enfant L'enfant qui était en attente.
+     *
+     * @param instrument L'instrument demandé.
+     *
+     * @param jour Le jour demandé.
+     */
+    void enregistrerFinAttente(Enfant enfant, Instrument instrument, Jour jour) {
+        instrument.getPlaces().retirerAttente(enfant, jour);
+    }
+
+    /**
+     * Adosse l'application à un instantané projeté en mémoire : les enfants
+     * et les instruments de l'instantané ne sont matérialisés qu'au moment
+     * où ils sont consultés.
+     *
+     * @param source Le registre paresseux de l'instantané.
+     */
+    void setSource(RegistreMappe source) {
+        this.source = source;
+    }
+
+    /**
+     * Matérialise la totalité de l'instantané sous-jacent, avant une
+     * opération qui parcourt tous les enfants ou tous les instruments.
+     */
+    private void chargerTout() {
+        RegistreMappe registre = this.source;
+        if (registre != null) {
+            registre.chargerTout(this);
+            this.source = null;
+        }
+    }
+
+    /**
+     * Accède aux enfants qui peuvent encore s'inscrire à un instrument : il
+     * leur reste au moins une séance libre et ils ne sont pas déjà inscrits à
+     * tous les instruments.
+     * <p>
+     * La collection est une vue en direct, tenue à jour à chaque création
+     * d'enfant, d'instrument ou de séance : la consulter ne parcourt pas les
+     * enfants non éligibles.
+     *
+     * @return Une vue non modifiable des enfants éligibles.
+     */
+    public Collection<Enfant> getEnfantsEligibles() {
+        this.chargerTout();
+        return this.eligibilite.enfantsEligibles(this.instruments.size());
+    }
+
+    /**
+     * Accède aux instruments auxquels un enfant n'est pas encore inscrit.
+     * <p>
+     * La collection est une vue en direct : sa taille est connue en temps
+     * constant et son parcours ne saute que les (au plus
+     * {@value Enfant#MAX_SEANCES}) instruments déjà choisis.
+     *
+     * @param enfant L'enfant considéré.
+     *
+     * @return Une vue non modifiable des instruments disponibles.
+     */
+    public Collection<Instrument> getInstrumentsDisponibles(final Enfant enfant) {
+        final Collection<Instrument> tous = this.getInstruments().values();
+        return new AbstractCollection<Instrument>() {
+
+            @Override
+            public Iterator<Instrument> iterator() {
+                return tous.stream()
+                        .filter(instrument -> !enfant.estInscritA(instrument.getNom()))
+                        .iterator();
+            }
+
+            @Override
+            public int size() {
+                // chaque séance de l'enfant porte sur un instrument distinct
+                return tous.size() - enfant.getNbSeances();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Instrument
+                        && Application.this.instruments.get(((Instrument) o).getNom()) == o
+                        && !enfant.estInscritA(((Instrument) o).getNom());
+            }
+        };
+    }
+
+    /**
+     * Accède au dossier de persistance de l'application.
+     *
+     * @return Le dossier d'où l'application a été lue, ou null.
+     */
+    Path getDossierPersistance() {
+        return this.dossierPersistance;
+    }
+
+    /**
+     * Associe un dossier de persistance à l'application.
+     *
+     * @param dossierPersistance Le dossier où enregistrer l'état.
+     */
+    void setDossierPersistance(Path dossierPersistance) {
+        this.dossierPersistance = dossierPersistance;
+        this.archives = (dossierPersistance != null) ? new ArchivesSaisons(dossierPersistance) : null;
+    }
+
+    /**
+     * Accède aux saisons archivées du dossier de persistance.
+     *
+     * @return Les archives, ou null si l'application n'a pas de dossier de
+     *     persistance.
+     */
+    ArchivesSaisons getArchives() {
+        return this.archives;
+    }
+
+    /**
+     * Accède à la persistance segmentée de l'application.
+     *
+     * @return La persistance segmentée, ou null si l'état est enregistré dans
+     *     un fichier unique.
+     */
+    PersistanceSegmentee getPersistanceSegmentee() {
+        return this.persistanceSegmentee;
+    }
+
+    /**
+     * Associe une persistance segmentée à l'application.
+     *
+     * @param persistanceSegmentee La persistance segmentée, ou null pour
+     *     enregistrer l'état dans un fichier unique.
+     */
+    void setPersistanceSegmentee(PersistanceSegmentee persistanceSegmentee) {
+        this.persistanceSegmentee = persistanceSegmentee;
+    }
+
+    /**
+     * Accède au journal des mutations associé à l'application.
+     *
+     * @return Le journal, ou null si les mutations ne sont pas journalisées.
+     */
+    Journal getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * Associe un journal à l'application : chaque mutation ultérieure y est
+     * enregistrée.
+     *
+     * @param journal Le journal à alimenter, ou null pour ne plus journaliser.
      */
-    public void nouvelEnfant(String nom) {
-        assert !this.enfants.containsKey(nom);
-        this.enfants.put(nom, new Enfant(nom));
+    void setJournal(Journal journal) {
+        this.journal = journal;
     }
 
     /**
@@ -255,6 +1475,7 @@ public class Application implements Serializable {
      * @return Un dictionnaire des enfants connus.
      */
     public Map<String, Enfant> getEnfants() {
+        this.chargerTout();
         return this.enfants;
     }
 }
@@ -0,0 +1,236 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * La classe ArchivesSaisons partitionne les inscriptions par saison
+ * (année scolaire, par exemple « 2025-2026 ») dans un dossier de
+ * persistance.
+ * <p>
+ * Seule la saison courante, dont le nom est rangé dans le fichier
+ * "{@value ArchivesSaisons#NOM_SAISON}", est chargée au démarrage (voir
+ * {@link Persisteur}). Chaque saison close est archivée dans le sous-dossier
+ * "{@value ArchivesSaisons#NOM_DOSSIER}" : un instantané au format
+ * {@link FormatBinaire}, compressé par gzip et en lecture seule. La mémoire
+ * occupée et la durée du démarrage ne dépendent donc que de la saison
+ * courante.
+ * <p>
+ * Une saison archivée est lue à la demande, intégralement, lorsqu'un
+ * {@link Instantane} en est demandé (voir
+ * {@link Application#instantane(String)}) ; elle reste ensuite en mémoire
+ * tant que le ramasse-miettes n'a pas besoin de la place qu'elle occupe.
+ * Les archives ne sont jamais modifiées.
+ */
+final class ArchivesSaisons {
+
+    /**
+     * Nom du sous-dossier des archives.
+     */
+    static final String NOM_DOSSIER = "saisons";
+
+    /**
+     * Nom du fichier qui contient le nom de la saison courante.
+     */
+    static final String NOM_SAISON = "saison";
+
+    private static final String SUFFIXE = ".bdd.gz";
+    private static final String SUFFIXE_TEMPORAIRE = ".tmp";
+    private static final Pattern NOM_VALIDE = Pattern.compile("[\\p{L}\\p{N}][\\p{L}\\p{N}_.-]{0,63}");
+
+    private final Path dossier;
+    private final Path dossierArchives;
+    private volatile String saisonCourante = null;
+    private final Map<String, SoftReference<Application>> chargees = new HashMap<>();
+
+    /**
+     * Prépare l'accès aux saisons d'un dossier de persistance.
+     *
+     * @param dossier Le dossier de persistance.
+     */
+    ArchivesSaisons(final Path dossier) {
+        this.dossier = dossier;
+        this.dossierArchives = dossier.resolve(ArchivesSaisons.NOM_DOSSIER);
+    }
+
+    /**
+     * Nomme l'année scolaire d'une date : une année scolaire commence le
+     * 1er septembre.
+     *
+     * @param date La date considérée.
+     *
+     * @return Le nom de l'année scolaire, par exemple « 2025-2026 ».
+     */
+    static String saisonParDefaut(final LocalDate date) {
+        int debut = (date.getMonthValue() >= Month.SEPTEMBER.getValue()) ? date.getYear() : date.getYear() - 1;
+        return debut + "-" + (debut + 1);
+    }
+
+    /**
+     * Vérifie qu'un nom de saison peut servir de nom de fichier : une lettre
+     * ou un chiffre, puis des lettres, chiffres, points, tirets ou soulignés.
+     *
+     * @throws IllegalArgumentException si le nom est invalide.
+     */
+    static void verifierNom(final String saison) {
+        if (saison == null || !ArchivesSaisons.NOM_VALIDE.matcher(saison).matches()) {
+            throw new IllegalArgumentException("Nom de saison invalide : " + saison);
+        }
+    }
+
+    /**
+     * @return Le nom de la saison courante : celui enregistré dans le
+     *     dossier, ou l'année scolaire en cours s'il n'y en a pas.
+     *
+     * @throws IOException si le fichier de la saison ne peut pas être lu.
+     */
+    String getSaisonCourante() throws IOException {
+        String saison = this.saisonCourante;
+        if (saison == null) {
+            Path chemin = this.dossier.resolve(ArchivesSaisons.NOM_SAISON);
+            saison = Files.exists(chemin)
+                    ? Files.readString(chemin, StandardCharsets.UTF_8).strip()
+                    : ArchivesSaisons.saisonParDefaut(LocalDate.now());
+            this.saisonCourante = saison;
+        }
+        return saison;
+    }
+
+    /**
+     * Enregistre le nom de la saison courante, par remplacement atomique.
+     *
+     * @param saison Le nom de la nouvelle saison courante.
+     *
+     * @throws IOException si le fichier ne peut pas être écrit.
+     */
+    void setSaisonCourante(final String saison) throws IOException {
+        ArchivesSaisons.verifierNom(saison);
+        Path chemin = this.dossier.resolve(ArchivesSaisons.NOM_SAISON);
+        Path temporaire = this.dossier.resolve(ArchivesSaisons.NOM_SAISON + ArchivesSaisons.SUFFIXE_TEMPORAIRE);
+        Files.createDirectories(this.dossier);
+        try (FileOutputStream fos = new FileOutputStream(temporaire.toFile())) {
+            fos.write((saison + "\n").getBytes(StandardCharsets.UTF_8));
+            fos.getFD().sync();
+        }
+        Files.move(temporaire, chemin, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.saisonCourante = saison;
+    }
+
+    private Path chemin(final String saison) {
+        return this.dossierArchives.resolve(saison + ArchivesSaisons.SUFFIXE);
+    }
+
+    /**
+     * @return Les noms des saisons archivées, dans l'ordre alphabétique.
+     *
+     * @throws IOException si le dossier des archives ne peut pas être lu.
+     */
+    List<String> lister() throws IOException {
+        List<String> saisons = new ArrayList<>();
+        if (!Files.isDirectory(this.dossierArchives)) {
+            return saisons;
+        }
+        try (Stream<Path> fichiers = Files.list(this.dossierArchives)) {
+            fichiers.map(fichier -> fichier.getFileName().toString())
+                    .filter(nom -> nom.endsWith(ArchivesSaisons.SUFFIXE))
+                    .map(nom -> nom.substring(0, nom.length() - ArchivesSaisons.SUFFIXE.length()))
+                    .sorted()
+                    .forEach(saisons::add);
+        }
+        return saisons;
+    }
+
+    /**
+     * @return true si la saison est archivée.
+     */
+    boolean estArchivee(final String saison) {
+        return ArchivesSaisons.NOM_VALIDE.matcher(saison).matches() && Files.exists(this.chemin(saison));
+    }
+
+    /**
+     * Archive l'état d'une saison. L'archive est d'abord écrite dans un
+     * fichier temporaire, synchronisée, puis renommée de façon atomique et
+     * mise en lecture seule.
+     *
+     * @param saison Le nom de la saison archivée.
+     *
+     * @param instantane L'état de la saison.
+     *
+     * @return Le nombre d'octets de l'archive.
+     *
+     * @throws IOException si la saison est déjà archivée ou qu'une erreur
+     *     d'écriture survient.
+     */
+    long archiver(final String saison, final Instantane instantane) throws IOException {
+        ArchivesSaisons.verifierNom(saison);
+        Path chemin = this.chemin(saison);
+        if (Files.exists(chemin)) {
+            throw new IOException("La saison " + saison + " est déjà archivée.");
+        }
+        Files.createDirectories(this.dossierArchives);
+        Path temporaire = this.dossierArchives.resolve(saison + ArchivesSaisons.SUFFIXE + ArchivesSaisons.SUFFIXE_TEMPORAIRE);
+        try (FileOutputStream fos = new FileOutputStream(temporaire.toFile())) {
+            GZIPOutputStream gzip = new GZIPOutputStream(new BufferedOutputStream(fos));
+            DataOutputStream out = new DataOutputStream(gzip);
+            FormatBinaire.ecrire(instantane, out);
+            out.flush();
+            gzip.finish();
+            gzip.flush();
+            fos.getFD().sync();
+        }
+        Files.move(temporaire, chemin, StandardCopyOption.ATOMIC_MOVE);
+        if (!chemin.toFile().setWritable(false, false)) {
+            System.err.println("L'archive " + chemin + " n'a pas pu être mise en lecture seule.");
+            System.err.flush();
+        }
+        return Files.size(chemin);
+    }
+
+    /**
+     * Donne l'état d'une saison archivée, lu à la première demande puis
+     * conservé tant que la mémoire le permet.
+     *
+     * @param saison Le nom de la saison.
+     *
+     * @return L'application de la saison, à ne pas modifier.
+     *
+     * @throws IllegalArgumentException si la saison n'est pas archivée.
+     *
+     * @throws IOException si l'archive ne peut pas être lue.
+     */
+    synchronized Application ouvrir(final String saison) throws IOException {
+        SoftReference<Application> reference = this.chargees.get(saison);
+        Application app = (reference != null) ? reference.get() : null;
+        if (app != null) {
+            return app;
+        }
+        if (!this.estArchivee(saison)) {
+            throw new IllegalArgumentException("Saison inconnue : " + saison);
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(this.chemin(saison)))) {
+            app = FormatBinaire.lire(new DataInputStream(new BufferedInputStream(in)));
+        }
+        this.chargees.put(saison, new SoftReference<>(app));
+        return app;
+    }
+}
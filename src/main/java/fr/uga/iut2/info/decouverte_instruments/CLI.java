@@ -1,11 +1,17 @@
 package fr.uga.iut2.info.decouverte_instruments;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
-import java.util.EnumSet;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * La classe CLI est responsable des interactions avec l'utilisa·teur/trice.
@@ -29,6 +35,19 @@ public final class CLI {
      */
     private static final int MAX_ESSAIS = 3;
 
+    /**
+     * Nombre maximum de noms proposés lors d'une recherche.
+     */
+    static final int NB_PROPOSITIONS = 10;
+
+    private static final int TAILLE_TAMPON_SORTIE = 1 << 16;
+
+    /**
+     * Unique lecteur de l'entrée standard : un lecteur par saisie perdrait
+     * les lignes déjà mises en tampon par le précédent.
+     */
+    private static final Scanner ENTREE = new Scanner(System.in);
+
     /**
      * Interprète un token entier non signé comme une {@link Commande}.
      *
@@ -44,7 +63,7 @@ public final class CLI {
         }
         catch (NumberFormatException | ArrayIndexOutOfBoundsException ignored) {
             // attention à garder synchronisé avec l'enum Commande
-            System.out.println("Choix non valide : merci d'entrer un entier entre 0 et 5.");
+            System.out.println("Choix non valide : merci d'entrer un entier entre 0 et 10.");
             System.out.flush();
             result = null;
         }
@@ -67,6 +86,11 @@ public final class CLI {
                 "      * 3- Ajouter une demande d'instrument à un enfant inscrit  *",
                 "      * 4- Afficher les inscriptions de chaque enfant            *",
                 "      * 5- Afficher les inscriptions de chaque instrument        *",
+                "      * 6- Importer un fichier CSV/TSV                           *",
+                "      * 7- Fixer la capacité d'un instrument un jour donné       *",
+                "      * 8- Désinscrire un enfant d'un instrument                 *",
+                "      * 9- Afficher l'occupation des séances                     *",
+                "      * 10- Interroger les inscriptions (filtres, regroupements) *",
                 "******************************************************************",
                 "      * 0- Quitter                                               *",
                 "******************************************************************"
@@ -81,7 +105,7 @@ public final class CLI {
         System.out.flush();
 
         Commande result = null;
-        Scanner in = new Scanner(System.in);
+        Scanner in = CLI.ENTREE;
         String token;
         for (int i = 0; i < CLI.MAX_ESSAIS && result == null; ++i) {
             token = in.next();
@@ -99,13 +123,12 @@ public final class CLI {
      *
      * @param token La chaîne de caractère à interpréter.
      *
-     * @param nomsConnus L'ensemble de chaîne de caractères qui ne sont plus
-     *     disponibles.
+     * @param existe Indique si une chaîne n'est plus disponible.
      *
      * @return La chaîne de caractère en cas de succès, null en cas d'erreur.
      */
-    private static String parseNouveauNom(final String token, final Set<String> nomsConnus) {
-        if (nomsConnus.contains(token)) {
+    private static String parseNouveauNom(final String token, final Predicate<String> existe) {
+        if (existe.test(token)) {
             System.out.println("Le nom existe déjà dans l'application.");
             System.out.flush();
             return null;
@@ -117,241 +140,384 @@ public final class CLI {
     /**
      * Lit sur l'entrée standard un nouveau nom.
      * <p>
-     * Le nom saisi ne doit pas déjà exister dans l'application.
+     * Le nom saisi ne doit pas déjà exister dans l'application. Les noms
+     * existants ne sont pas énumérés : seuls ceux qui ressemblent au nom
+     * saisi sont signalés, pour éviter les doublons à un accent près.
      *
-     * @param nomsConnus L'ensemble des noms connus dans l'application.
+     * @param existe Indique si un nom existe déjà dans l'application.
+     *
+     * @param recherche La recherche des noms proches d'une saisie.
      *
      * @return Le nouveau nom saisi par l'utilisa·teur/trice.
      */
-    private static String lireNouveauNom(final Set<String> nomsConnus) {
-        if (!nomsConnus.isEmpty()) {
-            System.out.println("Les noms suivants ne sont plus disponibles :");
-            System.out.println("  " + String.join(", ", nomsConnus) + ".");
-            System.out.flush();
-        }
-
+    private static String lireNouveauNom(final Predicate<String> existe,
+                                         final Function<String, List<String>> recherche) {
         String result = null;
-        Scanner in = new Scanner(System.in);
+        Scanner in = CLI.ENTREE;
         String token;
         for (int i = 0; i < CLI.MAX_ESSAIS && result == null; ++i) {
             token = in.next();
-            result = CLI.parseNouveauNom(token, nomsConnus);
+            result = CLI.parseNouveauNom(token, existe);
         }
         if (result == null) {
             throw new Error("Erreur de lecture (" + CLI.MAX_ESSAIS + " essais infructueux).");
         }
+        List<String> proches = recherche.apply(result);
+        if (!proches.isEmpty()) {
+            System.out.println("Noms proches déjà utilisés : " + String.join(", ", proches) + ".");
+            System.out.flush();
+        }
         return result;
     }
 
     /**
-     * Interprète un token comme une chaîne de caractère et vérifie que la
-     * chaîne existe déjà.
+     * Lit sur l'entrée standard un nom existant, à l'aide de propositions.
+     * <p>
+     * Un nom existant est accepté tel quel. Sinon, la saisie est traitée
+     * comme une recherche (début de nom, sans casse ni accents, ou nom
+     * approché) : au plus {@value #NB_PROPOSITIONS} noms sont proposés et
+     * numérotés, et l'utilisa·teur/trice saisit un numéro ou précise le nom.
+     * Les noms connus ne sont jamais tous énumérés.
      *
-     * @param token La chaîne de caractère à interpréter.
+     * @param invite Le message invitant à la saisie.
      *
-     * @param nomsConnus L'ensemble de chaîne de caractères valides.
+     * @param existe Indique si une saisie désigne un nom existant.
      *
-     * @return La chaîne de caractère en cas de succès, null en cas d'erreur.
+     * @param recherche La recherche des noms proches d'une saisie.
+     *
+     * @return Le nom choisi, ou la dernière saisie si aucun nom n'a été
+     *     choisi après {@value #MAX_ESSAIS} essais : c'est à l'appelant de
+     *     la vérifier.
      */
-    private static String parseNomExistant(final String token, final Set<String> nomsConnus) {
-        if (nomsConnus.contains(token)) {
-            return token;
-        } else {
-            System.out.println("Le nom n'existe pas dans l'application.");
+    public static String choisirNom(final String invite, final Predicate<String> existe,
+                                    final Function<String, List<String>> recherche) {
+        System.out.print(invite);
+        System.out.flush();
+        String saisie = CLI.lireLigne();
+        List<String> propositions = List.of();
+        for (int i = 0; i < CLI.MAX_ESSAIS; ++i) {
+            if (existe.test(saisie)) {
+                return saisie;
+            }
+            String choisi = CLI.parseProposition(saisie, propositions);
+            if (choisi != null) {
+                return choisi;
+            }
+            propositions = recherche.apply(saisie);
+            if (propositions.isEmpty()) {
+                System.out.println("Aucun nom ne correspond à « " + saisie + " ».");
+                System.out.print(invite);
+            } else {
+                for (int rang = 1; rang <= propositions.size(); ++rang) {
+                    System.out.println("  " + rang + "- " + propositions.get(rang - 1));
+                }
+                System.out.print("Saisir un numéro, ou préciser le nom : ");
+            }
             System.out.flush();
-            return null;
+            saisie = CLI.lireLigne();
         }
+        String choisi = CLI.parseProposition(saisie, propositions);
+        return (choisi != null) ? choisi : saisie;
     }
 
     /**
-     * Lit sur l'entrée standard un nom existant dans l'application.
-     * <p>
-     * Le nom saisi doit exister dans l'application.
-     *
-     * @param nomsConnus L'ensemble des noms connus dans l'application.
+     * Interprète un token comme le numéro d'une proposition.
      *
-     * @return Le nom (existant) saisi par l'utilisa·teur/trice.
+     * @return Le nom proposé, ou null si le token n'est pas le numéro d'une
+     *     proposition.
      */
-    private static String lireNomExistant(final Set<String> nomsConnus) {
-        assert !nomsConnus.isEmpty();
-        System.out.println("Choisir un nom parmi les noms suivants :");
-        System.out.println("  " + String.join(", ", nomsConnus) + ".");
-        System.out.flush();
-
-        String result = null;
-        Scanner in = new Scanner(System.in);
-        String token;
-        for (int i = 0; i < CLI.MAX_ESSAIS && result == null; ++i) {
-            token = in.next();
-            result = CLI.parseNomExistant(token, nomsConnus);
+    private static String parseProposition(final String token, final List<String> propositions) {
+        try {
+            int rang = Integer.parseUnsignedInt(token);
+            return (rang >= 1 && rang <= propositions.size()) ? propositions.get(rang - 1) : null;
         }
-        if (result == null) {
-            throw new Error("Erreur de lecture (" + CLI.MAX_ESSAIS + " essais infructueux).");
+        catch (NumberFormatException ignored) {
+            return null;
         }
-        return result;
     }
 
     /**
      * Lit sur l'entrée standard le nom d'un nouvel {@link Instrument}.
      *
-     * @param nomsConnus L'ensemble des noms d'instrument déjà connus
-     *     (indisponibles).
+     * @param existe Indique si un nom d'instrument est déjà connu
+     *     (indisponible).
+     *
+     * @param recherche La recherche des noms d'instrument proches d'une
+     *     saisie.
      *
      * @return Le nom du nouvel {@link Instrument} saisi par
      *     l'utilisa·teur/trice.
      */
-    public static String saisirNouvelInstrument(final Set<String> nomsConnus) {
+    public static String saisirNouvelInstrument(final Predicate<String> existe,
+                                                final Function<String, List<String>> recherche) {
         System.out.println("Saisir le nom d'un nouvel instrument.");
         System.out.flush();
-        return CLI.lireNouveauNom(nomsConnus);
+        return CLI.lireNouveauNom(existe, recherche);
     }
 
     /**
-     * Lit sur l'entrée standard le nom d'un {@link Instrument} existant.
+     * Lit sur l'entrée standard le nom d'un {@link Instrument} existant (voir
+     * {@link #choisirNom(String, Predicate, Function)}).
+     *
+     * @param existe Indique si une saisie désigne un instrument existant.
      *
-     * @param nomsConnus L'ensemble des noms d'instrument existants parmi
-     *     lesquels choisir.
+     * @param recherche La recherche des noms d'instrument proches d'une
+     *     saisie.
      *
-     * @return Le nom de l'{@link Instrument} saisi par l'utilisa·teur/trice.
+     * @return Le nom de l'{@link Instrument} saisi par l'utilisa·teur/trice,
+     *     à vérifier par l'appelant.
      */
-    public static String choisirInstrument(final Set<String> nomsConnus) {
-        System.out.println("Choisir un instrument.");
-        System.out.flush();
-        return CLI.lireNomExistant(nomsConnus);
+    public static String choisirInstrument(final Predicate<String> existe,
+                                           final Function<String, List<String>> recherche) {
+        return CLI.choisirNom("Saisir le nom, ou le début du nom, d'un instrument : ", existe, recherche);
     }
 
     /**
      * Lit sur l'entrée standard le nom d'un nouvel {@link Enfant}.
      *
-     * @param nomsConnus L'ensemble des noms d'enfant déjà connus
-     *     (indisponibles).
+     * @param existe Indique si un nom d'enfant est déjà connu
+     *     (indisponible).
+     *
+     * @param recherche La recherche des noms d'enfant proches d'une saisie.
      *
      * @return Le nom du nouvel {@link Enfant} saisi par l'utilisa·teur/trice.
      */
-    public static String saisirNouvelEnfant(final Set<String> nomsConnus) {
+    public static String saisirNouvelEnfant(final Predicate<String> existe,
+                                            final Function<String, List<String>> recherche) {
         System.out.println("Saisir le nom d'un nouvel enfant.");
         System.out.flush();
-        return CLI.lireNouveauNom(nomsConnus);
+        return CLI.lireNouveauNom(existe, recherche);
     }
 
     /**
-     * Lit sur l'entrée standard le nom d'un {@link Enfant} existant.
+     * Lit sur l'entrée standard le nom d'un {@link Enfant} existant (voir
+     * {@link #choisirNom(String, Predicate, Function)}).
      *
-     * @param nomsConnus L'ensemble des noms d'enfant existants parmi lesquels
-     *     choisir.
+     * @param existe Indique si une saisie désigne un enfant existant.
      *
-     * @return Le nom de l'{@link Enfant} saisi par l'utilisa·teur/trice.
+     * @param recherche La recherche des noms d'enfant proches d'une saisie.
+     *
+     * @return Le nom de l'{@link Enfant} saisi par l'utilisa·teur/trice, à
+     *     vérifier par l'appelant.
+     */
+    public static String choisirEnfant(final Predicate<String> existe,
+                                       final Function<String, List<String>> recherche) {
+        return CLI.choisirNom("Saisir le nom, ou le début du nom, d'un enfant : ", existe, recherche);
+    }
+
+    /**
+     * Lit sur l'entrée standard le chemin d'un fichier à importer.
+     *
+     * @return Le chemin saisi par l'utilisa·teur/trice.
      */
-    public static String choisirEnfant(final Set<String> nomsConnus) {
-        System.out.println("Choisir un enfant.");
+    public static String saisirFichierImport() {
+        System.out.println("Saisir le chemin du fichier CSV/TSV à importer.");
         System.out.flush();
-        return CLI.lireNomExistant(nomsConnus);
+        Scanner in = CLI.ENTREE;
+        return in.next();
     }
 
     /**
-     * Interprète un token comme un {@link Jour}.
+     * Lit sur l'entrée standard la prochaine ligne non vide, par exemple
+     * après la fin de la ligne d'une saisie précédente.
      *
-     * @param token La chaîne de caractère à interpréter.
+     * @return La ligne, sans les blancs qui l'entourent.
+     */
+    private static String lireLigne() {
+        String ligne;
+        do {
+            ligne = CLI.ENTREE.nextLine().strip();
+        } while (ligne.isEmpty());
+        return ligne;
+    }
+
+    /**
+     * Propose des noms, un par ligne, puis lit sur l'entrée standard un nom,
+     * qui peut contenir des espaces.
+     * <p>
+     * Le nom saisi n'est pas vérifié : c'est à l'appelant de le faire.
+     *
+     * @param invite Le message invitant à la saisie.
+     *
+     * @param propositions Les noms proposés, parcourus une seule fois.
+     *
+     * @return Le nom saisi par l'utilisa·teur/trice, sans les blancs qui
+     *     l'entourent.
+     */
+    public static String saisirNom(final String invite, final Iterable<String> propositions) {
+        for (String nom : propositions) {
+            System.out.println(nom);
+        }
+        System.out.print(invite);
+        System.out.flush();
+        return CLI.lireLigne();
+    }
+
+    /**
+     * Propose des jours puis lit sur l'entrée standard un {@link Jour}, en
+     * un seul essai.
+     *
+     * @param joursLibres Les jours proposés.
+     *
+     * @return Le {@link Jour} saisi par l'utilisa·teur/trice, qui n'est pas
+     *     forcément parmi ceux proposés, ou null si la saisie ne désigne
+     *     aucun jour.
+     */
+    public static Jour saisirJour(final Set<Jour> joursLibres) {
+        return CLI.saisirJour("Jours d'inscription encore possibles :", joursLibres);
+    }
+
+    /**
+     * Propose des jours sous un titre puis lit sur l'entrée standard un
+     * {@link Jour}, en un seul essai.
      *
-     * @param joursOccupes L'ensemble des jours déjà occupés (indisponibles).
+     * @param titre Le titre de la liste des jours proposés.
      *
-     * @return Le {@link Jour} en cas de succès, null en cas d'erreur,
+     * @param jours Les jours proposés.
+     *
+     * @return Le {@link Jour} saisi par l'utilisa·teur/trice, qui n'est pas
+     *     forcément parmi ceux proposés, ou null si la saisie ne désigne
+     *     aucun jour.
      */
-    private static Jour parseJour(final String token, final Set<Jour> joursOccupes) {
+    public static Jour saisirJour(final String titre, final Set<Jour> jours) {
+        System.out.println(titre);
+        for (Jour jour : jours) {
+            System.out.println("  - " + jour);
+        }
+        System.out.print("Choisissez un jour : ");
+        System.out.flush();
         try {
-            Jour jour = Jour.valueOfString(token);
-            if (joursOccupes.contains(jour)) {
-                System.out.println("Le jour " + jour + " n'est plus disponible.");
-                System.out.flush();
-                return null;
-            } else {
-                return jour;
-            }
+            return Jour.valueOfString(CLI.lireLigne().toLowerCase(Locale.ROOT));
         }
         catch (IllegalArgumentException iae) {
-            System.out.println("Choix non valide.");
-            System.out.flush();
             return null;
         }
     }
 
     /**
-     * Lit sur l'entrée standard un {@link Jour}.
+     * Lit sur l'entrée standard une capacité, en un seul essai.
      *
-     * @param joursOccupes L'ensemble des jours déjà occupés (indisponibles).
+     * @param occupees Le nombre de places déjà occupées, rappelé à
+     *     l'utilisa·teur/trice.
      *
-     * @return Le {@link Jour} saisi par l'utilisa·teur/trice.
+     * @return Le nombre de places saisi, {@link PlacesInstrument#ILLIMITEE}
+     *     pour « illimitée », ou null si la saisie n'est pas une capacité.
      */
-    public static Jour lireJour(final Set<Jour> joursOccupes) {
-        Set<Jour> joursDisponibles = EnumSet.allOf(Jour.class);
-        joursDisponibles.removeAll(joursOccupes);
-
-        Set<String> nomsJoursDisponibles = new HashSet<>();
-        for (Jour jour : joursDisponibles) {
-            nomsJoursDisponibles.add(jour.toString());
-        }
-
-        System.out.println("Choisir un jour parmi les jours suivants :");
-        System.out.println(
-                "  "
-                + String.join(", ", nomsJoursDisponibles)
-                + "."
-        );
+    public static Integer saisirCapacite(final int occupees) {
+        System.out.println(occupees + " place(s) déjà occupée(s).");
+        System.out.print("Saisir le nombre de places (ou « illimitée ») : ");
         System.out.flush();
-
-        Jour result = null;
-        Scanner in = new Scanner(System.in);
-        String token;
-        for (int i = 0; i < CLI.MAX_ESSAIS && result == null; ++i) {
-            token = in.next();
-            result = CLI.parseJour(token, joursOccupes);
+        try {
+            return PlacesInstrument.analyserCapacite(CLI.lireLigne());
         }
-        if (result == null) {
-            throw new Error("Erreur de lecture (" + CLI.MAX_ESSAIS + " essais infructueux).");
+        catch (IllegalArgumentException iae) {
+            return null;
         }
-        return result;
     }
 
     /**
      * Affiche sur la sortie standard le récapitulatif des inscriptions par
-     * {@link Instrument}.
+     * {@link Instrument} d'un instantané de l'application.
      *
-     * @param instruments L'ensemble des {@link Instrument}s à afficher.
+     * @param instantane L'{@link Instantane} à afficher.
      */
-    public static void afficherInscriptionsInstruments(final Collection<Instrument> instruments) {
-        System.out.println("===== Liste des inscriptions par instrument =====");
-        for (Instrument ins : instruments) {
-            System.out.println("· " + ins);
-            //parcourir les séance de l'instrument
-            for (Seance seance : ins.getSeances()) {
-                // afficher les séances de l'instrument en détail avec le jour et l'enfant
-                System.out.println("   - [" + seance.getJour() + "] " + seance.getEnfant());
-            }
-
-            System.out.println();
+    public static void afficherInscriptionsInstruments(final Instantane instantane) {
+        try {
+            CLI.rapportSortieStandard().ecrireInstruments(instantane);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
         }
-        System.out.flush();
     }
 
     /**
      * Affiche sur la sortie standard le récapitulatif des inscriptions par
-     *     {@link Enfant}.
+     * {@link Enfant} d'un instantané de l'application.
      *
-     * @param enfants L'ensemble des {@link Enfant}s à afficher.
+     * @param instantane L'{@link Instantane} à afficher.
      */
-    public static void afficherInscriptionsEnfants(final Collection<Enfant> enfants) {
-        System.out.println("===== Liste des inscriptions par enfant =====");
-        for (Enfant enf : enfants) {
-            System.out.println("· " + enf);
-            //parcourir les séance de l'enfant
-            for (Seance seance : enf.getSeances()) {
-                // afficher les séances de l'enfant en détail avec le jour et l'instrument
-                System.out.println("   - [" + seance.getJour() + "] " + seance.getInstrument());
-            }
+    public static void afficherInscriptionsEnfants(final Instantane instantane) {
+        try {
+            CLI.rapportSortieStandard().ecrireEnfants(instantane);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
 
-            System.out.println();
+    /**
+     * Affiche sur la sortie standard l'occupation des séances de chaque
+     * {@link Instrument} et la répartition des enfants selon leur nombre de
+     * séances (voir {@link RapportOccupation}).
+     *
+     * @param instruments L'ensemble des {@link Instrument}s à afficher.
+     *
+     * @param jauges Les effectifs du modèle.
+     */
+    public static void afficherOccupation(final Collection<Instrument> instruments, final Metriques.Jauges jauges) {
+        try {
+            RapportOccupation.ecrire(
+                    CLI.sortieStandard(),
+                    instruments,
+                    jauges
+            );
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
         }
+    }
+
+    /**
+     * Lit sur l'entrée standard le texte d'une {@link Requete}.
+     *
+     * @return Le texte saisi par l'utilisa·teur/trice, vide pour toutes les
+     *     séances.
+     */
+    public static String saisirRequete() {
+        System.out.println("Saisir la requête, par exemple « instrument=violon jour=samedi afficher=enfant »,");
+        System.out.println("« jours=mercredi,samedi afficher=enfant » ou « par=paire max=10 » (vide : tout) :");
         System.out.flush();
+        // la requête peut suivre le numéro de la commande, sur la même ligne
+        String suite = CLI.ENTREE.nextLine().strip();
+        return suite.isEmpty() ? CLI.ENTREE.nextLine().strip() : suite;
+    }
+
+    /**
+     * Affiche sur la sortie standard le résultat d'une {@link Requete}.
+     *
+     * @param requete La requête exécutée.
+     *
+     * @param lignes Son résultat.
+     */
+    public static void afficherResultat(final Requete requete, final List<Requete.Ligne> lignes) {
+        try {
+            requete.ecrire(CLI.sortieStandard(), lignes);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Tamponne la sortie standard, encodée en UTF-8 comme les fichiers de
+     * l'application ; elle n'est pas fermée à la fin de l'affichage.
+     */
+    private static BufferedWriter sortieStandard() {
+        return new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8),
+                CLI.TAILLE_TAMPON_SORTIE
+        );
+    }
+
+    /**
+     * Prépare un rapport textuel tamponné sur la sortie standard, qui n'est
+     * pas fermée à la fin du rapport.
+     */
+    private static RapportInscriptions rapportSortieStandard() {
+        return new RapportInscriptions(
+                CLI.sortieStandard(),
+                RapportInscriptions.Format.TEXTE
+        );
     }
 
     /**
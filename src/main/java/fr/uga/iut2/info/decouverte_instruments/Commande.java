@@ -11,5 +11,10 @@ public enum Commande {
     AJOUTER_INSTRUMENT_ENFANT,          // 3
     AFFICHER_INSCRIPTIONS_ENFANTS,      // 4
     AFFICHER_INSCRIPTIONS_INSTRUMENTS,  // 5
+    IMPORTER,                           // 6
+    FIXER_CAPACITE,                     // 7
+    DESINSCRIRE_ENFANT,                 // 8
+    AFFICHER_OCCUPATION,                // 9
+    INTERROGER,                         // 10
     ;
 }
@@ -0,0 +1,127 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * La classe Eligibilite range les enfants selon leur nombre de séances, afin
+ * de connaître sans parcours ceux qui peuvent encore s'inscrire à un
+ * instrument.
+ * <p>
+ * Chaque enfant appartient à exactement un compartiment (0 à
+ * {@value Enfant#MAX_SEANCES} séances). L'ajout d'un enfant, l'ajout ou le
+ * retrait d'une séance ne déplacent qu'un seul enfant : la mise à jour est en
+ * temps constant.
+ * <p>
+ * Les compartiments sont des ensembles concurrents. Le déplacement d'un
+ * enfant est fait sous son moniteur (voir {@link Application#inscrire}) ;
+ * un parcours concurrent peut manquer un enfant en cours de déplacement.
+ */
+final class Eligibilite {
+
+    private final List<Set<Enfant>> enfantsParNbSeances;
+
+    Eligibilite() {
+        this.enfantsParNbSeances = new ArrayList<>(Enfant.MAX_SEANCES + 1);
+        for (int nb = 0; nb <= Enfant.MAX_SEANCES; ++nb) {
+            this.enfantsParNbSeances.add(ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    /**
+     * Range un enfant dans le compartiment correspondant à son nombre de
+     * séances.
+     *
+     * @param enfant L'enfant ajouté à l'application.
+     */
+    void enfantAjoute(final Enfant enfant) {
+        this.enfantsParNbSeances.get(enfant.getNbSeances()).add(enfant);
+    }
+
+    /**
+     * Déplace un enfant vers le compartiment suivant, après l'ajout d'une
+     * séance.
+     *
+     * @param enfant L'enfant, dont la nouvelle séance est déjà comptée.
+     */
+    void seanceAjoutee(final Enfant enfant) {
+        int nb = enfant.getNbSeances();
+        this.enfantsParNbSeances.get(nb - 1).remove(enfant);
+        this.enfantsParNbSeances.get(nb).add(enfant);
+    }
+
+    /**
+     * Déplace un enfant vers le compartiment précédent, après le retrait
+     * d'une séance.
+     *
+     * @param enfant L'enfant, dont la séance retirée n'est plus comptée.
+     */
+    void seanceRetiree(final Enfant enfant) {
+        int nb = enfant.getNbSeances();
+        this.enfantsParNbSeances.get(nb + 1).remove(enfant);
+        this.enfantsParNbSeances.get(nb).add(enfant);
+    }
+
+    /**
+     * Donne une vue en direct des enfants qui peuvent encore s'inscrire : il
+     * leur reste une séance libre et ils ne sont pas inscrits à tous les
+     * instruments.
+     *
+     * @param nbInstruments Le nombre d'instruments connus.
+     *
+     * @return Une vue non modifiable, dont la taille est calculée en temps
+     *     constant.
+     */
+    Collection<Enfant> enfantsEligibles(final int nbInstruments) {
+        final int limite = Math.min(Enfant.MAX_SEANCES, nbInstruments);
+        return new AbstractCollection<Enfant>() {
+
+            @Override
+            public Iterator<Enfant> iterator() {
+                return new Iterator<Enfant>() {
+                    private int compartiment = 0;
+                    private Iterator<Enfant> courant = Eligibilite.this.enfantsParNbSeances.get(0).iterator();
+
+                    @Override
+                    public boolean hasNext() {
+                        while (!this.courant.hasNext() && this.compartiment + 1 < limite) {
+                            ++this.compartiment;
+                            this.courant = Eligibilite.this.enfantsParNbSeances.get(this.compartiment).iterator();
+                        }
+                        return this.compartiment < limite && this.courant.hasNext();
+                    }
+
+                    @Override
+                    public Enfant next() {
+                        if (!this.hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return this.courant.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                int taille = 0;
+                for (int nb = 0; nb < limite; ++nb) {
+                    taille += Eligibilite.this.enfantsParNbSeances.get(nb).size();
+                }
+                return taille;
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof Enfant
+                        && ((Enfant) o).getNbSeances() < limite
+                        && Eligibilite.this.enfantsParNbSeances.get(((Enfant) o).getNbSeances()).contains(o);
+            }
+        };
+    }
+}
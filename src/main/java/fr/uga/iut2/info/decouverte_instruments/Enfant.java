@@ -1,8 +1,14 @@
 package fr.uga.iut2.info.decouverte_instruments;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 /**
  *
@@ -10,27 +16,145 @@ import java.util.Collection;
  */
 public class Enfant implements Serializable {
 
+    /**
+     * Nombre maximum de séances de découverte par enfant.
+     */
+    public static final int MAX_SEANCES = 3;
+
     private static final long serialVersionUID = 1L;  // nécessaire pour la sérialisation
     private final String nom;
 
-    ArrayList<Seance> seances = new ArrayList<>();
+    // Les séances sont rangées dans le StockSeances de l'application. Ce
+    // champ ne sert qu'à la forme sérialisée (anciens fichiers de
+    // persistance) : il n'est renseigné que le temps d'une (dé)sérialisation.
+    private ArrayList<Seance> seances;
 
-    private int nbSeances = 0;
+    private transient StockSeances stock;
+    private transient int id;
+    private transient long version;
+    // version de la dernière désinscription, 0 si aucune
+    private transient volatile long versionRetrait;
 
     public Enfant(String nom) {
         this.nom = nom;
     }
 
+    /**
+     * Rattache l'enfant au stock de séances de l'application.
+     *
+     * @param stock Le stock de séances.
+     *
+     * @param id L'identifiant de l'enfant dans le stock.
+     *
+     * @param version La version de la mutation qui a créé l'enfant (voir
+     *     {@link HorlogeVersions}).
+     */
+    void attacher(StockSeances stock, int id, long version) {
+        this.stock = stock;
+        this.id = id;
+        this.version = version;
+    }
+
+    int getId() {
+        return this.id;
+    }
+
+    long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Donne la version de la dernière désinscription de l'enfant : une séance
+     * retirée ne laisse pas d'autre trace.
+     *
+     * @return La version de la mutation, ou 0 si l'enfant n'a jamais été
+     *     désinscrit.
+     */
+    long getVersionRetrait() {
+        return this.versionRetrait;
+    }
+
+    void setVersionRetrait(long versionRetrait) {
+        this.versionRetrait = versionRetrait;
+    }
+
+    /**
+     * Récupère les séances lues dans un ancien fichier de persistance, qui
+     * restent à ranger dans le stock de l'application.
+     *
+     * @return Les séances désérialisées, ou une liste vide.
+     */
+    List<Seance> extraireSeancesHeritees() {
+        List<Seance> heritees = (this.seances == null) ? Collections.emptyList() : this.seances;
+        this.seances = null;
+        return heritees;
+    }
+
+    private void writeObject(ObjectOutputStream oos) throws IOException {
+        this.seances = new ArrayList<>(this.getSeances());
+        oos.defaultWriteObject();
+        this.seances = null;
+    }
+
     public String getNom() {
         return this.nom;
     }
 
-    public ArrayList<Seance> getSeances() {
-        return seances;
+    /**
+     * Accède aux séances de l'enfant.
+     *
+     * @return Une vue non modifiable des séances, dans l'ordre d'inscription.
+     */
+    public List<Seance> getSeances() {
+        if (this.stock == null) {
+            return Collections.emptyList();
+        }
+        return this.stock.seancesEnfant(this.id);
     }
 
     public int getNbSeances() {
-        return nbSeances;
+        return (this.stock == null) ? 0 : this.stock.nbSeancesEnfant(this.id);
+    }
+
+    /**
+     * Donne le nombre de cases occupées par les séances de l'enfant, y
+     * compris par des séances retirées que gardent encore les
+     * {@link Instantane} ouverts.
+     */
+    int getNbCases() {
+        return (this.stock == null) ? 0 : this.stock.nbCasesEnfant(this.id);
+    }
+
+    /**
+     * Donne l'instrument de la séance de la case indiquée, sans construire
+     * de {@link Seance}.
+     */
+    Instrument instrumentSeance(int c) {
+        return this.stock.instrument(this.id, c);
+    }
+
+    /**
+     * Donne le jour de la séance de la case indiquée, sans construire de
+     * {@link Seance}.
+     */
+    Jour jourSeance(int c) {
+        return this.stock.jour(this.id, c);
+    }
+
+    /**
+     * Donne la version de la séance de la case indiquée ; 0 si elle est en
+     * cours d'écriture.
+     */
+    long versionSeance(int c) {
+        return this.stock.version(this.id, c);
+    }
+
+    /**
+     * Donne la version du retrait de la séance de la case indiquée ; 0 si
+     * elle est en cours.
+     */
+    long retraitSeance(int c) {
+        return this.stock.retrait(this.id, c);
     }
 
     @Override
@@ -40,15 +164,55 @@ public class Enfant implements Serializable {
 
     public Collection<String> getInstruments() {
         // retourne le nom des instruments de l'enfant
-        ArrayList<String> instruments = new ArrayList<>();
-        for (Seance seance : seances) {
-            instruments.add(seance.getInstrument());
+        return new AbstractList<String>() {
+
+            @Override
+            public String get(int rang) {
+                if (rang < 0 || rang >= this.size()) {
+                    throw new IndexOutOfBoundsException("Rang : " + rang);
+                }
+                return Enfant.this.stock.instrumentEnCours(Enfant.this.id, rang).getNom();
+            }
+
+            @Override
+            public int size() {
+                return Enfant.this.getNbSeances();
+            }
+        };
+    }
+
+    /**
+     * Accède aux jours pour lesquels l'enfant a déjà une séance.
+     *
+     * @return L'ensemble des jours occupés.
+     */
+    public Set<Jour> getJoursOccupes() {
+        if (this.stock == null) {
+            return Collections.emptySet();
         }
-        return instruments;
+        return this.stock.joursOccupes(this.id);
+    }
+
+    /**
+     * Indique si l'enfant a déjà une séance de cet instrument.
+     *
+     * @param nomInstrument Le nom de l'instrument.
+     *
+     * @return true si l'enfant est déjà inscrit à cet instrument.
+     */
+    public boolean estInscritA(String nomInstrument) {
+        // au plus MAX_SEANCES comparaisons
+        return this.getInstruments().contains(nomInstrument);
     }
 
-    public void addSeance(Seance seance) {
-        this.seances.add(seance);
-        this.nbSeances++;
+    /**
+     * Indique si l'enfant a déjà une séance ce jour-là.
+     *
+     * @param jour Le jour considéré.
+     *
+     * @return true si l'enfant a déjà une séance ce jour-là.
+     */
+    public boolean estOccupe(Jour jour) {
+        return this.stock != null && this.stock.estOccupe(this.id, jour);
     }
 }
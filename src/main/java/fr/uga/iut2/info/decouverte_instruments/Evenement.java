@@ -0,0 +1,77 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+/**
+ * Un changement du modèle, diffusé par le {@link FluxEvenements} de
+ * l'{@link Application}.
+ * <p>
+ * Les événements sont numérotés par ordre de publication, à partir de 0 à
+ * chaque démarrage : ils décrivent les mutations, pas l'état persisté.
+ */
+public final class Evenement {
+
+    /**
+     * La nature d'un changement.
+     */
+    public enum Type {
+        INSTRUMENT_CREE,
+        ENFANT_CREE,
+        SEANCE_AJOUTEE,
+        SEANCE_RETIREE
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final String enfant;
+    private final String instrument;
+    private final Jour jour;
+
+    Evenement(final long sequence, final Type type, final String enfant, final String instrument, final Jour jour) {
+        this.sequence = sequence;
+        this.type = type;
+        this.enfant = enfant;
+        this.instrument = instrument;
+        this.jour = jour;
+    }
+
+    /**
+     * @return Le numéro de l'événement dans le flux.
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * @return Le nom de l'enfant concerné, ou null pour
+     *     {@link Type#INSTRUMENT_CREE}.
+     */
+    public String getEnfant() {
+        return this.enfant;
+    }
+
+    /**
+     * @return Le nom de l'instrument concerné, ou null pour
+     *     {@link Type#ENFANT_CREE}.
+     */
+    public String getInstrument() {
+        return this.instrument;
+    }
+
+    /**
+     * @return Le jour de la séance, ou null pour une création.
+     */
+    public Jour getJour() {
+        return this.jour;
+    }
+
+    @Override
+    public String toString() {
+        return this.sequence + " " + this.type
+                + ((this.enfant != null) ? " " + this.enfant : "")
+                + ((this.instrument != null) ? " " + this.instrument : "")
+                + ((this.jour != null) ? " " + this.jour : "");
+    }
+}
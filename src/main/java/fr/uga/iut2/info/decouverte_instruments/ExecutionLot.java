@@ -0,0 +1,392 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * La classe ExecutionLot exécute sans interaction un script de
+ * {@link Commande}s.
+ * <p>
+ * Chaque ligne non vide du script contient une commande, désignée par son
+ * identifiant (celui du menu) ou par son nom, suivie de ses arguments séparés
+ * par des blancs :
+ * <pre>
+ * 1 violon
+ * CREER_ENFANT Léa
+ * 3 Léa violon samedi
+ * 4
+ * 5 csv inscriptions.csv
+ * 6 import.csv
+ * 7 violon samedi 12
+ * 8 Léa violon
+ * 9 occupation.txt
+ * 10 jours=mercredi,samedi afficher=enfant
+ * 10 par=paire max=10
+ * 4 csv enfants-2024.csv saison=2024-2025
+ * </pre>
+ * Les commandes d'affichage acceptent un format ({@code texte}, {@code csv}
+ * ou {@code jsonl}, voir {@link RapportInscriptions.Format}) et un fichier de
+ * destination facultatifs ; l'affichage de l'occupation (voir
+ * {@link RapportOccupation}) accepte seulement un fichier, et une
+ * interrogation le texte d'une {@link Requete}, dont le résultat est écrit
+ * sur la sortie standard. Ces commandes portent sur la saison courante, ou
+ * sur une saison archivée désignée par un argument {@code saison=...} (voir
+ * {@link Application#instantane(String)}). Une inscription à une séance complète place
+ * l'enfant en liste d'attente, ce qui n'est pas une erreur.
+ * Les lignes commençant par {@code #} sont des commentaires. La commande
+ * {@link Commande#QUITTER}, facultative, arrête l'exécution.
+ * <p>
+ * Contrairement au menu, rien n'est affiché pour une commande réussie : la
+ * sortie ne contient que les listes demandées, et chaque erreur est signalée
+ * sur la sortie d'erreur avec son numéro de ligne, sans interrompre le
+ * script. Les mutations sont écrites dans le {@link Journal} par lots de
+ * {@value ImportMasse#TAILLE_LOT} commandes et le journal n'est jamais
+ * compacté en cours de route : l'état est persisté une seule fois, par
+ * l'appelant, à la fin du script.
+ */
+public final class ExecutionLot {
+
+    private static final int TAILLE_TAMPON = 1 << 16;
+    private static final String PREFIXE_SAISON = "saison=";
+
+    private final Application app;
+    private final ServiceInscription service;
+    private final PrintStream err;
+    private int nbExecutees = 0;
+    private int nbErreurs = 0;
+
+    /**
+     * Prépare l'exécution de scripts sur une application.
+     *
+     * @param app L'application sur laquelle exécuter les commandes.
+     *
+     * @param err Le flux sur lequel signaler les erreurs.
+     */
+    public ExecutionLot(final Application app, final PrintStream err) {
+        this.app = app;
+        this.service = new ServiceInscription(app);
+        this.err = err;
+    }
+
+    /**
+     * Exécute un script jusqu'à sa fin ou jusqu'à la commande
+     * {@link Commande#QUITTER}.
+     *
+     * @param in Le script à exécuter.
+     *
+     * @throws IOException si une erreur de lecture du script survient.
+     */
+    public void executer(final BufferedReader in) throws IOException {
+        Journal journal = this.app.getJournal();
+        int numero = 0;
+        boolean fin = false;
+        while (!fin) {
+            if (journal != null) {
+                journal.debuterLot();
+            }
+            try {
+                for (int n = 0; n < ImportMasse.TAILLE_LOT && !fin; ++n) {
+                    String ligne = in.readLine();
+                    ++numero;
+                    if (ligne == null) {
+                        fin = true;
+                        break;
+                    }
+                    ligne = ligne.strip();
+                    if (ligne.isEmpty() || ligne.startsWith("#")) {
+                        continue;
+                    }
+                    String[] mots = ligne.split("\\s+");
+                    Commande cmd = ExecutionLot.lireCommande(mots[0]);
+                    String motif;
+                    if (cmd == null) {
+                        motif = "commande inconnue « " + mots[0] + " »";
+                    } else if (cmd == Commande.QUITTER) {
+                        fin = true;
+                        motif = null;
+                    } else {
+                        long debut = System.nanoTime();
+                        motif = this.appliquer(cmd, mots);
+                        this.app.getMetriques().commandeExecutee(cmd, debut, motif == null);
+                    }
+                    if (motif == null) {
+                        ++this.nbExecutees;
+                    } else {
+                        ++this.nbErreurs;
+                        this.err.println("Ligne " + numero + " : " + motif + ".");
+                    }
+                }
+            }
+            finally {
+                if (journal != null) {
+                    journal.terminerLot();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Le nombre de commandes exécutées avec succès.
+     */
+    public int getNbExecutees() {
+        return this.nbExecutees;
+    }
+
+    /**
+     * @return Le nombre de commandes en erreur.
+     */
+    public int getNbErreurs() {
+        return this.nbErreurs;
+    }
+
+    private static Commande lireCommande(final String mot) {
+        try {
+            int cmdId = Integer.parseUnsignedInt(mot);
+            return (cmdId < Commande.values().length) ? Commande.values()[cmdId] : null;
+        }
+        catch (NumberFormatException ignored) {
+            try {
+                return Commande.valueOf(mot.toUpperCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException iae) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Valide puis applique une commande.
+     *
+     * @return null si la commande a été appliquée, le motif de l'erreur sinon.
+     */
+    private String appliquer(final Commande cmd, final String[] mots) {
+        switch (cmd) {
+            case CREER_INSTRUMENT:
+                if (mots.length != 2) {
+                    return "nombre d'arguments incorrect";
+                }
+                if (!this.app.nouvelInstrument(mots[1])) {
+                    return "instrument déjà existant";
+                }
+                return null;
+            case CREER_ENFANT:
+                if (mots.length != 2) {
+                    return "nombre d'arguments incorrect";
+                }
+                if (!this.app.nouvelEnfant(mots[1])) {
+                    return "enfant déjà existant";
+                }
+                return null;
+            case AJOUTER_INSTRUMENT_ENFANT:
+                return this.inscrire(mots);
+            case AFFICHER_INSCRIPTIONS_ENFANTS:
+            case AFFICHER_INSCRIPTIONS_INSTRUMENTS:
+            case INTERROGER:
+                return this.consulter(cmd, mots);
+            case IMPORTER:
+                return this.importer(mots);
+            case FIXER_CAPACITE:
+                return this.fixerCapacite(mots);
+            case DESINSCRIRE_ENFANT:
+                if (mots.length != 3) {
+                    return "nombre d'arguments incorrect";
+                }
+                return this.service.desinscrire(mots[1], mots[2]).getMotif();
+            case AFFICHER_OCCUPATION:
+                return this.afficherOccupation(mots);
+            default:
+                throw new IllegalStateException("Commande non gérée : " + cmd);
+        }
+    }
+
+    /**
+     * Exécute une commande d'affichage ou une interrogation sur un instantané
+     * de la saison courante, ou de la saison archivée désignée par un
+     * argument {@code saison=...}.
+     */
+    private String consulter(final Commande cmd, final String[] mots) {
+        String saison = null;
+        List<String> autres = new ArrayList<>(mots.length);
+        for (String mot : mots) {
+            if (mot.startsWith(ExecutionLot.PREFIXE_SAISON) && !autres.isEmpty()) {
+                saison = mot.substring(ExecutionLot.PREFIXE_SAISON.length());
+            } else {
+                autres.add(mot);
+            }
+        }
+        Instantane instantane;
+        try {
+            instantane = this.app.instantane(saison);
+        }
+        catch (IllegalArgumentException iae) {
+            return "saison inconnue « " + saison + " »";
+        }
+        catch (UncheckedIOException uioe) {
+            return "archive illisible : " + uioe.getCause().getMessage();
+        }
+        try (instantane) {
+            String[] arguments = autres.toArray(new String[0]);
+            return (cmd == Commande.INTERROGER)
+                    ? this.interroger(arguments, instantane)
+                    : this.afficher(cmd, arguments, instantane);
+        }
+    }
+
+    /**
+     * Affiche une liste d'inscriptions, au format texte sur la sortie
+     * standard par défaut, ou au format et dans le fichier indiqués.
+     */
+    private String afficher(final Commande cmd, final String[] mots, final Instantane instantane) {
+        if (mots.length > 3) {
+            return "nombre d'arguments incorrect";
+        }
+        RapportInscriptions.Format format;
+        try {
+            format = (mots.length > 1) ? RapportInscriptions.Format.depuisNom(mots[1]) : RapportInscriptions.Format.TEXTE;
+        }
+        catch (IllegalArgumentException iae) {
+            return "format inconnu « " + mots[1] + " »";
+        }
+        try (Writer out = ExecutionLot.ouvrirSortie((mots.length > 2) ? mots[2] : null)) {
+            RapportInscriptions rapport = new RapportInscriptions(out, format);
+            if (cmd == Commande.AFFICHER_INSCRIPTIONS_ENFANTS) {
+                rapport.ecrireEnfants(instantane);
+            } else {
+                rapport.ecrireInstruments(instantane);
+            }
+        }
+        catch (IOException ioe) {
+            return "écriture impossible : " + ioe.getMessage();
+        }
+        return null;
+    }
+
+    /**
+     * Affiche l'occupation des séances sur la sortie standard, ou dans le
+     * fichier indiqué.
+     */
+    private String afficherOccupation(final String[] mots) {
+        if (mots.length > 2) {
+            return "nombre d'arguments incorrect";
+        }
+        try (Writer out = ExecutionLot.ouvrirSortie((mots.length > 1) ? mots[1] : null)) {
+            RapportOccupation.ecrire(out, this.app.getInstruments().values(), this.app.jauges());
+        }
+        catch (IOException ioe) {
+            return "écriture impossible : " + ioe.getMessage();
+        }
+        return null;
+    }
+
+    /**
+     * Ouvre la destination d'un affichage, encodée en UTF-8 comme les
+     * scripts : le fichier indiqué, ou la sortie standard, qui reste ouverte
+     * à la fermeture du {@link Writer}.
+     */
+    private static Writer ouvrirSortie(final String fichier) throws IOException {
+        if (fichier != null) {
+            return Files.newBufferedWriter(Paths.get(fichier), StandardCharsets.UTF_8);
+        }
+        return new FilterWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), ExecutionLot.TAILLE_TAMPON)) {
+            @Override
+            public void close() throws IOException {
+                // la sortie standard reste ouverte
+                this.flush();
+            }
+        };
+    }
+
+    private String interroger(final String[] mots, final Instantane instantane) {
+        Requete requete;
+        try {
+            requete = Requete.analyser(String.join(" ", Arrays.asList(mots).subList(1, mots.length)));
+        }
+        catch (IllegalArgumentException iae) {
+            return "requête invalide : " + iae.getMessage();
+        }
+        try (Writer out = ExecutionLot.ouvrirSortie(null)) {
+            requete.ecrire(out, requete.executer(instantane));
+        }
+        catch (IOException ioe) {
+            return "écriture impossible : " + ioe.getMessage();
+        }
+        return null;
+    }
+
+    private String inscrire(final String[] mots) {
+        if (mots.length != 4) {
+            return "nombre d'arguments incorrect";
+        }
+        Jour jour;
+        try {
+            jour = Jour.valueOfString(mots[3].toLowerCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException iae) {
+            return "jour inconnu";
+        }
+        ResultatInscription resultat = this.service.inscrire(mots[1], mots[2], jour);
+        return resultat.estEnAttente() ? null : resultat.getMotif();
+    }
+
+    private String fixerCapacite(final String[] mots) {
+        if (mots.length != 4) {
+            return "nombre d'arguments incorrect";
+        }
+        Instrument instrument = this.app.trouverInstrument(mots[1]);
+        if (instrument == null) {
+            return "instrument inconnu";
+        }
+        Jour jour;
+        try {
+            jour = Jour.valueOfString(mots[2].toLowerCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException iae) {
+            return "jour inconnu";
+        }
+        int capacite;
+        try {
+            capacite = PlacesInstrument.analyserCapacite(mots[3]);
+        }
+        catch (IllegalArgumentException iae) {
+            return "capacité invalide";
+        }
+        this.service.fixerCapacite(instrument, jour, capacite);
+        return null;
+    }
+
+    private String importer(final String[] mots) {
+        if (mots.length != 2) {
+            return "nombre d'arguments incorrect";
+        }
+        Path source = Paths.get(mots[1]);
+        Path rejets = Paths.get(source + ".rejets");
+        ImportMasse importMasse = new ImportMasse(this.app);
+        try {
+            // chaque lot de l'import, imbriqué dans celui du script, est
+            // écrit dès qu'il se termine
+            importMasse.importer(source, rejets);
+        }
+        catch (IOException ioe) {
+            return "import interrompu : " + ioe.getMessage();
+        }
+        if (importMasse.getNbRejetees() > 0) {
+            return importMasse.getNbRejetees() + " ligne(s) rejetée(s) à l'import (voir " + rejets + ")";
+        }
+        return null;
+    }
+}
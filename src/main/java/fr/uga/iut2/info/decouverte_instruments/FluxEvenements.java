@@ -0,0 +1,281 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * La classe FluxEvenements diffuse les changements du modèle (voir
+ * {@link Evenement}) aux outils qui veulent les suivre au fil de l'eau,
+ * sans relire l'état persisté.
+ * <p>
+ * Les événements sont rangés dans un tampon circulaire borné, sans verrou :
+ * chaque publication réserve son numéro par un incrément atomique, puis
+ * dépose l'événement dans la case correspondante. Chaque {@link Abonnement}
+ * lit le tampon avec son propre curseur, par lots, et peut attendre les
+ * événements suivants sans sonder le flux.
+ * <p>
+ * Une publication n'attend jamais un abonné : elle a lieu pendant les
+ * mutations, sous leurs verrous. Le tampon garde les
+ * {@link #getCapacite() derniers} événements ; un abonné qui prend plus de
+ * retard perd les plus anciens, et sa lecture suivante lève
+ * {@link EvenementsPerdus} pour qu'il se resynchronise (par exemple depuis
+ * un {@link Instantane}). Le retard de chaque abonné est mesurable (voir
+ * {@link Abonnement#getRetard()}) pour qu'il adapte la taille de ses lots
+ * avant d'en arriver là.
+ * <p>
+ * L'{@link Application} publie la création d'un nom avant que le nom soit
+ * visible, et une séance sous le moniteur de son enfant : la création d'un
+ * nom précède donc toute séance qui le référence, et les séances d'un même
+ * enfant se suivent dans l'ordre de leurs mutations.
+ */
+public final class FluxEvenements {
+
+    /**
+     * Nombre d'événements conservés par défaut.
+     */
+    public static final int CAPACITE_PAR_DEFAUT = 1 << 16;
+
+    private final AtomicReferenceArray<Evenement> cases;
+    private final int masque;
+    private final AtomicLong prochaine = new AtomicLong();
+    private final List<Abonnement> abonnes = new CopyOnWriteArrayList<>();
+
+    /**
+     * Prépare un flux vide.
+     *
+     * @param capacite Le nombre d'événements conservés, une puissance de
+     *     deux.
+     */
+    public FluxEvenements(final int capacite) {
+        if (capacite <= 0 || Integer.bitCount(capacite) != 1) {
+            throw new IllegalArgumentException("La capacité doit être une puissance de deux.");
+        }
+        this.cases = new AtomicReferenceArray<>(capacite);
+        this.masque = capacite - 1;
+    }
+
+    /**
+     * @return Le nombre d'événements conservés.
+     */
+    public int getCapacite() {
+        return this.cases.length();
+    }
+
+    /**
+     * @return Le numéro du prochain événement publié.
+     */
+    public long getSequence() {
+        return this.prochaine.get();
+    }
+
+    /**
+     * Publie un événement et réveille les abonnés qui l'attendent.
+     */
+    void publier(final Evenement.Type type, final String enfant, final String instrument, final Jour jour) {
+        long sequence = this.prochaine.getAndIncrement();
+        Evenement evenement = new Evenement(sequence, type, enfant, instrument, jour);
+        int indice = (int) sequence & this.masque;
+        Evenement present;
+        do {
+            present = this.cases.get(indice);
+            if (present != null && present.getSequence() > sequence) {
+                // la case a déjà été reprise par un tour suivant : l'événement
+                // est perdu pour tous, comme s'il avait été écrasé
+                break;
+            }
+        } while (!this.cases.compareAndSet(indice, present, evenement));
+        for (Abonnement abonnement : this.abonnes) {
+            Thread enAttente = abonnement.enAttente;
+            if (enAttente != null) {
+                LockSupport.unpark(enAttente);
+            }
+        }
+    }
+
+    /**
+     * Abonne un lecteur aux événements publiés à partir de maintenant.
+     *
+     * @return L'abonnement, à fermer après usage.
+     */
+    public Abonnement abonner() {
+        return this.abonner(this.prochaine.get());
+    }
+
+    /**
+     * Abonne un lecteur aux événements à partir d'un numéro donné, par
+     * exemple pour reprendre après le dernier événement traité.
+     *
+     * @param depuis Le numéro du premier événement à lire ; s'il n'est plus
+     *     dans le tampon, la première lecture lève {@link EvenementsPerdus}.
+     *
+     * @return L'abonnement, à fermer après usage.
+     */
+    public Abonnement abonner(final long depuis) {
+        if (depuis < 0 || depuis > this.prochaine.get()) {
+            throw new IllegalArgumentException("Numéro d'événement hors du flux : " + depuis);
+        }
+        Abonnement abonnement = new Abonnement(depuis);
+        this.abonnes.add(abonnement);
+        return abonnement;
+    }
+
+    /**
+     * Le curseur d'un lecteur du flux. Un abonnement n'est lu que par une
+     * tâche à la fois.
+     */
+    public final class Abonnement implements AutoCloseable {
+
+        private long curseur;
+        private volatile Thread enAttente;
+
+        private Abonnement(final long depuis) {
+            this.curseur = depuis;
+        }
+
+        /**
+         * @return Le numéro du prochain événement à lire.
+         */
+        public long getCurseur() {
+            return this.curseur;
+        }
+
+        /**
+         * @return Le nombre d'événements publiés mais pas encore lus.
+         */
+        public long getRetard() {
+            return FluxEvenements.this.prochaine.get() - this.curseur;
+        }
+
+        /**
+         * Transmet au consommateur, dans l'ordre, les événements déjà
+         * publiés, sans attendre.
+         *
+         * @param consommateur Le destinataire des événements.
+         *
+         * @param nbMax Le nombre maximum d'événements transmis.
+         *
+         * @return Le nombre d'événements transmis.
+         *
+         * @throws EvenementsPerdus si des événements ont été écrasés avant
+         *     d'être lus ; le curseur passe alors au plus ancien événement
+         *     encore conservé.
+         */
+        public int drainer(final Consumer<? super Evenement> consommateur, final int nbMax) {
+            int nbLus = 0;
+            while (nbLus < nbMax) {
+                Evenement evenement = this.lire();
+                if (evenement == null) {
+                    break;
+                }
+                ++this.curseur;
+                ++nbLus;
+                consommateur.accept(evenement);
+            }
+            return nbLus;
+        }
+
+        /**
+         * Transmet au consommateur les événements déjà publiés, ou attend le
+         * premier d'entre eux s'il n'y en a aucun.
+         *
+         * @param consommateur Le destinataire des événements.
+         *
+         * @param nbMax Le nombre maximum d'événements transmis.
+         *
+         * @param delai La durée maximale de l'attente.
+         *
+         * @param unite L'unité du délai.
+         *
+         * @return Le nombre d'événements transmis, 0 si le délai a expiré.
+         *
+         * @throws InterruptedException si la tâche est interrompue pendant
+         *     l'attente.
+         *
+         * @throws EvenementsPerdus si des événements ont été écrasés avant
+         *     d'être lus.
+         */
+        public int drainer(final Consumer<? super Evenement> consommateur, final int nbMax,
+                           final long delai, final TimeUnit unite) throws InterruptedException {
+            long echeance = System.nanoTime() + unite.toNanos(delai);
+            this.enAttente = Thread.currentThread();
+            try {
+                // le signal est levé avant de consulter le tampon : une
+                // publication qui suit le réveillera
+                while (this.lire() == null) {
+                    long restant = echeance - System.nanoTime();
+                    if (restant <= 0) {
+                        return 0;
+                    }
+                    LockSupport.parkNanos(this, restant);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            }
+            finally {
+                this.enAttente = null;
+            }
+            return this.drainer(consommateur, nbMax);
+        }
+
+        /**
+         * @return L'événement sous le curseur, ou null s'il n'est pas encore
+         *     publié.
+         */
+        private Evenement lire() {
+            FluxEvenements flux = FluxEvenements.this;
+            if (this.curseur >= flux.prochaine.get()) {
+                return null;
+            }
+            Evenement evenement = flux.cases.get((int) this.curseur & flux.masque);
+            if (evenement == null || evenement.getSequence() < this.curseur) {
+                // numéro réservé, événement pas encore déposé
+                return null;
+            }
+            if (evenement.getSequence() > this.curseur
+                    || flux.prochaine.get() - this.curseur > flux.cases.length()) {
+                long plusAncien = Math.max(this.curseur, flux.prochaine.get() - flux.cases.length());
+                long nbPerdus = plusAncien - this.curseur;
+                this.curseur = plusAncien;
+                throw new EvenementsPerdus(Math.max(nbPerdus, 1));
+            }
+            return evenement;
+        }
+
+        /**
+         * Désabonne le lecteur.
+         */
+        @Override
+        public void close() {
+            FluxEvenements.this.abonnes.remove(this);
+        }
+    }
+
+    /**
+     * Levée quand un abonné a pris plus de retard que le tampon n'en
+     * conserve.
+     */
+    public static final class EvenementsPerdus extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long nbPerdus;
+
+        EvenementsPerdus(final long nbPerdus) {
+            super(nbPerdus + " événement(s) perdu(s) : l'abonné doit se resynchroniser.");
+            this.nbPerdus = nbPerdus;
+        }
+
+        /**
+         * @return Le nombre d'événements sautés.
+         */
+        public long getNbPerdus() {
+            return this.nbPerdus;
+        }
+    }
+}
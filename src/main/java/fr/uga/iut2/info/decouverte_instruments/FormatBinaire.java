@@ -0,0 +1,399 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * La classe FormatBinaire définit le format binaire compact et versionné des
+ * instantanés de l'{@link Application}.
+ * <p>
+ * Contrairement à la sérialisation Java, le format ne dépend ni des classes
+ * ni de leur {@code serialVersionUID}. Dans sa version courante, il est
+ * constitué de :
+ * <ol>
+ *   <li>un entête de taille fixe : le nombre magique
+ *       {@value FormatBinaire#MAGIQUE}, le numéro de version, le nombre
+ *       d'instruments, d'enfants et de séances, et la capacité des deux
+ *       tables de hachage ;</li>
+ *   <li>pour les instruments puis pour les enfants : une table de hachage
+ *       (adressage ouvert, sondage linéaire, clé insensible à la casse)
+ *       associant un nom à un identifiant, puis la table des positions des
+ *       enregistrements, indicée par identifiant ;</li>
+ *   <li>les enregistrements d'instrument : le nom, puis les identifiants des
+ *       enfants inscrits ;</li>
+ *   <li>les enregistrements d'enfant : le nom, puis chaque séance sous la
+ *       forme compacte (identifiant d'instrument, ordinal du {@link Jour}).</li>
+ * </ol>
+ * Les tables permettent à {@link RegistreMappe} de ne lire un enregistrement
+ * qu'au moment où il est demandé. Au chargement, les références croisées
+ * entre {@link Seance}, {@link Enfant} et {@link Instrument} sont
+ * reconstruites par les méthodes ordinaires de l'{@link Application}, sans
+ * réflexion.
+ * <p>
+ * Les positions sont codées sur 32 bits : un instantané ne peut pas dépasser
+ * 2 Gio.
+ * <p>
+ * C'est une classe utilitaire, toutes les méthodes sont statiques.
+ * La classe n'a pas vocation à être instanciée.
+ */
+public final class FormatBinaire {
+
+    /**
+     * Nombre magique ("DINS") identifiant un instantané au format binaire.
+     */
+    public static final int MAGIQUE = 0x44494E53;
+
+    /**
+     * Version du format produite par {@link #ecrire}.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * Première version du format, sans tables d'accès direct : les
+     * instantanés dans cette version restent lisibles par {@link #lire}.
+     */
+    static final int VERSION_SEQUENTIELLE = 1;
+
+    /**
+     * Version des fichiers d'un état segmenté (voir
+     * {@link PersistanceSegmentee}).
+     */
+    static final int VERSION_SEGMENTEE = 3;
+
+    /**
+     * Version du fichier des capacités et des listes d'attente (voir
+     * {@link FormatPlaces}).
+     */
+    static final int VERSION_PLACES = 4;
+
+    /**
+     * Taille en octets de l'entête de la version courante.
+     */
+    static final int TAILLE_ENTETE = Integer.BYTES + Short.BYTES + 5 * Integer.BYTES;
+
+    /**
+     * Les deux premiers octets d'un flux de sérialisation Java : ils
+     * permettent de reconnaître les anciens fichiers de persistance.
+     */
+    static final int MAGIQUE_SERIALISATION = 0xACED;
+
+    private FormatBinaire() {
+        // interdit l'instanciation de la classe utilitaire via un constructeur privé
+        throw new IllegalStateException("Classe utilitaire.");
+    }
+
+    /**
+     * Calcule la clé de hachage d'un nom, insensible à la casse.
+     *
+     * @param nom Le nom à hacher.
+     *
+     * @return La clé de hachage du nom.
+     */
+    static int hacher(final String nom) {
+        int h = Application.cle(nom).hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Calcule la capacité d'une table de hachage : la plus petite puissance
+     * de deux au moins double du nombre d'entrées.
+     */
+    private static int capacite(final int nbEntrees) {
+        return Integer.highestOneBit(Math.max(1, nbEntrees) * 4 - 1);
+    }
+
+    /**
+     * Calcule la taille d'une chaîne écrite par
+     * {@link DataOutputStream#writeUTF(String)}.
+     */
+    private static int tailleUTF(final String str) {
+        int taille = Short.BYTES;
+        for (int i = 0; i < str.length(); ++i) {
+            char c = str.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F) {
+                taille += 1;
+            } else if (c <= 0x07FF) {
+                taille += 2;
+            } else {
+                taille += 3;
+            }
+        }
+        return taille;
+    }
+
+    private static int[] tableHachage(final List<String> noms) {
+        int[] table = new int[FormatBinaire.capacite(noms.size())];
+        int masque = table.length - 1;
+        for (int id = 0; id < noms.size(); ++id) {
+            int i = FormatBinaire.hacher(noms.get(id)) & masque;
+            while (table[i] != 0) {
+                i = (i + 1) & masque;
+            }
+            table[i] = id + 1;  // 0 désigne une case vide
+        }
+        return table;
+    }
+
+    /**
+     * Écrit un instantané de l'application au format binaire.
+     *
+     * @param app L'application à écrire.
+     *
+     * @param out Le flux de destination.
+     *
+     * @throws IOException si une erreur d'entrée/sortie survient.
+     */
+    public static void ecrire(final Application app, final DataOutputStream out) throws IOException {
+        try (Instantane instantane = app.instantane()) {
+            FormatBinaire.ecrire(instantane, out);
+        }
+    }
+
+    /**
+     * Écrit un instantané de l'application au format binaire.
+     * <p>
+     * L'écriture ne bloque pas les mutations concurrentes, qui ne sont pas
+     * visibles depuis l'instantané.
+     *
+     * @param instantane L'instantané à écrire.
+     *
+     * @param out Le flux de destination.
+     *
+     * @throws IOException si une erreur d'entrée/sortie survient.
+     */
+    static void ecrire(final Instantane instantane, final DataOutputStream out) throws IOException {
+        List<Instrument> instruments = new ArrayList<>(instantane.getInstruments());
+        List<Enfant> enfants = new ArrayList<>(instantane.getEnfants());
+        List<String> nomsInstruments = new ArrayList<>(instruments.size());
+        List<String> nomsEnfants = new ArrayList<>(enfants.size());
+        Map<String, Integer> idInstruments = new HashMap<>();
+        Map<String, Integer> idEnfants = new HashMap<>();
+        for (Instrument instrument : instruments) {
+            idInstruments.put(instrument.getNom(), nomsInstruments.size());
+            nomsInstruments.add(instrument.getNom());
+        }
+        // l'instantané est figé : les deux passages voient les mêmes séances
+        int nbSeances = 0;
+        for (Enfant enfant : enfants) {
+            idEnfants.put(enfant.getNom(), nomsEnfants.size());
+            nomsEnfants.add(enfant.getNom());
+            nbSeances += instantane.getNbSeances(enfant);
+        }
+
+        int[] tableInstruments = FormatBinaire.tableHachage(nomsInstruments);
+        int[] tableEnfants = FormatBinaire.tableHachage(nomsEnfants);
+
+        // premier passage : position de chaque enregistrement
+        int position = FormatBinaire.TAILLE_ENTETE
+                + (tableInstruments.length + instruments.size()
+                   + tableEnfants.length + enfants.size()) * Integer.BYTES;
+        int[] positionsInstruments = new int[instruments.size()];
+        for (int id = 0; id < instruments.size(); ++id) {
+            positionsInstruments[id] = position;
+            position += FormatBinaire.tailleUTF(nomsInstruments.get(id))
+                    + Integer.BYTES
+                    + instantane.getNbSeances(instruments.get(id)) * Integer.BYTES;
+        }
+        int[] positionsEnfants = new int[enfants.size()];
+        for (int id = 0; id < enfants.size(); ++id) {
+            positionsEnfants[id] = position;
+            position += FormatBinaire.tailleUTF(nomsEnfants.get(id))
+                    + Byte.BYTES
+                    + instantane.getNbSeances(enfants.get(id)) * (Integer.BYTES + Byte.BYTES);
+            if (position < 0) {
+                throw new IOException("Instantané trop volumineux pour le format binaire.");
+            }
+        }
+
+        // second passage : écriture
+        out.writeInt(FormatBinaire.MAGIQUE);
+        out.writeShort(FormatBinaire.VERSION);
+        out.writeInt(instruments.size());
+        out.writeInt(enfants.size());
+        out.writeInt(nbSeances);
+        out.writeInt(tableInstruments.length);
+        out.writeInt(tableEnfants.length);
+        for (int entree : tableInstruments) {
+            out.writeInt(entree);
+        }
+        for (int entree : positionsInstruments) {
+            out.writeInt(entree);
+        }
+        for (int entree : tableEnfants) {
+            out.writeInt(entree);
+        }
+        for (int entree : positionsEnfants) {
+            out.writeInt(entree);
+        }
+        for (int id = 0; id < instruments.size(); ++id) {
+            List<Seance> seances = instantane.getSeances(instruments.get(id));
+            out.writeUTF(nomsInstruments.get(id));
+            out.writeInt(seances.size());
+            for (Seance seance : seances) {
+                out.writeInt(idEnfants.get(seance.getEnfant()));
+            }
+        }
+        for (int id = 0; id < enfants.size(); ++id) {
+            List<Seance> seances = instantane.getSeances(enfants.get(id));
+            out.writeUTF(nomsEnfants.get(id));
+            out.writeByte(seances.size());
+            for (Seance seance : seances) {
+                out.writeInt(idInstruments.get(seance.getInstrument()));
+                out.writeByte(Jour.valueOfString(seance.getJour()).ordinal());
+            }
+        }
+    }
+
+    /**
+     * Lit intégralement un instantané au format binaire.
+     *
+     * @param in Le flux source, positionné au début de l'entête.
+     *
+     * @return Une nouvelle instance d'application dans l'état lu.
+     *
+     * @throws IOException si l'instantané est corrompu, d'une version non
+     *     supportée, ou qu'une erreur d'entrée/sortie survient.
+     */
+    public static Application lire(final DataInputStream in) throws IOException {
+        if (in.readInt() != FormatBinaire.MAGIQUE) {
+            throw new IOException("Instantané binaire invalide.");
+        }
+        int version = in.readUnsignedShort();
+        if (version == FormatBinaire.VERSION_SEQUENTIELLE) {
+            return FormatBinaire.lireSequentiel(in);
+        } else if (version != FormatBinaire.VERSION) {
+            throw new IOException("Version d'instantané " + version + " non supportée.");
+        }
+
+        Application app = new Application();
+        Instrument[] instruments = new Instrument[in.readInt()];
+        Enfant[] enfants = new Enfant[in.readInt()];
+        in.readInt();  // nombre de séances
+        int capaciteInstruments = in.readInt();
+        int capaciteEnfants = in.readInt();
+        long aSauter = ((long) capaciteInstruments + instruments.length
+                + capaciteEnfants + enfants.length) * Integer.BYTES;
+        if (in.skip(aSauter) != aSauter) {
+            throw new IOException("Instantané binaire tronqué.");
+        }
+
+        for (int i = 0; i < instruments.length; ++i) {
+            instruments[i] = app.enregistrerInstrument(in.readUTF());
+            // les inscrits sont reconstruits à partir des séances des enfants
+            int nbInscrits = in.readInt();
+            if (in.skip((long) nbInscrits * Integer.BYTES) != (long) nbInscrits * Integer.BYTES) {
+                throw new IOException("Instantané binaire tronqué.");
+            }
+        }
+        Jour[] jours = Jour.values();
+        for (int i = 0; i < enfants.length; ++i) {
+            enfants[i] = app.enregistrerEnfant(in.readUTF());
+            int nbSeances = in.readUnsignedByte();
+            for (int s = 0; s < nbSeances; ++s) {
+                int idInstrument = in.readInt();
+                int ordinal = in.readUnsignedByte();
+                if (idInstrument < 0 || idInstrument >= instruments.length || ordinal >= jours.length) {
+                    throw new IOException("Instantané binaire corrompu : séance incohérente.");
+                }
+                app.enregistrerSeance(enfants[i], instruments[idInstrument], jours[ordinal]);
+            }
+        }
+
+        return app;
+    }
+
+    /**
+     * Lit un instantané dans la version {@value FormatBinaire#VERSION_SEQUENTIELLE}
+     * du format, dont l'entête a déjà été consommé.
+     */
+    private static Application lireSequentiel(final DataInputStream in) throws IOException {
+        Application app = new Application();
+
+        Instrument[] instruments = new Instrument[in.readInt()];
+        for (int i = 0; i < instruments.length; ++i) {
+            instruments[i] = app.enregistrerInstrument(in.readUTF());
+        }
+
+        Enfant[] enfants = new Enfant[in.readInt()];
+        for (int i = 0; i < enfants.length; ++i) {
+            enfants[i] = app.enregistrerEnfant(in.readUTF());
+        }
+
+        Jour[] jours = Jour.values();
+        int nbSeances = in.readInt();
+        for (int i = 0; i < nbSeances; ++i) {
+            int idEnfant = in.readInt();
+            int idInstrument = in.readInt();
+            int ordinal = in.readUnsignedByte();
+            if (idEnfant < 0 || idEnfant >= enfants.length
+                    || idInstrument < 0 || idInstrument >= instruments.length
+                    || ordinal >= jours.length) {
+                throw new IOException("Instantané binaire corrompu : séance incohérente.");
+            }
+            app.enregistrerSeance(enfants[idEnfant], instruments[idInstrument], jours[ordinal]);
+        }
+
+        return app;
+    }
+
+    /**
+     * Convertit un fichier de persistance sérialisé (ancien format) en
+     * instantané au format binaire.
+     *
+     * @param source Le chemin de l'ancien fichier de persistance.
+     *
+     * @param cible Le chemin de l'instantané binaire à produire.
+     *
+     * @throws ClassNotFoundException si la source contient une classe
+     *     inconnue (fichier corrompu).
+     *
+     * @throws IOException si une erreur d'entrée/sortie survient.
+     */
+    public static void convertir(final String source, final String cible) throws ClassNotFoundException, IOException {
+        Application app;
+        try (
+            FileInputStream fis = new FileInputStream(source);
+            ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(fis));
+        ){
+            app = (Application) ois.readObject();
+        }
+        try (
+            FileOutputStream fos = new FileOutputStream(cible);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        ){
+            FormatBinaire.ecrire(app, out);
+        }
+    }
+
+    /**
+     * Point d'entrée de la conversion ponctuelle d'un ancien fichier de
+     * persistance.
+     *
+     * @param args Le chemin de l'ancien fichier, puis celui de l'instantané
+     *     binaire à produire.
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage : FormatBinaire <ancien.bdd> <nouveau.bdd>");
+            System.exit(1);
+        }
+        try {
+            FormatBinaire.convertir(args[0], args[1]);
+            System.err.println("Conversion réussie.");
+        }
+        catch (ClassNotFoundException | IOException e) {
+            System.err.println("Échec de la conversion : " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
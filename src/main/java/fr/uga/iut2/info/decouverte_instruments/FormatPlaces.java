@@ -0,0 +1,118 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * La classe FormatPlaces définit le format binaire des capacités et des
+ * listes d'attente des instruments (voir {@link PlacesInstrument}).
+ * <p>
+ * Ces données ne sont pas versionnées comme les séances : elles ne figurent
+ * pas dans les instantanés mais dans un petit fichier à part, écrit à chaque
+ * sauvegarde. Il contient le nombre magique {@value FormatBinaire#MAGIQUE},
+ * la version {@value FormatBinaire#VERSION_PLACES}, le nombre d'instruments
+ * décrits, puis pour chacun son nom et, pour chaque {@link Jour}, sa
+ * capacité, le nombre d'enfants en attente et leurs noms dans l'ordre
+ * d'arrivée. Seuls les instruments dont une capacité est fixée ou une liste
+ * d'attente non vide sont décrits. Les places occupées ne sont pas écrites :
+ * elles sont recomptées à partir des séances.
+ * <p>
+ * C'est une classe utilitaire, toutes les méthodes sont statiques.
+ * La classe n'a pas vocation à être instanciée.
+ */
+final class FormatPlaces {
+
+    private static final Jour[] JOURS = Jour.values();
+
+    private FormatPlaces() {
+        // interdit l'instanciation de la classe utilitaire via un constructeur privé
+        throw new IllegalStateException("Classe utilitaire.");
+    }
+
+    /**
+     * Copie en mémoire les capacités et les listes d'attente de
+     * l'application. L'appelant détient la partie exclusive du verrou des
+     * mutations, le temps de la copie.
+     *
+     * @param app L'application, entièrement matérialisée.
+     *
+     * @return Le contenu du fichier, entête compris.
+     */
+    static byte[] capturer(final Application app) {
+        ByteArrayOutputStream contenu = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(contenu)) {
+            out.writeInt(FormatBinaire.MAGIQUE);
+            out.writeShort(FormatBinaire.VERSION_PLACES);
+            int nb = 0;
+            for (Instrument instrument : app.getInstruments().values()) {
+                if (instrument.getPlaces().estLimitee()) {
+                    ++nb;
+                }
+            }
+            out.writeInt(nb);
+            for (Instrument instrument : app.getInstruments().values()) {
+                PlacesInstrument places = instrument.getPlaces();
+                if (!places.estLimitee()) {
+                    continue;
+                }
+                out.writeUTF(instrument.getNom());
+                for (Jour jour : FormatPlaces.JOURS) {
+                    out.writeInt(places.getCapacite(jour));
+                    List<Enfant> attente = places.getAttente(jour);
+                    out.writeInt(attente.size());
+                    for (Enfant enfant : attente) {
+                        out.writeUTF(enfant.getNom());
+                    }
+                }
+            }
+        }
+        catch (IOException ioe) {
+            // impossible en mémoire
+            throw new UncheckedIOException(ioe);
+        }
+        return contenu.toByteArray();
+    }
+
+    /**
+     * Restaure les capacités et les listes d'attente, après les séances et
+     * avant le rejeu du journal.
+     *
+     * @param in Le flux source, positionné au début du fichier.
+     *
+     * @param app L'application dont les séances sont restaurées.
+     *
+     * @throws IOException si le fichier est corrompu ou qu'une erreur
+     *     d'entrée/sortie survient.
+     */
+    static void lire(final DataInputStream in, final Application app) throws IOException {
+        if (in.readInt() != FormatBinaire.MAGIQUE || in.readUnsignedShort() != FormatBinaire.VERSION_PLACES) {
+            throw new IOException("Fichier des places invalide ou d'une version non supportée.");
+        }
+        int nb = in.readInt();
+        for (int i = 0; i < nb; ++i) {
+            Instrument instrument = app.getInstrument(in.readUTF());
+            if (instrument == null) {
+                throw new IOException("Fichier des places corrompu : instrument inconnu.");
+            }
+            for (Jour jour : FormatPlaces.JOURS) {
+                int capacite = in.readInt();
+                if (capacite < 0) {
+                    throw new IOException("Fichier des places corrompu : capacité négative.");
+                }
+                app.enregistrerCapacite(instrument, jour, capacite);
+                int nbEnAttente = in.readInt();
+                for (int rang = 0; rang < nbEnAttente; ++rang) {
+                    Enfant enfant = app.getEnfant(in.readUTF());
+                    if (enfant == null) {
+                        throw new IOException("Fichier des places corrompu : enfant inconnu.");
+                    }
+                    app.enregistrerAttente(enfant, instrument, jour);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,517 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * La classe HebergeurAssociations héberge dans une même JVM les
+ * {@link Application} de plusieurs associations, isolées les unes des
+ * autres.
+ * <p>
+ * Chaque association a son propre dossier de persistance, sous-dossier du
+ * dossier racine ("{@value HebergeurAssociations#DOSSIER_PAR_DEFAUT}" par
+ * défaut) portant son nom, et ses propres {@link Metriques}. Elle n'est lue
+ * (voir {@link Persisteur#lireEtat(java.nio.file.Path)}) qu'à son premier
+ * accès.
+ * <p>
+ * Une association chargée est déchargée — enregistrée, son journal fermé,
+ * puis oubliée — lorsqu'elle n'a pas servi pendant la durée d'inactivité,
+ * ou lorsque la mémoire estimée de l'ensemble des associations chargées
+ * dépasse le budget : les moins récemment utilisées sont alors déchargées
+ * les premières. Une association en cours d'utilisation (voir
+ * {@link Acces}) n'est jamais déchargée ; le budget peut donc être dépassé
+ * tant que les associations utilisées l'exigent. Les conditions sont
+ * examinées toutes les {@value HebergeurAssociations#SCRUTATION_MS}
+ * millisecondes par une tâche dédiée, et le budget après chaque chargement.
+ * <p>
+ * La mémoire d'une association est estimée d'après ses effectifs (voir
+ * {@link Application#jauges()}) : une part fixe, dont la réserve du
+ * {@link FluxEvenements}, et une part par enfant, instrument et séance,
+ * événements conservés compris. Ces deux coûts ont été relevés sur un
+ * JDK 17 ; l'estimation ne remplace pas un réglage de la taille du tas.
+ */
+public final class HebergeurAssociations implements Closeable {
+
+    /**
+     * Dossier racine par défaut.
+     */
+    public static final String DOSSIER_PAR_DEFAUT = "associations";
+
+    /**
+     * Budget mémoire par défaut, en octets.
+     */
+    public static final long BUDGET_PAR_DEFAUT = 256L << 20;
+
+    /**
+     * Durée d'inactivité par défaut au-delà de laquelle une association est
+     * déchargée, en secondes.
+     */
+    public static final long INACTIVITE_PAR_DEFAUT = 600;
+
+    private static final long OCTETS_PAR_ASSOCIATION = 320L << 10;
+    private static final long OCTETS_PAR_OBJET = 512;
+    private static final long SCRUTATION_MS = 1000;
+    private static final Pattern NOM_VALIDE = Pattern.compile("[\\p{L}\\p{N}][\\p{L}\\p{N}_.-]{0,63}");
+
+    private final Path racine;
+    private final long budget;
+    private final long inactiviteNs;
+    private final ScheduledExecutorService planificateur;
+    private final AtomicLong nbChargements = new AtomicLong();
+    private final AtomicLong nbDechargementsInactivite = new AtomicLong();
+    private final AtomicLong nbDechargementsBudget = new AtomicLong();
+
+    // protégés par le moniteur de l'hébergeur ; parcourus du moins récemment
+    // utilisé au plus récemment utilisé
+    private final Map<String, Locataire> locataires = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean ferme = false;
+
+    /**
+     * Une association hébergée. Elle reste connue de l'hébergeur une fois
+     * déchargée : un accès concurrent à un déchargement attend ainsi, sur son
+     * moniteur, la fin de l'enregistrement avant de la relire.
+     */
+    private static final class Locataire {
+
+        private final String nom;
+        private final Path dossier;
+        // écrit sous le moniteur du locataire
+        private volatile Application app;
+        // protégés par le moniteur de l'hébergeur
+        private int nbAcces;
+        private long dernierAcces;
+        private long octets;
+
+        Locataire(final String nom, final Path dossier) {
+            this.nom = nom;
+            this.dossier = dossier;
+        }
+    }
+
+    /**
+     * L'accès à une association chargée : tant qu'il n'est pas fermé,
+     * l'association n'est pas déchargée.
+     */
+    public final class Acces implements Closeable {
+
+        private final Locataire locataire;
+        private final Application app;
+        private boolean ferme = false;
+
+        private Acces(final Locataire locataire, final Application app) {
+            this.locataire = locataire;
+            this.app = app;
+        }
+
+        /**
+         * @return Le nom de l'association.
+         */
+        public String getNom() {
+            return this.locataire.nom;
+        }
+
+        /**
+         * @return L'application de l'association, à ne plus utiliser après
+         *     la fermeture de l'accès.
+         */
+        public Application getApplication() {
+            return this.app;
+        }
+
+        @Override
+        public void close() {
+            synchronized (HebergeurAssociations.this) {
+                if (this.ferme) {
+                    return;
+                }
+                this.ferme = true;
+                this.locataire.nbAcces -= 1;
+                this.locataire.dernierAcces = System.nanoTime();
+                this.locataire.octets = HebergeurAssociations.estimer(this.app);
+            }
+        }
+    }
+
+    /**
+     * Prépare un hébergeur, sans démarrer les déchargements périodiques.
+     *
+     * @param racine Le dossier racine, qui contient un dossier de
+     *     persistance par association.
+     *
+     * @param budget La mémoire estimée au-delà de laquelle des associations
+     *     sont déchargées, en octets ; strictement positive.
+     *
+     * @param inactivite La durée d'inactivité au-delà de laquelle une
+     *     association est déchargée, en secondes ; strictement positive.
+     *
+     * @throws IllegalArgumentException si le budget ou la durée n'est pas
+     *     strictement positif.
+     */
+    public HebergeurAssociations(final Path racine, final long budget, final long inactivite) {
+        if (budget <= 0 || inactivite <= 0) {
+            throw new IllegalArgumentException("Le budget mémoire et la durée d'inactivité doivent être positifs.");
+        }
+        this.racine = racine;
+        this.budget = budget;
+        this.inactiviteNs = TimeUnit.SECONDS.toNanos(inactivite);
+        this.planificateur = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread tache = new Thread(r, "associations");
+            // n'empêche pas l'arrêt de la JVM
+            tache.setDaemon(true);
+            return tache;
+        });
+    }
+
+    /**
+     * Démarre les examens périodiques.
+     */
+    public void demarrer() {
+        this.planificateur.scheduleWithFixedDelay(
+                this::examiner,
+                HebergeurAssociations.SCRUTATION_MS,
+                HebergeurAssociations.SCRUTATION_MS,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Vérifie qu'un nom d'association peut servir de nom de dossier : une
+     * lettre ou un chiffre, puis des lettres, chiffres, points, tirets ou
+     * soulignés.
+     *
+     * @throws IllegalArgumentException si le nom est invalide.
+     */
+    static void verifierNom(final String nom) {
+        if (nom == null || !HebergeurAssociations.NOM_VALIDE.matcher(nom).matches()) {
+            throw new IllegalArgumentException("Nom d'association invalide : " + nom);
+        }
+    }
+
+    /**
+     * @return Les noms des associations hébergées, chargées ou non, dans
+     *     l'ordre alphabétique.
+     *
+     * @throws IOException si le dossier racine ne peut pas être lu.
+     */
+    public List<String> lister() throws IOException {
+        List<String> noms = new ArrayList<>();
+        if (!Files.isDirectory(this.racine)) {
+            return noms;
+        }
+        try (Stream<Path> dossiers = Files.list(this.racine)) {
+            dossiers.filter(Files::isDirectory)
+                    .map(dossier -> dossier.getFileName().toString())
+                    .filter(nom -> HebergeurAssociations.NOM_VALIDE.matcher(nom).matches())
+                    .sorted()
+                    .forEach(noms::add);
+        }
+        return noms;
+    }
+
+    /**
+     * @return true si l'association est actuellement chargée en mémoire.
+     */
+    public synchronized boolean estChargee(final String nom) {
+        Locataire locataire = this.locataires.get(nom);
+        return locataire != null && locataire.app != null;
+    }
+
+    /**
+     * Crée le dossier de persistance d'une nouvelle association, vide.
+     *
+     * @param nom Le nom de l'association.
+     *
+     * @return true si l'association a été créée, false si elle existait
+     *     déjà.
+     *
+     * @throws IllegalArgumentException si le nom est invalide.
+     *
+     * @throws IOException si le dossier ne peut pas être créé.
+     */
+    public synchronized boolean creer(final String nom) throws IOException {
+        HebergeurAssociations.verifierNom(nom);
+        Path dossier = this.racine.resolve(nom);
+        if (Files.isDirectory(dossier)) {
+            return false;
+        }
+        Files.createDirectories(dossier);
+        return true;
+    }
+
+    /**
+     * Accède à une association, chargée si nécessaire. L'accès doit être
+     * fermé dès que l'association ne sert plus.
+     *
+     * @param nom Le nom de l'association.
+     *
+     * @return L'accès à l'association.
+     *
+     * @throws IllegalArgumentException si l'association n'existe pas.
+     *
+     * @throws IOException si l'état de l'association ne peut pas être lu.
+     */
+    public Acces acceder(final String nom) throws IOException {
+        HebergeurAssociations.verifierNom(nom);
+        Locataire locataire;
+        synchronized (this) {
+            if (this.ferme) {
+                throw new IllegalStateException("L'hébergeur est fermé.");
+            }
+            locataire = this.locataires.get(nom);
+            if (locataire == null) {
+                Path dossier = this.racine.resolve(nom);
+                if (!Files.isDirectory(dossier)) {
+                    throw new IllegalArgumentException("Association inconnue : " + nom);
+                }
+                locataire = new Locataire(nom, dossier);
+                this.locataires.put(nom, locataire);
+            }
+            locataire.nbAcces += 1;
+            locataire.dernierAcces = System.nanoTime();
+        }
+
+        Application app;
+        boolean charge = false;
+        try {
+            synchronized (locataire) {
+                app = locataire.app;
+                if (app == null) {
+                    app = Persisteur.lireEtat(locataire.dossier);
+                    locataire.app = app;
+                    charge = true;
+                }
+            }
+        }
+        catch (ClassNotFoundException cnfe) {
+            this.abandonner(locataire);
+            throw new IOException("État illisible pour l'association " + nom, cnfe);
+        }
+        catch (IOException | RuntimeException e) {
+            this.abandonner(locataire);
+            throw e;
+        }
+        Acces acces = new Acces(locataire, app);
+        if (charge) {
+            this.nbChargements.incrementAndGet();
+            synchronized (this) {
+                locataire.octets = HebergeurAssociations.estimer(app);
+            }
+            this.respecterBudget();
+        }
+        return acces;
+    }
+
+    private synchronized void abandonner(final Locataire locataire) {
+        locataire.nbAcces -= 1;
+    }
+
+    /**
+     * @return La mémoire estimée des associations chargées, en octets.
+     */
+    public synchronized long getOctetsEstimes() {
+        long total = 0;
+        for (Locataire locataire : this.locataires.values()) {
+            if (locataire.app != null) {
+                total += locataire.octets;
+            }
+        }
+        return total;
+    }
+
+    private static long estimer(final Application app) {
+        return HebergeurAssociations.OCTETS_PAR_ASSOCIATION
+                + app.jaugesChargees().getNbObjets() * HebergeurAssociations.OCTETS_PAR_OBJET;
+    }
+
+    private void examiner() {
+        try {
+            long maintenant = System.nanoTime();
+            List<Locataire> inactifs = new ArrayList<>();
+            synchronized (this) {
+                for (Locataire locataire : this.locataires.values()) {
+                    if (locataire.app != null && locataire.nbAcces == 0
+                            && maintenant - locataire.dernierAcces >= this.inactiviteNs) {
+                        inactifs.add(locataire);
+                    }
+                }
+            }
+            for (Locataire locataire : inactifs) {
+                if (this.decharger(locataire, true)) {
+                    this.nbDechargementsInactivite.incrementAndGet();
+                }
+            }
+            this.respecterBudget();
+        }
+        catch (RuntimeException e) {
+            // une exception arrêterait les examens suivants
+            System.err.println("Examen des associations impossible : " + e);
+            System.err.flush();
+        }
+    }
+
+    /**
+     * Décharge les associations inutilisées, de la moins récemment utilisée
+     * à la plus récente, jusqu'à revenir dans le budget.
+     */
+    private void respecterBudget() {
+        while (true) {
+            Locataire victime = null;
+            synchronized (this) {
+                long total = 0;
+                for (Locataire locataire : this.locataires.values()) {
+                    if (locataire.app != null) {
+                        total += locataire.octets;
+                        if (victime == null && locataire.nbAcces == 0) {
+                            victime = locataire;
+                        }
+                    }
+                }
+                if (total <= this.budget) {
+                    return;
+                }
+            }
+            if (victime == null || !this.decharger(victime, true)) {
+                return;
+            }
+            this.nbDechargementsBudget.incrementAndGet();
+        }
+    }
+
+    /**
+     * Enregistre une association, ferme son journal et l'oublie.
+     *
+     * @param inutilisee true pour ne décharger l'association que si aucun
+     *     accès n'est ouvert.
+     *
+     * @return true si l'association a été déchargée.
+     */
+    private boolean decharger(final Locataire locataire, final boolean inutilisee) {
+        // un accès ouvert après la vérification attend sur le moniteur du
+        // locataire, puis relit l'état enregistré
+        synchronized (locataire) {
+            Application app;
+            synchronized (this) {
+                app = locataire.app;
+                if (app == null || (inutilisee && locataire.nbAcces > 0)) {
+                    return false;
+                }
+            }
+            try {
+                Persisteur.enregistrer(app);
+                app.getJournal().close();
+            }
+            catch (IOException | RuntimeException e) {
+                System.err.println("Déchargement de l'association " + locataire.nom + " impossible : " + e.getMessage());
+                System.err.flush();
+                return false;
+            }
+            locataire.app = null;
+            return true;
+        }
+    }
+
+    /**
+     * Écrit les mesures de l'hébergeur au format texte de Prometheus :
+     * associations chargées, mémoire estimée, chargements et déchargements,
+     * puis, pour chaque association chargée, ses effectifs et sa mémoire
+     * estimée. Les mesures des commandes restent propres à chaque
+     * association (voir {@link Application#getMetriques()}).
+     *
+     * @param out La destination.
+     *
+     * @throws IOException si une erreur d'écriture survient.
+     */
+    public void ecrirePrometheus(final Appendable out) throws IOException {
+        List<String> noms = new ArrayList<>();
+        List<Application> apps = new ArrayList<>();
+        List<Long> octets = new ArrayList<>();
+        synchronized (this) {
+            for (Locataire locataire : this.locataires.values()) {
+                Application app = locataire.app;
+                if (app != null) {
+                    noms.add(locataire.nom);
+                    apps.add(app);
+                    octets.add(locataire.octets);
+                }
+            }
+        }
+        long total = 0;
+        for (long o : octets) {
+            total += o;
+        }
+
+        Metriques.entete(out, "associations_chargees", "gauge", "Nombre d'associations chargées en mémoire.");
+        Metriques.ligne(out, "associations_chargees", null, noms.size());
+        Metriques.entete(out, "associations_memoire_estimee_octets", "gauge",
+                "Mémoire estimée des associations chargées.");
+        Metriques.ligne(out, "associations_memoire_estimee_octets", null, total);
+        Metriques.entete(out, "associations_budget_octets", "gauge", "Budget mémoire des associations chargées.");
+        Metriques.ligne(out, "associations_budget_octets", null, this.budget);
+        Metriques.entete(out, "associations_chargements_total", "counter", "Nombre de chargements d'associations.");
+        Metriques.ligne(out, "associations_chargements_total", null, this.nbChargements.get());
+        Metriques.entete(out, "associations_dechargements_total", "counter",
+                "Nombre de déchargements d'associations, par motif.");
+        Metriques.ligne(out, "associations_dechargements_total", "motif=\"inactivite\"",
+                this.nbDechargementsInactivite.get());
+        Metriques.ligne(out, "associations_dechargements_total", "motif=\"budget\"",
+                this.nbDechargementsBudget.get());
+
+        Metriques.entete(out, "association_memoire_estimee_octets", "gauge",
+                "Mémoire estimée de chaque association chargée.");
+        for (int i = 0; i < noms.size(); ++i) {
+            Metriques.ligne(out, "association_memoire_estimee_octets",
+                    HebergeurAssociations.etiquette(noms.get(i)), octets.get(i));
+        }
+        Metriques.entete(out, "association_enfants", "gauge", "Nombre d'enfants de chaque association chargée.");
+        for (int i = 0; i < noms.size(); ++i) {
+            Metriques.ligne(out, "association_enfants",
+                    HebergeurAssociations.etiquette(noms.get(i)), apps.get(i).jaugesChargees().getNbEnfants());
+        }
+        Metriques.entete(out, "association_seances", "gauge", "Nombre de séances de chaque association chargée.");
+        for (int i = 0; i < noms.size(); ++i) {
+            Metriques.ligne(out, "association_seances",
+                    HebergeurAssociations.etiquette(noms.get(i)), apps.get(i).jaugesChargees().getNbSeances());
+        }
+    }
+
+    private static String etiquette(final String nom) {
+        // les noms valides ne contiennent ni guillemet ni barre oblique inverse
+        return "association=\"" + nom + "\"";
+    }
+
+    /**
+     * Arrête les examens périodiques, puis enregistre et décharge toutes les
+     * associations chargées, même utilisées. Les accès ultérieurs sont
+     * refusés.
+     */
+    @Override
+    public void close() {
+        this.planificateur.shutdown();
+        try {
+            this.planificateur.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        List<Locataire> charges = new ArrayList<>();
+        synchronized (this) {
+            this.ferme = true;
+            charges.addAll(this.locataires.values());
+        }
+        for (Locataire locataire : charges) {
+            this.decharger(locataire, false);
+        }
+    }
+}
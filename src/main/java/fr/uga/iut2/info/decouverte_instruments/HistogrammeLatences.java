@@ -0,0 +1,130 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La classe HistogrammeLatences compte des durées, en nanosecondes, dans des
+ * classes de largeur logarithmique, à la manière d'un histogramme HDR.
+ * <p>
+ * Chaque puissance de deux est découpée en
+ * {@value HistogrammeLatences#SOUS_CLASSES} classes de même largeur : une
+ * durée est donc connue à {@value HistogrammeLatences#SOUS_CLASSES}ème près
+ * (6 % au plus), de la nanoseconde à environ 18 minutes ; les durées plus
+ * longues sont comptées dans la dernière classe.
+ * <p>
+ * L'enregistrement d'une durée ne prend aucun verrou et n'alloue rien : il
+ * incrémente une case d'un tableau atomique. Plusieurs tâches peuvent
+ * enregistrer et lire en même temps ; une lecture concurrente peut omettre
+ * les enregistrements en cours.
+ */
+final class HistogrammeLatences {
+
+    private static final int BITS_SOUS_CLASSES = 4;
+    private static final int SOUS_CLASSES = 1 << HistogrammeLatences.BITS_SOUS_CLASSES;
+    // 2^40 ns : un peu plus de 18 minutes
+    private static final int BITS_MAX = 40;
+    private static final long VALEUR_MAX = (1L << HistogrammeLatences.BITS_MAX) - 1;
+    private static final int NB_CLASSES =
+            (HistogrammeLatences.BITS_MAX - HistogrammeLatences.BITS_SOUS_CLASSES + 1) * HistogrammeLatences.SOUS_CLASSES;
+
+    private final AtomicLongArray comptes = new AtomicLongArray(HistogrammeLatences.NB_CLASSES);
+    private final LongAdder nombre = new LongAdder();
+    private final LongAdder somme = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Enregistre une durée.
+     *
+     * @param nanos La durée, en nanosecondes ; une durée négative compte
+     *     pour 0.
+     */
+    void enregistrer(final long nanos) {
+        long valeur = Math.max(0, nanos);
+        this.comptes.incrementAndGet(HistogrammeLatences.classe(Math.min(valeur, HistogrammeLatences.VALEUR_MAX)));
+        this.nombre.increment();
+        this.somme.add(valeur);
+        long actuel = this.max.get();
+        while (valeur > actuel && !this.max.compareAndSet(actuel, valeur)) {
+            actuel = this.max.get();
+        }
+    }
+
+    /**
+     * Indice de la classe d'une valeur : les
+     * {@value HistogrammeLatences#SOUS_CLASSES} premières valeurs ont chacune
+     * leur classe, puis chaque puissance de deux en a autant.
+     */
+    private static int classe(final long valeur) {
+        if (valeur < HistogrammeLatences.SOUS_CLASSES) {
+            return (int) valeur;
+        }
+        int decalage = 63 - Long.numberOfLeadingZeros(valeur) - HistogrammeLatences.BITS_SOUS_CLASSES;
+        int mantisse = (int) (valeur >>> decalage) - HistogrammeLatences.SOUS_CLASSES;
+        return (decalage + 1) * HistogrammeLatences.SOUS_CLASSES + mantisse;
+    }
+
+    /**
+     * Plus grande valeur d'une classe.
+     */
+    private static long borneSuperieure(final int classe) {
+        if (classe < HistogrammeLatences.SOUS_CLASSES) {
+            return classe;
+        }
+        int decalage = classe / HistogrammeLatences.SOUS_CLASSES - 1;
+        long mantisse = classe % HistogrammeLatences.SOUS_CLASSES + HistogrammeLatences.SOUS_CLASSES;
+        return ((mantisse + 1) << decalage) - 1;
+    }
+
+    /**
+     * @return Le nombre de durées enregistrées.
+     */
+    long getNombre() {
+        return this.nombre.sum();
+    }
+
+    /**
+     * @return La somme des durées enregistrées, en nanosecondes.
+     */
+    long getSomme() {
+        return this.somme.sum();
+    }
+
+    /**
+     * @return La plus longue durée enregistrée, en nanosecondes.
+     */
+    long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Estime un quantile des durées enregistrées.
+     *
+     * @param q Le quantile, entre 0 et 1.
+     *
+     * @return La borne supérieure de la classe contenant le quantile, sans
+     *     dépasser la plus longue durée, en nanosecondes ; 0 si aucune durée
+     *     n'a été enregistrée.
+     */
+    long quantile(final double q) {
+        long[] copie = new long[HistogrammeLatences.NB_CLASSES];
+        long total = 0;
+        for (int classe = 0; classe < copie.length; ++classe) {
+            copie[classe] = this.comptes.get(classe);
+            total += copie[classe];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rang = Math.max(1, (long) Math.ceil(q * total));
+        long cumul = 0;
+        for (int classe = 0; classe < copie.length; ++classe) {
+            cumul += copie[classe];
+            if (cumul >= rang) {
+                return Math.min(HistogrammeLatences.borneSuperieure(classe), this.getMax());
+            }
+        }
+        return this.getMax();
+    }
+}
@@ -0,0 +1,69 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe HorlogeVersions numérote les mutations de l'{@link Application}
+ * et publie leurs numéros dans l'ordre.
+ * <p>
+ * Une mutation obtient son numéro par {@link #debuter()}, écrit ses données
+ * estampillées de ce numéro, puis appelle {@link #publier(long)}. La
+ * publication attend celle du numéro précédent : la
+ * {@link #versionPubliee() version publiée} V garantit donc que toutes les
+ * mutations de numéro inférieur ou égal à V sont entièrement appliquées, et
+ * que leurs écritures sont visibles de toute tâche qui a lu V.
+ * <p>
+ * Les données restaurées depuis la persistance portent la
+ * {@link #VERSION_INITIALE version initiale}. Le numéro 0 est réservé : une
+ * case estampillée 0 est en cours d'écriture et n'est visible d'aucun
+ * {@link Instantane}.
+ */
+final class HorlogeVersions {
+
+    /**
+     * Version des données présentes avant toute mutation (restauration).
+     */
+    static final long VERSION_INITIALE = 1;
+
+    private static final int ESSAIS_AVANT_CEDER = 64;
+
+    private final AtomicLong prochaine = new AtomicLong(HorlogeVersions.VERSION_INITIALE);
+    private final AtomicLong publiee = new AtomicLong(HorlogeVersions.VERSION_INITIALE);
+
+    /**
+     * Attribue un numéro à une mutation. L'appelant doit ensuite appeler
+     * {@link #publier(long)}, y compris en cas d'échec, sous peine de
+     * bloquer toutes les publications suivantes.
+     *
+     * @return Le numéro de la mutation.
+     */
+    long debuter() {
+        return this.prochaine.incrementAndGet();
+    }
+
+    /**
+     * Publie une mutation, après la publication de toutes celles de numéro
+     * inférieur. L'attente est brève : une mutation ne fait aucune
+     * entrée/sortie entre {@link #debuter()} et sa publication.
+     *
+     * @param version Le numéro obtenu par {@link #debuter()}.
+     */
+    void publier(final long version) {
+        int essais = 0;
+        while (!this.publiee.compareAndSet(version - 1, version)) {
+            if (++essais < HorlogeVersions.ESSAIS_AVANT_CEDER) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * @return La plus grande version dont toutes les mutations sont
+     *     appliquées.
+     */
+    long versionPubliee() {
+        return this.publiee.get();
+    }
+}
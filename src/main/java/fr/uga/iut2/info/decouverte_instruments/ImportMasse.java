@@ -0,0 +1,368 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * La classe ImportMasse importe en masse des instruments, des enfants et des
+ * demandes d'inscription depuis un fichier CSV ou TSV.
+ * <p>
+ * Chaque ligne commence par son type, suivi de ses colonnes :
+ * <pre>
+ * instrument;violon
+ * enfant;Léa
+ * inscription;Léa;violon;samedi
+ * inscription;Léa;piano
+ * capacite;piano;mercredi;12
+ * </pre>
+ * Le séparateur (tabulation, point-virgule ou virgule) est déduit de la
+ * première ligne ; les champs peuvent être entourés de guillemets doubles.
+ * Une première ligne dont le premier champ vaut « type » est un entête et
+ * est ignorée.
+ * <p>
+ * Les lignes sont validées selon les mêmes règles que la saisie
+ * interactive : noms uniques, au plus {@value Enfant#MAX_SEANCES} séances par
+ * enfant, une seule séance par {@link Jour}, pas deux fois le même
+ * instrument. Une ligne valide est appliquée immédiatement, si bien qu'une
+ * inscription peut porter sur un enfant créé plus haut dans le même fichier.
+ * Une ligne rejetée est recopiée dans le fichier des rejets, suivie du motif
+ * du rejet.
+ * <p>
+ * Une ligne {@code capacite} fixe le nombre de places de l'instrument ce
+ * jour-là (un entier, ou « illimitée »), comme le menu : une inscription à
+ * une séance complète place l'enfant en liste d'attente, et la ligne est
+ * acceptée.
+ * <p>
+ * Une inscription sans jour est une demande en attente : une fois le fichier
+ * lu, toutes les demandes sont confiées ensemble au {@link Planificateur},
+ * qui leur attribue un jour en respectant les capacités.
+ * <p>
+ * Le fichier est lu en flux, par lots de {@value ImportMasse#TAILLE_LOT}
+ * lignes : les mutations d'un lot sont écrites dans le {@link Journal} en une
+ * seule opération. Seule l'écriture est groupée : chaque ligne est validée
+ * et appliquée à son tour par les opérations atomiques de
+ * l'{@link Application}, si bien que d'autres tâches peuvent modifier l'état
+ * entre deux lignes d'un même lot.
+ */
+public final class ImportMasse {
+
+    /**
+     * Nombre de lignes traitées entre deux écritures du journal.
+     */
+    public static final int TAILLE_LOT = 10_000;
+
+    private static final int TAILLE_TAMPON = 1 << 16;
+
+    private final Application app;
+    private final ServiceInscription service;
+    private final List<String> champs = new ArrayList<>();
+    private final StringBuilder champ = new StringBuilder();
+    private final Planificateur planificateur = new Planificateur();
+    private int nbAcceptees = 0;
+    private int nbRejetees = 0;
+
+    /**
+     * Prépare un import dans une application.
+     *
+     * @param app L'application à alimenter.
+     */
+    public ImportMasse(final Application app) {
+        this.app = app;
+        this.service = new ServiceInscription(app);
+    }
+
+    /**
+     * Importe un fichier.
+     *
+     * @param source Le fichier CSV ou TSV à importer.
+     *
+     * @param rejets Le fichier dans lequel recopier les lignes rejetées ; il
+     *     est remplacé s'il existe déjà.
+     *
+     * @throws IOException si une erreur d'entrée/sortie survient. Les lots
+     *     déjà traités restent appliqués.
+     */
+    public void importer(final Path source, final Path rejets) throws IOException {
+        Journal journal = this.app.getJournal();
+        try (
+            BufferedReader in = new BufferedReader(
+                    Files.newBufferedReader(source, StandardCharsets.UTF_8), ImportMasse.TAILLE_TAMPON);
+            BufferedWriter err = new BufferedWriter(
+                    Files.newBufferedWriter(rejets, StandardCharsets.UTF_8), ImportMasse.TAILLE_TAMPON);
+        ){
+            char separateur = 0;
+            boolean premiere = true;
+            boolean finFichier = false;
+            while (!finFichier) {
+                if (journal != null) {
+                    journal.debuterLot();
+                }
+                try {
+                    for (int n = 0; n < ImportMasse.TAILLE_LOT; ++n) {
+                        String ligne = in.readLine();
+                        if (ligne == null) {
+                            finFichier = true;
+                            break;
+                        }
+                        if (ligne.isBlank()) {
+                            continue;
+                        }
+                        if (premiere) {
+                            separateur = ImportMasse.deduireSeparateur(ligne);
+                        }
+                        this.decouper(ligne, separateur);
+                        if (premiere && "type".equalsIgnoreCase(this.champs.get(0))) {
+                            premiere = false;
+                            continue;
+                        }
+                        premiere = false;
+
+                        Issue issue = this.appliquer(ligne);
+                        if (issue.motif != null) {
+                            ++this.nbRejetees;
+                            err.write(ligne);
+                            err.write(separateur);
+                            err.write(issue.motif);
+                            err.newLine();
+                        } else if (!issue.planifiee) {
+                            ++this.nbAcceptees;
+                        }
+                    }
+                }
+                finally {
+                    if (journal != null) {
+                        journal.terminerLot();
+                    }
+                }
+            }
+            this.planifier(err, separateur);
+        }
+    }
+
+    /**
+     * Attribue un jour aux demandes en attente et les applique en un seul lot.
+     */
+    private void planifier(final BufferedWriter err, final char separateur) throws IOException {
+        if (this.planificateur.getNbDemandes() == 0) {
+            return;
+        }
+        this.planificateur.planifier();
+        Journal journal = this.app.getJournal();
+        if (journal != null) {
+            journal.debuterLot();
+        }
+        try {
+            this.nbAcceptees += this.planificateur.appliquer(this.app);
+        }
+        finally {
+            if (journal != null) {
+                journal.terminerLot();
+            }
+        }
+        for (Map.Entry<Planificateur.Demande, String> rejet : this.planificateur.getRejets().entrySet()) {
+            ++this.nbRejetees;
+            err.write(rejet.getKey().getOrigine());
+            err.write(separateur);
+            err.write(rejet.getValue());
+            err.newLine();
+        }
+    }
+
+    /**
+     * @return Le nombre de lignes appliquées.
+     */
+    public int getNbAcceptees() {
+        return this.nbAcceptees;
+    }
+
+    /**
+     * @return Le nombre de lignes rejetées.
+     */
+    public int getNbRejetees() {
+        return this.nbRejetees;
+    }
+
+    private static char deduireSeparateur(final String ligne) {
+        if (ligne.indexOf('\t') >= 0) {
+            return '\t';
+        } else if (ligne.indexOf(';') >= 0) {
+            return ';';
+        } else {
+            return ',';
+        }
+    }
+
+    /**
+     * Découpe une ligne en champs, en tenant compte des guillemets doubles
+     * (un guillemet doublé à l'intérieur d'un champ entre guillemets désigne
+     * un guillemet littéral). La liste des champs et le tampon sont
+     * réutilisés d'une ligne à l'autre.
+     */
+    private void decouper(final String ligne, final char separateur) {
+        this.champs.clear();
+        this.champ.setLength(0);
+        boolean entreGuillemets = false;
+        for (int i = 0; i < ligne.length(); ++i) {
+            char c = ligne.charAt(i);
+            if (entreGuillemets) {
+                if (c == '"' && i + 1 < ligne.length() && ligne.charAt(i + 1) == '"') {
+                    this.champ.append('"');
+                    ++i;
+                } else if (c == '"') {
+                    entreGuillemets = false;
+                } else {
+                    this.champ.append(c);
+                }
+            } else if (c == '"') {
+                entreGuillemets = true;
+            } else if (c == separateur) {
+                this.champs.add(this.champ.toString().strip());
+                this.champ.setLength(0);
+            } else {
+                this.champ.append(c);
+            }
+        }
+        this.champs.add(this.champ.toString().strip());
+    }
+
+    /**
+     * Valide puis applique la ligne découpée.
+     *
+     * @return L'issue de la ligne : appliquée, confiée au planificateur ou
+     *     rejetée.
+     */
+    private Issue appliquer(final String ligne) {
+        String type = this.champs.get(0).toLowerCase(Locale.ROOT);
+        switch (type) {
+            case "instrument":
+                return this.creerInstrument();
+            case "enfant":
+                return this.creerEnfant();
+            case "inscription":
+                return (this.champs.size() == 3) ? this.demander(ligne) : this.inscrire();
+            case "capacite":
+                return this.fixerCapacite();
+            default:
+                return Issue.rejet("type de ligne inconnu");
+        }
+    }
+
+    private Issue creerInstrument() {
+        if (this.champs.size() != 2) {
+            return Issue.rejet("nombre de colonnes incorrect");
+        }
+        String nom = this.champs.get(1);
+        if (nom.isEmpty()) {
+            return Issue.rejet("nom vide");
+        }
+        if (!this.app.nouvelInstrument(nom)) {
+            return Issue.rejet("instrument déjà existant");
+        }
+        return Issue.APPLIQUEE;
+    }
+
+    private Issue creerEnfant() {
+        if (this.champs.size() != 2) {
+            return Issue.rejet("nombre de colonnes incorrect");
+        }
+        String nom = this.champs.get(1);
+        if (nom.isEmpty()) {
+            return Issue.rejet("nom vide");
+        }
+        if (!this.app.nouvelEnfant(nom)) {
+            return Issue.rejet("enfant déjà existant");
+        }
+        return Issue.APPLIQUEE;
+    }
+
+    private Issue demander(final String ligne) {
+        Enfant enfant = this.app.trouverEnfant(this.champs.get(1));
+        if (enfant == null) {
+            return Issue.rejet("enfant inconnu");
+        }
+        Instrument instrument = this.app.trouverInstrument(this.champs.get(2));
+        if (instrument == null) {
+            return Issue.rejet("instrument inconnu");
+        }
+        this.planificateur.ajouterDemande(enfant, instrument, ligne);
+        return Issue.PLANIFIEE;
+    }
+
+    private Issue fixerCapacite() {
+        if (this.champs.size() != 4) {
+            return Issue.rejet("nombre de colonnes incorrect");
+        }
+        Instrument instrument = this.app.trouverInstrument(this.champs.get(1));
+        if (instrument == null) {
+            return Issue.rejet("instrument inconnu");
+        }
+        Jour jour;
+        try {
+            jour = Jour.valueOfString(this.champs.get(2).toLowerCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException iae) {
+            return Issue.rejet("jour inconnu");
+        }
+        int capacite;
+        try {
+            capacite = PlacesInstrument.analyserCapacite(this.champs.get(3));
+        }
+        catch (IllegalArgumentException iae) {
+            return Issue.rejet("capacité invalide");
+        }
+        this.service.fixerCapacite(instrument, jour, capacite);
+        return Issue.APPLIQUEE;
+    }
+
+    private Issue inscrire() {
+        if (this.champs.size() != 4) {
+            return Issue.rejet("nombre de colonnes incorrect");
+        }
+        Jour jour;
+        try {
+            jour = Jour.valueOfString(this.champs.get(3).toLowerCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException iae) {
+            return Issue.rejet("jour inconnu");
+        }
+        ResultatInscription resultat = this.service.inscrire(this.champs.get(1), this.champs.get(2), jour);
+        return (resultat.estAcceptee() || resultat.estEnAttente()) ? Issue.APPLIQUEE : Issue.rejet(resultat.getMotif());
+    }
+
+    /**
+     * Issue du traitement d'une ligne.
+     */
+    private static final class Issue {
+
+        private static final Issue APPLIQUEE = new Issue(false, null);
+        private static final Issue PLANIFIEE = new Issue(true, null);
+
+        /**
+         * La ligne est une demande confiée au {@link Planificateur} : elle
+         * n'est comptée qu'une fois la planification faite.
+         */
+        private final boolean planifiee;
+
+        /**
+         * Le motif du rejet, ou null si la ligne est acceptée.
+         */
+        private final String motif;
+
+        private Issue(final boolean planifiee, final String motif) {
+            this.planifiee = planifiee;
+            this.motif = motif;
+        }
+
+        private static Issue rejet(final String motif) {
+            return new Issue(false, motif);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * La classe Instantane donne une vue cohérente et figée de
+ * l'{@link Application}, à une version donnée (voir {@link HorlogeVersions}).
+ * <p>
+ * Un instantané ne contient aucune copie : il lit les données de
+ * l'application et écarte celles qui ont été créées après sa version. Les
+ * mutations concurrentes ne sont ni bloquées ni visibles : deux parcours du
+ * même instantané donnent le même résultat, et chaque séance visible depuis
+ * un enfant l'est aussi depuis son instrument.
+ * <p>
+ * Un instantané s'obtient par {@link Application#instantane()} et doit être
+ * fermé dès qu'il n'est plus lu : tant qu'un instantané est ouvert, les
+ * séances retirées gardent leur case (voir {@link StockSeances}). Aucune
+ * mutation n'attend sa fermeture.
+ */
+public final class Instantane implements AutoCloseable {
+
+    private final Map<String, Enfant> enfants;
+    private final Map<String, Instrument> instruments;
+    private final StockSeances stock;
+    private final long version;
+    private boolean ferme = false;
+
+    Instantane(final Map<String, Enfant> enfants, final Map<String, Instrument> instruments,
+               final StockSeances stock, final long version) {
+        this.enfants = enfants;
+        this.instruments = instruments;
+        this.stock = stock;
+        this.version = version;
+    }
+
+    /**
+     * Ferme l'instantané. Les appels suivants sont sans effet.
+     */
+    @Override
+    public void close() {
+        if (!this.ferme) {
+            this.ferme = true;
+            this.stock.fermerLecture();
+        }
+    }
+
+    /**
+     * @return La version de l'application observée par l'instantané.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Accède au stock des séances, pour les parcours qui ne construisent
+     * aucune {@link Seance} (voir {@link Requete}).
+     */
+    StockSeances getStock() {
+        return this.stock;
+    }
+
+    /**
+     * Donne l'enfant de nom indiqué, s'il est visible dans l'instantané.
+     */
+    Enfant getEnfant(final String nom) {
+        Enfant enfant = this.enfants.get(nom);
+        return (enfant != null && this.estVisible(enfant.getVersion())) ? enfant : null;
+    }
+
+    /**
+     * Donne l'instrument de nom indiqué, s'il est visible dans l'instantané.
+     */
+    Instrument getInstrument(final String nom) {
+        Instrument instrument = this.instruments.get(nom);
+        return (instrument != null && this.estVisible(instrument.getVersion())) ? instrument : null;
+    }
+
+    /**
+     * Indique si une donnée estampillée d'une version est visible à une
+     * version de l'application. La version 0 désigne une donnée en cours
+     * d'écriture.
+     *
+     * @param versionDonnee La version de la donnée.
+     *
+     * @param version La version de l'application observée.
+     *
+     * @return true si la donnée est visible.
+     */
+    static boolean estVisible(final long versionDonnee, final long version) {
+        return versionDonnee != 0 && versionDonnee <= version;
+    }
+
+    /**
+     * Indique si une séance, estampillée de la version de sa création et de
+     * celle de son retrait, est visible à une version de l'application : elle
+     * doit avoir été créée, et pas encore retirée, à cette version.
+     *
+     * @param versionDonnee La version de la création de la séance.
+     *
+     * @param retrait La version de son retrait ; 0 si elle est en cours.
+     *
+     * @param version La version de l'application observée.
+     *
+     * @return true si la séance est visible.
+     */
+    static boolean estVisible(final long versionDonnee, final long retrait, final long version) {
+        return Instantane.estVisible(versionDonnee, version) && !Instantane.estVisible(retrait, version);
+    }
+
+    boolean estVisible(final long versionDonnee) {
+        return Instantane.estVisible(versionDonnee, this.version);
+    }
+
+    boolean estVisibleSeance(final long versionDonnee, final long retrait) {
+        return Instantane.estVisible(versionDonnee, retrait, this.version);
+    }
+
+    /**
+     * Donne la version de la dernière mutation visible d'un enfant : sa
+     * création, l'une de ses séances ou sa dernière désinscription.
+     *
+     * @param enfant Un enfant de l'instantané.
+     *
+     * @return La plus grande version visible parmi celles de l'enfant.
+     */
+    long getVersionMax(final Enfant enfant) {
+        long max = enfant.getVersion();
+        long versionRetrait = enfant.getVersionRetrait();
+        if (this.estVisible(versionRetrait)) {
+            max = Math.max(max, versionRetrait);
+        }
+        for (int c = 0, total = enfant.getNbCases(); c < total; ++c) {
+            long versionSeance = enfant.versionSeance(c);
+            if (this.estVisible(versionSeance)) {
+                max = Math.max(max, versionSeance);
+            }
+            long retraitSeance = enfant.retraitSeance(c);
+            if (this.estVisible(retraitSeance)) {
+                max = Math.max(max, retraitSeance);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Accède aux enfants de l'instantané.
+     *
+     * @return Une vue non modifiable des enfants.
+     */
+    public Collection<Enfant> getEnfants() {
+        return this.filtrer(this.enfants.values(), Enfant::getVersion);
+    }
+
+    /**
+     * Accède aux instruments de l'instantané.
+     *
+     * @return Une vue non modifiable des instruments.
+     */
+    public Collection<Instrument> getInstruments() {
+        return this.filtrer(this.instruments.values(), Instrument::getVersion);
+    }
+
+    /**
+     * Compte les séances d'un enfant, sans les construire.
+     *
+     * @param enfant Un enfant de l'instantané.
+     *
+     * @return Le nombre de séances de l'enfant visibles dans l'instantané.
+     */
+    public int getNbSeances(final Enfant enfant) {
+        int nb = 0;
+        for (int c = 0, total = enfant.getNbCases(); c < total; ++c) {
+            if (this.estVisibleSeance(enfant.versionSeance(c), enfant.retraitSeance(c))) {
+                ++nb;
+            }
+        }
+        return nb;
+    }
+
+    /**
+     * Compte les séances d'un instrument, sans les construire.
+     *
+     * @param instrument Un instrument de l'instantané.
+     *
+     * @return Le nombre de séances de l'instrument visibles dans
+     *     l'instantané.
+     */
+    public int getNbSeances(final Instrument instrument) {
+        int nb = 0;
+        for (int c = 0, total = instrument.getNbCases(); c < total; ++c) {
+            if (this.estVisibleSeance(instrument.versionSeance(c), instrument.retraitSeance(c))) {
+                ++nb;
+            }
+        }
+        return nb;
+    }
+
+    /**
+     * Donne les séances d'un enfant, dans l'ordre d'inscription.
+     *
+     * @param enfant Un enfant de l'instantané.
+     *
+     * @return Les séances de l'enfant visibles dans l'instantané.
+     */
+    public List<Seance> getSeances(final Enfant enfant) {
+        List<Seance> seances = new ArrayList<>(Enfant.MAX_SEANCES);
+        int nb = enfant.getNbCases();
+        for (int c = 0; c < nb; ++c) {
+            if (this.estVisibleSeance(enfant.versionSeance(c), enfant.retraitSeance(c))) {
+                seances.add(new Seance(enfant.jourSeance(c), enfant, enfant.instrumentSeance(c)));
+            }
+        }
+        return seances;
+    }
+
+    /**
+     * Donne les séances d'un instrument, dans l'ordre d'inscription.
+     *
+     * @param instrument Un instrument de l'instantané.
+     *
+     * @return Les séances de l'instrument visibles dans l'instantané.
+     */
+    public List<Seance> getSeances(final Instrument instrument) {
+        int nb = instrument.getNbCases();
+        List<Seance> seances = new ArrayList<>(nb);
+        for (int c = 0; c < nb; ++c) {
+            if (this.estVisibleSeance(instrument.versionSeance(c), instrument.retraitSeance(c))) {
+                seances.add(new Seance(instrument.jourSeance(c), instrument.enfantSeance(c), instrument));
+            }
+        }
+        return seances;
+    }
+
+    private <T> Collection<T> filtrer(final Collection<T> tous, final ToLongFunction<T> version) {
+        return new AbstractCollection<T>() {
+
+            @Override
+            public Iterator<T> iterator() {
+                return tous.stream()
+                        .filter(element -> Instantane.this.estVisible(version.applyAsLong(element)))
+                        .iterator();
+            }
+
+            @Override
+            public int size() {
+                int taille = 0;
+                for (T element : tous) {
+                    if (Instantane.this.estVisible(version.applyAsLong(element))) {
+                        ++taille;
+                    }
+                }
+                return taille;
+            }
+        };
+    }
+}
@@ -1,7 +1,8 @@
 package fr.uga.iut2.info.decouverte_instruments;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  *
@@ -11,19 +12,124 @@ public class Instrument implements Serializable {
 
     private static final long serialVersionUID = 1L;  // nécessaire pour la sérialisation
     private final String nom;
-    ArrayList<Seance> seances = new ArrayList<>();
+
+    // les séances sont rangées dans le StockSeances de l'application
+    private transient StockSeances stock;
+    private transient int id;
+    private transient long version;
+    private transient PlacesInstrument places;
 
 
     public Instrument(String nom) {
         this.nom = nom;
     }
 
+    /**
+     * Rattache l'instrument au stock de séances de l'application. Les
+     * places de l'instrument sont illimitées jusqu'à ce qu'une capacité soit
+     * fixée.
+     *
+     * @param stock Le stock de séances.
+     *
+     * @param id L'identifiant de l'instrument dans le stock.
+     *
+     * @param version La version de la mutation qui a créé l'instrument (voir
+     *     {@link HorlogeVersions}).
+     */
+    void attacher(StockSeances stock, int id, long version) {
+        this.stock = stock;
+        this.id = id;
+        this.version = version;
+        this.places = new PlacesInstrument();
+    }
+
+    int getId() {
+        return this.id;
+    }
+
+    long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Accède aux capacités, aux places occupées et aux listes d'attente de
+     * l'instrument, par jour.
+     */
+    PlacesInstrument getPlaces() {
+        return this.places;
+    }
+
     public String getNom() {
         return nom;
     }
 
-    public ArrayList<Seance> getSeances() {
-        return seances;
+    /**
+     * Accède aux séances de l'instrument.
+     *
+     * @return Une copie non modifiable des séances, dans l'ordre
+     *     d'inscription.
+     */
+    public List<Seance> getSeances() {
+        if (this.stock == null) {
+            return Collections.emptyList();
+        }
+        return this.stock.seancesInstrument(this.id);
+    }
+
+    public int getNbSeances() {
+        return (this.stock == null) ? 0 : this.stock.nbSeancesInstrument(this.id);
+    }
+
+    /**
+     * Compte les séances de l'instrument un jour donné, en temps constant.
+     *
+     * @param jour Le jour considéré.
+     *
+     * @return Le nombre d'enfants inscrits à l'instrument ce jour-là.
+     */
+    public int getNbSeances(Jour jour) {
+        return (this.stock == null) ? 0 : this.stock.nbSeancesInstrument(this.id, jour);
+    }
+
+    /**
+     * Donne le nombre de cases occupées par les séances de l'instrument, y
+     * compris par des séances retirées que gardent encore les
+     * {@link Instantane} ouverts.
+     */
+    int getNbCases() {
+        return (this.stock == null) ? 0 : this.stock.nbCasesInstrument(this.id);
+    }
+
+    /**
+     * Donne l'enfant de la séance de la case indiquée, sans construire de
+     * {@link Seance}.
+     */
+    Enfant enfantSeance(int c) {
+        return this.stock.enfant(this.id, c);
+    }
+
+    /**
+     * Donne le jour de la séance de la case indiquée, sans construire de
+     * {@link Seance}.
+     */
+    Jour jourSeance(int c) {
+        return this.stock.jourInstrument(this.id, c);
+    }
+
+    /**
+     * Donne la version de la séance de la case indiquée ; 0 si elle est en
+     * cours d'écriture.
+     */
+    long versionSeance(int c) {
+        return this.stock.versionInstrument(this.id, c);
+    }
+
+    /**
+     * Donne la version du retrait de la séance de la case indiquée ; 0 si
+     * elle est en cours.
+     */
+    long retraitSeance(int c) {
+        return this.stock.retraitInstrument(this.id, c);
     }
 
     public String getInstrument() {
@@ -34,8 +140,4 @@ public class Instrument implements Serializable {
     public String toString() {
         return this.nom;
     }
-
-    public void addSeance(Seance seance) {
-        this.seances.add(seance);
-    }
 }
@@ -0,0 +1,513 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * La classe Journal est un journal d'écriture anticipée des mutations de
+ * l'{@link Application}.
+ * <p>
+ * Chaque mutation (création d'un instrument ou d'un enfant, ajout ou retrait
+ * d'une séance, capacité fixée, entrée ou sortie d'une liste d'attente) est
+ * ajoutée en fin de fichier sous la forme d'un petit
+ * enregistrement binaire : le coût d'une sauvegarde est proportionnel à la
+ * taille de la modification, et non à celle des données.
+ * Périodiquement, le journal est replié dans un instantané complet par
+ * {@link Persisteur#sauverEtat(Application)}, puis amputé des
+ * enregistrements que l'instantané contient (voir {@link #repere()}).
+ * <p>
+ * Un enregistrement est forcé sur le disque dès qu'il est écrit, ou à la
+ * fin du lot qui le contient : le coût d'une mutation comprend donc une
+ * synchronisation du fichier, partagée par tout un lot.
+ * <p>
+ * Le rejeu est idempotent : un enregistrement dont l'effet est déjà présent
+ * dans l'instantané est ignoré. Une interruption entre l'écriture de
+ * l'instantané et la troncature du journal ne corrompt donc pas l'état.
+ * Une séance que les règles d'inscription refusent au rejeu est écartée et
+ * signalée sur la sortie d'erreur.
+ * <p>
+ * Les méthodes d'écriture sont synchronisées : les enregistrements de
+ * plusieurs tâches ne s'entrelacent jamais.
+ * <p>
+ * Une tâche peut grouper l'écriture de ses enregistrements en lots (voir
+ * {@link #debuterLot()}). Un lot ne concerne que la tâche qui l'a ouvert : les
+ * enregistrements des autres tâches sont écrits aussitôt, précédés de ceux
+ * déjà accumulés, si bien que le fichier suit toujours l'ordre des mutations.
+ */
+public final class Journal implements Closeable {
+
+    /**
+     * Nombre d'enregistrements au-delà duquel le journal devrait être replié
+     * dans un instantané.
+     */
+    public static final int SEUIL_COMPACTION = 1000;
+
+    // attention à ne jamais renuméroter : ces valeurs sont écrites sur disque
+    private static final byte INSTRUMENT_CREE = 1;
+    private static final byte ENFANT_CREE = 2;
+    private static final byte SEANCE_AJOUTEE = 3;
+    private static final byte SEANCE_RETIREE = 4;
+    private static final byte CAPACITE_FIXEE = 5;
+    private static final byte ATTENTE_AJOUTEE = 6;
+    private static final byte ATTENTE_RETIREE = 7;
+
+    private static final String SUFFIXE_TEMPORAIRE = ".tmp";
+
+    private final Path chemin;
+    private FileOutputStream fos;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream tampon;
+    private int nbEnregistrements;
+    private int nbAuRepere;
+    private int nbEnAttente;
+    // profondeur des lots ouverts par chaque tâche
+    private final Map<Thread, Integer> lots = new HashMap<>();
+
+    private Journal(final Path chemin, final FileOutputStream fos, final int nbEnregistrements) {
+        this.chemin = chemin;
+        this.fos = fos;
+        this.tampon = new ByteArrayOutputStream(64);
+        this.out = new DataOutputStream(this.tampon);
+        this.nbEnregistrements = nbEnregistrements;
+    }
+
+    /**
+     * Rejoue le journal sur l'application puis l'ouvre en ajout.
+     * <p>
+     * Un enregistrement tronqué en fin de fichier (arrêt brutal pendant une
+     * écriture) est ignoré et retiré du fichier.
+     *
+     * @param chemin Le chemin du fichier journal.
+     *
+     * @param app L'application sur laquelle rejouer le journal.
+     *
+     * @return Le journal, prêt à recevoir de nouveaux enregistrements.
+     *
+     * @throws IOException si le journal est corrompu ou qu'une erreur
+     *     d'entrée/sortie survient.
+     */
+    public static Journal ouvrir(final String chemin, final Application app) throws IOException {
+        Path path = Paths.get(chemin);
+        byte[] contenu;
+        try {
+            contenu = Files.readAllBytes(path);
+        }
+        catch (NoSuchFileException ignored) {
+            contenu = new byte[0];
+        }
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(contenu);
+        DataInputStream in = new DataInputStream(bis);
+        int nbLus = 0;
+        long tailleValide = 0;
+        try {
+            while (bis.available() > 0) {
+                Journal.rejouer(in, app);
+                tailleValide = contenu.length - bis.available();
+                ++nbLus;
+            }
+        }
+        catch (EOFException ignored) {
+            // dernier enregistrement incomplet : il est abandonné
+        }
+
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        FileOutputStream fos = new FileOutputStream(chemin, true);
+        fos.getChannel().truncate(tailleValide);
+        return new Journal(path, fos, nbLus);
+    }
+
+    private static void rejouer(final DataInputStream in, final Application app) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case Journal.INSTRUMENT_CREE: {
+                String nom = in.readUTF();
+                if (app.getInstrument(nom) == null) {
+                    app.enregistrerInstrument(nom);
+                }
+                break;
+            }
+            case Journal.ENFANT_CREE: {
+                String nom = in.readUTF();
+                if (app.getEnfant(nom) == null) {
+                    app.enregistrerEnfant(nom);
+                }
+                break;
+            }
+            case Journal.SEANCE_AJOUTEE: {
+                Enfant enfant = app.getEnfant(in.readUTF());
+                Instrument instrument = app.getInstrument(in.readUTF());
+                int ordinal = in.readUnsignedByte();
+                if (enfant == null || instrument == null || ordinal >= Jour.values().length) {
+                    throw new IOException("Journal corrompu : séance incohérente.");
+                }
+                // une séance déjà présente dans l'instantané est ignorée ; une
+                // séance que les règles refusent trahit un journal qui diverge
+                // de l'instantané : elle est écartée, mais signalée
+                Jour jour = Jour.values()[ordinal];
+                ResultatInscription resultat = ServiceInscription.verifier(enfant, instrument, jour);
+                if (resultat.estAcceptee()) {
+                    app.enregistrerSeance(enfant, instrument, jour);
+                } else if (!Journal.estInscrit(enfant, instrument, jour)) {
+                    System.err.println("Journal : séance de " + enfant.getNom() + " (" + instrument.getNom()
+                            + ", " + jour + ") ignorée au rejeu : " + resultat.getMotif() + ".");
+                    System.err.flush();
+                }
+                break;
+            }
+            case Journal.SEANCE_RETIREE: {
+                Enfant enfant = app.getEnfant(in.readUTF());
+                Instrument instrument = app.getInstrument(in.readUTF());
+                if (enfant == null || instrument == null) {
+                    throw new IOException("Journal corrompu : séance incohérente.");
+                }
+                app.enregistrerRetrait(enfant, instrument);
+                break;
+            }
+            case Journal.CAPACITE_FIXEE: {
+                Instrument instrument = app.getInstrument(in.readUTF());
+                int ordinal = in.readUnsignedByte();
+                int capacite = in.readInt();
+                if (instrument == null || ordinal >= Jour.values().length || capacite < 0) {
+                    throw new IOException("Journal corrompu : capacité incohérente.");
+                }
+                app.enregistrerCapacite(instrument, Jour.values()[ordinal], capacite);
+                break;
+            }
+            case Journal.ATTENTE_AJOUTEE:
+            case Journal.ATTENTE_RETIREE: {
+                Enfant enfant = app.getEnfant(in.readUTF());
+                Instrument instrument = app.getInstrument(in.readUTF());
+                int ordinal = in.readUnsignedByte();
+                if (enfant == null || instrument == null || ordinal >= Jour.values().length) {
+                    throw new IOException("Journal corrompu : demande en attente incohérente.");
+                }
+                // l'ajout et le retrait d'un ensemble sont idempotents
+                if (type == Journal.ATTENTE_AJOUTEE) {
+                    app.enregistrerAttente(enfant, instrument, Jour.values()[ordinal]);
+                } else {
+                    app.enregistrerFinAttente(enfant, instrument, Jour.values()[ordinal]);
+                }
+                break;
+            }
+            default:
+                throw new IOException("Journal corrompu : type d'enregistrement " + type + " inconnu.");
+        }
+    }
+
+    private static boolean estInscrit(final Enfant enfant, final Instrument instrument, final Jour jour) {
+        for (Seance seance : enfant.getSeances()) {
+            if (seance.getInstrument().equals(instrument.getNom()) && seance.getJour().equals(jour.toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Enregistre la création d'un instrument.
+     *
+     * @param nom Le nom de l'instrument créé.
+     */
+    public synchronized void instrumentCree(final String nom) {
+        try {
+            this.out.writeByte(Journal.INSTRUMENT_CREE);
+            this.out.writeUTF(nom);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        this.ecrire();
+    }
+
+    /**
+     * Enregistre la création d'un enfant.
+     *
+     * @param nom Le nom de l'enfant créé.
+     */
+    public synchronized void enfantCree(final String nom) {
+        try {
+            this.out.writeByte(Journal.ENFANT_CREE);
+            this.out.writeUTF(nom);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        this.ecrire();
+    }
+
+    /**
+     * Enregistre l'ajout d'une séance.
+     *
+     * @param seance La séance ajoutée.
+     */
+    public synchronized void seanceAjoutee(final Seance seance) {
+        try {
+            this.out.writeByte(Journal.SEANCE_AJOUTEE);
+            this.out.writeUTF(seance.getEnfant());
+            this.out.writeUTF(seance.getInstrument());
+            this.out.writeByte(Jour.valueOfString(seance.getJour()).ordinal());
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        this.ecrire();
+    }
+
+    /**
+     * Enregistre le retrait d'une séance.
+     *
+     * @param enfant Le nom de l'enfant désinscrit.
+     *
+     * @param instrument Le nom de l'instrument.
+     */
+    public synchronized void seanceRetiree(final String enfant, final String instrument) {
+        try {
+            this.out.writeByte(Journal.SEANCE_RETIREE);
+            this.out.writeUTF(enfant);
+            this.out.writeUTF(instrument);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        this.ecrire();
+    }
+
+    /**
+     * Enregistre la capacité d'un instrument un jour donné.
+     *
+     * @param instrument Le nom de l'instrument.
+     *
+     * @param jour Le jour concerné.
+     *
+     * @param capacite Le nombre de places (voir
+     *     {@link PlacesInstrument#ILLIMITEE}).
+     */
+    public synchronized void capaciteFixee(final String instrument, final Jour jour, final int capacite) {
+        try {
+            this.out.writeByte(Journal.CAPACITE_FIXEE);
+            this.out.writeUTF(instrument);
+            this.out.writeByte(jour.ordinal());
+            this.out.writeInt(capacite);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        this.ecrire();
+    }
+
+    /**
+     * Enregistre l'entrée d'un enfant en liste d'attente.
+     *
+     * @param demande La séance demandée.
+     */
+    public synchronized void attenteAjoutee(final Seance demande) {
+        this.ecrireDemande(Journal.ATTENTE_AJOUTEE, demande);
+    }
+
+    /**
+     * Enregistre la sortie d'un enfant d'une liste d'attente.
+     *
+     * @param demande La séance qui était demandée.
+     */
+    public synchronized void attenteRetiree(final Seance demande) {
+        this.ecrireDemande(Journal.ATTENTE_RETIREE, demande);
+    }
+
+    private void ecrireDemande(final byte type, final Seance demande) {
+        try {
+            this.out.writeByte(type);
+            this.out.writeUTF(demande.getEnfant());
+            this.out.writeUTF(demande.getInstrument());
+            this.out.writeByte(Jour.valueOfString(demande.getJour()).ordinal());
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+        this.ecrire();
+    }
+
+    /**
+     * Écrit l'enregistrement en cours en une seule opération, afin de limiter
+     * le risque d'enregistrement tronqué. Si la tâche appelante a ouvert un
+     * lot, l'enregistrement est seulement accumulé jusqu'à
+     * {@link #terminerLot()}.
+     */
+    private void ecrire() {
+        ++this.nbEnregistrements;
+        ++this.nbEnAttente;
+        if (!this.lots.containsKey(Thread.currentThread())) {
+            this.vidanger();
+        }
+    }
+
+    /**
+     * Écrit les enregistrements accumulés et attend qu'ils soient sur le
+     * disque : une mutation journalisée survit à une coupure de courant.
+     */
+    private void vidanger() {
+        if (this.tampon.size() == 0) {
+            return;
+        }
+        try {
+            this.tampon.writeTo(this.fos);
+            this.fos.flush();
+            // les métadonnées du fichier ne sont pas nécessaires au rejeu :
+            // seule la taille compte, et elle est forcée avec les données
+            this.fos.getChannel().force(false);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException("Erreur lors de l'écriture du journal.", ioe);
+        }
+        finally {
+            this.tampon.reset();
+            this.nbEnAttente = 0;
+        }
+    }
+
+    /**
+     * Ouvre un lot pour la tâche appelante : ses enregistrements suivants
+     * sont accumulés en mémoire et écrits en une seule fois par
+     * {@link #terminerLot()}. Les lots s'imbriquent : chaque appel doit être
+     * suivi d'un appel à {@link #terminerLot()} par la même tâche.
+     */
+    public synchronized void debuterLot() {
+        this.lots.merge(Thread.currentThread(), 1, Integer::sum);
+    }
+
+    /**
+     * Ferme le dernier lot ouvert par la tâche appelante et écrit en une
+     * seule opération les enregistrements accumulés, y compris ceux des lots
+     * englobants : ces derniers restent ouverts.
+     *
+     * @throws IllegalStateException si la tâche appelante n'a ouvert aucun
+     *     lot.
+     */
+    public synchronized void terminerLot() {
+        Thread tache = Thread.currentThread();
+        Integer profondeur = this.lots.get(tache);
+        if (profondeur == null) {
+            throw new IllegalStateException("Aucun lot ouvert par la tâche.");
+        }
+        if (profondeur == 1) {
+            this.lots.remove(tache);
+        } else {
+            this.lots.put(tache, profondeur - 1);
+        }
+        this.vidanger();
+    }
+
+    /**
+     * Indique si le journal a atteint une taille justifiant sa compaction.
+     *
+     * @return true si le journal contient au moins
+     *     {@value Journal#SEUIL_COMPACTION} enregistrements.
+     */
+    public synchronized boolean doitEtreCompacte() {
+        return this.nbEnregistrements >= Journal.SEUIL_COMPACTION;
+    }
+
+    /**
+     * Vide le journal, une fois son contenu replié dans un instantané.
+     *
+     * @throws IOException si une erreur d'entrée/sortie survient.
+     */
+    public synchronized void vider() throws IOException {
+        FileChannel canal = this.fos.getChannel();
+        canal.truncate(0);
+        canal.force(true);
+        this.nbEnregistrements = this.nbEnAttente;
+    }
+
+    /**
+     * Marque la fin des enregistrements déjà écrits dans le fichier. Les
+     * enregistrements accumulés dans des lots, pas encore écrits, sont
+     * postérieurs au repère.
+     *
+     * @return La position du repère, à passer à {@link #retirerAvant(long)}.
+     *
+     * @throws IOException si une erreur d'entrée/sortie survient.
+     */
+    public synchronized long repere() throws IOException {
+        this.nbAuRepere = this.nbEnregistrements - this.nbEnAttente;
+        return this.fos.getChannel().size();
+    }
+
+    /**
+     * Retire du journal les enregistrements antérieurs au repère, une fois
+     * repliés dans un instantané. Les enregistrements postérieurs sont
+     * recopiés dans un nouveau fichier qui remplace l'ancien de façon
+     * atomique : un arrêt brutal laisse l'un ou l'autre fichier, complet.
+     *
+     * @param repere Une position renvoyée par {@link #repere()}.
+     *
+     * @return Le nombre d'enregistrements retirés.
+     *
+     * @throws IOException si une erreur d'entrée/sortie survient.
+     */
+    public synchronized int retirerAvant(final long repere) throws IOException {
+        long taille = this.fos.getChannel().size();
+        if (repere >= taille) {
+            int nbRetires = this.nbEnregistrements - this.nbEnAttente;
+            this.vider();
+            return nbRetires;
+        }
+        Path temporaire = Paths.get(this.chemin + Journal.SUFFIXE_TEMPORAIRE);
+        try (
+            FileChannel source = FileChannel.open(this.chemin, StandardOpenOption.READ);
+            FileChannel cible = FileChannel.open(temporaire, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ){
+            long position = repere;
+            while (position < taille) {
+                position += source.transferTo(position, taille - position, cible);
+            }
+            cible.force(true);
+        }
+        Files.move(temporaire, this.chemin, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.fos.close();
+        this.fos = new FileOutputStream(this.chemin.toFile(), true);
+        this.nbEnregistrements = Math.max(0, this.nbEnregistrements - this.nbAuRepere);
+        return this.nbAuRepere;
+    }
+
+    /**
+     * @return Le nombre d'enregistrements du journal, y compris ceux du lot
+     *     en cours.
+     */
+    public synchronized int getNbEnregistrements() {
+        return this.nbEnregistrements;
+    }
+
+    /**
+     * @return La taille du fichier journal, en octets.
+     *
+     * @throws IOException si une erreur d'entrée/sortie survient.
+     */
+    public synchronized long getTaille() throws IOException {
+        return this.fos.getChannel().size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.fos.close();
+    }
+}
@@ -0,0 +1,195 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * La classe Json regroupe le strict nécessaire à l'écriture et à la lecture
+ * de JSON : l'échappement des chaînes, et la lecture d'un objet plat dont
+ * toutes les valeurs sont des chaînes (le seul cas utile à l'API HTTP).
+ */
+final class Json {
+
+    private Json() {
+        throw new IllegalStateException("Classe utilitaire.");
+    }
+
+    /**
+     * Ajoute une chaîne JSON, guillemets compris.
+     *
+     * @param sb Le tampon dans lequel écrire.
+     *
+     * @param valeur La chaîne à écrire.
+     *
+     * @return Le tampon, pour chaîner les appels.
+     */
+    static StringBuilder ajouterChaine(final StringBuilder sb, final String valeur) {
+        sb.append('"');
+        for (int i = 0; i < valeur.length(); ++i) {
+            char c = valeur.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00");
+                        sb.append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"');
+    }
+
+    /**
+     * Construit un objet JSON à partir de couples clé-valeur.
+     *
+     * @param clesValeurs Les clés et les valeurs, en alternance.
+     *
+     * @return L'objet JSON.
+     */
+    static String objet(final String... clesValeurs) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i + 1 < clesValeurs.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            Json.ajouterChaine(sb, clesValeurs[i]).append(':');
+            Json.ajouterChaine(sb, clesValeurs[i + 1]);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Lit un objet JSON plat dont toutes les valeurs sont des chaînes.
+     *
+     * @param texte Le texte à lire.
+     *
+     * @return Les couples clé-valeur, dans l'ordre du texte.
+     *
+     * @throws IllegalArgumentException si le texte n'est pas un tel objet.
+     */
+    static Map<String, String> lireObjet(final String texte) {
+        Lecteur lecteur = new Lecteur(texte);
+        Map<String, String> objet = new LinkedHashMap<>();
+        lecteur.attendre('{');
+        if (!lecteur.consommer('}')) {
+            do {
+                String cle = lecteur.chaine();
+                lecteur.attendre(':');
+                objet.put(cle, lecteur.chaine());
+            } while (lecteur.consommer(','));
+            lecteur.attendre('}');
+        }
+        lecteur.attendreFin();
+        return objet;
+    }
+
+    private static final class Lecteur {
+
+        private final String texte;
+        private int position = 0;
+
+        Lecteur(final String texte) {
+            this.texte = texte;
+        }
+
+        private void sauterBlancs() {
+            while (this.position < this.texte.length() && Character.isWhitespace(this.texte.charAt(this.position))) {
+                ++this.position;
+            }
+        }
+
+        boolean consommer(final char attendu) {
+            this.sauterBlancs();
+            if (this.position < this.texte.length() && this.texte.charAt(this.position) == attendu) {
+                ++this.position;
+                return true;
+            }
+            return false;
+        }
+
+        void attendre(final char attendu) {
+            if (!this.consommer(attendu)) {
+                throw new IllegalArgumentException("« " + attendu + " » attendu en position " + this.position + ".");
+            }
+        }
+
+        void attendreFin() {
+            this.sauterBlancs();
+            if (this.position != this.texte.length()) {
+                throw new IllegalArgumentException("Texte inattendu en position " + this.position + ".");
+            }
+        }
+
+        String chaine() {
+            this.attendre('"');
+            StringBuilder sb = new StringBuilder();
+            while (this.position < this.texte.length()) {
+                char c = this.texte.charAt(this.position++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (this.position >= this.texte.length()) {
+                    break;
+                }
+                char e = this.texte.charAt(this.position++);
+                switch (e) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        sb.append(e);
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'u':
+                        if (this.position + 4 > this.texte.length()) {
+                            throw new IllegalArgumentException("Séquence \\u incomplète.");
+                        }
+                        try {
+                            sb.append((char) Integer.parseInt(this.texte.substring(this.position, this.position + 4), 16));
+                        }
+                        catch (NumberFormatException nfe) {
+                            throw new IllegalArgumentException("Séquence \\u invalide.");
+                        }
+                        this.position += 4;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Échappement \\" + e + " invalide.");
+                }
+            }
+            throw new IllegalArgumentException("Chaîne non terminée.");
+        }
+    }
+}
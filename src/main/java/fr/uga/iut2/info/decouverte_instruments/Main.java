@@ -1,8 +1,51 @@
 package fr.uga.iut2.info.decouverte_instruments;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Point d'entrée de l'application.
+ * <p>
+ * Sans argument, l'application affiche le menu interactif. Avec l'option
+ * {@code --lot [script]}, elle exécute sans interaction le script indiqué,
+ * ou l'entrée standard si le script est absent ou vaut {@code -} (voir
+ * {@link ExecutionLot}). Avec l'option {@code --serveur [port]}, elle
+ * expose l'API HTTP/JSON (voir {@link ServeurHttp}) jusqu'à son arrêt par un
+ * signal, l'état étant alors sauvegardé. Avec l'option
+ * {@code --clore-saison nouvelle}, elle archive la saison courante et ouvre
+ * la saison indiquée (voir {@link Persisteur#cloreSaison(Application, String)}),
+ * puis s'arrête. Avec l'option {@code --associations [port]}, elle expose
+ * par HTTP les associations du dossier
+ * "{@value HebergeurAssociations#DOSSIER_PAR_DEFAUT}", chargées à la demande
+ * (voir {@link HebergeurAssociations}) ; les propriétés système
+ * {@value Main#PROPRIETE_BUDGET} (en mégaoctets) et
+ * {@value Main#PROPRIETE_INACTIVITE} (en secondes) règlent leur
+ * déchargement.
+ * <p>
+ * Hors du mode lot, l'état est aussi enregistré en arrière-plan (voir
+ * {@link SauvegardePeriodique}) ; un script n'est persisté qu'une fois, à
+ * sa fin (voir {@link ExecutionLot}). Les propriétés système
+ * {@value Main#PROPRIETE_INTERVALLE} (en secondes, 0 pour désactiver) et
+ * {@value Main#PROPRIETE_SEUIL} (en nombre de mutations) règlent sa
+ * fréquence.
+ * <p>
+ * Les {@link Metriques} de l'application sont exposées par le serveur HTTP ;
+ * la propriété système {@value Main#PROPRIETE_RELEVE} (en secondes, 0 par
+ * défaut) les résume aussi périodiquement sur la sortie d'erreur.
  *
  * @author Raphaël Bleuse <raphael.bleuse@univ-grenoble-alpes.fr>
  */
@@ -10,8 +53,27 @@ public final class Main {
 
     public static final int EXIT_ERR_LOAD = 2;
     public static final int EXIT_ERR_SAVE = 3;
+    public static final int EXIT_ERR_LOT = 4;
+    public static final int EXIT_ERR_SAISON = 5;
+
+    private static final String OPTION_LOT = "--lot";
+    private static final String OPTION_SERVEUR = "--serveur";
+    private static final String OPTION_CLORE_SAISON = "--clore-saison";
+    private static final String OPTION_ASSOCIATIONS = "--associations";
+    private static final int PORT_PAR_DEFAUT = 8080;
+    private static final int TAILLE_TAMPON_SORTIE = 1 << 16;
+    private static final String PROPRIETE_INTERVALLE = "sauvegarde.intervalle";
+    private static final String PROPRIETE_SEUIL = "sauvegarde.seuil";
+    private static final String PROPRIETE_RELEVE = "metriques.intervalle";
+    private static final String PROPRIETE_BUDGET = "associations.budget";
+    private static final String PROPRIETE_INACTIVITE = "associations.inactivite";
 
     public static void main(String[] args) {
+        if (args.length > 0 && Main.OPTION_ASSOCIATIONS.equals(args[0])) {
+            Main.heberger((args.length > 1) ? Integer.parseInt(args[1]) : Main.PORT_PAR_DEFAUT);
+            return;
+        }
+
         Application app = null;
 
         try {
@@ -23,9 +85,29 @@ public final class Main {
             System.exit(Main.EXIT_ERR_LOAD);
         }
 
-        // app.run() garde le contrôle de l'exécution tant que
-        // l'utilisa·teur/trice n'a pas saisi la commande QUITTER.
-        app.run();
+        if (args.length > 0 && Main.OPTION_CLORE_SAISON.equals(args[0])) {
+            Main.cloreSaison(app, (args.length > 1) ? args[1] : null);
+            return;
+        }
+
+        boolean lot = args.length > 0 && Main.OPTION_LOT.equals(args[0]);
+        // un script ne compacte jamais le journal en cours de route
+        SauvegardePeriodique sauvegarde = lot ? null : Main.demarrerSauvegarde(app);
+        Main.demarrerReleve(app);
+        boolean erreurLot = false;
+        if (lot) {
+            erreurLot = !Main.executerLot(app, (args.length > 1) ? args[1] : "-");
+        } else if (args.length > 0 && Main.OPTION_SERVEUR.equals(args[0])) {
+            // ne rend jamais la main : l'état est sauvegardé à l'arrêt
+            Main.servir(app, (args.length > 1) ? Integer.parseInt(args[1]) : Main.PORT_PAR_DEFAUT, sauvegarde);
+        } else {
+            // app.run() garde le contrôle de l'exécution tant que
+            // l'utilisa·teur/trice n'a pas saisi la commande QUITTER.
+            app.run();
+        }
+        if (sauvegarde != null) {
+            sauvegarde.close();
+        }
 
         try {
             Persisteur.sauverEtat(app);
@@ -35,5 +117,208 @@ public final class Main {
             System.err.flush();
             System.exit(Main.EXIT_ERR_SAVE);
         }
+        if (erreurLot) {
+            System.exit(Main.EXIT_ERR_LOT);
+        }
+    }
+
+    /**
+     * Archive la saison courante et ouvre une nouvelle saison.
+     *
+     * @param app L'application de la saison courante.
+     *
+     * @param nouvelleSaison Le nom de la nouvelle saison, ou null s'il n'a
+     *     pas été donné.
+     */
+    private static void cloreSaison(final Application app, final String nouvelleSaison) {
+        if (nouvelleSaison == null) {
+            System.err.println("Usage : " + Main.OPTION_CLORE_SAISON + " <nouvelle saison>, par exemple "
+                    + ArchivesSaisons.saisonParDefaut(LocalDate.now().plusYears(1)) + ".");
+            System.err.flush();
+            System.exit(Main.EXIT_ERR_SAISON);
+        }
+        try {
+            Application suivante = Persisteur.cloreSaison(app, nouvelleSaison);
+            System.err.println("Saison " + suivante.getSaison() + " ouverte avec "
+                    + suivante.getInstruments().size() + " instrument(s).");
+            System.err.flush();
+        }
+        catch (IllegalArgumentException iae) {
+            System.err.println(iae.getMessage());
+            System.err.flush();
+            System.exit(Main.EXIT_ERR_SAISON);
+        }
+        catch (ClassNotFoundException | IOException e) {
+            System.err.println("Erreur irrécupérable pendant la clôture de la saison : " + e.getMessage());
+            System.err.flush();
+            System.exit(Main.EXIT_ERR_SAVE);
+        }
+    }
+
+    /**
+     * Démarre la sauvegarde en arrière-plan, réglée par les propriétés
+     * système.
+     *
+     * @param app L'application à enregistrer.
+     *
+     * @return La sauvegarde démarrée, ou null si elle est désactivée.
+     */
+    private static SauvegardePeriodique demarrerSauvegarde(final Application app) {
+        long intervalle = Long.getLong(Main.PROPRIETE_INTERVALLE, SauvegardePeriodique.INTERVALLE_PAR_DEFAUT);
+        long seuil = Long.getLong(Main.PROPRIETE_SEUIL, SauvegardePeriodique.SEUIL_PAR_DEFAUT);
+        if (intervalle <= 0) {
+            return null;
+        }
+        SauvegardePeriodique sauvegarde = new SauvegardePeriodique(app, intervalle, seuil);
+        sauvegarde.demarrer();
+        return sauvegarde;
+    }
+
+    /**
+     * Résume périodiquement les métriques de l'application sur la sortie
+     * d'erreur, si la propriété système {@value Main#PROPRIETE_RELEVE} le
+     * demande.
+     *
+     * @param app L'application mesurée.
+     */
+    private static void demarrerReleve(final Application app) {
+        long intervalle = Long.getLong(Main.PROPRIETE_RELEVE, 0);
+        if (intervalle <= 0) {
+            return;
+        }
+        ScheduledExecutorService planificateur = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread tache = new Thread(r, "metriques");
+            // n'empêche pas l'arrêt de la JVM
+            tache.setDaemon(true);
+            return tache;
+        });
+        planificateur.scheduleAtFixedRate(() -> {
+            System.err.println(app.getMetriques().resumer(app.jauges()));
+            System.err.flush();
+        }, intervalle, intervalle, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Expose l'application par HTTP jusqu'à l'arrêt de la JVM, puis sauvegarde
+     * l'état.
+     *
+     * @param app L'application à exposer.
+     *
+     * @param port Le port d'écoute.
+     *
+     * @param sauvegarde La sauvegarde en arrière-plan à arrêter avant la
+     *     sauvegarde finale, ou null.
+     */
+    private static void servir(final Application app, final int port, final SauvegardePeriodique sauvegarde) {
+        ServeurHttp serveur = null;
+        try {
+            serveur = new ServeurHttp(app, new InetSocketAddress(port));
+        }
+        catch (IOException ioe) {
+            System.err.println("Impossible d'écouter sur le port " + port + " : " + ioe.getMessage());
+            System.err.flush();
+            System.exit(Main.EXIT_ERR_LOAD);
+        }
+        final ServeurHttp serveurDemarre = serveur;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            serveurDemarre.arreter(1);
+            if (sauvegarde != null) {
+                sauvegarde.close();
+            }
+            try {
+                Persisteur.sauverEtat(app);
+            }
+            catch (IOException ignored) {
+                System.err.println("Erreur irrécupérable pendant la sauvegarde de l'état !");
+                System.err.flush();
+            }
+        }));
+        serveur.demarrer();
+        System.out.println("Serveur à l'écoute sur le port " + serveur.getPort() + ".");
+        System.out.flush();
+        try {
+            new CountDownLatch(1).await();
+        }
+        catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Expose par HTTP les associations du dossier par défaut jusqu'à l'arrêt
+     * de la JVM, puis enregistre celles qui sont chargées.
+     *
+     * @param port Le port d'écoute.
+     */
+    private static void heberger(final int port) {
+        long budget = Long.getLong(Main.PROPRIETE_BUDGET, HebergeurAssociations.BUDGET_PAR_DEFAUT >> 20) << 20;
+        long inactivite = Long.getLong(Main.PROPRIETE_INACTIVITE, HebergeurAssociations.INACTIVITE_PAR_DEFAUT);
+        HebergeurAssociations hebergeur = new HebergeurAssociations(
+                Paths.get(HebergeurAssociations.DOSSIER_PAR_DEFAUT), budget, inactivite);
+        ServeurHttp serveur = null;
+        try {
+            serveur = new ServeurHttp(hebergeur, new InetSocketAddress(port));
+        }
+        catch (IOException ioe) {
+            System.err.println("Impossible d'écouter sur le port " + port + " : " + ioe.getMessage());
+            System.err.flush();
+            System.exit(Main.EXIT_ERR_LOAD);
+        }
+        final ServeurHttp serveurDemarre = serveur;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            serveurDemarre.arreter(1);
+            hebergeur.close();
+        }));
+        hebergeur.demarrer();
+        serveur.demarrer();
+        System.out.println("Hébergement des associations à l'écoute sur le port " + serveur.getPort() + ".");
+        System.out.flush();
+        try {
+            new CountDownLatch(1).await();
+        }
+        catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Exécute un script de commandes, la sortie standard étant mise en
+     * tampon et encodée en UTF-8 le temps de l'exécution.
+     *
+     * @param app L'application sur laquelle exécuter le script.
+     *
+     * @param script Le chemin du script, ou « - » pour l'entrée standard.
+     *
+     * @return true si toutes les commandes ont réussi, false sinon.
+     */
+    private static boolean executerLot(final Application app, final String script) {
+        PrintStream sortie = System.out;
+        PrintStream tampon = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), Main.TAILLE_TAMPON_SORTIE),
+                false,
+                StandardCharsets.UTF_8
+        );
+        System.setOut(tampon);
+        ExecutionLot lot = new ExecutionLot(app, System.err);
+        try (
+            BufferedReader in = "-".equals(script)
+                    ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                    : Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8);
+        ){
+            lot.executer(in);
+        }
+        catch (IOException ioe) {
+            System.err.println("Erreur de lecture du script " + script + " : " + ioe.getMessage());
+            return false;
+        }
+        finally {
+            tampon.flush();
+            System.setOut(sortie);
+        }
+        System.err.println(
+                lot.getNbExecutees() + " commande(s) exécutée(s), "
+                + lot.getNbErreurs() + " commande(s) en erreur."
+        );
+        return lot.getNbErreurs() == 0;
     }
 }
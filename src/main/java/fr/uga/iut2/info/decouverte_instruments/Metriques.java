@@ -0,0 +1,369 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * La classe Metriques mesure l'activité d'une {@link Application} :
+ * <ul>
+ *   <li>pour chaque {@link Commande}, le nombre d'exécutions, le nombre
+ *       d'erreurs et la distribution des durées (voir
+ *       {@link HistogrammeLatences}) ;</li>
+ *   <li>pour chaque {@link Phase} de la persistance, le nombre d'exécutions,
+ *       la durée, ainsi que le volume en octets et en objets de la dernière
+ *       exécution ;</li>
+ *   <li>des {@link Jauges} du modèle : nombre d'enfants, d'instruments et de
+ *       séances par {@link Jour}, répartition des enfants selon leur nombre
+ *       de séances, relevées à la demande.</li>
+ * </ul>
+ * Les mesures s'exportent au format texte de Prometheus (voir
+ * {@link #ecrirePrometheus(Appendable, Jauges)}) ou sous la forme d'une
+ * ligne de journal (voir {@link #resumer(Jauges)}).
+ * <p>
+ * Une mesure ne prend aucun verrou et n'alloue rien : le coût d'une commande
+ * mesurée se limite à deux lectures de l'horloge et à quelques incréments
+ * atomiques. Les exports lisent les compteurs sans suspendre les mesures.
+ */
+public final class Metriques {
+
+    private static final String PREFIXE = "decouverte_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PAR_SECONDE = 1e9;
+
+    /**
+     * Les phases mesurées de la persistance (voir {@link Persisteur}).
+     */
+    public enum Phase {
+        /** Lecture de l'instantané, en un fichier ou en segments. */
+        LECTURE_INSTANTANE,
+        /** Rejeu du journal des mutations au chargement. */
+        REJEU_JOURNAL,
+        /** Prise de l'instantané à enregistrer, mutations suspendues. */
+        PRISE_INSTANTANE,
+        /** Écriture de l'instantané. */
+        ECRITURE_INSTANTANE,
+        /** Retrait du journal des mutations enregistrées. */
+        COMPACTION_JOURNAL;
+
+        String etiquette() {
+            return this.name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Les effectifs du modèle à un instant donné.
+     */
+    public static final class Jauges {
+
+        private final int nbEnfants;
+        private final int nbInstruments;
+        private final int[] nbSeancesParJour;
+        private final int[] nbEnfantsParNbSeances;
+
+        Jauges(final int nbEnfants, final int nbInstruments, final int[] nbSeancesParJour,
+               final int[] nbEnfantsParNbSeances) {
+            this.nbEnfants = nbEnfants;
+            this.nbInstruments = nbInstruments;
+            this.nbSeancesParJour = nbSeancesParJour;
+            this.nbEnfantsParNbSeances = nbEnfantsParNbSeances;
+        }
+
+        public int getNbEnfants() {
+            return this.nbEnfants;
+        }
+
+        public int getNbInstruments() {
+            return this.nbInstruments;
+        }
+
+        /**
+         * @param nbSeances Un nombre de séances, entre 0 et
+         *     {@value Enfant#MAX_SEANCES}.
+         *
+         * @return Le nombre d'enfants qui ont exactement ce nombre de
+         *     séances.
+         */
+        public int getNbEnfants(final int nbSeances) {
+            if (nbSeances < 0 || nbSeances > Enfant.MAX_SEANCES) {
+                throw new IllegalArgumentException("Nombre de séances hors limites : " + nbSeances);
+            }
+            return this.nbEnfantsParNbSeances[nbSeances];
+        }
+
+        /**
+         * @return Le nombre d'enfants inscrits à aucune séance.
+         */
+        public int getNbEnfantsSansSeance() {
+            return this.nbEnfantsParNbSeances[0];
+        }
+
+        public int getNbSeances(final Jour jour) {
+            return this.nbSeancesParJour[jour.ordinal()];
+        }
+
+        public long getNbSeances() {
+            long nb = 0;
+            for (int nbJour : this.nbSeancesParJour) {
+                nb += nbJour;
+            }
+            return nb;
+        }
+
+        /**
+         * @return Le nombre total d'objets : enfants, instruments et
+         *     séances.
+         */
+        public long getNbObjets() {
+            return this.nbEnfants + this.nbInstruments + this.getNbSeances();
+        }
+    }
+
+    /**
+     * Mesures d'une phase de la persistance ; les phases sont rares, les
+     * mesures sont donc simplement synchronisées.
+     */
+    private static final class MesurePhase {
+        long nbExecutions;
+        long dureeTotale;
+        long derniereDuree;
+        long derniersOctets;
+        long derniersObjets;
+    }
+
+    private final LongAdder[] nbExecutions;
+    private final LongAdder[] nbErreurs;
+    private final HistogrammeLatences[] latences;
+    private final MesurePhase[] phases;
+
+    Metriques() {
+        int nbCommandes = Commande.values().length;
+        this.nbExecutions = new LongAdder[nbCommandes];
+        this.nbErreurs = new LongAdder[nbCommandes];
+        this.latences = new HistogrammeLatences[nbCommandes];
+        for (int i = 0; i < nbCommandes; ++i) {
+            this.nbExecutions[i] = new LongAdder();
+            this.nbErreurs[i] = new LongAdder();
+            this.latences[i] = new HistogrammeLatences();
+        }
+        this.phases = new MesurePhase[Phase.values().length];
+        for (int i = 0; i < this.phases.length; ++i) {
+            this.phases[i] = new MesurePhase();
+        }
+    }
+
+    /**
+     * Enregistre l'exécution d'une commande.
+     *
+     * @param cmd La commande exécutée.
+     *
+     * @param debut L'instant du début de l'exécution, lu par
+     *     {@link System#nanoTime()}.
+     *
+     * @param reussie false si la commande a échoué ou a été refusée.
+     */
+    public void commandeExecutee(final Commande cmd, final long debut, final boolean reussie) {
+        int i = cmd.ordinal();
+        this.latences[i].enregistrer(System.nanoTime() - debut);
+        this.nbExecutions[i].increment();
+        if (!reussie) {
+            this.nbErreurs[i].increment();
+        }
+    }
+
+    /**
+     * Enregistre l'exécution d'une phase de la persistance.
+     *
+     * @param phase La phase exécutée.
+     *
+     * @param debut L'instant du début de la phase, lu par
+     *     {@link System#nanoTime()}.
+     *
+     * @param octets Le nombre d'octets lus ou écrits.
+     *
+     * @param objets Le nombre d'objets (enfants, instruments, séances ou
+     *     enregistrements du journal) traités.
+     */
+    void phaseTerminee(final Phase phase, final long debut, final long octets, final long objets) {
+        long duree = System.nanoTime() - debut;
+        MesurePhase mesure = this.phases[phase.ordinal()];
+        synchronized (mesure) {
+            ++mesure.nbExecutions;
+            mesure.dureeTotale += duree;
+            mesure.derniereDuree = duree;
+            mesure.derniersOctets = octets;
+            mesure.derniersObjets = objets;
+        }
+    }
+
+    /**
+     * @param cmd Une commande.
+     *
+     * @return Le nombre d'exécutions de la commande.
+     */
+    public long getNbExecutions(final Commande cmd) {
+        return this.nbExecutions[cmd.ordinal()].sum();
+    }
+
+    /**
+     * @param cmd Une commande.
+     *
+     * @return Le nombre d'exécutions de la commande en erreur.
+     */
+    public long getNbErreurs(final Commande cmd) {
+        return this.nbErreurs[cmd.ordinal()].sum();
+    }
+
+    /**
+     * Estime un quantile des durées d'exécution d'une commande.
+     *
+     * @param cmd Une commande.
+     *
+     * @param q Le quantile, entre 0 et 1.
+     *
+     * @return La durée, en nanosecondes, à {@code 1/16} près.
+     */
+    public long getLatence(final Commande cmd, final double q) {
+        return this.latences[cmd.ordinal()].quantile(q);
+    }
+
+    /**
+     * Écrit les mesures au format texte d'exposition de Prometheus (version
+     * 0.0.4). Les durées sont exprimées en secondes.
+     *
+     * @param out La destination.
+     *
+     * @param jauges Les effectifs du modèle (voir {@link Application#jauges()}).
+     *
+     * @throws IOException si une erreur d'écriture survient.
+     */
+    public void ecrirePrometheus(final Appendable out, final Jauges jauges) throws IOException {
+        Commande[] commandes = Commande.values();
+
+        Metriques.entete(out, "commandes_total", "counter", "Nombre d'exécutions de chaque commande.");
+        for (Commande cmd : commandes) {
+            Metriques.ligne(out, "commandes_total", Metriques.etiquette(cmd), this.getNbExecutions(cmd));
+        }
+        Metriques.entete(out, "commandes_erreurs_total", "counter", "Nombre d'exécutions en erreur de chaque commande.");
+        for (Commande cmd : commandes) {
+            Metriques.ligne(out, "commandes_erreurs_total", Metriques.etiquette(cmd), this.getNbErreurs(cmd));
+        }
+        Metriques.entete(out, "commandes_duree_secondes", "summary", "Durée d'exécution de chaque commande.");
+        for (Commande cmd : commandes) {
+            HistogrammeLatences histogramme = this.latences[cmd.ordinal()];
+            String etiquette = Metriques.etiquette(cmd);
+            for (double q : Metriques.QUANTILES) {
+                Metriques.ligne(
+                        out,
+                        "commandes_duree_secondes",
+                        etiquette + ",quantile=\"" + q + "\"",
+                        Metriques.secondes(histogramme.quantile(q))
+                );
+            }
+            Metriques.ligne(out, "commandes_duree_secondes_sum", etiquette, Metriques.secondes(histogramme.getSomme()));
+            Metriques.ligne(out, "commandes_duree_secondes_count", etiquette, histogramme.getNombre());
+        }
+
+        Phase[] phases = Phase.values();
+        long[][] releves = new long[phases.length][];
+        for (Phase phase : phases) {
+            MesurePhase mesure = this.phases[phase.ordinal()];
+            synchronized (mesure) {
+                releves[phase.ordinal()] = new long[] {
+                    mesure.nbExecutions, mesure.dureeTotale, mesure.derniereDuree,
+                    mesure.derniersOctets, mesure.derniersObjets,
+                };
+            }
+        }
+        String[][] descriptions = {
+            {"persistance_executions_total", "counter", "Nombre d'exécutions de chaque phase de la persistance."},
+            {"persistance_duree_secondes_total", "counter", "Durée cumulée de chaque phase de la persistance."},
+            {"persistance_derniere_duree_secondes", "gauge", "Durée de la dernière exécution de chaque phase."},
+            {"persistance_derniers_octets", "gauge", "Octets lus ou écrits par la dernière exécution de chaque phase."},
+            {"persistance_derniers_objets", "gauge", "Objets traités par la dernière exécution de chaque phase."},
+        };
+        for (int m = 0; m < descriptions.length; ++m) {
+            Metriques.entete(out, descriptions[m][0], descriptions[m][1], descriptions[m][2]);
+            for (Phase phase : phases) {
+                String etiquette = "phase=\"" + phase.etiquette() + "\"";
+                long valeur = releves[phase.ordinal()][m];
+                if (m == 1 || m == 2) {
+                    Metriques.ligne(out, descriptions[m][0], etiquette, Metriques.secondes(valeur));
+                } else {
+                    Metriques.ligne(out, descriptions[m][0], etiquette, valeur);
+                }
+            }
+        }
+
+        Metriques.entete(out, "enfants", "gauge", "Nombre d'enfants.");
+        Metriques.ligne(out, "enfants", null, jauges.getNbEnfants());
+        Metriques.entete(out, "instruments", "gauge", "Nombre d'instruments.");
+        Metriques.ligne(out, "instruments", null, jauges.getNbInstruments());
+        Metriques.entete(out, "seances", "gauge", "Nombre de séances, par jour.");
+        for (Jour jour : Jour.values()) {
+            Metriques.ligne(out, "seances", "jour=\"" + jour + "\"", jauges.getNbSeances(jour));
+        }
+        Metriques.entete(out, "enfants_par_nb_seances", "gauge", "Nombre d'enfants, par nombre de séances.");
+        for (int nb = 0; nb <= Enfant.MAX_SEANCES; ++nb) {
+            Metriques.ligne(out, "enfants_par_nb_seances", "seances=\"" + nb + "\"", jauges.getNbEnfants(nb));
+        }
+    }
+
+    /**
+     * Résume les mesures sur une ligne, destinée à un journal d'exécution :
+     * effectifs du modèle, puis, pour chaque commande exécutée, le nombre
+     * d'exécutions, d'erreurs et les durées médiane et au 99e centile.
+     *
+     * @param jauges Les effectifs du modèle (voir {@link Application#jauges()}).
+     *
+     * @return La ligne de résumé.
+     */
+    public String resumer(final Jauges jauges) {
+        StringBuilder ligne = new StringBuilder("métriques enfants=").append(jauges.getNbEnfants())
+                .append(" sans_séance=").append(jauges.getNbEnfantsSansSeance())
+                .append(" instruments=").append(jauges.getNbInstruments())
+                .append(" séances=").append(jauges.getNbSeances());
+        for (Jour jour : Jour.values()) {
+            ligne.append(' ').append(jour).append('=').append(jauges.getNbSeances(jour));
+        }
+        for (Commande cmd : Commande.values()) {
+            long nb = this.getNbExecutions(cmd);
+            if (nb == 0) {
+                continue;
+            }
+            ligne.append(" | ").append(cmd.name().toLowerCase(Locale.ROOT))
+                    .append(" n=").append(nb)
+                    .append(" err=").append(this.getNbErreurs(cmd))
+                    .append(" p50=").append(Metriques.micros(this.getLatence(cmd, 0.5)))
+                    .append(" p99=").append(Metriques.micros(this.getLatence(cmd, 0.99)));
+        }
+        return ligne.toString();
+    }
+
+    private static String etiquette(final Commande cmd) {
+        return "commande=\"" + cmd.name().toLowerCase(Locale.ROOT) + "\"";
+    }
+
+    private static double secondes(final long nanos) {
+        return nanos / Metriques.NANOS_PAR_SECONDE;
+    }
+
+    private static String micros(final long nanos) {
+        return String.format(Locale.ROOT, "%.1fµs", nanos / 1e3);
+    }
+
+    static void entete(final Appendable out, final String nom, final String type, final String aide)
+            throws IOException {
+        out.append("# HELP ").append(Metriques.PREFIXE).append(nom).append(' ').append(aide).append('\n');
+        out.append("# TYPE ").append(Metriques.PREFIXE).append(nom).append(' ').append(type).append('\n');
+    }
+
+    static void ligne(final Appendable out, final String nom, final String etiquettes, final Object valeur)
+            throws IOException {
+        out.append(Metriques.PREFIXE).append(nom);
+        if (etiquettes != null) {
+            out.append('{').append(etiquettes).append('}');
+        }
+        out.append(' ').append(String.valueOf(valeur)).append('\n');
+    }
+}
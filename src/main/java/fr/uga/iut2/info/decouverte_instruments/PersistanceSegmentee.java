@@ -0,0 +1,304 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * La classe PersistanceSegmentee enregistre l'état de l'{@link Application}
+ * dans un dossier, réparti en segments indépendants.
+ * <p>
+ * Le dossier contient :
+ * <ul>
+ *   <li>un manifeste ("{@value PersistanceSegmentee#NOM_MANIFESTE}") : le
+ *       nombre magique {@value FormatBinaire#MAGIQUE}, la version
+ *       {@value FormatBinaire#VERSION_SEGMENTEE}, le nombre de segments, puis
+ *       le nom de chaque instrument, dans l'ordre de leurs identifiants ;</li>
+ *   <li>un fichier par segment : le nombre magique, la version, l'indice du
+ *       segment et le nombre d'enfants, puis pour chaque enfant son nom et
+ *       ses séances (identifiant d'instrument, ordinal du {@link Jour}).</li>
+ * </ul>
+ * Un enfant appartient au segment désigné par le hachage de son nom (voir
+ * {@link FormatBinaire#hacher(String)}). Les séances ne sont écrites que du
+ * côté des enfants : les listes des instruments sont reconstruites au
+ * chargement.
+ * <p>
+ * Les segments sont lus en parallèle, sur la réserve commune de tâches
+ * fork/join. À l'enregistrement, seuls les segments modifiés depuis leur
+ * dernière écriture sont réécrits : un segment est modifié si l'un de ses
+ * enfants ou l'une de leurs séances porte une version postérieure (voir
+ * {@link HorlogeVersions}). Chaque fichier est écrit dans un fichier
+ * temporaire puis renommé de façon atomique. Le manifeste ne fait
+ * qu'ajouter des instruments : il est réécrit avant les segments qui
+ * pourraient référencer un nouvel instrument, sauf à la création du
+ * dossier, où il est écrit en dernier pour n'activer que des segments
+ * complets.
+ * <p>
+ * Le nombre de segments est fixé à la création du dossier.
+ * <p>
+ * Les écritures doivent être sérialisées par l'appelant (voir
+ * {@link Persisteur}).
+ */
+final class PersistanceSegmentee {
+
+    private static final String NOM_MANIFESTE = "manifeste.bdd";
+    private static final String FORMAT_NOM_SEGMENT = "segment-%03d.bdd";
+    private static final String SUFFIXE_TEMPORAIRE = ".tmp";
+
+    private final Path dossier;
+    private final int nbSegments;
+
+    /**
+     * Version de l'application à la dernière écriture de chaque segment ;
+     * 0 si le segment n'a jamais été écrit.
+     */
+    private final long[] versionsEcrites;
+    private long versionManifeste;
+    private long octetsEcrits;
+
+    /**
+     * Prépare un dossier de segments.
+     *
+     * @param dossier Le dossier des segments.
+     *
+     * @param nbSegments Le nombre de segments, s'il faut créer le dossier.
+     */
+    PersistanceSegmentee(final Path dossier, final int nbSegments) {
+        if (nbSegments <= 0) {
+            throw new IllegalArgumentException("Le nombre de segments doit être positif.");
+        }
+        this.dossier = dossier;
+        this.nbSegments = nbSegments;
+        this.versionsEcrites = new long[nbSegments];
+        this.versionManifeste = 0;
+    }
+
+    /**
+     * Indique si un dossier contient un état segmenté.
+     *
+     * @param dossier Le dossier des segments.
+     *
+     * @return true si le manifeste existe.
+     */
+    static boolean existe(final Path dossier) {
+        return Files.exists(dossier.resolve(PersistanceSegmentee.NOM_MANIFESTE));
+    }
+
+    private Path cheminSegment(final int indice) {
+        return this.dossier.resolve(String.format(PersistanceSegmentee.FORMAT_NOM_SEGMENT, indice));
+    }
+
+    private int segment(final String nomEnfant) {
+        return Math.floorMod(FormatBinaire.hacher(nomEnfant), this.nbSegments);
+    }
+
+    /**
+     * Alimente une application avec l'état d'un dossier de segments.
+     *
+     * @param dossier Le dossier des segments, qui doit contenir un manifeste.
+     *
+     * @param app Une application vierge.
+     *
+     * @return La persistance associée au dossier, qui considère tous les
+     *     segments lus comme à jour.
+     *
+     * @throws IOException si un fichier est absent, corrompu, ou qu'une
+     *     erreur d'entrée/sortie survient.
+     */
+    static PersistanceSegmentee lire(final Path dossier, final Application app) throws IOException {
+        DataInputStream manifeste = PersistanceSegmentee.ouvrir(dossier.resolve(PersistanceSegmentee.NOM_MANIFESTE));
+        int nbSegments = manifeste.readInt();
+        Instrument[] instruments = new Instrument[manifeste.readInt()];
+        for (int id = 0; id < instruments.length; ++id) {
+            instruments[id] = app.enregistrerInstrument(manifeste.readUTF());
+        }
+        PersistanceSegmentee persistance = new PersistanceSegmentee(dossier, nbSegments);
+
+        // les enfants de segments différents sont indépendants : ils sont
+        // matérialisés en parallèle
+        try {
+            IntStream.range(0, nbSegments).parallel().forEach(indice -> {
+                try {
+                    persistance.lireSegment(indice, app, instruments);
+                }
+                catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                }
+            });
+        }
+        catch (UncheckedIOException uioe) {
+            throw uioe.getCause();
+        }
+
+        Arrays.fill(persistance.versionsEcrites, HorlogeVersions.VERSION_INITIALE);
+        persistance.versionManifeste = HorlogeVersions.VERSION_INITIALE;
+        return persistance;
+    }
+
+    private void lireSegment(final int indice, final Application app, final Instrument[] instruments)
+            throws IOException {
+        DataInputStream in = PersistanceSegmentee.ouvrir(this.cheminSegment(indice));
+        if (in.readInt() != indice) {
+            throw new IOException("Segment " + indice + " corrompu : indice incohérent.");
+        }
+        Jour[] jours = Jour.values();
+        int nbEnfants = in.readInt();
+        for (int i = 0; i < nbEnfants; ++i) {
+            Enfant enfant = app.enregistrerEnfant(in.readUTF());
+            int nbSeances = in.readUnsignedByte();
+            for (int s = 0; s < nbSeances; ++s) {
+                int idInstrument = in.readInt();
+                int ordinal = in.readUnsignedByte();
+                if (idInstrument < 0 || idInstrument >= instruments.length || ordinal >= jours.length) {
+                    throw new IOException("Segment " + indice + " corrompu : séance incohérente.");
+                }
+                app.enregistrerSeance(enfant, instruments[idInstrument], jours[ordinal]);
+            }
+        }
+    }
+
+    /**
+     * Lit intégralement un fichier et vérifie son entête.
+     */
+    private static DataInputStream ouvrir(final Path chemin) throws IOException {
+        byte[] contenu;
+        try {
+            contenu = Files.readAllBytes(chemin);
+        }
+        catch (NoSuchFileException nsfe) {
+            throw new IOException("Fichier de persistance " + chemin + " manquant.", nsfe);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(contenu));
+        if (in.readInt() != FormatBinaire.MAGIQUE || in.readUnsignedShort() != FormatBinaire.VERSION_SEGMENTEE) {
+            throw new IOException("Fichier de persistance " + chemin + " invalide ou d'une version non supportée.");
+        }
+        return in;
+    }
+
+    /**
+     * Écrit les segments modifiés d'un instantané, et le manifeste si des
+     * instruments ont été créés.
+     *
+     * @param instantane L'instantané à écrire.
+     *
+     * @return Le nombre de segments réécrits.
+     *
+     * @throws IOException si une erreur d'entrée/sortie survient.
+     */
+    int ecrire(final Instantane instantane) throws IOException {
+        Files.createDirectories(this.dossier);
+        boolean creation = !PersistanceSegmentee.existe(this.dossier);
+
+        // les instruments visibles sont ceux de plus petits identifiants
+        List<Instrument> instruments = new ArrayList<>(instantane.getInstruments());
+        instruments.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+        boolean manifesteModifie = creation;
+        for (int id = 0; id < instruments.size(); ++id) {
+            if (instruments.get(id).getId() != id) {
+                throw new IllegalStateException("Identifiants d'instruments non contigus.");
+            }
+            manifesteModifie |= instruments.get(id).getVersion() > this.versionManifeste;
+        }
+
+        List<List<Enfant>> segments = new ArrayList<>(this.nbSegments);
+        boolean[] modifies = new boolean[this.nbSegments];
+        for (int indice = 0; indice < this.nbSegments; ++indice) {
+            segments.add(new ArrayList<>());
+            modifies[indice] = creation || this.versionsEcrites[indice] == 0;
+        }
+        for (Enfant enfant : instantane.getEnfants()) {
+            int indice = this.segment(enfant.getNom());
+            segments.get(indice).add(enfant);
+            if (!modifies[indice]) {
+                modifies[indice] = instantane.getVersionMax(enfant) > this.versionsEcrites[indice];
+            }
+        }
+
+        this.octetsEcrits = 0;
+        if (manifesteModifie && !creation) {
+            this.ecrireManifeste(instruments, instantane.getVersion());
+        }
+        int nbReecrits = 0;
+        for (int indice = 0; indice < this.nbSegments; ++indice) {
+            if (modifies[indice]) {
+                this.ecrireSegment(indice, segments.get(indice), instantane);
+                ++nbReecrits;
+            }
+        }
+        if (creation) {
+            this.ecrireManifeste(instruments, instantane.getVersion());
+        }
+        return nbReecrits;
+    }
+
+    /**
+     * @return Le nombre d'octets écrits par le dernier appel à
+     *     {@link #ecrire(Instantane)}, manifeste compris.
+     */
+    long getOctetsEcrits() {
+        return this.octetsEcrits;
+    }
+
+    private void ecrireManifeste(final List<Instrument> instruments, final long version) throws IOException {
+        this.ecrireAtomiquement(this.dossier.resolve(PersistanceSegmentee.NOM_MANIFESTE), out -> {
+            out.writeInt(this.nbSegments);
+            out.writeInt(instruments.size());
+            for (Instrument instrument : instruments) {
+                out.writeUTF(instrument.getNom());
+            }
+        });
+        this.versionManifeste = version;
+    }
+
+    private void ecrireSegment(final int indice, final List<Enfant> enfants, final Instantane instantane)
+            throws IOException {
+        this.ecrireAtomiquement(this.cheminSegment(indice), out -> {
+            out.writeInt(indice);
+            out.writeInt(enfants.size());
+            for (Enfant enfant : enfants) {
+                out.writeUTF(enfant.getNom());
+                out.writeByte(instantane.getNbSeances(enfant));
+                for (int c = 0; c < enfant.getNbCases(); ++c) {
+                    if (instantane.estVisibleSeance(enfant.versionSeance(c), enfant.retraitSeance(c))) {
+                        out.writeInt(enfant.instrumentSeance(c).getId());
+                        out.writeByte(enfant.jourSeance(c).ordinal());
+                    }
+                }
+            }
+        });
+        this.versionsEcrites[indice] = instantane.getVersion();
+    }
+
+    @FunctionalInterface
+    private interface Contenu {
+        void ecrire(DataOutputStream out) throws IOException;
+    }
+
+    private void ecrireAtomiquement(final Path chemin, final Contenu contenu) throws IOException {
+        Path temporaire = chemin.resolveSibling(chemin.getFileName() + PersistanceSegmentee.SUFFIXE_TEMPORAIRE);
+        try (
+            FileOutputStream fos = new FileOutputStream(temporaire.toFile());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+        ){
+            out.writeInt(FormatBinaire.MAGIQUE);
+            out.writeShort(FormatBinaire.VERSION_SEGMENTEE);
+            contenu.ecrire(out);
+            out.flush();
+            fos.getFD().sync();
+            this.octetsEcrits += out.size();
+        }
+        Files.move(temporaire, chemin, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -1,16 +1,58 @@
 package fr.uga.iut2.info.decouverte_instruments;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
 
 /**
  * La classe Persisteur est responsable de l'enregistrement et de la
  * restauration de l'état du modèle.
  *
+ * L'état est rangé dans un dossier de persistance
+ * ("{@value Persisteur#DOSSIER_PAR_DEFAUT}" par défaut). Il est constitué
+ * d'un instantané complet ("{@value Persisteur#NOM_BDD}") et d'un
+ * {@link Journal} des mutations postérieures à cet instantané
+ * ("{@value Persisteur#NOM_JOURNAL}"). Les capacités et les listes
+ * d'attente des instruments sont écrites à part, dans
+ * "{@value Persisteur#NOM_PLACES}" (voir {@link FormatPlaces}).
+ * L'instantané est écrit au format défini par {@link FormatBinaire} ; les
+ * anciens fichiers produits par la sérialisation Java restent lisibles et
+ * sont convertis lors de la sauvegarde suivante.
+ *
+ * Par défaut, l'instantané est un fichier unique, projeté en mémoire et
+ * chargé à la demande (voir {@link RegistreMappe}) : le démarrage ne lit que
+ * ce que les commandes consultent. La propriété système
+ * {@value Persisteur#PROPRIETE_SEGMENTS}, si elle est positive, répartit
+ * plutôt l'instantané en autant de segments dans le dossier
+ * "{@value Persisteur#NOM_SEGMENTS}" (voir {@link PersistanceSegmentee}) :
+ * ils sont chargés entièrement, en parallèle, et réécrits seulement s'ils
+ * ont été modifiés. Un dossier de segments existant reste utilisé.
+ *
+ * Le dossier ne contient que la saison courante ; les saisons closes (voir
+ * {@link #cloreSaison(Application, String)}) sont archivées à part et lues
+ * à la demande (voir {@link ArchivesSaisons}).
+ *
+ * La durée, le volume en octets et le nombre d'objets de chaque phase de la
+ * lecture et de l'enregistrement sont mesurés dans les {@link Metriques} de
+ * l'application.
+ *
  * C'est une classe utilitaire, toutes les méthodes sont statiques.
  * La classe n'a pas vocation à être instanciée.
  *
@@ -18,7 +60,17 @@ import java.io.ObjectOutputStream;
  */
 public final class Persisteur {
 
-    private static final String NOM_BDD = "persistence/instruments.bdd";
+    private static final String DOSSIER_PAR_DEFAUT = "persistence";
+    private static final String NOM_BDD = "instruments.bdd";
+    private static final String NOM_JOURNAL = "instruments.journal";
+    private static final String NOM_SEGMENTS = "segments";
+    private static final String NOM_PLACES = "places.bdd";
+    private static final String PROPRIETE_SEGMENTS = "persistence.segments";
+    private static final int NB_SEGMENTS_PAR_DEFAUT = 0;
+    private static final String SUFFIXE_TEMPORAIRE = ".tmp";
+    // un verrou par dossier de persistance : les associations hébergées
+    // dans la même JVM se sauvegardent en parallèle
+    private static final Map<Path, Object> VERROUS_SAUVEGARDE = new ConcurrentHashMap<>();
 
     private Persisteur() {
         // interdit l'instanciation de la classe utilitaire via un constructeur privé
@@ -28,7 +80,21 @@ public final class Persisteur {
     /**
      * Enregistre l'état de l'application dans un fichier persistant.
      * <p>
-     * Le fichier de persistance est le fichier "{@value Persisteur#NOM_BDD}".
+     * Le fichier de persistance est le fichier "{@value Persisteur#NOM_BDD}"
+     * du dossier d'où l'application a été lue.
+     * L'instantané est d'abord écrit dans un fichier temporaire puis renommé
+     * de façon atomique : un arrêt brutal laisse toujours un instantané
+     * complet. Les enregistrements du journal de l'application que
+     * l'instantané contient sont ensuite retirés du journal.
+     * <p>
+     * Les mutations concurrentes ne sont suspendues que le temps de prendre
+     * un {@link Instantane}, de copier les places et de marquer le journal,
+     * et non pendant l'écriture. Les séances retirées pendant l'écriture
+     * sont compactées ensuite.
+     * <p>
+     * Comme les autres messages de la persistance, le message de réussite
+     * est écrit sur la sortie d'erreur : la sortie standard d'un script
+     * {@code --lot} ne contient que les résultats de ses commandes.
      *
      * @param app L'application dont l'état est persisté.
      *
@@ -39,16 +105,190 @@ public final class Persisteur {
      *     l'enregistrement.
      */
     public static void sauverEtat(final Application app) throws FileNotFoundException, IOException {
+        Persisteur.enregistrer(app);
+        System.err.println("Sauvegarde de l'état réussie.");
+        System.err.flush();
+    }
+
+    /**
+     * Enregistre l'état de l'application, sans message en cas de succès.
+     * Les enregistrements concurrents dans un même dossier sont sérialisés.
+     *
+     * @param app L'application dont l'état est persisté.
+     *
+     * @return La version de l'application enregistrée (voir
+     *     {@link Instantane#getVersion()}).
+     *
+     * @throws FileNotFoundException si le fichier de persistance ne peut pas
+     *     être créé ou ouvert.
+     *
+     * @throws IOException si une erreur d'entrée/sortie survient pendant
+     *     l'enregistrement.
+     */
+    static long enregistrer(final Application app) throws FileNotFoundException, IOException {
+        Path dossier = Persisteur.dossier(app);
+        synchronized (Persisteur.verrouSauvegarde(dossier)) {
+            // matérialise un instantané paresseux avant de suspendre les
+            // mutations
+            app.getEnfants();
+            Journal journal = app.getJournal();
+            Metriques metriques = app.getMetriques();
+            Instantane instantane;
+            Metriques.Jauges jauges;
+            byte[] places;
+            long repere = 0;
+            long debut = System.nanoTime();
+            // aucune mutation n'est en cours sous le verrou exclusif : les
+            // enregistrements antérieurs au repère sont tous dans l'instantané
+            Lock verrou = app.verrouExclusif();
+            verrou.lock();
+            try {
+                jauges = app.jaugesChargees();
+                places = FormatPlaces.capturer(app);
+                if (journal != null) {
+                    repere = journal.repere();
+                }
+                instantane = app.instantane();
+            }
+            finally {
+                verrou.unlock();
+            }
+            metriques.phaseTerminee(Metriques.Phase.PRISE_INSTANTANE, debut, 0, jauges.getNbObjets());
+
+            PersistanceSegmentee segments = app.getPersistanceSegmentee();
+            debut = System.nanoTime();
+            long octets;
+            try {
+                octets = (segments != null)
+                        ? Persisteur.ecrireSegments(dossier, segments, instantane)
+                        : Persisteur.ecrireInstantane(dossier, instantane);
+            }
+            finally {
+                // tant qu'il est ouvert, les séances retirées gardent leur case
+                instantane.close();
+            }
+            app.compacterSeances();
+            // écrit après les séances et avant la compaction du journal : un
+            // arrêt entre les deux rejoue le journal sur les places précédentes
+            octets += Persisteur.ecrirePlaces(dossier, places);
+            metriques.phaseTerminee(Metriques.Phase.ECRITURE_INSTANTANE, debut, octets, jauges.getNbObjets());
+            if (journal != null) {
+                debut = System.nanoTime();
+                int nbRetires;
+                try {
+                    nbRetires = journal.retirerAvant(repere);
+                }
+                catch (IOException ioe) {
+                    System.err.println("Erreur lors de la compaction du journal de persistance.");
+                    System.err.flush();
+                    throw ioe;
+                }
+                metriques.phaseTerminee(Metriques.Phase.COMPACTION_JOURNAL, debut, repere, nbRetires);
+            }
+            return instantane.getVersion();
+        }
+    }
+
+    /**
+     * Donne le dossier de persistance de l'application.
+     */
+    private static Path dossier(final Application app) {
+        return (app.getDossierPersistance() != null)
+                ? app.getDossierPersistance()
+                : Paths.get(Persisteur.DOSSIER_PAR_DEFAUT);
+    }
+
+    /**
+     * Donne le verrou qui sérialise les sauvegardes et les clôtures de
+     * saison d'un dossier de persistance.
+     */
+    private static Object verrouSauvegarde(final Path dossier) {
+        return Persisteur.VERROUS_SAUVEGARDE.computeIfAbsent(
+                dossier.toAbsolutePath().normalize(), cle -> new Object());
+    }
+
+    /**
+     * @return Le nombre d'octets écrits.
+     */
+    private static long ecrirePlaces(final Path dossier, final byte[] places) throws IOException {
+        Path chemin = dossier.resolve(Persisteur.NOM_PLACES);
+        Path temporaire = dossier.resolve(Persisteur.NOM_PLACES + Persisteur.SUFFIXE_TEMPORAIRE);
+        try {
+            Files.createDirectories(dossier);
+            try (FileOutputStream fos = new FileOutputStream(temporaire.toFile())) {
+                fos.write(places);
+                fos.getFD().sync();
+            }
+            Files.move(temporaire, chemin, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ioe) {
+            System.err.println("Erreur lors de l'écriture du fichier des places.");
+            System.err.flush();
+            throw ioe;
+        }
+        return places.length;
+    }
+
+    /**
+     * Restaure les capacités et les listes d'attente, si le dossier en
+     * contient.
+     *
+     * @return Le nombre d'octets lus.
+     */
+    private static long lirePlaces(final Path dossier, final Application app) throws IOException {
+        Path chemin = dossier.resolve(Persisteur.NOM_PLACES);
+        if (!Files.exists(chemin)) {
+            return 0;
+        }
+        try {
+            byte[] contenu = Files.readAllBytes(chemin);
+            FormatPlaces.lire(new DataInputStream(new ByteArrayInputStream(contenu)), app);
+            return contenu.length;
+        }
+        catch (IOException ioe) {
+            System.err.println("Erreur de lecture du fichier des places.");
+            System.err.flush();
+            throw ioe;
+        }
+    }
+
+    /**
+     * @return Le nombre d'octets écrits.
+     */
+    private static long ecrireSegments(final Path dossier, final PersistanceSegmentee segments,
+                                       final Instantane instantane) throws IOException {
+        try {
+            segments.ecrire(instantane);
+            // le dossier de segments remplace l'éventuel fichier unique
+            Files.deleteIfExists(dossier.resolve(Persisteur.NOM_BDD));
+            return segments.getOctetsEcrits();
+        }
+        catch (IOException ioe) {
+            System.err.println("Erreur lors de l'écriture des segments de persistance.");
+            System.err.flush();
+            throw ioe;
+        }
+    }
+
+    /**
+     * @return Le nombre d'octets écrits.
+     */
+    private static long ecrireInstantane(final Path dossier, final Instantane instantane)
+            throws FileNotFoundException, IOException {
+        Path chemin = dossier.resolve(Persisteur.NOM_BDD);
+        Path temporaire = dossier.resolve(Persisteur.NOM_BDD + Persisteur.SUFFIXE_TEMPORAIRE);
+        long octets;
         try (
-            FileOutputStream fos = new FileOutputStream(Persisteur.NOM_BDD);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
+            FileOutputStream fos = new FileOutputStream(temporaire.toFile());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
         ){
-            oos.writeObject(app);
-            // Les classes `FileOutputStream` et `ObjectOutputStream`
-            // implémentent l'interface `AutoCloseable` : pas besoin de faire
+            FormatBinaire.ecrire(instantane, out);
+            out.flush();
+            fos.getFD().sync();
+            octets = out.size();
+            // Les classes `FileOutputStream` et `DataOutputStream`
+            // implémentent l'interface `AutoCloseable` : pas besoin de faire
             // un appel explicite à `.close()`.
-            System.out.println("Sauvegarde de l'état réussie.");
-            System.out.flush();
         }
         catch (FileNotFoundException fnfe) {
             System.err.println("Erreur à la création/ouverture du fichier de persistance.");
@@ -60,13 +300,121 @@ public final class Persisteur {
             System.err.flush();
             throw ioe;
         }
+
+        try {
+            Files.move(
+                    temporaire,
+                    chemin,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE
+            );
+        }
+        catch (IOException ioe) {
+            System.err.println("Erreur lors du remplacement du fichier de persistance.");
+            System.err.flush();
+            throw ioe;
+        }
+        return octets;
     }
 
     /**
-     * Alimente une instance d'application avec l'état du fichier de
-     * persistance.
+     * Clôt la saison courante de l'application et en ouvre une nouvelle,
+     * dans le même dossier de persistance.
+     * <p>
+     * L'état complet de la saison close est archivé (voir
+     * {@link ArchivesSaisons#archiver(String, Instantane)}), puis retiré du
+     * dossier : instantané, segments, journal et places. La nouvelle saison
+     * reprend les instruments et leurs capacités, sans enfant ni liste
+     * d'attente.
      * <p>
-     * Le fichier de persistance est le fichier "{@value Persisteur#NOM_BDD}".
+     * L'application ne doit être modifiée par aucune autre tâche pendant la
+     * clôture, qui se fait hors service. L'archive est synchronisée sur le
+     * disque avant que l'état de la saison close soit retiré : un arrêt
+     * brutal ne perd aucune inscription, mais peut laisser une saison
+     * courante vide à compléter.
+     *
+     * @param app L'application de la saison courante, qui ne doit plus être
+     *     utilisée ensuite.
+     *
+     * @param nouvelleSaison Le nom de la nouvelle saison.
+     *
+     * @return L'application de la nouvelle saison, déjà enregistrée.
+     *
+     * @throws IllegalArgumentException si le nom de la nouvelle saison est
+     *     invalide, ou si la saison existe déjà.
+     *
+     * @throws ClassNotFoundException si la nouvelle saison ne peut pas être
+     *     relue.
+     *
+     * @throws IOException si une erreur d'entrée/sortie survient.
+     */
+    public static Application cloreSaison(final Application app, final String nouvelleSaison)
+            throws ClassNotFoundException, IOException {
+        ArchivesSaisons.verifierNom(nouvelleSaison);
+        Path dossier = Persisteur.dossier(app);
+        ArchivesSaisons archives = (app.getArchives() != null) ? app.getArchives() : new ArchivesSaisons(dossier);
+        Map<String, int[]> capacites = new LinkedHashMap<>();
+        synchronized (Persisteur.verrouSauvegarde(dossier)) {
+            String saisonClose = archives.getSaisonCourante();
+            if (saisonClose.equals(nouvelleSaison) || archives.estArchivee(nouvelleSaison)) {
+                throw new IllegalArgumentException("La saison " + nouvelleSaison + " existe déjà.");
+            }
+            Jour[] jours = Jour.values();
+            for (Instrument instrument : app.getInstruments().values()) {
+                int[] parJour = new int[jours.length];
+                for (Jour jour : jours) {
+                    parJour[jour.ordinal()] = instrument.getPlaces().getCapacite(jour);
+                }
+                capacites.put(instrument.getNom(), parJour);
+            }
+            long debut = System.nanoTime();
+            long octets;
+            try (Instantane instantane = app.instantane()) {
+                octets = archives.archiver(saisonClose, instantane);
+            }
+            catch (IOException ioe) {
+                System.err.println("Erreur lors de l'archivage de la saison " + saisonClose + ".");
+                System.err.flush();
+                throw ioe;
+            }
+            app.getMetriques().phaseTerminee(
+                    Metriques.Phase.ECRITURE_INSTANTANE, debut, octets, app.jaugesChargees().getNbObjets());
+
+            app.setJournal(null);
+            Files.deleteIfExists(dossier.resolve(Persisteur.NOM_BDD));
+            Files.deleteIfExists(dossier.resolve(Persisteur.NOM_JOURNAL));
+            Files.deleteIfExists(dossier.resolve(Persisteur.NOM_PLACES));
+            Path segments = dossier.resolve(Persisteur.NOM_SEGMENTS);
+            if (Files.isDirectory(segments)) {
+                try (Stream<Path> chemins = Files.walk(segments)) {
+                    for (Path chemin : (Iterable<Path>) chemins.sorted(Comparator.reverseOrder())::iterator) {
+                        Files.delete(chemin);
+                    }
+                }
+            }
+            archives.setSaisonCourante(nouvelleSaison);
+            System.err.println("Saison " + saisonClose + " archivée (" + octets + " octets).");
+            System.err.flush();
+        }
+
+        Application suivante = Persisteur.lireEtat(dossier);
+        for (Map.Entry<String, int[]> entree : capacites.entrySet()) {
+            suivante.nouvelInstrument(entree.getKey());
+            Instrument instrument = suivante.getInstrument(entree.getKey());
+            for (Jour jour : Jour.values()) {
+                int capacite = entree.getValue()[jour.ordinal()];
+                if (capacite != PlacesInstrument.ILLIMITEE) {
+                    suivante.fixerCapacite(instrument, jour, capacite);
+                }
+            }
+        }
+        Persisteur.enregistrer(suivante);
+        return suivante;
+    }
+
+    /**
+     * Alimente une instance d'application avec l'état du dossier de
+     * persistance par défaut, "{@value Persisteur#DOSSIER_PAR_DEFAUT}".
      *
      * @return Une nouvelle instance vierge d'application si le fichier de
      *     persistance n'existe pas, une instance dans l'état enregistré sinon.
@@ -78,22 +426,121 @@ public final class Persisteur {
      *     erreur d'entrée/sortie survient.
      */
     public static Application lireEtat() throws ClassNotFoundException, IOException {
+        return Persisteur.lireEtat(Paths.get(Persisteur.DOSSIER_PAR_DEFAUT));
+    }
+
+    /**
+     * Alimente une instance d'application avec l'état d'un dossier de
+     * persistance.
+     * <p>
+     * Le fichier de persistance est le fichier "{@value Persisteur#NOM_BDD}"
+     * du dossier, ou les segments du sous-dossier
+     * "{@value Persisteur#NOM_SEGMENTS}".
+     * Les mutations enregistrées dans le journal depuis le dernier instantané
+     * sont ensuite rejouées, puis le journal est associé à l'application pour
+     * enregistrer les mutations à venir. Les sauvegardes ultérieures de
+     * l'application se font dans le même dossier.
+     *
+     * @param dossier Le dossier de persistance.
+     *
+     * @return Une nouvelle instance vierge d'application si le fichier de
+     *     persistance n'existe pas, une instance dans l'état enregistré sinon.
+     *
+     * @throws ClassNotFoundException si le fichier de persistance contient une
+     *     classe inconnue (fichier corrompu).
+     *
+     * @throws IOException si le fichier de persistance est corrompu ou qu'une
+     *     erreur d'entrée/sortie survient.
+     */
+    public static Application lireEtat(final Path dossier) throws ClassNotFoundException, IOException {
+        Application app;
+        Path dossierSegments = dossier.resolve(Persisteur.NOM_SEGMENTS);
+        long debut = System.nanoTime();
+        long octets;
+
+        if (PersistanceSegmentee.existe(dossierSegments)) {
+            app = new Application();
+            try {
+                app.setPersistanceSegmentee(PersistanceSegmentee.lire(dossierSegments, app));
+            }
+            catch (IOException ioe) {
+                System.err.println("Erreur de lecture des segments de persistance.");
+                System.err.flush();
+                throw ioe;
+            }
+            System.err.println("Restauration de l'état réussie.");
+            System.err.flush();
+            octets = Persisteur.taille(dossierSegments);
+        } else {
+            app = Persisteur.lireFichierUnique(dossier.resolve(Persisteur.NOM_BDD));
+            octets = Persisteur.taille(dossier.resolve(Persisteur.NOM_BDD));
+            int nbSegments = Integer.getInteger(Persisteur.PROPRIETE_SEGMENTS, Persisteur.NB_SEGMENTS_PAR_DEFAUT);
+            if (nbSegments > 0) {
+                // converti à la prochaine sauvegarde
+                app.setPersistanceSegmentee(new PersistanceSegmentee(dossierSegments, nbSegments));
+            }
+        }
+
+        octets += Persisteur.lirePlaces(dossier, app);
+
+        // un instantané chargé à la demande n'a encore matérialisé aucun objet,
+        // sauf si une capacité est fixée
+        app.getMetriques().phaseTerminee(
+                Metriques.Phase.LECTURE_INSTANTANE, debut, octets, app.jaugesChargees().getNbObjets());
+
+        app.setDossierPersistance(dossier);
+        debut = System.nanoTime();
+        Journal journal;
+        try {
+            journal = Journal.ouvrir(dossier.resolve(Persisteur.NOM_JOURNAL).toString(), app);
+        }
+        catch (IOException ioe) {
+            System.err.println("Erreur de lecture du journal de persistance.");
+            System.err.flush();
+            throw ioe;
+        }
+        app.getMetriques().phaseTerminee(
+                Metriques.Phase.REJEU_JOURNAL, debut, journal.getTaille(), journal.getNbEnregistrements());
+        app.setJournal(journal);
+
+        return app;
+    }
+
+    /**
+     * Mesure la taille d'un fichier, ou des fichiers d'un dossier.
+     *
+     * @return La taille en octets, 0 si le chemin n'existe pas.
+     */
+    private static long taille(final Path chemin) throws IOException {
+        if (Files.isDirectory(chemin)) {
+            try (Stream<Path> fichiers = Files.list(chemin)) {
+                long total = 0;
+                for (Path fichier : (Iterable<Path>) fichiers::iterator) {
+                    total += Files.size(fichier);
+                }
+                return total;
+            }
+        }
+        return Files.exists(chemin) ? Files.size(chemin) : 0;
+    }
+
+    private static Application lireFichierUnique(final Path chemin) throws ClassNotFoundException, IOException {
         Application app;
 
         try (
-            FileInputStream fis = new FileInputStream(Persisteur.NOM_BDD);
-            ObjectInputStream ois = new ObjectInputStream(fis);
+            FileInputStream fis = new FileInputStream(chemin.toFile());
+            BufferedInputStream bis = new BufferedInputStream(fis);
         ){
-            app = (Application) ois.readObject();
-            System.out.println("Restauration de l'état réussie.");
-            System.out.flush();
-            // Les classes `FileInputStream` et `ObjectInputStream`
+            app = Persisteur.lireInstantane(bis, chemin);
+            System.err.println("Restauration de l'état réussie.");
+            System.err.flush();
+            // Les classes `FileInputStream` et `BufferedInputStream`
             // implémentent l'interface `AutoCloseable` : pas besoin de faire
             // un appel explicite à `.close()`.
         }
         catch (FileNotFoundException ignored) {
-            System.out.println("Fichier de persistance inexistant : création d'une nouvelle instance.");
-            System.out.flush();
+            System.err.println("Fichier de persistance inexistant : création d'une nouvelle instance.");
+            System.err.flush();
             app = new Application();
         }
         catch (IOException ioe) {
@@ -109,4 +556,45 @@ public final class Persisteur {
 
         return app;
     }
+
+    /**
+     * Lit un instantané en reconnaissant son format à ses premiers octets.
+     * <p>
+     * Un instantané dans la version courante du format binaire est projeté en
+     * mémoire et chargé à la demande (voir {@link RegistreMappe}) ; les autres
+     * formats sont lus intégralement.
+     *
+     * @param bis Le flux source, positionné au début de l'instantané.
+     *
+     * @param chemin Le chemin de l'instantané.
+     *
+     * @return L'application lue.
+     *
+     * @throws ClassNotFoundException si un ancien fichier sérialisé contient
+     *     une classe inconnue.
+     *
+     * @throws IOException si le format n'est pas reconnu ou qu'une erreur
+     *     d'entrée/sortie survient.
+     */
+    private static Application lireInstantane(final BufferedInputStream bis, final Path chemin)
+            throws ClassNotFoundException, IOException {
+        bis.mark(Integer.BYTES + Short.BYTES);
+        DataInputStream in = new DataInputStream(bis);
+        int entete = in.readInt();
+        int version = (entete == FormatBinaire.MAGIQUE) ? in.readUnsignedShort() : -1;
+        bis.reset();
+
+        if (version == FormatBinaire.VERSION) {
+            // chargement paresseux : seul l'entête est lu à ce stade
+            Application app = new Application();
+            app.setSource(RegistreMappe.ouvrir(chemin));
+            return app;
+        } else if (entete == FormatBinaire.MAGIQUE) {
+            return FormatBinaire.lire(in);
+        } else if ((entete >>> 16) == FormatBinaire.MAGIQUE_SERIALISATION) {
+            return (Application) new ObjectInputStream(bis).readObject();
+        } else {
+            throw new IOException("Format du fichier de persistance inconnu.");
+        }
+    }
 }
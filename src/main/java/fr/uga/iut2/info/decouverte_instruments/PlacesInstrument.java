@@ -0,0 +1,230 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * La classe PlacesInstrument tient, pour chaque {@link Jour}, la capacité
+ * d'un {@link Instrument}, le nombre de places occupées et la liste
+ * d'attente des enfants qui n'ont pas eu de place.
+ * <p>
+ * Les compteurs sont des tableaux atomiques indicés par l'ordinal du jour :
+ * l'admission d'un enfant réserve sa place par compare-and-set, en temps
+ * constant et sans verrou, si bien que des inscriptions concurrentes ne
+ * peuvent pas dépasser la capacité. Une capacité abaissée sous le nombre de
+ * places occupées n'annule aucune séance : elle bloque seulement les
+ * admissions suivantes.
+ * <p>
+ * Les listes d'attente sont servies dans l'ordre d'arrivée ; elles sont
+ * protégées par le moniteur de l'objet. Un compteur atomique par jour
+ * indique sans verrou si une liste est vide. Les promotions sont décidées
+ * par l'{@link Application} (voir
+ * {@link Application#desinscrire(Enfant, Instrument)}).
+ */
+final class PlacesInstrument {
+
+    /**
+     * Capacité d'un jour sans limite de places.
+     */
+    static final int ILLIMITEE = Integer.MAX_VALUE;
+
+    private static final Jour[] JOURS = Jour.values();
+
+    private final AtomicIntegerArray capacites = new AtomicIntegerArray(PlacesInstrument.JOURS.length);
+    private final AtomicIntegerArray occupees = new AtomicIntegerArray(PlacesInstrument.JOURS.length);
+    private final AtomicIntegerArray nbEnAttente = new AtomicIntegerArray(PlacesInstrument.JOURS.length);
+    private final List<Set<Enfant>> attentes = new ArrayList<>(PlacesInstrument.JOURS.length);
+
+    PlacesInstrument() {
+        for (int ordinal = 0; ordinal < PlacesInstrument.JOURS.length; ++ordinal) {
+            this.capacites.set(ordinal, PlacesInstrument.ILLIMITEE);
+            this.attentes.add(new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * Interprète une capacité saisie : un entier positif ou nul, ou le mot
+     * « illimitée » (avec ou sans accent).
+     *
+     * @param texte Le texte à interpréter.
+     *
+     * @return La capacité, ou {@link #ILLIMITEE}.
+     *
+     * @throws IllegalArgumentException si le texte ne désigne pas une
+     *     capacité.
+     */
+    static int analyserCapacite(final String texte) {
+        String mot = texte.strip().toLowerCase(Locale.ROOT);
+        if (mot.equals("illimitée") || mot.equals("illimitee")) {
+            return PlacesInstrument.ILLIMITEE;
+        }
+        int capacite;
+        try {
+            capacite = Integer.parseInt(mot);
+        }
+        catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("Capacité invalide : " + texte, nfe);
+        }
+        if (capacite < 0) {
+            throw new IllegalArgumentException("Capacité négative : " + texte);
+        }
+        return capacite;
+    }
+
+    /**
+     * Présente une capacité.
+     *
+     * @param capacite Une capacité, ou {@link #ILLIMITEE}.
+     *
+     * @return Le nombre de places, ou « illimitée ».
+     */
+    static String formaterCapacite(final int capacite) {
+        return (capacite == PlacesInstrument.ILLIMITEE) ? "illimitée" : Integer.toString(capacite);
+    }
+
+    int getCapacite(final Jour jour) {
+        return this.capacites.get(jour.ordinal());
+    }
+
+    /**
+     * @param capacite Le nombre de places, positif ou nul, ou
+     *     {@link #ILLIMITEE}.
+     */
+    void setCapacite(final Jour jour, final int capacite) {
+        if (capacite < 0) {
+            throw new IllegalArgumentException("Capacité négative.");
+        }
+        this.capacites.set(jour.ordinal(), capacite);
+    }
+
+    int getOccupees(final Jour jour) {
+        return this.occupees.get(jour.ordinal());
+    }
+
+    /**
+     * @return Le nombre de places libres, ou {@link #ILLIMITEE}.
+     */
+    int getRestantes(final Jour jour) {
+        int capacite = this.capacites.get(jour.ordinal());
+        if (capacite == PlacesInstrument.ILLIMITEE) {
+            return PlacesInstrument.ILLIMITEE;
+        }
+        return Math.max(0, capacite - this.occupees.get(jour.ordinal()));
+    }
+
+    /**
+     * Indique si une capacité est fixée ou si une liste d'attente est non
+     * vide : seuls ces instruments ont un état à persister.
+     */
+    boolean estLimitee() {
+        for (int ordinal = 0; ordinal < PlacesInstrument.JOURS.length; ++ordinal) {
+            if (this.capacites.get(ordinal) != PlacesInstrument.ILLIMITEE || this.nbEnAttente.get(ordinal) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Réserve une place, si la capacité le permet.
+     *
+     * @return true si la place est réservée ; elle doit être rendue par
+     *     {@link #liberer(Jour)} si l'inscription échoue ensuite.
+     */
+    boolean reserver(final Jour jour) {
+        int ordinal = jour.ordinal();
+        int occupees;
+        do {
+            occupees = this.occupees.get(ordinal);
+            if (occupees >= this.capacites.get(ordinal)) {
+                return false;
+            }
+        } while (!this.occupees.compareAndSet(ordinal, occupees, occupees + 1));
+        return true;
+    }
+
+    /**
+     * Compte une place occupée sans consulter la capacité (restauration,
+     * inscriptions imposées).
+     */
+    void occuper(final Jour jour) {
+        this.occupees.incrementAndGet(jour.ordinal());
+    }
+
+    /**
+     * Rend une place.
+     */
+    void liberer(final Jour jour) {
+        this.occupees.decrementAndGet(jour.ordinal());
+    }
+
+    int getNbEnAttente(final Jour jour) {
+        return this.nbEnAttente.get(jour.ordinal());
+    }
+
+    /**
+     * Ajoute un enfant en fin de liste d'attente.
+     *
+     * @return Le rang de l'enfant dans la liste (à partir de 1), ou 0 s'il y
+     *     figurait déjà.
+     */
+    synchronized int mettreEnAttente(final Enfant enfant, final Jour jour) {
+        Set<Enfant> attente = this.attentes.get(jour.ordinal());
+        if (!attente.add(enfant)) {
+            return 0;
+        }
+        this.nbEnAttente.incrementAndGet(jour.ordinal());
+        return attente.size();
+    }
+
+    /**
+     * Retire un enfant d'une liste d'attente.
+     *
+     * @return true si l'enfant y figurait.
+     */
+    synchronized boolean retirerAttente(final Enfant enfant, final Jour jour) {
+        if (!this.attentes.get(jour.ordinal()).remove(enfant)) {
+            return false;
+        }
+        this.nbEnAttente.decrementAndGet(jour.ordinal());
+        return true;
+    }
+
+    synchronized boolean estEnAttente(final Enfant enfant, final Jour jour) {
+        return this.attentes.get(jour.ordinal()).contains(enfant);
+    }
+
+    /**
+     * Donne les jours pour lesquels un enfant est en liste d'attente.
+     */
+    synchronized Set<Jour> joursEnAttente(final Enfant enfant) {
+        Set<Jour> jours = EnumSet.noneOf(Jour.class);
+        for (Jour jour : PlacesInstrument.JOURS) {
+            if (this.attentes.get(jour.ordinal()).contains(enfant)) {
+                jours.add(jour);
+            }
+        }
+        return jours;
+    }
+
+    /**
+     * @return Le premier enfant de la liste d'attente, ou null.
+     */
+    synchronized Enfant premierEnAttente(final Jour jour) {
+        Iterator<Enfant> it = this.attentes.get(jour.ordinal()).iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    /**
+     * @return Une copie de la liste d'attente, dans l'ordre d'arrivée.
+     */
+    synchronized List<Enfant> getAttente(final Jour jour) {
+        return new ArrayList<>(this.attentes.get(jour.ordinal()));
+    }
+}
@@ -0,0 +1,378 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * La classe Planificateur attribue en une seule passe un {@link Jour} à
+ * toutes les demandes d'instrument en attente.
+ * <p>
+ * Une demande associe un {@link Enfant} et un {@link Instrument}, sans jour.
+ * Le planificateur respecte les règles d'inscription (une séance par jour,
+ * au plus {@value Enfant#MAX_SEANCES} séances, pas deux fois le même
+ * instrument) et les places restantes de chaque instrument (voir
+ * {@link Application#fixerCapacite(Instrument, Jour, int)}), éventuellement
+ * réduites par {@link #fixerCapacite(Instrument, Jour, int)}. Une séance dont
+ * la liste d'attente n'est pas vide n'a aucune place à offrir.
+ * <p>
+ * Les demandes sont regroupées par enfant. Pour un enfant, le problème est
+ * minuscule (au plus trois demandes et trois jours) : toutes les affectations
+ * sont énumérées et celle qui satisfait le plus de demandes est retenue, en
+ * privilégiant les créneaux les moins chargés. Sans capacité, le résultat est
+ * optimal et les enfants sont indépendants : ils sont résolus en parallèle.
+ * Les enfants qui demandent un instrument à places limitées sont résolus
+ * ensuite, un à un, les plus contraints (le moins de jours libres par
+ * demande) en premier : c'est une heuristique gloutonne, qui ne garantit pas
+ * l'optimum global.
+ * <p>
+ * Le résultat est appliqué à l'{@link Application} par
+ * {@link #appliquer(Application)}, séance par séance, avec les mêmes
+ * vérifications qu'une inscription ordinaire : une séance que l'état a
+ * rendue impossible depuis la planification est rejetée.
+ */
+public final class Planificateur {
+
+    /**
+     * Une demande d'inscription sans jour.
+     */
+    public static final class Demande {
+
+        private final Enfant enfant;
+        private final Instrument instrument;
+        private final String origine;
+
+        private Demande(final Enfant enfant, final Instrument instrument, final String origine) {
+            this.enfant = enfant;
+            this.instrument = instrument;
+            this.origine = origine;
+        }
+
+        public Enfant getEnfant() {
+            return this.enfant;
+        }
+
+        public Instrument getInstrument() {
+            return this.instrument;
+        }
+
+        /**
+         * @return Le texte d'où provient la demande (par exemple une ligne
+         *     d'import), ou null.
+         */
+        public String getOrigine() {
+            return this.origine;
+        }
+    }
+
+    private static final int SANS_LIMITE = PlacesInstrument.ILLIMITEE;
+    private static final Jour[] JOURS = Jour.values();
+
+    private final Map<Instrument, Map<Jour, Integer>> capacites = new HashMap<>();
+    private final Map<Enfant, List<Demande>> demandesParEnfant = new LinkedHashMap<>();
+    private final List<Seance> affectations = new ArrayList<>();
+    private final List<Demande> demandesAffectees = new ArrayList<>();
+    private final Map<Demande, String> rejets = new LinkedHashMap<>();
+    private int nbDemandes = 0;
+
+    // places restantes, indicées par (indice d'instrument × nombre de jours + jour) ;
+    // seules les places limitées sont modifiées, par une seule tâche
+    private Map<Instrument, Integer> indices;
+    private int[] restant;
+
+    /**
+     * Limite le nombre d'enfants d'un instrument un jour donné, pour cette
+     * planification seulement. La limite s'ajoute à la capacité de
+     * l'instrument, qui reste vérifiée à l'application.
+     * <p>
+     * Les séances déjà enregistrées sont décomptées de la limite.
+     *
+     * @param instrument L'instrument concerné.
+     *
+     * @param jour Le jour concerné.
+     *
+     * @param capacite Le nombre maximal d'enfants.
+     */
+    public void fixerCapacite(final Instrument instrument, final Jour jour, final int capacite) {
+        if (capacite < 0) {
+            throw new IllegalArgumentException("Capacité négative.");
+        }
+        this.capacites.computeIfAbsent(instrument, i -> new EnumMap<>(Jour.class)).put(jour, capacite);
+    }
+
+    /**
+     * Ajoute une demande en attente.
+     *
+     * @param enfant L'enfant demandeur.
+     *
+     * @param instrument L'instrument demandé.
+     *
+     * @param origine Le texte d'où provient la demande, ou null.
+     */
+    public void ajouterDemande(final Enfant enfant, final Instrument instrument, final String origine) {
+        ++this.nbDemandes;
+        this.demandesParEnfant.computeIfAbsent(enfant, e -> new ArrayList<>())
+                .add(new Demande(enfant, instrument, origine));
+    }
+
+    /**
+     * @return Le nombre de demandes reçues.
+     */
+    public int getNbDemandes() {
+        return this.nbDemandes;
+    }
+
+    /**
+     * Attribue un jour aux demandes en attente.
+     * <p>
+     * À l'issue de l'appel, chaque demande figure soit parmi les
+     * {@link #getAffectations() affectations}, soit parmi les
+     * {@link #getRejets() rejets}.
+     */
+    public void planifier() {
+        this.ecarterDemandesInvalides();
+        this.initialiserPlaces();
+
+        List<Map.Entry<Enfant, List<Demande>>> enfants = this.demandesParEnfant.entrySet().stream()
+                .filter(e -> !e.getValue().isEmpty())
+                .sorted(Comparator.comparingInt(e -> Planificateur.souplesse(e.getKey(), e.getValue().size())))
+                .collect(Collectors.toList());
+
+        // les enfants sans place limitée ne se disputent rien ; les autres
+        // sont résolus un à un, dans l'ordre de priorité
+        Map<Boolean, List<Map.Entry<Enfant, List<Demande>>>> parContrainte = enfants.stream()
+                .collect(Collectors.partitioningBy(e -> this.estLimitee(e.getValue())));
+        Map<Enfant, Demande[]> solutions = parContrainte.get(false).parallelStream()
+                .collect(Collectors.toConcurrentMap(Map.Entry::getKey, e -> this.resoudre(e.getKey(), e.getValue())));
+        for (Map.Entry<Enfant, List<Demande>> e : parContrainte.get(true)) {
+            solutions.put(e.getKey(), this.resoudre(e.getKey(), e.getValue()));
+        }
+
+        for (Map.Entry<Enfant, List<Demande>> e : enfants) {
+            List<Demande> demandes = e.getValue();
+            Demande[] parJour = solutions.get(e.getKey());
+            for (int j = 0; j < Planificateur.JOURS.length; ++j) {
+                if (parJour[j] != null) {
+                    this.affectations.add(new Seance(Planificateur.JOURS[j], parJour[j].enfant, parJour[j].instrument));
+                    this.demandesAffectees.add(parJour[j]);
+                }
+            }
+            for (Demande demande : demandes) {
+                if (!Planificateur.contient(parJour, demande)) {
+                    this.rejets.put(demande, "aucun jour disponible");
+                }
+            }
+        }
+        this.demandesParEnfant.clear();
+    }
+
+    /**
+     * @return Les séances attribuées par {@link #planifier()}, moins celles
+     *     que {@link #appliquer(Application)} n'a pas pu enregistrer.
+     */
+    public List<Seance> getAffectations() {
+        return this.affectations;
+    }
+
+    /**
+     * @return Les demandes rejetées, associées au motif du rejet.
+     */
+    public Map<Demande, String> getRejets() {
+        return this.rejets;
+    }
+
+    /**
+     * Enregistre dans l'application les séances attribuées, une à une, avec
+     * les vérifications d'une inscription ordinaire. Une séance refusée
+     * (l'état a changé depuis la planification : inscription concurrente,
+     * capacité réduite, enfant promu depuis une liste d'attente) quitte les
+     * {@link #getAffectations() affectations} pour les
+     * {@link #getRejets() rejets}, avec le motif du refus. Aucun enfant n'est
+     * mis en liste d'attente.
+     *
+     * @param app L'application dans laquelle inscrire les enfants.
+     *
+     * @return Le nombre de séances enregistrées.
+     */
+    public int appliquer(final Application app) {
+        Iterator<Seance> seances = this.affectations.iterator();
+        Iterator<Demande> demandes = this.demandesAffectees.iterator();
+        while (seances.hasNext()) {
+            Seance seance = seances.next();
+            Demande demande = demandes.next();
+            ResultatInscription resultat = app.inscrireSiPlaceLibre(
+                    demande.enfant, demande.instrument, Jour.valueOfString(seance.getJour()));
+            if (!resultat.estAcceptee()) {
+                seances.remove();
+                demandes.remove();
+                this.rejets.put(demande, resultat.getMotif());
+            }
+        }
+        return this.affectations.size();
+    }
+
+    /**
+     * Mesure la marge de manœuvre d'un enfant : plus elle est faible, plus
+     * l'enfant est prioritaire.
+     */
+    private static int souplesse(final Enfant enfant, final int nbDemandes) {
+        return (Planificateur.JOURS.length - enfant.getJoursOccupes().size()) - nbDemandes;
+    }
+
+    private static boolean contient(final Demande[] parJour, final Demande demande) {
+        for (Demande d : parJour) {
+            if (d == demande) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rejette les demandes déjà satisfaites ou en double. Les règles sont
+     * vérifiées au moment de la planification, et non de la demande, car des
+     * séances ont pu être ajoutées entre-temps.
+     */
+    private void ecarterDemandesInvalides() {
+        for (List<Demande> demandes : this.demandesParEnfant.values()) {
+            Set<Instrument> vus = new HashSet<>();
+            for (Iterator<Demande> it = demandes.iterator(); it.hasNext();) {
+                Demande demande = it.next();
+                String motif = null;
+                if (demande.enfant.estInscritA(demande.instrument.getNom())) {
+                    motif = ResultatInscription.INSTRUMENT_DEJA_CHOISI.getMotif();
+                } else if (!vus.add(demande.instrument)) {
+                    motif = "demande en double";
+                }
+                if (motif != null) {
+                    this.rejets.put(demande, motif);
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void initialiserPlaces() {
+        this.indices = new HashMap<>();
+        for (List<Demande> demandes : this.demandesParEnfant.values()) {
+            for (Demande demande : demandes) {
+                this.indices.putIfAbsent(demande.instrument, this.indices.size());
+            }
+        }
+        this.restant = new int[this.indices.size() * Planificateur.JOURS.length];
+        for (Map.Entry<Instrument, Integer> entree : this.indices.entrySet()) {
+            Instrument instrument = entree.getKey();
+            Map<Jour, Integer> capacitesInstrument = this.capacites.get(instrument);
+            int[] occupes = new int[Planificateur.JOURS.length];
+            if (capacitesInstrument != null) {
+                for (Seance seance : instrument.getSeances()) {
+                    ++occupes[Jour.valueOfString(seance.getJour()).ordinal()];
+                }
+            }
+            for (Jour jour : Planificateur.JOURS) {
+                PlacesInstrument places = instrument.getPlaces();
+                int restantes = (places.getNbEnAttente(jour) > 0) ? 0 : places.getRestantes(jour);
+                Integer capacite = (capacitesInstrument == null) ? null : capacitesInstrument.get(jour);
+                if (capacite != null) {
+                    restantes = Math.min(restantes, Math.max(0, capacite - occupes[jour.ordinal()]));
+                }
+                this.restant[this.place(instrument, jour)] = restantes;
+            }
+        }
+    }
+
+    /**
+     * Indique si l'une des demandes porte sur un instrument dont une place
+     * est limitée.
+     */
+    private boolean estLimitee(final List<Demande> demandes) {
+        for (Demande demande : demandes) {
+            for (Jour jour : Planificateur.JOURS) {
+                if (this.restant[this.place(demande.instrument, jour)] != Planificateur.SANS_LIMITE) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int place(final Instrument instrument, final Jour jour) {
+        return this.indices.get(instrument) * Planificateur.JOURS.length + jour.ordinal();
+    }
+
+    /**
+     * Cherche puis réserve la meilleure affectation des demandes d'un enfant.
+     * Un enfant dont une demande porte sur une place limitée est résolu par
+     * une seule tâche à la fois.
+     *
+     * @return Pour chaque jour (par ordinal), la demande qui y est affectée,
+     *     ou null.
+     */
+    private Demande[] resoudre(final Enfant enfant, final List<Demande> demandes) {
+        Recherche recherche = new Recherche(
+                demandes, enfant.getJoursOccupes(), Enfant.MAX_SEANCES - enfant.getNbSeances());
+        recherche.explorer(0, 0, 0L);
+        for (int j = 0; j < recherche.meilleure.length; ++j) {
+            Demande demande = recherche.meilleure[j];
+            if (demande != null) {
+                int place = this.place(demande.instrument, Planificateur.JOURS[j]);
+                if (this.restant[place] != Planificateur.SANS_LIMITE) {
+                    --this.restant[place];
+                }
+            }
+        }
+        return recherche.meilleure;
+    }
+
+    /**
+     * Énumération exhaustive des affectations d'un enfant (au plus
+     * {@value Enfant#MAX_SEANCES} demandes et autant de jours).
+     */
+    private final class Recherche {
+
+        private final List<Demande> demandes;
+        private final Set<Jour> occupes;
+        private final int placesLibres;
+        private final Demande[] courante = new Demande[Planificateur.JOURS.length];
+        private Demande[] meilleure = new Demande[Planificateur.JOURS.length];
+        private int meilleurNombre = -1;
+        private long meilleureMarge = -1;
+
+        Recherche(final List<Demande> demandes, final Set<Jour> occupes, final int placesLibres) {
+            this.demandes = demandes;
+            this.occupes = occupes;
+            this.placesLibres = placesLibres;
+        }
+
+        void explorer(final int rang, final int nombre, final long marge) {
+            if (rang == this.demandes.size()) {
+                if (nombre > this.meilleurNombre || (nombre == this.meilleurNombre && marge > this.meilleureMarge)) {
+                    this.meilleurNombre = nombre;
+                    this.meilleureMarge = marge;
+                    this.meilleure = this.courante.clone();
+                }
+                return;
+            }
+            Demande demande = this.demandes.get(rang);
+            if (nombre < this.placesLibres) {
+                for (Jour jour : Planificateur.JOURS) {
+                    int disponibles = Planificateur.this.restant[Planificateur.this.place(demande.instrument, jour)];
+                    if (!this.occupes.contains(jour) && this.courante[jour.ordinal()] == null && disponibles > 0) {
+                        this.courante[jour.ordinal()] = demande;
+                        this.explorer(rang + 1, nombre + 1, marge + Math.min(disponibles, 1 << 20));
+                        this.courante[jour.ordinal()] = null;
+                    }
+                }
+            }
+            this.explorer(rang + 1, nombre, marge);  // demande non satisfaite
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * La classe RapportInscriptions écrit les listes d'inscriptions par enfant et
+ * par instrument.
+ * <p>
+ * Trois formats sont proposés (voir {@link Format}). Les lignes sont
+ * construites dans un tampon réutilisé, puis écrites par blocs : aucune
+ * chaîne intermédiaire ni aucun objet {@link Seance} n'est alloué par
+ * séance, si bien que le débit n'est limité que par celui du {@link Writer}.
+ * <p>
+ * Le rapport ne ferme jamais le {@link Writer} qui lui est confié ; il le
+ * vide à la fin de chaque liste.
+ * <p>
+ * Une liste écrite depuis un {@link Instantane} est cohérente même si
+ * l'application est modifiée pendant l'écriture ; une liste écrite
+ * directement depuis les collections de l'application reflète les mutations
+ * concurrentes au fil de son écriture.
+ */
+public final class RapportInscriptions implements Flushable {
+
+    /**
+     * Format d'un rapport.
+     */
+    public enum Format {
+        /**
+         * Texte lisible, identique à l'affichage du menu.
+         */
+        TEXTE,
+        /**
+         * Une ligne par séance, champs séparés par des points-virgules, avec
+         * une ligne d'entête. Un enfant ou un instrument sans séance occupe
+         * une ligne aux champs de séance vides.
+         */
+        CSV,
+        /**
+         * Un objet JSON par ligne, pour chaque enfant ou instrument, avec le
+         * tableau de ses séances.
+         */
+        JSONL,
+        ;
+
+        /**
+         * Interprète le nom d'un format, sans tenir compte de la casse.
+         *
+         * @param nom Le nom du format.
+         *
+         * @return Le format correspondant.
+         *
+         * @throws IllegalArgumentException si le format est inconnu.
+         */
+        public static Format depuisNom(final String nom) {
+            return Format.valueOf(nom.toUpperCase(Locale.ROOT));
+        }
+    }
+
+    private static final int SEUIL_VIDANGE = 1 << 13;
+    private static final char SEPARATEUR_CSV = ';';
+
+    private final Writer out;
+    private final Format format;
+    private final StringBuilder ligne = new StringBuilder(RapportInscriptions.SEUIL_VIDANGE * 2);
+    private char[] tampon = new char[RapportInscriptions.SEUIL_VIDANGE * 2];
+    private final int[] rangs = new int[Enfant.MAX_SEANCES];
+
+    /**
+     * Prépare un rapport.
+     *
+     * @param out La destination du rapport ; un {@link Writer} tamponné est
+     *     recommandé.
+     *
+     * @param format Le format du rapport.
+     */
+    public RapportInscriptions(final Writer out, final Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    /**
+     * Écrit la liste des inscriptions par enfant.
+     *
+     * @param enfants Les enfants à lister.
+     *
+     * @throws IOException si une erreur d'écriture survient.
+     */
+    public void ecrireEnfants(final Collection<Enfant> enfants) throws IOException {
+        this.ecrireEnfants(enfants, Long.MAX_VALUE);
+    }
+
+    /**
+     * Écrit la liste des inscriptions par enfant d'un instantané.
+     *
+     * @param instantane L'instantané à lister.
+     *
+     * @throws IOException si une erreur d'écriture survient.
+     */
+    public void ecrireEnfants(final Instantane instantane) throws IOException {
+        this.ecrireEnfants(instantane.getEnfants(), instantane.getVersion());
+    }
+
+    private void ecrireEnfants(final Collection<Enfant> enfants, final long version) throws IOException {
+        switch (this.format) {
+            case TEXTE:
+                this.ligne.append("===== Liste des inscriptions par enfant =====").append(System.lineSeparator());
+                break;
+            case CSV:
+                this.ligne.append("enfant;instrument;jour\n");
+                break;
+            case JSONL:
+                break;
+        }
+        for (Enfant enfant : enfants) {
+            int nb = 0;
+            for (int c = 0, total = enfant.getNbCases(); c < total; ++c) {
+                if (Instantane.estVisible(enfant.versionSeance(c), enfant.retraitSeance(c), version)) {
+                    this.rangs[nb++] = c;
+                }
+            }
+            switch (this.format) {
+                case TEXTE:
+                    this.ligne.append("· ").append(enfant.getNom()).append(System.lineSeparator());
+                    for (int i = 0; i < nb; ++i) {
+                        int rang = this.rangs[i];
+                        this.ligne.append("   - [").append(enfant.jourSeance(rang)).append("] ")
+                                .append(enfant.instrumentSeance(rang).getNom()).append(System.lineSeparator());
+                    }
+                    this.ligne.append(System.lineSeparator());
+                    break;
+                case CSV:
+                    if (nb == 0) {
+                        this.champCsv(enfant.getNom()).append(";;\n");
+                    }
+                    for (int i = 0; i < nb; ++i) {
+                        int rang = this.rangs[i];
+                        this.champCsv(enfant.getNom()).append(RapportInscriptions.SEPARATEUR_CSV);
+                        this.champCsv(enfant.instrumentSeance(rang).getNom()).append(RapportInscriptions.SEPARATEUR_CSV);
+                        this.ligne.append(enfant.jourSeance(rang)).append('\n');
+                    }
+                    break;
+                case JSONL:
+                    this.ligne.append("{\"enfant\":");
+                    Json.ajouterChaine(this.ligne, enfant.getNom()).append(",\"seances\":[");
+                    for (int i = 0; i < nb; ++i) {
+                        int rang = this.rangs[i];
+                        if (i > 0) {
+                            this.ligne.append(',');
+                        }
+                        this.ligne.append("{\"jour\":\"").append(enfant.jourSeance(rang)).append("\",\"instrument\":");
+                        Json.ajouterChaine(this.ligne, enfant.instrumentSeance(rang).getNom()).append('}');
+                    }
+                    this.ligne.append("]}\n");
+                    break;
+            }
+            this.viderSiNecessaire();
+        }
+        this.flush();
+    }
+
+    /**
+     * Écrit la liste des inscriptions par instrument.
+     *
+     * @param instruments Les instruments à lister.
+     *
+     * @throws IOException si une erreur d'écriture survient.
+     */
+    public void ecrireInstruments(final Collection<Instrument> instruments) throws IOException {
+        this.ecrireInstruments(instruments, Long.MAX_VALUE);
+    }
+
+    /**
+     * Écrit la liste des inscriptions par instrument d'un instantané.
+     *
+     * @param instantane L'instantané à lister.
+     *
+     * @throws IOException si une erreur d'écriture survient.
+     */
+    public void ecrireInstruments(final Instantane instantane) throws IOException {
+        this.ecrireInstruments(instantane.getInstruments(), instantane.getVersion());
+    }
+
+    private void ecrireInstruments(final Collection<Instrument> instruments, final long version)
+            throws IOException {
+        switch (this.format) {
+            case TEXTE:
+                this.ligne.append("===== Liste des inscriptions par instrument =====").append(System.lineSeparator());
+                break;
+            case CSV:
+                this.ligne.append("instrument;jour;enfant\n");
+                break;
+            case JSONL:
+                break;
+        }
+        for (Instrument instrument : instruments) {
+            int nb = instrument.getNbCases();
+            boolean aucune = true;
+            switch (this.format) {
+                case TEXTE:
+                    this.ligne.append("· ").append(instrument.getNom()).append(System.lineSeparator());
+                    for (int rang = 0; rang < nb; ++rang) {
+                        if (!Instantane.estVisible(instrument.versionSeance(rang), instrument.retraitSeance(rang), version)) {
+                            continue;
+                        }
+                        this.ligne.append("   - [").append(instrument.jourSeance(rang)).append("] ")
+                                .append(instrument.enfantSeance(rang).getNom()).append(System.lineSeparator());
+                        this.viderSiNecessaire();
+                    }
+                    this.ligne.append(System.lineSeparator());
+                    break;
+                case CSV:
+                    for (int rang = 0; rang < nb; ++rang) {
+                        if (!Instantane.estVisible(instrument.versionSeance(rang), instrument.retraitSeance(rang), version)) {
+                            continue;
+                        }
+                        aucune = false;
+                        this.champCsv(instrument.getNom()).append(RapportInscriptions.SEPARATEUR_CSV);
+                        this.ligne.append(instrument.jourSeance(rang)).append(RapportInscriptions.SEPARATEUR_CSV);
+                        this.champCsv(instrument.enfantSeance(rang).getNom()).append('\n');
+                        this.viderSiNecessaire();
+                    }
+                    if (aucune) {
+                        this.champCsv(instrument.getNom()).append(";;\n");
+                    }
+                    break;
+                case JSONL:
+                    this.ligne.append("{\"instrument\":");
+                    Json.ajouterChaine(this.ligne, instrument.getNom()).append(",\"seances\":[");
+                    for (int rang = 0; rang < nb; ++rang) {
+                        if (!Instantane.estVisible(instrument.versionSeance(rang), instrument.retraitSeance(rang), version)) {
+                            continue;
+                        }
+                        if (!aucune) {
+                            this.ligne.append(',');
+                        }
+                        aucune = false;
+                        this.ligne.append("{\"jour\":\"").append(instrument.jourSeance(rang)).append("\",\"enfant\":");
+                        Json.ajouterChaine(this.ligne, instrument.enfantSeance(rang).getNom()).append('}');
+                        this.viderSiNecessaire();
+                    }
+                    this.ligne.append("]}\n");
+                    break;
+            }
+            this.viderSiNecessaire();
+        }
+        this.flush();
+    }
+
+    /**
+     * Écrit le tampon puis vide le {@link Writer}.
+     *
+     * @throws IOException si une erreur d'écriture survient.
+     */
+    @Override
+    public void flush() throws IOException {
+        this.vider();
+        this.out.flush();
+    }
+
+    private void viderSiNecessaire() throws IOException {
+        if (this.ligne.length() >= RapportInscriptions.SEUIL_VIDANGE) {
+            this.vider();
+        }
+    }
+
+    private void vider() throws IOException {
+        int longueur = this.ligne.length();
+        if (longueur > this.tampon.length) {
+            this.tampon = new char[longueur];
+        }
+        this.ligne.getChars(0, longueur, this.tampon, 0);
+        this.out.write(this.tampon, 0, longueur);
+        this.ligne.setLength(0);
+    }
+
+    /**
+     * Ajoute un champ CSV, entouré de guillemets doubles s'il contient un
+     * caractère spécial.
+     */
+    private StringBuilder champCsv(final String valeur) {
+        boolean special = false;
+        for (int i = 0; i < valeur.length() && !special; ++i) {
+            char c = valeur.charAt(i);
+            special = c == RapportInscriptions.SEPARATEUR_CSV || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!special) {
+            return this.ligne.append(valeur);
+        }
+        this.ligne.append('"');
+        for (int i = 0; i < valeur.length(); ++i) {
+            char c = valeur.charAt(i);
+            if (c == '"') {
+                this.ligne.append('"');
+            }
+            this.ligne.append(c);
+        }
+        return this.ligne.append('"');
+    }
+}
@@ -0,0 +1,124 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+
+/**
+ * La classe RapportOccupation écrit, au format texte, l'occupation des
+ * séances de découverte :
+ * <ul>
+ *   <li>pour chaque {@link Instrument} et chaque {@link Jour}, le nombre
+ *       d'enfants inscrits, la capacité si elle est fixée et la longueur de
+ *       la liste d'attente ;</li>
+ *   <li>le nombre de séances par jour ;</li>
+ *   <li>la répartition des enfants selon leur nombre de séances, dont les
+ *       enfants inscrits à aucune séance.</li>
+ * </ul>
+ * Toutes les valeurs sont des compteurs tenus à jour à chaque inscription
+ * (voir {@link StockSeances}) : le rapport ne parcourt aucune séance, son
+ * coût ne dépend que du nombre d'instruments. Il reflète les mutations
+ * concurrentes au fil de son écriture.
+ */
+final class RapportOccupation {
+
+    private static final Jour[] JOURS = Jour.values();
+    private static final int LARGEUR_MIN_NOM = 12;
+    private static final int LARGEUR_CASE = 20;
+
+    private RapportOccupation() {
+        throw new IllegalStateException("Classe utilitaire.");
+    }
+
+    /**
+     * Écrit le rapport, puis vide le {@link Writer} sans le fermer.
+     *
+     * @param out La destination.
+     *
+     * @param instruments Les instruments à présenter.
+     *
+     * @param jauges Les effectifs du modèle (voir {@link Application#jauges()}).
+     *
+     * @throws IOException si une erreur d'écriture survient.
+     */
+    static void ecrire(final Writer out, final Collection<Instrument> instruments, final Metriques.Jauges jauges)
+            throws IOException {
+        int largeurNom = RapportOccupation.LARGEUR_MIN_NOM;
+        for (Instrument instrument : instruments) {
+            largeurNom = Math.max(largeurNom, instrument.getNom().length() + 2);
+        }
+        StringBuilder ligne = new StringBuilder();
+
+        out.write("Occupation des séances (inscrits/capacité, +en attente) :");
+        out.write(System.lineSeparator());
+        RapportOccupation.colonne(ligne, "Instrument", largeurNom);
+        for (Jour jour : RapportOccupation.JOURS) {
+            RapportOccupation.colonne(ligne, jour.toString(), RapportOccupation.LARGEUR_CASE);
+        }
+        RapportOccupation.ecrireLigne(out, ligne);
+        for (Instrument instrument : instruments) {
+            RapportOccupation.colonne(ligne, instrument.getNom(), largeurNom);
+            PlacesInstrument places = instrument.getPlaces();
+            for (Jour jour : RapportOccupation.JOURS) {
+                RapportOccupation.colonne(ligne, RapportOccupation.occupation(instrument, places, jour),
+                                          RapportOccupation.LARGEUR_CASE);
+            }
+            RapportOccupation.ecrireLigne(out, ligne);
+        }
+
+        ligne.append("Séances : ").append(jauges.getNbSeances());
+        String separateur = " (";
+        for (Jour jour : RapportOccupation.JOURS) {
+            ligne.append(separateur).append(jour).append(' ').append(jauges.getNbSeances(jour));
+            separateur = ", ";
+        }
+        ligne.append(')');
+        RapportOccupation.ecrireLigne(out, ligne);
+
+        ligne.append("Enfants : ").append(jauges.getNbEnfants())
+                .append(", dont ").append(jauges.getNbEnfantsSansSeance()).append(" sans séance");
+        for (int nb = 1; nb <= Enfant.MAX_SEANCES; ++nb) {
+            ligne.append(", ").append(jauges.getNbEnfants(nb))
+                    .append(" avec ").append(nb).append((nb == 1) ? " séance" : " séances");
+        }
+        RapportOccupation.ecrireLigne(out, ligne);
+        out.flush();
+    }
+
+    private static String occupation(final Instrument instrument, final PlacesInstrument places, final Jour jour) {
+        StringBuilder texte = new StringBuilder().append(instrument.getNbSeances(jour));
+        if (places == null) {
+            return texte.toString();
+        }
+        int capacite = places.getCapacite(jour);
+        if (capacite != PlacesInstrument.ILLIMITEE) {
+            texte.append('/').append(capacite);
+            if (places.getRestantes(jour) == 0) {
+                texte.append(" complet");
+            }
+        }
+        int nbEnAttente = places.getNbEnAttente(jour);
+        if (nbEnAttente > 0) {
+            texte.append(" +").append(nbEnAttente);
+        }
+        return texte.toString();
+    }
+
+    private static void colonne(final StringBuilder ligne, final String texte, final int largeur) {
+        ligne.append(texte);
+        for (int i = texte.length(); i < largeur; ++i) {
+            ligne.append(' ');
+        }
+    }
+
+    private static void ecrireLigne(final Writer out, final StringBuilder ligne) throws IOException {
+        // les colonnes laissent des blancs en fin de ligne
+        int fin = ligne.length();
+        while (fin > 0 && ligne.charAt(fin - 1) == ' ') {
+            --fin;
+        }
+        ligne.setLength(fin);
+        out.append(ligne).write(System.lineSeparator());
+        ligne.setLength(0);
+    }
+}
@@ -0,0 +1,279 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * La classe RechercheNoms indexe des noms (d'enfants ou d'instruments) pour
+ * proposer, à partir d'une saisie partielle ou approximative, les noms les
+ * plus proches.
+ * <p>
+ * Les noms sont comparés sous leur {@link #normaliser(String) forme
+ * normalisée}, sans casse ni accents. Les résultats sont classés ainsi :
+ * <ol>
+ *   <li>les noms qui commencent par la saisie, dans l'ordre alphabétique
+ *       (un nom égal à la saisie vient donc en premier) ;</li>
+ *   <li>les noms dont un mot suivant commence par la saisie (« mar »
+ *       trouve « Léa Martin ») ;</li>
+ *   <li>les noms dont un mot, ou le nom entier, commence par la même
+ *       lettre que la saisie et en est à une faible distance d'édition
+ *       (« violin » trouve « violon »).</li>
+ * </ol>
+ * Les deux premiers rangs sont lus dans des tables triées, en
+ * O(log n + k) pour k résultats. Le troisième, calculé seulement si les
+ * deux premiers ne suffisent pas, parcourt la table triée des termes comme
+ * un arbre préfixe en élaguant les branches trop éloignées de la saisie :
+ * son coût dépend du nombre de préfixes proches, non du nombre de noms.
+ * <p>
+ * L'index est alimenté au fil des créations ({@link #ajouter(String)}) et
+ * peut être consulté pendant ce temps par d'autres tâches : toutes ses
+ * tables sont concurrentes. Un nom n'est jamais retiré.
+ */
+final class RechercheNoms {
+
+    private static final Pattern DIACRITIQUES = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATEURS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Nombre maximum de préfixes visités par une recherche approchée.
+     */
+    static final int MAX_PREFIXES_VISITES = 256;
+
+    /**
+     * Forme normalisée → noms, pour les noms qui commencent par la saisie.
+     */
+    private final NavigableMap<String, Set<String>> parForme = new ConcurrentSkipListMap<>();
+
+    /**
+     * Fin de forme normalisée, à partir du deuxième mot → noms.
+     */
+    private final NavigableMap<String, Set<String>> parMotSuivant = new ConcurrentSkipListMap<>();
+
+    /**
+     * Terme (forme entière ou mot) → noms qui le contiennent.
+     */
+    private final NavigableMap<String, Set<String>> parTerme = new ConcurrentSkipListMap<>();
+
+    private final Set<String> noms = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Calcule la forme sous laquelle les noms sont comparés : en minuscules,
+     * sans accents, les mots séparés par une seule espace (« Jean-Édouard »
+     * devient « jean edouard »).
+     *
+     * @param texte Un nom ou une saisie.
+     *
+     * @return La forme normalisée du texte.
+     */
+    static String normaliser(final String texte) {
+        String sansAccents = RechercheNoms.DIACRITIQUES
+                .matcher(Normalizer.normalize(texte, Normalizer.Form.NFD))
+                .replaceAll("");
+        return RechercheNoms.SEPARATEURS
+                .matcher(sansAccents.toLowerCase(Locale.ROOT))
+                .replaceAll(" ")
+                .strip();
+    }
+
+    /**
+     * Ajoute un nom à l'index, s'il n'y figure pas déjà.
+     *
+     * @param nom Le nom à indexer.
+     */
+    void ajouter(final String nom) {
+        if (!this.noms.add(nom)) {
+            return;
+        }
+        String forme = RechercheNoms.normaliser(nom);
+        RechercheNoms.associer(this.parForme, forme, nom);
+        this.indexerTerme(forme, nom);
+        String[] mots = forme.split(" ");
+        if (mots.length > 1) {
+            int debut = 0;
+            for (int i = 0; i < mots.length; ++i) {
+                if (i > 0) {
+                    RechercheNoms.associer(this.parMotSuivant, forme.substring(debut), nom);
+                }
+                this.indexerTerme(mots[i], nom);
+                debut += mots[i].length() + 1;
+            }
+        }
+    }
+
+    /**
+     * @return Le nombre de noms indexés.
+     */
+    int taille() {
+        return this.noms.size();
+    }
+
+    private static void associer(final Map<String, Set<String>> table, final String cle, final String nom) {
+        table.computeIfAbsent(cle, c -> ConcurrentHashMap.newKeySet()).add(nom);
+    }
+
+    private void indexerTerme(final String terme, final String nom) {
+        if (!terme.isEmpty()) {
+            RechercheNoms.associer(this.parTerme, terme, nom);
+        }
+    }
+
+    /**
+     * Cherche les noms les plus proches d'une saisie.
+     *
+     * @param saisie Le début d'un nom, ou un nom approximatif.
+     *
+     * @param nbMax Le nombre maximum de noms proposés.
+     *
+     * @return Au plus nbMax noms, du plus proche au plus lointain ; aucun si
+     *     la saisie ne contient ni lettre ni chiffre.
+     */
+    List<String> rechercher(final String saisie, final int nbMax) {
+        String forme = RechercheNoms.normaliser(saisie);
+        Set<String> resultats = new LinkedHashSet<>();
+        if (forme.isEmpty() || nbMax <= 0) {
+            return new ArrayList<>(resultats);
+        }
+        RechercheNoms.prefixes(this.parForme, forme, nbMax, resultats);
+        RechercheNoms.prefixes(this.parMotSuivant, forme, nbMax, resultats);
+        if (resultats.size() < nbMax) {
+            this.approches(forme, nbMax, resultats);
+        }
+        return new ArrayList<>(resultats);
+    }
+
+    private static void prefixes(final NavigableMap<String, Set<String>> table, final String prefixe,
+                                 final int nbMax, final Set<String> resultats) {
+        for (Map.Entry<String, Set<String>> entree : table.tailMap(prefixe, true).entrySet()) {
+            // les clés sont triées : la première qui ne convient pas arrête le parcours
+            if (resultats.size() >= nbMax || !entree.getKey().startsWith(prefixe)) {
+                return;
+            }
+            RechercheNoms.completer(entree.getValue(), nbMax, resultats);
+        }
+    }
+
+    /**
+     * Ajoute des noms aux résultats, dans l'ordre alphabétique, sans
+     * dépasser nbMax résultats.
+     */
+    private static void completer(final Set<String> noms, final int nbMax, final Set<String> resultats) {
+        List<String> tries = new ArrayList<>(noms);
+        tries.sort(null);
+        for (String nom : tries) {
+            if (resultats.size() >= nbMax) {
+                return;
+            }
+            resultats.add(nom);
+        }
+    }
+
+    /**
+     * Ajoute les noms dont un terme commence par le même caractère que la
+     * saisie et en est à une distance d'édition d'au plus un (saisie de trois
+     * à cinq caractères) ou deux (saisie plus longue). Les saisies plus
+     * courtes ne sont pas approchées.
+     */
+    private void approches(final String forme, final int nbMax, final Set<String> resultats) {
+        int distanceMax = (forme.length() < 3) ? 0 : (forme.length() <= 5) ? 1 : 2;
+        if (distanceMax == 0) {
+            return;
+        }
+        Approximation approximation = new Approximation(forme, distanceMax);
+        // le premier caractère est supposé juste : le parcours part de lui
+        int[] ligne = new int[forme.length() + 1];
+        for (int j = 0; j <= forme.length(); ++j) {
+            ligne[j] = Math.max(j - 1, 0);
+        }
+        ligne[0] = 1;
+        String initiale = forme.substring(0, 1);
+        approximation.parcourir(initiale, ligne, this.parTerme.containsKey(initiale));
+        List<Candidat> candidats = approximation.candidats;
+        candidats.sort((a, b) -> (a.distance != b.distance)
+                ? Integer.compare(a.distance, b.distance)
+                : a.terme.compareTo(b.terme));
+        for (Candidat candidat : candidats) {
+            if (resultats.size() >= nbMax) {
+                return;
+            }
+            RechercheNoms.completer(this.parTerme.get(candidat.terme), nbMax, resultats);
+        }
+    }
+
+    /**
+     * Recherche des termes proches d'une saisie, par un parcours de la table
+     * triée des termes vue comme un arbre préfixe : les fils d'un préfixe
+     * sont lus par {@link NavigableMap#higherKey(Object)}, et chaque préfixe
+     * porte la ligne de la matrice de Levenshtein entre la saisie et
+     * lui-même. Un préfixe dont toute la ligne dépasse la distance maximale
+     * ne peut mener à aucun terme assez proche : ses fils ne sont pas
+     * visités.
+     * <p>
+     * Le parcours s'arrête après {@value RechercheNoms#MAX_PREFIXES_VISITES}
+     * préfixes, ce qui borne le temps de réponse lorsque beaucoup de termes
+     * courts se ressemblent ; les termes non visités ne sont pas proposés.
+     */
+    private final class Approximation {
+
+        private final String forme;
+        private final int distanceMax;
+        private final List<Candidat> candidats = new ArrayList<>();
+        private int restants = RechercheNoms.MAX_PREFIXES_VISITES;
+
+        Approximation(final String forme, final int distanceMax) {
+            this.forme = forme;
+            this.distanceMax = distanceMax;
+        }
+
+        /**
+         * @param estTerme Indique si le préfixe est lui-même un terme.
+         */
+        void parcourir(final String prefixe, final int[] ligne, final boolean estTerme) {
+            int distance = ligne[this.forme.length()];
+            if (estTerme && distance <= this.distanceMax) {
+                this.candidats.add(new Candidat(prefixe, distance));
+            }
+            String cle = RechercheNoms.this.parTerme.higherKey(prefixe);
+            while (cle != null && cle.startsWith(prefixe) && this.restants > 0) {
+                --this.restants;
+                char c = cle.charAt(prefixe.length());
+                int[] suivante = new int[ligne.length];
+                suivante[0] = ligne[0] + 1;
+                int minimum = suivante[0];
+                for (int j = 1; j < ligne.length; ++j) {
+                    int cout = (this.forme.charAt(j - 1) == c) ? 0 : 1;
+                    suivante[j] = Math.min(Math.min(suivante[j - 1] + 1, ligne[j] + 1), ligne[j - 1] + cout);
+                    minimum = Math.min(minimum, suivante[j]);
+                }
+                if (minimum <= this.distanceMax) {
+                    // le premier terme du fils est le fils lui-même, s'il existe
+                    this.parcourir(prefixe + c, suivante, cle.length() == prefixe.length() + 1);
+                }
+                if (c == Character.MAX_VALUE) {
+                    return;
+                }
+                // premier terme du frère suivant
+                cle = RechercheNoms.this.parTerme.ceilingKey(prefixe + (char) (c + 1));
+            }
+        }
+    }
+
+    private static final class Candidat {
+
+        private final String terme;
+        private final int distance;
+
+        Candidat(final String terme, final int distance) {
+            this.terme = terme;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * La classe RegistreMappe donne un accès paresseux à un instantané au
+ * {@link FormatBinaire format binaire}, projeté en mémoire.
+ * <p>
+ * À l'ouverture, seul l'entête est lu : le temps de démarrage et
+ * l'occupation du tas ne dépendent pas du nombre d'enfants enregistrés.
+ * Un {@link Enfant} n'est matérialisé dans l'{@link Application} qu'au
+ * moment où il est demandé, avec ses séances et les instruments
+ * correspondants. Un {@link Instrument} demandé est matérialisé avec tous
+ * ses inscrits, afin que ses séances soient complètes.
+ * <p>
+ * Le registre est en lecture seule : les mutations ultérieures s'appliquent
+ * à l'{@link Application} (et à son {@link Journal}), jamais au fichier
+ * projeté.
+ * <p>
+ * Les chargements sont sérialisés par le moniteur du registre : une tâche
+ * qui demande un enfant en cours de chargement attend que ses séances soient
+ * complètes avant de l'obtenir.
+ */
+final class RegistreMappe {
+
+    private final MappedByteBuffer tampon;
+
+    private final int nbInstruments;
+    private final int nbEnfants;
+    private final int capaciteInstruments;
+    private final int capaciteEnfants;
+    private final int debutTableInstruments;
+    private final int debutPositionsInstruments;
+    private final int debutTableEnfants;
+    private final int debutPositionsEnfants;
+
+    /**
+     * Instruments déjà matérialisés, indicés par identifiant.
+     */
+    private final Instrument[] instruments;
+
+    /**
+     * Instruments dont tous les inscrits ont été matérialisés.
+     */
+    private final BitSet instrumentsComplets;
+
+    /**
+     * Enfants déjà matérialisés (avec leurs séances).
+     */
+    private final BitSet enfantsCharges;
+
+    /**
+     * Indique si les noms de l'instantané ont été versés aux index de
+     * recherche.
+     */
+    private boolean nomsIndexes;
+
+    private RegistreMappe(final MappedByteBuffer tampon) throws IOException {
+        this.tampon = tampon;
+        if (tampon.getInt(0) != FormatBinaire.MAGIQUE
+                || Short.toUnsignedInt(tampon.getShort(Integer.BYTES)) != FormatBinaire.VERSION) {
+            throw new IOException("Instantané binaire invalide ou d'une version non supportée.");
+        }
+        int position = Integer.BYTES + Short.BYTES;
+        this.nbInstruments = tampon.getInt(position);
+        this.nbEnfants = tampon.getInt(position += Integer.BYTES);
+        position += Integer.BYTES;  // nombre de séances
+        this.capaciteInstruments = tampon.getInt(position += Integer.BYTES);
+        this.capaciteEnfants = tampon.getInt(position += Integer.BYTES);
+
+        this.debutTableInstruments = FormatBinaire.TAILLE_ENTETE;
+        this.debutPositionsInstruments = this.debutTableInstruments + this.capaciteInstruments * Integer.BYTES;
+        this.debutTableEnfants = this.debutPositionsInstruments + this.nbInstruments * Integer.BYTES;
+        this.debutPositionsEnfants = this.debutTableEnfants + this.capaciteEnfants * Integer.BYTES;
+
+        this.instruments = new Instrument[this.nbInstruments];
+        this.instrumentsComplets = new BitSet(this.nbInstruments);
+        this.enfantsCharges = new BitSet(this.nbEnfants);
+    }
+
+    /**
+     * Projette en mémoire un instantané au format binaire.
+     *
+     * @param chemin Le chemin de l'instantané.
+     *
+     * @return Le registre paresseux associé à l'instantané.
+     *
+     * @throws IOException si l'instantané n'est pas dans la version courante
+     *     du format binaire, ou qu'une erreur d'entrée/sortie survient.
+     */
+    static RegistreMappe ouvrir(final Path chemin) throws IOException {
+        try (FileChannel canal = FileChannel.open(chemin, StandardOpenOption.READ)) {
+            // la projection reste valide après la fermeture du canal
+            return new RegistreMappe(canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size()));
+        }
+    }
+
+    /**
+     * Lit la chaîne écrite par {@link java.io.DataOutputStream#writeUTF}
+     * à la position indiquée.
+     */
+    private String lireNom(final int position) {
+        int taille = Short.BYTES + Short.toUnsignedInt(this.tampon.getShort(position));
+        byte[] octets = new byte[taille];
+        this.tampon.duplicate().position(position).get(octets);
+        try {
+            return new DataInputStream(new ByteArrayInputStream(octets)).readUTF();
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException("Instantané binaire corrompu.", ioe);
+        }
+    }
+
+    /**
+     * Cherche l'identifiant d'un nom dans l'une des tables de hachage.
+     *
+     * @return L'identifiant du nom, ou -1 s'il est absent.
+     */
+    private int chercher(final String nom, final int debutTable, final int capacite, final int debutPositions) {
+        int masque = capacite - 1;
+        int i = FormatBinaire.hacher(nom) & masque;
+        int entree;
+        while ((entree = this.tampon.getInt(debutTable + i * Integer.BYTES)) != 0) {
+            int id = entree - 1;
+            if (nom.equals(this.lireNom(this.tampon.getInt(debutPositions + id * Integer.BYTES)))) {
+                return id;
+            }
+            i = (i + 1) & masque;
+        }
+        return -1;
+    }
+
+    /**
+     * Matérialise tous les enregistrements dont le nom est égal à nom, sans
+     * tenir compte de la casse. La table de hachage étant indexée par
+     * {@link Application#cle(String)}, ils sont tous dans la même suite de
+     * sondage.
+     */
+    private void chargerSansCasse(final String nom, final int debutTable, final int capacite,
+                                  final int debutPositions, final IntConsumer charger) {
+        String cle = Application.cle(nom);
+        int masque = capacite - 1;
+        int i = FormatBinaire.hacher(nom) & masque;
+        int entree;
+        while ((entree = this.tampon.getInt(debutTable + i * Integer.BYTES)) != 0) {
+            int id = entree - 1;
+            if (cle.equals(Application.cle(this.lireNom(this.tampon.getInt(debutPositions + id * Integer.BYTES))))) {
+                charger.accept(id);
+            }
+            i = (i + 1) & masque;
+        }
+    }
+
+    private int positionInstrument(final int id) {
+        return this.tampon.getInt(this.debutPositionsInstruments + id * Integer.BYTES);
+    }
+
+    private int positionEnfant(final int id) {
+        return this.tampon.getInt(this.debutPositionsEnfants + id * Integer.BYTES);
+    }
+
+    /**
+     * Matérialise l'instrument, sans ses inscrits.
+     */
+    private Instrument coquilleInstrument(final int id, final Application app) {
+        if (this.instruments[id] == null) {
+            this.instruments[id] = app.enregistrerInstrument(this.lireNom(this.positionInstrument(id)));
+        }
+        return this.instruments[id];
+    }
+
+    private void chargerEnfant(final int id, final Application app) {
+        if (this.enfantsCharges.get(id)) {
+            return;
+        }
+        this.enfantsCharges.set(id);
+
+        int position = this.positionEnfant(id);
+        Enfant enfant = app.enregistrerEnfant(this.lireNom(position));
+        position += Short.BYTES + Short.toUnsignedInt(this.tampon.getShort(position));
+        int nbSeances = Byte.toUnsignedInt(this.tampon.get(position));
+        position += Byte.BYTES;
+        Jour[] jours = Jour.values();
+        for (int s = 0; s < nbSeances; ++s) {
+            Instrument instrument = this.coquilleInstrument(this.tampon.getInt(position), app);
+            Jour jour = jours[this.tampon.get(position + Integer.BYTES)];
+            app.enregistrerSeance(enfant, instrument, jour);
+            position += Integer.BYTES + Byte.BYTES;
+        }
+    }
+
+    private void chargerInstrument(final int id, final Application app) {
+        if (this.instrumentsComplets.get(id)) {
+            return;
+        }
+        this.instrumentsComplets.set(id);
+        this.coquilleInstrument(id, app);
+
+        int position = this.positionInstrument(id);
+        position += Short.BYTES + Short.toUnsignedInt(this.tampon.getShort(position));
+        int nbInscrits = this.tampon.getInt(position);
+        for (int i = 0; i < nbInscrits; ++i) {
+            position += Integer.BYTES;
+            this.chargerEnfant(this.tampon.getInt(position), app);
+        }
+    }
+
+    /**
+     * Matérialise dans l'application l'enfant de ce nom, s'il existe dans
+     * l'instantané et n'est pas déjà matérialisé.
+     *
+     * @param nom Le nom de l'enfant.
+     *
+     * @param app L'application à alimenter.
+     */
+    synchronized void chargerEnfant(final String nom, final Application app) {
+        int id = this.chercher(nom, this.debutTableEnfants, this.capaciteEnfants, this.debutPositionsEnfants);
+        if (id >= 0) {
+            this.chargerEnfant(id, app);
+        }
+    }
+
+    /**
+     * Matérialise dans l'application l'instrument de ce nom et tous ses
+     * inscrits, s'il existe dans l'instantané et n'est pas déjà complet.
+     *
+     * @param nom Le nom de l'instrument.
+     *
+     * @param app L'application à alimenter.
+     */
+    synchronized void chargerInstrument(final String nom, final Application app) {
+        int id = this.chercher(nom, this.debutTableInstruments, this.capaciteInstruments, this.debutPositionsInstruments);
+        if (id >= 0) {
+            this.chargerInstrument(id, app);
+        }
+    }
+
+    /**
+     * Matérialise dans l'application les enfants dont le nom est égal à nom,
+     * sans tenir compte de la casse.
+     *
+     * @param nom Le nom de l'enfant.
+     *
+     * @param app L'application à alimenter.
+     */
+    synchronized void chargerEnfantSansCasse(final String nom, final Application app) {
+        this.chargerSansCasse(nom, this.debutTableEnfants, this.capaciteEnfants, this.debutPositionsEnfants,
+                id -> this.chargerEnfant(id, app));
+    }
+
+    /**
+     * Matérialise dans l'application les instruments (et leurs inscrits)
+     * dont le nom est égal à nom, sans tenir compte de la casse.
+     *
+     * @param nom Le nom de l'instrument.
+     *
+     * @param app L'application à alimenter.
+     */
+    synchronized void chargerInstrumentSansCasse(final String nom, final Application app) {
+        this.chargerSansCasse(nom, this.debutTableInstruments, this.capaciteInstruments, this.debutPositionsInstruments,
+                id -> this.chargerInstrument(id, app));
+    }
+
+    /**
+     * Verse les noms de l'instantané aux index de recherche, une seule fois,
+     * sans matérialiser les enfants ni les instruments : seuls les noms sont
+     * lus.
+     *
+     * @param enfants L'index des noms d'enfant.
+     *
+     * @param instruments L'index des noms d'instrument.
+     */
+    synchronized void indexerNoms(final RechercheNoms enfants, final RechercheNoms instruments) {
+        if (this.nomsIndexes) {
+            return;
+        }
+        for (int id = 0; id < this.nbInstruments; ++id) {
+            instruments.ajouter(this.lireNom(this.positionInstrument(id)));
+        }
+        for (int id = 0; id < this.nbEnfants; ++id) {
+            enfants.ajouter(this.lireNom(this.positionEnfant(id)));
+        }
+        this.nomsIndexes = true;
+    }
+
+    /**
+     * Matérialise dans l'application tous les instruments, sans leurs
+     * inscrits.
+     *
+     * @param app L'application à alimenter.
+     */
+    synchronized void chargerInstruments(final Application app) {
+        for (int id = 0; id < this.nbInstruments; ++id) {
+            this.coquilleInstrument(id, app);
+        }
+    }
+
+    /**
+     * Matérialise dans l'application l'intégralité de l'instantané.
+     *
+     * @param app L'application à alimenter.
+     */
+    synchronized void chargerTout(final Application app) {
+        for (int id = 0; id < this.nbInstruments; ++id) {
+            this.coquilleInstrument(id, app);
+            this.instrumentsComplets.set(id);
+        }
+        for (int id = 0; id < this.nbEnfants; ++id) {
+            this.chargerEnfant(id, app);
+        }
+    }
+}
@@ -0,0 +1,678 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * La classe Requete interroge les séances d'un {@link Instantane}, au-delà
+ * des deux listes fixes du menu : filtres, projection et regroupement.
+ * <p>
+ * Une requête porte sur les séances. Elle retient :
+ * <ul>
+ *   <li>les séances d'un enfant, d'un instrument, ou de certains jours
+ *       ({@link #enfant(String)}, {@link #instrument(String)},
+ *       {@link #jour(Jour)}) ;</li>
+ *   <li>parmi celles-ci, les séances des enfants qui ont une séance chacun
+ *       des jours demandés et sont inscrits à chacun des instruments
+ *       demandés ({@link #enfantsAvecJour(Jour)},
+ *       {@link #enfantsAvecInstrument(String)}).</li>
+ * </ul>
+ * Les séances retenues sont projetées sur des {@link Champ}s, puis comptées
+ * par valeur distincte : {@link #afficher(Champ...)} trie les lignes par
+ * valeurs, {@link #grouperPar(Champ...)} par nombre décroissant. Le champ
+ * {@link Champ#PAIRE} compte les paires d'instruments retenues chez un même
+ * enfant.
+ * <p>
+ * Une requête s'écrit aussi en texte (voir {@link #analyser(String)}) :
+ * <pre>
+ * instrument=violon jour=samedi afficher=enfant
+ * jours=mercredi,samedi afficher=enfant
+ * par=paire max=10
+ * par=instrument,jour
+ * </pre>
+ * L'exécution parcourt directement le {@link StockSeances}, sans construire
+ * de {@link Seance} : les enfants sont répartis entre les tâches du
+ * {@link java.util.concurrent.ForkJoinPool#commonPool() fork-join commun}
+ * par un flux parallèle, chaque tâche compte dans sa propre table, et les
+ * tables sont fusionnées à la fin. Seules les valeurs distinctes sont
+ * ensuite converties en noms.
+ * <p>
+ * Une requête en cours de construction n'est pas partagée entre tâches ;
+ * une requête construite peut être exécutée plusieurs fois, y compris en
+ * parallèle.
+ */
+public final class Requete {
+
+    private static final Jour[] JOURS = Jour.values();
+
+    // les clés de comptage rangent l'enfant, l'instrument et le jour d'une
+    // séance dans un long : 31 bits, 31 bits et 2 bits
+    private static final int DECALAGE_ENFANT = 33;
+    private static final int DECALAGE_INSTRUMENT = 2;
+    private static final long MASQUE_ID = 0x7FFF_FFFFL;
+    private static final long MASQUE_JOUR = 0b11L;
+
+    static {
+        assert Requete.JOURS.length <= 4 : "Le jour d'une clé de comptage tient sur 2 bits.";
+    }
+
+    /**
+     * Les valeurs sur lesquelles une séance est projetée.
+     */
+    public enum Champ {
+        ENFANT,
+        INSTRUMENT,
+        JOUR,
+        /**
+         * Deux instruments retenus chez un même enfant ; ce champ ne se
+         * combine avec aucun autre.
+         */
+        PAIRE,
+        ;
+
+        /**
+         * Interprète le nom d'un champ, sans tenir compte de la casse.
+         *
+         * @throws IllegalArgumentException si le champ est inconnu.
+         */
+        static Champ depuisNom(final String nom) {
+            try {
+                return Champ.valueOf(nom.toUpperCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException iae) {
+                throw new IllegalArgumentException("Champ inconnu : " + nom, iae);
+            }
+        }
+    }
+
+    /**
+     * Une ligne de résultat : les valeurs des champs projetés et le nombre
+     * de séances (ou de paires) qui les portent.
+     */
+    public static final class Ligne {
+
+        private final List<String> valeurs;
+        private final long nombre;
+        private final long cle;
+
+        Ligne(final List<String> valeurs, final long nombre, final long cle) {
+            this.valeurs = Collections.unmodifiableList(valeurs);
+            this.nombre = nombre;
+            this.cle = cle;
+        }
+
+        public List<String> getValeurs() {
+            return this.valeurs;
+        }
+
+        public long getNombre() {
+            return this.nombre;
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" ; ", this.valeurs) + " (" + this.nombre + ")";
+        }
+    }
+
+    private String enfant = null;
+    private String instrument = null;
+    private final Set<Jour> jours = EnumSet.noneOf(Jour.class);
+    private final Set<Jour> joursEnfant = EnumSet.noneOf(Jour.class);
+    private final Set<String> instrumentsEnfant = new LinkedHashSet<>();
+    private List<Champ> champs = List.of(Champ.ENFANT, Champ.INSTRUMENT, Champ.JOUR);
+    private boolean parNombre = false;
+    private int nbMax = Integer.MAX_VALUE;
+
+    /**
+     * Ne retient que les séances d'un enfant.
+     *
+     * @param nom Le nom de l'enfant.
+     *
+     * @return La requête.
+     */
+    public Requete enfant(final String nom) {
+        this.enfant = nom;
+        return this;
+    }
+
+    /**
+     * Ne retient que les séances d'un instrument.
+     *
+     * @param nom Le nom de l'instrument.
+     *
+     * @return La requête.
+     */
+    public Requete instrument(final String nom) {
+        this.instrument = nom;
+        return this;
+    }
+
+    /**
+     * Retient les séances d'un jour ; appelée plusieurs fois, retient les
+     * séances de l'un des jours indiqués.
+     *
+     * @param jour Le jour retenu.
+     *
+     * @return La requête.
+     */
+    public Requete jour(final Jour jour) {
+        this.jours.add(jour);
+        return this;
+    }
+
+    /**
+     * Ne retient que les enfants qui ont une séance ce jour-là (et chacun
+     * des autres jours ainsi demandés).
+     *
+     * @param jour Le jour exigé.
+     *
+     * @return La requête.
+     */
+    public Requete enfantsAvecJour(final Jour jour) {
+        this.joursEnfant.add(jour);
+        return this;
+    }
+
+    /**
+     * Ne retient que les enfants inscrits à cet instrument (et à chacun des
+     * autres instruments ainsi demandés).
+     *
+     * @param nom Le nom de l'instrument exigé.
+     *
+     * @return La requête.
+     */
+    public Requete enfantsAvecInstrument(final String nom) {
+        this.instrumentsEnfant.add(nom);
+        return this;
+    }
+
+    /**
+     * Projette les séances retenues sur des champs ; les lignes sont triées
+     * par valeurs.
+     *
+     * @param champs Les champs affichés, dans l'ordre.
+     *
+     * @return La requête.
+     *
+     * @throws IllegalArgumentException si aucun champ n'est donné, ou si
+     *     {@link Champ#PAIRE} est combiné à un autre champ.
+     */
+    public Requete afficher(final Champ... champs) {
+        this.champs = Requete.verifierChamps(champs);
+        this.parNombre = false;
+        return this;
+    }
+
+    /**
+     * Regroupe les séances retenues par champs ; les lignes sont triées par
+     * nombre décroissant.
+     *
+     * @param champs Les champs de regroupement, dans l'ordre.
+     *
+     * @return La requête.
+     *
+     * @throws IllegalArgumentException si aucun champ n'est donné, ou si
+     *     {@link Champ#PAIRE} est combiné à un autre champ.
+     */
+    public Requete grouperPar(final Champ... champs) {
+        this.champs = Requete.verifierChamps(champs);
+        this.parNombre = true;
+        return this;
+    }
+
+    /**
+     * Limite le nombre de lignes du résultat, après le tri.
+     *
+     * @param nbMax Le nombre maximum de lignes, positif.
+     *
+     * @return La requête.
+     */
+    public Requete limiter(final int nbMax) {
+        if (nbMax <= 0) {
+            throw new IllegalArgumentException("Le nombre de lignes doit être positif : " + nbMax);
+        }
+        this.nbMax = nbMax;
+        return this;
+    }
+
+    private static List<Champ> verifierChamps(final Champ... champs) {
+        List<Champ> liste = List.copyOf(new LinkedHashSet<>(Arrays.asList(champs)));
+        if (liste.isEmpty()) {
+            throw new IllegalArgumentException("Aucun champ");
+        }
+        if (liste.contains(Champ.PAIRE) && liste.size() > 1) {
+            throw new IllegalArgumentException("Le champ paire ne se combine avec aucun autre");
+        }
+        return liste;
+    }
+
+    /**
+     * @return Les champs projetés, dans l'ordre.
+     */
+    public List<Champ> getChamps() {
+        return this.champs;
+    }
+
+    /**
+     * @return true si la requête regroupe (voir {@link #grouperPar(Champ...)}).
+     */
+    public boolean estGroupee() {
+        return this.parNombre;
+    }
+
+    /**
+     * Écrit un résultat de la requête, une ligne par {@link Ligne}, valeurs
+     * séparées par des points-virgules, précédées d'une ligne d'entête ;
+     * le nombre n'est écrit que si la requête regroupe. Le {@link Writer}
+     * est vidé mais pas fermé.
+     *
+     * @param out La destination.
+     *
+     * @param lignes Le résultat de {@link #executer(Instantane)}.
+     *
+     * @throws IOException si une erreur d'écriture survient.
+     */
+    public void ecrire(final Writer out, final List<Ligne> lignes) throws IOException {
+        StringBuilder ligne = new StringBuilder();
+        for (Champ champ : this.champs) {
+            if (champ == Champ.PAIRE) {
+                ligne.append("instrument ; instrument ; ");
+            } else {
+                ligne.append(champ.name().toLowerCase(Locale.ROOT)).append(" ; ");
+            }
+        }
+        if (this.parNombre) {
+            ligne.append("nombre ; ");
+        }
+        ligne.setLength(ligne.length() - 3);
+        out.append(ligne).write(System.lineSeparator());
+        for (Ligne resultat : lignes) {
+            ligne.setLength(0);
+            ligne.append(String.join(" ; ", resultat.valeurs));
+            if (this.parNombre) {
+                ligne.append(" ; ").append(resultat.nombre);
+            }
+            out.append(ligne).write(System.lineSeparator());
+        }
+        out.write(lignes.size() + " ligne(s)." + System.lineSeparator());
+        out.flush();
+    }
+
+    /**
+     * Interprète une requête écrite en texte : des critères {@code clé=valeur}
+     * séparés par des blancs. Une valeur qui contient des blancs s'écrit
+     * entre guillemets droits ; les listes sont séparées par des virgules.
+     * <ul>
+     *   <li>{@code enfant=}, {@code instrument=} : voir
+     *       {@link #enfant(String)}, {@link #instrument(String)} ;</li>
+     *   <li>{@code jour=j1,j2} : voir {@link #jour(Jour)} ;</li>
+     *   <li>{@code jours=j1,j2} : voir {@link #enfantsAvecJour(Jour)} ;</li>
+     *   <li>{@code instruments=i1,i2} : voir
+     *       {@link #enfantsAvecInstrument(String)} ;</li>
+     *   <li>{@code afficher=c1,c2}, {@code par=c1,c2} : voir
+     *       {@link #afficher(Champ...)}, {@link #grouperPar(Champ...)} ;</li>
+     *   <li>{@code max=n} : voir {@link #limiter(int)}.</li>
+     * </ul>
+     *
+     * @param texte Le texte de la requête ; vide, il retient toutes les
+     *     séances.
+     *
+     * @return La requête.
+     *
+     * @throws IllegalArgumentException si le texte n'est pas une requête.
+     */
+    public static Requete analyser(final String texte) {
+        Requete requete = new Requete();
+        for (String critere : Requete.decouper(texte)) {
+            int egal = critere.indexOf('=');
+            if (egal <= 0 || egal == critere.length() - 1) {
+                throw new IllegalArgumentException("Critère invalide : " + critere);
+            }
+            String cle = critere.substring(0, egal).toLowerCase(Locale.ROOT);
+            String valeur = critere.substring(egal + 1);
+            switch (cle) {
+                case "enfant":
+                    requete.enfant(valeur);
+                    break;
+                case "instrument":
+                    requete.instrument(valeur);
+                    break;
+                case "jour":
+                    for (String jour : valeur.split(",")) {
+                        requete.jour(Requete.lireJour(jour));
+                    }
+                    break;
+                case "jours":
+                    for (String jour : valeur.split(",")) {
+                        requete.enfantsAvecJour(Requete.lireJour(jour));
+                    }
+                    break;
+                case "instruments":
+                    for (String nom : valeur.split(",")) {
+                        requete.enfantsAvecInstrument(nom.strip());
+                    }
+                    break;
+                case "afficher":
+                    requete.afficher(Requete.lireChamps(valeur));
+                    break;
+                case "par":
+                    requete.grouperPar(Requete.lireChamps(valeur));
+                    break;
+                case "max":
+                    try {
+                        requete.limiter(Integer.parseInt(valeur));
+                    }
+                    catch (NumberFormatException nfe) {
+                        throw new IllegalArgumentException("Nombre invalide : " + valeur, nfe);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Critère inconnu : " + cle);
+            }
+        }
+        return requete;
+    }
+
+    /**
+     * Découpe un texte en mots séparés par des blancs, les guillemets
+     * droits protégeant les blancs qu'ils entourent.
+     */
+    private static List<String> decouper(final String texte) {
+        List<String> mots = new ArrayList<>();
+        StringBuilder mot = new StringBuilder();
+        boolean entreGuillemets = false;
+        for (int i = 0; i < texte.length(); ++i) {
+            char c = texte.charAt(i);
+            if (c == '"') {
+                entreGuillemets = !entreGuillemets;
+            } else if (Character.isWhitespace(c) && !entreGuillemets) {
+                if (mot.length() > 0) {
+                    mots.add(mot.toString());
+                    mot.setLength(0);
+                }
+            } else {
+                mot.append(c);
+            }
+        }
+        if (entreGuillemets) {
+            throw new IllegalArgumentException("Guillemet non fermé");
+        }
+        if (mot.length() > 0) {
+            mots.add(mot.toString());
+        }
+        return mots;
+    }
+
+    private static Jour lireJour(final String texte) {
+        try {
+            return Jour.valueOfString(texte.strip().toLowerCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException("Jour inconnu : " + texte, iae);
+        }
+    }
+
+    private static Champ[] lireChamps(final String texte) {
+        String[] noms = texte.split(",");
+        Champ[] champs = new Champ[noms.length];
+        for (int i = 0; i < noms.length; ++i) {
+            champs[i] = Champ.depuisNom(noms[i].strip());
+        }
+        return champs;
+    }
+
+    /**
+     * Exécute la requête.
+     *
+     * @param instantane L'instantané interrogé, ouvert pendant toute
+     *     l'exécution.
+     *
+     * @return Les lignes du résultat, triées et limitées ; aucune si un
+     *     enfant ou un instrument nommé n'existe pas dans l'instantané.
+     */
+    public List<Ligne> executer(final Instantane instantane) {
+        Execution execution = new Execution(instantane);
+        if (execution.vide) {
+            return new ArrayList<>();
+        }
+        int debut = 0;
+        int fin = instantane.getStock().getNbEnfants();
+        if (this.enfant != null) {
+            debut = instantane.getEnfant(this.enfant).getId();
+            fin = debut + 1;
+        }
+        Map<Long, long[]> comptes = IntStream.range(debut, fin)
+                .parallel()
+                .collect(Agregat::new, execution::accumuler, Agregat::fusionner)
+                .comptes;
+        return this.presenter(comptes, instantane.getStock());
+    }
+
+    /**
+     * Les critères d'une requête, résolus en identifiants du stock pour un
+     * instantané.
+     */
+    private final class Execution {
+
+        private final StockSeances stock;
+        private final long version;
+        private final boolean vide;
+        private final int idInstrument;
+        private final int masqueJours;
+        private final int masqueJoursEnfant;
+        private final int[] idsInstrumentsEnfant;
+
+        Execution(final Instantane instantane) {
+            Requete requete = Requete.this;
+            this.stock = instantane.getStock();
+            this.version = instantane.getVersion();
+            boolean inconnu = requete.enfant != null && instantane.getEnfant(requete.enfant) == null;
+            int id = -1;
+            if (requete.instrument != null) {
+                Instrument choisi = instantane.getInstrument(requete.instrument);
+                inconnu |= choisi == null;
+                id = (choisi == null) ? -1 : choisi.getId();
+            }
+            this.idInstrument = id;
+            this.idsInstrumentsEnfant = new int[requete.instrumentsEnfant.size()];
+            int i = 0;
+            for (String nom : requete.instrumentsEnfant) {
+                Instrument exige = instantane.getInstrument(nom);
+                inconnu |= exige == null;
+                this.idsInstrumentsEnfant[i++] = (exige == null) ? -1 : exige.getId();
+            }
+            this.vide = inconnu;
+            this.masqueJours = Requete.masque(requete.jours);
+            this.masqueJoursEnfant = Requete.masque(requete.joursEnfant);
+        }
+
+        /**
+         * Compte les séances retenues d'un enfant.
+         */
+        void accumuler(final Agregat agregat, final int idEnfant) {
+            int[] instruments = agregat.instruments;
+            byte[] jours = agregat.jours;
+            // un enfant sans séance visible ne donne aucune ligne, et une
+            // séance visible implique un enfant visible : l'objet Enfant
+            // n'est pas lu
+            int nb = this.stock.lireSeances(idEnfant, this.version, instruments, jours);
+            if (nb == 0) {
+                return;
+            }
+
+            int masqueEnfant = 0;
+            for (int k = 0; k < nb; ++k) {
+                masqueEnfant |= 1 << jours[k];
+            }
+            if ((masqueEnfant & this.masqueJoursEnfant) != this.masqueJoursEnfant) {
+                return;
+            }
+            for (int exige : this.idsInstrumentsEnfant) {
+                if (!Requete.contient(instruments, nb, exige)) {
+                    return;
+                }
+            }
+
+            // les séances retenues sont tassées en tête des tableaux
+            int nbRetenues = 0;
+            for (int k = 0; k < nb; ++k) {
+                if ((this.idInstrument < 0 || instruments[k] == this.idInstrument)
+                        && (this.masqueJours == 0 || (this.masqueJours & (1 << jours[k])) != 0)) {
+                    instruments[nbRetenues] = instruments[k];
+                    jours[nbRetenues] = jours[k];
+                    ++nbRetenues;
+                }
+            }
+
+            List<Champ> champs = Requete.this.champs;
+            if (champs.get(0) == Champ.PAIRE) {
+                for (int k = 0; k < nbRetenues; ++k) {
+                    for (int l = k + 1; l < nbRetenues; ++l) {
+                        int a = Math.min(instruments[k], instruments[l]);
+                        int b = Math.max(instruments[k], instruments[l]);
+                        agregat.compter(((long) a << 32) | b);
+                    }
+                }
+                return;
+            }
+            long cleEnfant = champs.contains(Champ.ENFANT) ? (long) idEnfant << Requete.DECALAGE_ENFANT : 0L;
+            boolean avecInstrument = champs.contains(Champ.INSTRUMENT);
+            boolean avecJour = champs.contains(Champ.JOUR);
+            for (int k = 0; k < nbRetenues; ++k) {
+                long cle = cleEnfant;
+                if (avecInstrument) {
+                    cle |= (long) instruments[k] << Requete.DECALAGE_INSTRUMENT;
+                }
+                if (avecJour) {
+                    cle |= jours[k];
+                }
+                agregat.compter(cle);
+            }
+        }
+    }
+
+    /**
+     * Les comptes d'une tâche, et ses tableaux de lecture des séances.
+     */
+    private static final class Agregat {
+
+        final int[] instruments = new int[Enfant.MAX_SEANCES];
+        final byte[] jours = new byte[Enfant.MAX_SEANCES];
+        Map<Long, long[]> comptes = new HashMap<>();
+
+        void compter(final long cle) {
+            long[] compte = this.comptes.get(cle);
+            if (compte == null) {
+                this.comptes.put(cle, new long[] {1});
+            } else {
+                ++compte[0];
+            }
+        }
+
+        void fusionner(final Agregat autre) {
+            Map<Long, long[]> petit = autre.comptes;
+            if (petit.size() > this.comptes.size()) {
+                petit = this.comptes;
+                this.comptes = autre.comptes;
+            }
+            for (Map.Entry<Long, long[]> entree : petit.entrySet()) {
+                long[] compte = this.comptes.putIfAbsent(entree.getKey(), entree.getValue());
+                if (compte != null) {
+                    compte[0] += entree.getValue()[0];
+                }
+            }
+        }
+    }
+
+    private static int masque(final Set<Jour> jours) {
+        int masque = 0;
+        for (Jour jour : jours) {
+            masque |= 1 << jour.ordinal();
+        }
+        return masque;
+    }
+
+    private static boolean contient(final int[] ids, final int nb, final int id) {
+        for (int k = 0; k < nb; ++k) {
+            if (ids[k] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Convertit les clés de comptage en lignes, puis les trie et les limite.
+     */
+    private List<Ligne> presenter(final Map<Long, long[]> comptes, final StockSeances stock) {
+        List<Ligne> lignes = new ArrayList<>(comptes.size());
+        boolean paires = this.champs.get(0) == Champ.PAIRE;
+        for (Map.Entry<Long, long[]> entree : comptes.entrySet()) {
+            long cle = entree.getKey();
+            List<String> valeurs = new ArrayList<>(2);
+            if (paires) {
+                String a = stock.instrumentParId((int) (cle >>> 32)).getNom();
+                String b = stock.instrumentParId((int) (cle & Requete.MASQUE_ID)).getNom();
+                valeurs.add((a.compareTo(b) <= 0) ? a : b);
+                valeurs.add((a.compareTo(b) <= 0) ? b : a);
+            } else {
+                for (Champ champ : this.champs) {
+                    valeurs.add(Requete.valeur(champ, cle, stock));
+                }
+            }
+            lignes.add(new Ligne(valeurs, entree.getValue()[0], cle));
+        }
+        lignes.sort(this.ordre());
+        return (lignes.size() > this.nbMax) ? new ArrayList<>(lignes.subList(0, this.nbMax)) : lignes;
+    }
+
+    private static String valeur(final Champ champ, final long cle, final StockSeances stock) {
+        switch (champ) {
+            case ENFANT:
+                return stock.enfantParId((int) (cle >>> Requete.DECALAGE_ENFANT)).getNom();
+            case INSTRUMENT:
+                return stock.instrumentParId((int) ((cle >>> Requete.DECALAGE_INSTRUMENT) & Requete.MASQUE_ID))
+                        .getNom();
+            case JOUR:
+                return Requete.JOURS[(int) (cle & Requete.MASQUE_JOUR)].toString();
+            default:
+                throw new IllegalStateException("Champ non géré : " + champ);
+        }
+    }
+
+    /**
+     * Ordonne les lignes par valeurs, les jours dans l'ordre de la semaine,
+     * précédées du nombre décroissant si la requête regroupe.
+     */
+    private Comparator<Ligne> ordre() {
+        Comparator<Ligne> parValeurs = (l1, l2) -> {
+            for (int i = 0; i < l1.valeurs.size(); ++i) {
+                // une paire porte deux valeurs pour un seul champ
+                int comparaison = (i < this.champs.size() && this.champs.get(i) == Champ.JOUR)
+                        ? Long.compare(l1.cle & Requete.MASQUE_JOUR, l2.cle & Requete.MASQUE_JOUR)
+                        : l1.valeurs.get(i).compareTo(l2.valeurs.get(i));
+                if (comparaison != 0) {
+                    return comparaison;
+                }
+            }
+            return 0;
+        };
+        if (!this.parNombre) {
+            return parValeurs;
+        }
+        return Comparator.comparingLong(Ligne::getNombre).reversed().thenComparing(parValeurs);
+    }
+}
@@ -0,0 +1,48 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+/**
+ * Le résultat d'une demande d'inscription ou de désinscription à une séance
+ * de découverte (voir {@link ServiceInscription}) : la demande est acceptée,
+ * mise en liste d'attente faute de place, ou refusée pour le motif indiqué.
+ */
+public enum ResultatInscription {
+    ACCEPTEE(null),
+    EN_ATTENTE("séance complète, enfant placé en liste d'attente"),
+    ENFANT_INCONNU("enfant inconnu"),
+    INSTRUMENT_INCONNU("instrument inconnu"),
+    SEANCES_EPUISEES("enfant déjà inscrit à " + Enfant.MAX_SEANCES + " séances"),
+    INSTRUMENT_DEJA_CHOISI("enfant déjà inscrit à cet instrument"),
+    JOUR_OCCUPE("enfant déjà inscrit à une séance ce jour-là"),
+    DEJA_EN_ATTENTE("enfant déjà en liste d'attente pour cette séance"),
+    NON_INSCRIT("enfant ni inscrit ni en attente pour cet instrument"),
+    SEANCE_COMPLETE("séance complète");
+
+    private final String motif;
+
+    private ResultatInscription(final String motif) {
+        this.motif = motif;
+    }
+
+    /**
+     * @return true si l'inscription est acceptée.
+     */
+    public boolean estAcceptee() {
+        return this == ResultatInscription.ACCEPTEE;
+    }
+
+    /**
+     * @return true si l'enfant a été placé en liste d'attente : il sera
+     *     inscrit automatiquement dès qu'une place se libère.
+     */
+    public boolean estEnAttente() {
+        return this == ResultatInscription.EN_ATTENTE;
+    }
+
+    /**
+     * @return Le motif du refus ou de la mise en attente, ou null si
+     *     l'inscription est acceptée.
+     */
+    public String getMotif() {
+        return this.motif;
+    }
+}
@@ -0,0 +1,128 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * La classe SauvegardePeriodique enregistre l'état de l'{@link Application}
+ * en arrière-plan, par {@link Persisteur#sauverEtat(Application)}, sans
+ * attendre la fin de l'exécution.
+ * <p>
+ * Un enregistrement est déclenché dès que l'une des deux conditions est
+ * remplie, pourvu que l'application ait été modifiée depuis le précédent :
+ * <ul>
+ *   <li>l'intervalle de sauvegarde s'est écoulé ;</li>
+ *   <li>le nombre de mutations atteint le seuil.</li>
+ * </ul>
+ * Les conditions sont examinées au plus toutes les
+ * {@value SauvegardePeriodique#SCRUTATION_MS} millisecondes, par une tâche
+ * dédiée. L'enregistrement écrit un {@link Instantane} : il ne suspend ni
+ * le menu, ni l'API, ni les autres mutations.
+ * <p>
+ * Un échec n'est pas fatal : il est signalé sur la sortie d'erreur et
+ * l'enregistrement est retenté à l'examen suivant.
+ */
+public final class SauvegardePeriodique implements Closeable {
+
+    /**
+     * Intervalle de sauvegarde par défaut, en secondes.
+     */
+    public static final long INTERVALLE_PAR_DEFAUT = 60;
+
+    /**
+     * Nombre de mutations par défaut au-delà duquel l'état est enregistré
+     * sans attendre l'intervalle.
+     */
+    public static final long SEUIL_PAR_DEFAUT = Journal.SEUIL_COMPACTION;
+
+    private static final long SCRUTATION_MS = 1000;
+
+    private final Application app;
+    private final long intervalleMs;
+    private final long seuil;
+    private final ScheduledExecutorService planificateur;
+
+    // modifiés uniquement par la tâche de sauvegarde
+    private long versionSauvee;
+    private long dateSauvegarde;
+
+    /**
+     * Prépare une sauvegarde périodique, sans la démarrer.
+     *
+     * @param app L'application à enregistrer.
+     *
+     * @param intervalle L'intervalle maximal entre deux enregistrements, en
+     *     secondes ; strictement positif.
+     *
+     * @param seuil Le nombre de mutations qui déclenche un enregistrement ;
+     *     strictement positif.
+     *
+     * @throws IllegalArgumentException si l'intervalle ou le seuil n'est pas
+     *     strictement positif.
+     */
+    public SauvegardePeriodique(final Application app, final long intervalle, final long seuil) {
+        if (intervalle <= 0 || seuil <= 0) {
+            throw new IllegalArgumentException("L'intervalle et le seuil de sauvegarde doivent être positifs.");
+        }
+        this.app = app;
+        this.intervalleMs = TimeUnit.SECONDS.toMillis(intervalle);
+        this.seuil = seuil;
+        this.planificateur = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread tache = new Thread(r, "sauvegarde");
+            // n'empêche pas l'arrêt de la JVM
+            tache.setDaemon(true);
+            return tache;
+        });
+    }
+
+    /**
+     * Démarre les examens périodiques.
+     */
+    public void demarrer() {
+        this.versionSauvee = this.app.getVersion();
+        this.dateSauvegarde = System.currentTimeMillis();
+        this.app.setSauvegardeAutomatique(true);
+        long periode = Math.min(SauvegardePeriodique.SCRUTATION_MS, this.intervalleMs);
+        this.planificateur.scheduleWithFixedDelay(this::examiner, periode, periode, TimeUnit.MILLISECONDS);
+    }
+
+    private void examiner() {
+        long mutations = this.app.getVersion() - this.versionSauvee;
+        if (mutations == 0) {
+            return;
+        }
+        long maintenant = System.currentTimeMillis();
+        if (mutations < this.seuil && maintenant - this.dateSauvegarde < this.intervalleMs) {
+            return;
+        }
+        try {
+            this.versionSauvee = Persisteur.enregistrer(this.app);
+            this.dateSauvegarde = maintenant;
+        }
+        catch (IOException | RuntimeException e) {
+            // le détail a déjà été signalé ; nouvel essai au prochain examen
+            System.err.println("Sauvegarde périodique impossible : " + e.getMessage());
+            System.err.flush();
+        }
+    }
+
+    /**
+     * Arrête les examens périodiques, après l'enregistrement éventuellement
+     * en cours. L'état n'est pas enregistré une dernière fois : c'est à
+     * l'appelant de le faire.
+     */
+    @Override
+    public void close() {
+        this.planificateur.shutdown();
+        try {
+            this.planificateur.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        this.app.setSauvegardeAutomatique(false);
+    }
+}
@@ -0,0 +1,688 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * La classe ServeurHttp expose l'{@link Application} sous la forme d'une API
+ * HTTP/JSON, à l'aide du serveur HTTP embarqué dans le JDK.
+ * <p>
+ * Points d'accès :
+ * <ul>
+ *   <li>{@code POST /instruments} {@code {"nom": "violon"}} : crée un
+ *       instrument ;</li>
+ *   <li>{@code POST /enfants} {@code {"nom": "Léa"}} : inscrit un enfant ;</li>
+ *   <li>{@code POST /inscriptions}
+ *       {@code {"enfant": "Léa", "instrument": "violon", "jour": "samedi"}} :
+ *       inscrit un enfant à une séance, ou le place en liste d'attente si
+ *       la séance est complète (réponse 202) ;</li>
+ *   <li>{@code POST /desinscriptions}
+ *       {@code {"enfant": "Léa", "instrument": "violon"}} : désinscrit un
+ *       enfant d'un instrument ;</li>
+ *   <li>{@code POST /capacites}
+ *       {@code {"instrument": "violon", "jour": "samedi", "capacite": "12"}} :
+ *       fixe le nombre de places d'un instrument un jour donné (un entier,
+ *       ou « illimitée ») ;</li>
+ *   <li>{@code GET /enfants} et {@code GET /instruments} : listes des
+ *       inscriptions, au format JSON Lines (voir {@link RapportInscriptions}),
+ *       de la saison courante ou, avec {@code ?saison=2024-2025}, d'une
+ *       saison archivée ;</li>
+ *   <li>{@code GET /saisons} : la saison courante et les saisons archivées,
+ *       au format JSON Lines ;</li>
+ *   <li>{@code GET /metriques} : mesures de l'activité, au format texte de
+ *       Prometheus (voir {@link Metriques}).</li>
+ *   <li>{@code GET /evenements?depuis=42&max=100&attente=5000} : au plus
+ *       {@code max} changements à partir du numéro {@code depuis}, au format
+ *       JSON Lines (voir {@link FluxEvenements}) ; s'il n'y en a aucun, la
+ *       réponse attend jusqu'à {@code attente} millisecondes le suivant.
+ *       L'en-tête {@code X-Sequence-Suivante} donne le {@code depuis} de la
+ *       requête suivante ; des événements trop anciens pour être encore
+ *       conservés répondent 410.</li>
+ * </ul>
+ * Un serveur peut aussi exposer les associations d'un
+ * {@link HebergeurAssociations} : {@code GET /associations} les liste,
+ * {@code POST /associations} {@code {"nom": "harmonie-voiron"}} en crée une,
+ * et chaque point d'accès ci-dessus est alors servi, pour chaque
+ * association, sous {@code /associations/harmonie-voiron/...}. Une
+ * association inconnue répond 404 ; {@code GET /metriques} donne les
+ * mesures de l'hébergeur.
+ * <p>
+ * Une création réussie répond 201 ; une requête invalide 400, une ressource
+ * inconnue (dont tout chemin qui n'est pas exactement celui d'un point
+ * d'accès) 404 et une règle d'inscription non respectée 409, avec un objet
+ * {@code {"erreur": "..."}}.
+ * <p>
+ * Chaque requête est traitée par son propre fil d'exécution, pris dans une
+ * réserve qui grandit à la demande. Les créations et les inscriptions
+ * s'appuient sur les opérations atomiques de l'{@link Application} et
+ * s'exécutent en parallèle. Les listes sont construites en mémoire depuis un
+ * {@link Instantane}, sans suspendre les mutations, puis envoyées, afin
+ * qu'un client lent ne bloque pas les autres.
+ * <p>
+ * Chaque requête est comptée et chronométrée comme la {@link Commande}
+ * équivalente ; une réponse d'erreur (statut 400 ou plus) compte comme une
+ * erreur.
+ */
+public final class ServeurHttp {
+
+    private static final int STATUT_OK = 200;
+    private static final int STATUT_CREE = 201;
+    private static final int STATUT_ACCEPTE = 202;
+    private static final int STATUT_REQUETE_INVALIDE = 400;
+    private static final int STATUT_INTROUVABLE = 404;
+    private static final int STATUT_METHODE_INTERDITE = 405;
+    private static final int STATUT_CONFLIT = 409;
+    private static final int STATUT_DISPARU = 410;
+    private static final int STATUT_ERREUR_INTERNE = 500;
+
+    private static final String TYPE_JSON = "application/json; charset=utf-8";
+    private static final String TYPE_JSONL = "application/x-ndjson; charset=utf-8";
+    private static final String TYPE_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+    private static final int TAILLE_MAX_REQUETE = 1 << 16;
+    private static final int MAX_EVENEMENTS = 1000;
+    private static final long ATTENTE_MAX_EVENEMENTS_MS = 30_000;
+
+    private static final String PREFIXE_ASSOCIATIONS = "/associations";
+
+    private final HebergeurAssociations hebergeur;
+    private final Map<String, Route> routes = new HashMap<>();
+    private final HttpServer serveur;
+    private final ExecutorService executeur;
+
+    /**
+     * Prépare un serveur, sans le démarrer.
+     *
+     * @param app L'application à exposer.
+     *
+     * @param adresse L'adresse d'écoute ; le port 0 désigne un port libre.
+     *
+     * @throws IOException si l'adresse ne peut pas être réservée.
+     */
+    public ServeurHttp(final Application app, final InetSocketAddress adresse) throws IOException {
+        this((HebergeurAssociations) null, adresse);
+        for (Map.Entry<String, Route> route : this.routes.entrySet()) {
+            String chemin = "/" + route.getKey();
+            this.serveur.createContext(chemin, echange -> {
+                if (echange.getRequestURI().getPath().equals(chemin)) {
+                    route.getValue().traiter(echange, app);
+                } else {
+                    this.refuserChemin(echange);
+                }
+            });
+        }
+    }
+
+    /**
+     * Prépare un serveur qui expose les associations d'un hébergeur, sans le
+     * démarrer. Les points d'accès d'une association sont préfixés par
+     * {@code /associations/<nom>} ; {@code GET /metriques} donne les mesures
+     * de l'hébergeur.
+     *
+     * @param hebergeur L'hébergeur des associations.
+     *
+     * @param adresse L'adresse d'écoute ; le port 0 désigne un port libre.
+     *
+     * @throws IOException si l'adresse ne peut pas être réservée.
+     */
+    public ServeurHttp(final HebergeurAssociations hebergeur, final InetSocketAddress adresse) throws IOException {
+        this.hebergeur = hebergeur;
+        this.serveur = HttpServer.create(adresse, 0);
+        this.executeur = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger numero = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "http-" + this.numero.incrementAndGet());
+            }
+        });
+        this.serveur.setExecutor(this.executeur);
+        this.routes.put("instruments", this::traiterInstruments);
+        this.routes.put("enfants", this::traiterEnfants);
+        this.routes.put("inscriptions", this::traiterInscriptions);
+        this.routes.put("desinscriptions", this::traiterDesinscriptions);
+        this.routes.put("capacites", this::traiterCapacites);
+        this.routes.put("metriques", this::traiterMetriques);
+        this.routes.put("evenements", this::traiterEvenements);
+        this.routes.put("saisons", this::traiterSaisons);
+        // tout chemin qu'aucun autre contexte ne prend
+        this.serveur.createContext("/", this::refuserChemin);
+        if (hebergeur != null) {
+            this.serveur.createContext(ServeurHttp.PREFIXE_ASSOCIATIONS, this::traiterAssociations);
+            this.serveur.createContext("/metriques", echange -> {
+                if (echange.getRequestURI().getPath().equals("/metriques")) {
+                    this.traiterMetriquesHebergeur(echange);
+                } else {
+                    this.refuserChemin(echange);
+                }
+            });
+        }
+    }
+
+    /**
+     * Démarre le serveur, qui traite les requêtes en arrière-plan.
+     */
+    public void demarrer() {
+        this.serveur.start();
+    }
+
+    /**
+     * Arrête le serveur.
+     *
+     * @param delai Le nombre de secondes laissées aux requêtes en cours pour
+     *     se terminer.
+     */
+    public void arreter(final int delai) {
+        this.serveur.stop(delai);
+        this.executeur.shutdown();
+    }
+
+    /**
+     * @return Le port d'écoute effectif.
+     */
+    public int getPort() {
+        return this.serveur.getAddress().getPort();
+    }
+
+    /**
+     * Liste ou crée les associations, ou transmet une requête
+     * {@code /associations/<nom>/<ressource>} à la route de la ressource,
+     * l'association étant chargée et retenue le temps du traitement.
+     */
+    private void traiterAssociations(final HttpExchange echange) throws IOException {
+        String chemin = echange.getRequestURI().getPath().substring(ServeurHttp.PREFIXE_ASSOCIATIONS.length());
+        if (chemin.isEmpty() || chemin.equals("/")) {
+            this.traiter(echange, null, null, () -> this.listerOuCreerAssociation(echange));
+            return;
+        }
+        if (chemin.charAt(0) != '/') {
+            this.refuserChemin(echange);
+            return;
+        }
+        String[] parties = chemin.substring(1).split("/", -1);
+        Route route = (parties.length == 2) ? this.routes.get(parties[1]) : null;
+        if (route == null) {
+            this.refuserChemin(echange);
+            return;
+        }
+        HebergeurAssociations.Acces acces;
+        try {
+            acces = this.hebergeur.acceder(parties[0]);
+        }
+        catch (IllegalArgumentException iae) {
+            this.traiter(echange, null, null,
+                    () -> Reponse.erreur(ServeurHttp.STATUT_INTROUVABLE, "association inconnue"));
+            return;
+        }
+        catch (IOException | RuntimeException e) {
+            this.traiter(echange, null, null, () -> {
+                throw e;
+            });
+            return;
+        }
+        try (acces) {
+            route.traiter(echange, acces.getApplication());
+        }
+    }
+
+    private Reponse listerOuCreerAssociation(final HttpExchange echange) throws IOException {
+        if (ServeurHttp.estGet(echange)) {
+            StringBuilder contenu = new StringBuilder();
+            for (String nom : this.hebergeur.lister()) {
+                String etat = this.hebergeur.estChargee(nom) ? "chargee" : "en sommeil";
+                contenu.append(Json.objet("association", nom, "etat", etat)).append('\n');
+            }
+            return new Reponse(
+                    ServeurHttp.STATUT_OK,
+                    ServeurHttp.TYPE_JSONL,
+                    contenu.toString().getBytes(StandardCharsets.UTF_8)
+            );
+        }
+        String nom = ServeurHttp.lireChamps(echange).get("nom");
+        try {
+            if (!this.hebergeur.creer(nom)) {
+                return Reponse.erreur(ServeurHttp.STATUT_CONFLIT, "association déjà existante");
+            }
+        }
+        catch (IllegalArgumentException iae) {
+            return Reponse.erreur(ServeurHttp.STATUT_REQUETE_INVALIDE, "nom d'association invalide");
+        }
+        return new Reponse(ServeurHttp.STATUT_CREE, Json.objet("nom", nom));
+    }
+
+    private void traiterMetriquesHebergeur(final HttpExchange echange) throws IOException {
+        // non mesuré : la collecte ne doit pas fausser les mesures
+        this.traiter(echange, null, null, () -> {
+            if (!ServeurHttp.estGet(echange)) {
+                return Reponse.erreur(ServeurHttp.STATUT_METHODE_INTERDITE, "méthode non autorisée");
+            }
+            StringBuilder contenu = new StringBuilder();
+            this.hebergeur.ecrirePrometheus(contenu);
+            return new Reponse(
+                    ServeurHttp.STATUT_OK,
+                    ServeurHttp.TYPE_PROMETHEUS,
+                    contenu.toString().getBytes(StandardCharsets.UTF_8)
+            );
+        });
+    }
+
+    private void traiterInstruments(final HttpExchange echange, final Application app) throws IOException {
+        Commande cmd = ServeurHttp.estGet(echange) ? Commande.AFFICHER_INSCRIPTIONS_INSTRUMENTS : Commande.CREER_INSTRUMENT;
+        this.traiter(echange, app, cmd, () -> {
+            if (ServeurHttp.estGet(echange)) {
+                return this.lister(echange, app, false);
+            }
+            String nom = ServeurHttp.lireChamps(echange).get("nom");
+            if (nom == null || nom.isBlank()) {
+                return Reponse.erreur(ServeurHttp.STATUT_REQUETE_INVALIDE, "nom manquant");
+            }
+            if (!app.nouvelInstrument(nom)) {
+                return Reponse.erreur(ServeurHttp.STATUT_CONFLIT, "instrument déjà existant");
+            }
+            app.compacterJournalSiNecessaire();
+            return new Reponse(ServeurHttp.STATUT_CREE, Json.objet("nom", nom));
+        });
+    }
+
+    private void traiterEnfants(final HttpExchange echange, final Application app) throws IOException {
+        Commande cmd = ServeurHttp.estGet(echange) ? Commande.AFFICHER_INSCRIPTIONS_ENFANTS : Commande.CREER_ENFANT;
+        this.traiter(echange, app, cmd, () -> {
+            if (ServeurHttp.estGet(echange)) {
+                return this.lister(echange, app, true);
+            }
+            String nom = ServeurHttp.lireChamps(echange).get("nom");
+            if (nom == null || nom.isBlank()) {
+                return Reponse.erreur(ServeurHttp.STATUT_REQUETE_INVALIDE, "nom manquant");
+            }
+            if (!app.nouvelEnfant(nom)) {
+                return Reponse.erreur(ServeurHttp.STATUT_CONFLIT, "enfant déjà existant");
+            }
+            app.compacterJournalSiNecessaire();
+            return new Reponse(ServeurHttp.STATUT_CREE, Json.objet("nom", nom));
+        });
+    }
+
+    private void traiterInscriptions(final HttpExchange echange, final Application app) throws IOException {
+        this.traiter(echange, app, Commande.AJOUTER_INSTRUMENT_ENFANT, () -> {
+            if (!"POST".equals(echange.getRequestMethod())) {
+                return Reponse.erreur(ServeurHttp.STATUT_METHODE_INTERDITE, "méthode non autorisée");
+            }
+            Map<String, String> champs = ServeurHttp.lireChamps(echange);
+            String nomEnfant = champs.get("enfant");
+            String nomInstrument = champs.get("instrument");
+            String nomJour = champs.get("jour");
+            if (nomEnfant == null || nomInstrument == null || nomJour == null) {
+                return Reponse.erreur(ServeurHttp.STATUT_REQUETE_INVALIDE, "enfant, instrument et jour sont requis");
+            }
+            Jour jour;
+            try {
+                jour = Jour.valueOfString(nomJour.toLowerCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException iae) {
+                return Reponse.erreur(ServeurHttp.STATUT_REQUETE_INVALIDE, "jour inconnu");
+            }
+            Enfant enfant = app.trouverEnfant(nomEnfant);
+            Instrument instrument = app.trouverInstrument(nomInstrument);
+            ResultatInscription resultat;
+            if (enfant == null) {
+                resultat = ResultatInscription.ENFANT_INCONNU;
+            } else if (instrument == null) {
+                resultat = ResultatInscription.INSTRUMENT_INCONNU;
+            } else {
+                resultat = new ServiceInscription(app).inscrire(enfant, instrument, jour);
+            }
+            switch (resultat) {
+                case ACCEPTEE:
+                    break;
+                case EN_ATTENTE:
+                    app.compacterJournalSiNecessaire();
+                    return new Reponse(ServeurHttp.STATUT_ACCEPTE, Json.objet(
+                            "enfant", enfant.getNom(),
+                            "instrument", instrument.getNom(),
+                            "jour", jour.toString(),
+                            "statut", "en attente"
+                    ));
+                case ENFANT_INCONNU:
+                case INSTRUMENT_INCONNU:
+                    return Reponse.erreur(ServeurHttp.STATUT_INTROUVABLE, resultat.getMotif());
+                default:
+                    return Reponse.erreur(ServeurHttp.STATUT_CONFLIT, resultat.getMotif());
+            }
+            app.compacterJournalSiNecessaire();
+            return new Reponse(ServeurHttp.STATUT_CREE, Json.objet(
+                    "enfant", enfant.getNom(),
+                    "instrument", instrument.getNom(),
+                    "jour", jour.toString()
+            ));
+        });
+    }
+
+    private void traiterDesinscriptions(final HttpExchange echange, final Application app) throws IOException {
+        this.traiter(echange, app, Commande.DESINSCRIRE_ENFANT, () -> {
+            Map<String, String> champs = ServeurHttp.lireChamps(echange);
+            String nomEnfant = champs.get("enfant");
+            String nomInstrument = champs.get("instrument");
+            if (nomEnfant == null || nomInstrument == null) {
+                return Reponse.erreur(ServeurHttp.STATUT_REQUETE_INVALIDE, "enfant et instrument sont requis");
+            }
+            ResultatInscription resultat = new ServiceInscription(app).desinscrire(nomEnfant, nomInstrument);
+            if (!resultat.estAcceptee()) {
+                return Reponse.erreur(ServeurHttp.STATUT_INTROUVABLE, resultat.getMotif());
+            }
+            app.compacterJournalSiNecessaire();
+            return new Reponse(ServeurHttp.STATUT_OK, Json.objet("enfant", nomEnfant, "instrument", nomInstrument));
+        });
+    }
+
+    private void traiterCapacites(final HttpExchange echange, final Application app) throws IOException {
+        this.traiter(echange, app, Commande.FIXER_CAPACITE, () -> {
+            Map<String, String> champs = ServeurHttp.lireChamps(echange);
+            String nomInstrument = champs.get("instrument");
+            String nomJour = champs.get("jour");
+            String texteCapacite = champs.get("capacite");
+            if (nomInstrument == null || nomJour == null || texteCapacite == null) {
+                return Reponse.erreur(ServeurHttp.STATUT_REQUETE_INVALIDE, "instrument, jour et capacite sont requis");
+            }
+            Jour jour;
+            int capacite;
+            try {
+                jour = Jour.valueOfString(nomJour.toLowerCase(Locale.ROOT));
+                capacite = PlacesInstrument.analyserCapacite(texteCapacite);
+            }
+            catch (IllegalArgumentException iae) {
+                return Reponse.erreur(ServeurHttp.STATUT_REQUETE_INVALIDE, "jour ou capacité invalide");
+            }
+            Instrument instrument = app.trouverInstrument(nomInstrument);
+            if (instrument == null) {
+                return Reponse.erreur(ServeurHttp.STATUT_INTROUVABLE, ResultatInscription.INSTRUMENT_INCONNU.getMotif());
+            }
+            int nbPromus = new ServiceInscription(app).fixerCapacite(instrument, jour, capacite);
+            app.compacterJournalSiNecessaire();
+            return new Reponse(ServeurHttp.STATUT_OK, Json.objet(
+                    "instrument", instrument.getNom(),
+                    "jour", jour.toString(),
+                    "capacite", PlacesInstrument.formaterCapacite(capacite),
+                    "promus", Integer.toString(nbPromus)
+            ));
+        });
+    }
+
+    private void traiterMetriques(final HttpExchange echange, final Application app) throws IOException {
+        // non mesuré : la collecte ne doit pas fausser les mesures
+        this.traiter(echange, app, null, () -> {
+            if (!ServeurHttp.estGet(echange)) {
+                return Reponse.erreur(ServeurHttp.STATUT_METHODE_INTERDITE, "méthode non autorisée");
+            }
+            StringBuilder contenu = new StringBuilder();
+            app.getMetriques().ecrirePrometheus(contenu, app.jauges());
+            return new Reponse(
+                    ServeurHttp.STATUT_OK,
+                    ServeurHttp.TYPE_PROMETHEUS,
+                    contenu.toString().getBytes(StandardCharsets.UTF_8)
+            );
+        });
+    }
+
+    private void traiterEvenements(final HttpExchange echange, final Application app) throws IOException {
+        // non mesuré : une lecture peut attendre longtemps sans rien faire
+        this.traiter(echange, app, null, () -> {
+            if (!ServeurHttp.estGet(echange)) {
+                return Reponse.erreur(ServeurHttp.STATUT_METHODE_INTERDITE, "méthode non autorisée");
+            }
+            FluxEvenements flux = app.getFlux();
+            Map<String, String> parametres = ServeurHttp.lireParametres(echange);
+            long depuis;
+            int max;
+            long attente;
+            try {
+                depuis = Long.parseLong(parametres.getOrDefault("depuis", Long.toString(flux.getSequence())));
+                max = Math.min(Integer.parseInt(parametres.getOrDefault("max", "100")), ServeurHttp.MAX_EVENEMENTS);
+                attente = Math.min(Long.parseLong(parametres.getOrDefault("attente", "0")),
+                        ServeurHttp.ATTENTE_MAX_EVENEMENTS_MS);
+            }
+            catch (NumberFormatException nfe) {
+                return Reponse.erreur(ServeurHttp.STATUT_REQUETE_INVALIDE, "depuis, max et attente sont des entiers");
+            }
+            if (depuis < 0 || depuis > flux.getSequence() || max <= 0 || attente < 0) {
+                return Reponse.erreur(ServeurHttp.STATUT_REQUETE_INVALIDE, "paramètres hors limites");
+            }
+            StringBuilder contenu = new StringBuilder();
+            try (FluxEvenements.Abonnement abonnement = flux.abonner(depuis)) {
+                abonnement.drainer(
+                        evenement -> contenu.append(ServeurHttp.versJson(evenement)).append('\n'),
+                        max,
+                        attente,
+                        TimeUnit.MILLISECONDS
+                );
+                echange.getResponseHeaders().set("X-Sequence-Suivante", Long.toString(abonnement.getCurseur()));
+            }
+            catch (FluxEvenements.EvenementsPerdus ep) {
+                return Reponse.erreur(ServeurHttp.STATUT_DISPARU, ep.getMessage());
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return Reponse.erreur(ServeurHttp.STATUT_ERREUR_INTERNE, "attente interrompue");
+            }
+            return new Reponse(
+                    ServeurHttp.STATUT_OK,
+                    ServeurHttp.TYPE_JSONL,
+                    contenu.toString().getBytes(StandardCharsets.UTF_8)
+            );
+        });
+    }
+
+    private void traiterSaisons(final HttpExchange echange, final Application app) throws IOException {
+        // non mesuré : aucune commande ne lui correspond
+        this.traiter(echange, app, null, () -> {
+            if (!ServeurHttp.estGet(echange)) {
+                return Reponse.erreur(ServeurHttp.STATUT_METHODE_INTERDITE, "méthode non autorisée");
+            }
+            StringBuilder contenu = new StringBuilder();
+            contenu.append(Json.objet("saison", app.getSaison(), "etat", "courante")).append('\n');
+            for (String saison : app.getSaisonsArchivees()) {
+                contenu.append(Json.objet("saison", saison, "etat", "archivee")).append('\n');
+            }
+            return new Reponse(
+                    ServeurHttp.STATUT_OK,
+                    ServeurHttp.TYPE_JSONL,
+                    contenu.toString().getBytes(StandardCharsets.UTF_8)
+            );
+        });
+    }
+
+    private static String versJson(final Evenement evenement) {
+        List<String> champs = new ArrayList<>(10);
+        champs.add("sequence");
+        champs.add(Long.toString(evenement.getSequence()));
+        champs.add("type");
+        champs.add(evenement.getType().name().toLowerCase(Locale.ROOT));
+        if (evenement.getEnfant() != null) {
+            champs.add("enfant");
+            champs.add(evenement.getEnfant());
+        }
+        if (evenement.getInstrument() != null) {
+            champs.add("instrument");
+            champs.add(evenement.getInstrument());
+        }
+        if (evenement.getJour() != null) {
+            champs.add("jour");
+            champs.add(evenement.getJour().toString());
+        }
+        return Json.objet(champs.toArray(new String[0]));
+    }
+
+    private Reponse lister(final HttpExchange echange, final Application app, final boolean parEnfant)
+            throws IOException {
+        ByteArrayOutputStream contenu = new ByteArrayOutputStream();
+        Writer out = new OutputStreamWriter(contenu, StandardCharsets.UTF_8);
+        RapportInscriptions rapport = new RapportInscriptions(out, RapportInscriptions.Format.JSONL);
+        // un instantané donne un état complet sans suspendre les mutations
+        Instantane instantane;
+        try {
+            instantane = app.instantane(ServeurHttp.lireParametres(echange).get("saison"));
+        }
+        catch (IllegalArgumentException iae) {
+            return Reponse.erreur(ServeurHttp.STATUT_INTROUVABLE, "saison inconnue");
+        }
+        try (instantane) {
+            if (parEnfant) {
+                rapport.ecrireEnfants(instantane);
+            } else {
+                rapport.ecrireInstruments(instantane);
+            }
+        }
+        return new Reponse(ServeurHttp.STATUT_OK, ServeurHttp.TYPE_JSONL, contenu.toByteArray());
+    }
+
+    /**
+     * Répond 404 à un chemin qui n'est pas exactement celui d'un point
+     * d'accès : un contexte du {@link HttpServer} reçoit aussi les chemins
+     * qui le prolongent ({@code /enfants/x}, {@code /enfantsX}).
+     */
+    private void refuserChemin(final HttpExchange echange) throws IOException {
+        this.traiter(echange, null, null,
+                () -> Reponse.erreur(ServeurHttp.STATUT_INTROUVABLE, "ressource inconnue"));
+    }
+
+    private static boolean estGet(final HttpExchange echange) {
+        return "GET".equals(echange.getRequestMethod());
+    }
+
+    /**
+     * Lit les paramètres de l'URI d'une requête ({@code ?cle=valeur&...}).
+     */
+    private static Map<String, String> lireParametres(final HttpExchange echange) {
+        Map<String, String> parametres = new HashMap<>();
+        String requete = echange.getRequestURI().getRawQuery();
+        if (requete == null) {
+            return parametres;
+        }
+        for (String couple : requete.split("&")) {
+            int egal = couple.indexOf('=');
+            if (egal > 0) {
+                parametres.put(
+                        URLDecoder.decode(couple.substring(0, egal), StandardCharsets.UTF_8),
+                        URLDecoder.decode(couple.substring(egal + 1), StandardCharsets.UTF_8)
+                );
+            }
+        }
+        return parametres;
+    }
+
+    /**
+     * Lit le corps d'une requête POST, qui doit être un objet JSON plat.
+     */
+    private static Map<String, String> lireChamps(final HttpExchange echange) throws IOException {
+        if (!"POST".equals(echange.getRequestMethod())) {
+            throw new RequeteInvalide(ServeurHttp.STATUT_METHODE_INTERDITE, "méthode non autorisée");
+        }
+        ByteArrayOutputStream corps = new ByteArrayOutputStream();
+        try (InputStream in = echange.getRequestBody()) {
+            byte[] tampon = new byte[4096];
+            int lus;
+            while ((lus = in.read(tampon)) >= 0) {
+                if (corps.size() + lus > ServeurHttp.TAILLE_MAX_REQUETE) {
+                    throw new RequeteInvalide(ServeurHttp.STATUT_REQUETE_INVALIDE, "requête trop volumineuse");
+                }
+                corps.write(tampon, 0, lus);
+            }
+        }
+        try {
+            return Json.lireObjet(new String(corps.toByteArray(), StandardCharsets.UTF_8));
+        }
+        catch (IllegalArgumentException iae) {
+            throw new RequeteInvalide(ServeurHttp.STATUT_REQUETE_INVALIDE, "JSON invalide : " + iae.getMessage());
+        }
+    }
+
+    /**
+     * Exécute un traitement et envoie sa réponse, ou l'erreur qu'il a levée.
+     * Le traitement est mesuré comme la commande indiquée, si elle n'est pas
+     * null.
+     */
+    private void traiter(final HttpExchange echange, final Application app, final Commande cmd,
+                         final Traitement traitement) throws IOException {
+        long debut = System.nanoTime();
+        Reponse reponse;
+        try {
+            reponse = traitement.executer();
+        }
+        catch (RequeteInvalide ri) {
+            reponse = Reponse.erreur(ri.statut, ri.getMessage());
+        }
+        catch (IOException | RuntimeException e) {
+            System.err.println("Erreur lors du traitement de " + echange.getRequestURI() + " : " + e);
+            System.err.flush();
+            reponse = Reponse.erreur(ServeurHttp.STATUT_ERREUR_INTERNE, "erreur interne");
+        }
+        if (cmd != null) {
+            app.getMetriques().commandeExecutee(cmd, debut, reponse.statut < ServeurHttp.STATUT_REQUETE_INVALIDE);
+        }
+        try (OutputStream out = echange.getResponseBody()) {
+            echange.getResponseHeaders().set("Content-Type", reponse.type);
+            echange.sendResponseHeaders(reponse.statut, reponse.corps.length);
+            out.write(reponse.corps);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Route {
+        void traiter(HttpExchange echange, Application app) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Traitement {
+        Reponse executer() throws IOException;
+    }
+
+    private static final class Reponse {
+
+        private final int statut;
+        private final String type;
+        private final byte[] corps;
+
+        Reponse(final int statut, final String type, final byte[] corps) {
+            this.statut = statut;
+            this.type = type;
+            this.corps = corps;
+        }
+
+        Reponse(final int statut, final String json) {
+            this(statut, ServeurHttp.TYPE_JSON, json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Reponse erreur(final int statut, final String motif) {
+            return new Reponse(statut, Json.objet("erreur", motif));
+        }
+    }
+
+    private static final class RequeteInvalide extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int statut;
+
+        RequeteInvalide(final int statut, final String message) {
+            super(message);
+            this.statut = statut;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * La classe ServiceInscription porte les règles d'inscription aux séances
+ * de découverte, sans aucune entrée/sortie :
+ * <ul>
+ *   <li>un enfant a au plus {@value Enfant#MAX_SEANCES} séances ;</li>
+ *   <li>il ne choisit pas deux fois le même instrument ;</li>
+ *   <li>il n'a qu'une séance par jour ;</li>
+ *   <li>une séance complète (voir
+ *       {@link #fixerCapacite(Instrument, Jour, int)}) place l'enfant en
+ *       liste d'attente ; il est inscrit automatiquement lorsqu'une place se
+ *       libère.</li>
+ * </ul>
+ * Chaque demande reçoit un {@link ResultatInscription} : le menu, les
+ * scripts, l'import en masse et l'API HTTP en sont de simples clients, qui
+ * se contentent de présenter le résultat.
+ * <p>
+ * Le service ne conserve aucun état : il peut être partagé entre tâches, et
+ * les inscriptions sont atomiques (voir
+ * {@link Application#inscrire(Enfant, Instrument, Jour)}).
+ */
+public final class ServiceInscription {
+
+    private final Application app;
+
+    /**
+     * Prépare le service d'inscription d'une application.
+     *
+     * @param app L'application dont les enfants sont inscrits.
+     */
+    public ServiceInscription(final Application app) {
+        this.app = app;
+    }
+
+    /**
+     * Vérifie les règles d'inscription, sans inscrire l'enfant.
+     * <p>
+     * Sans le moniteur de l'enfant, le résultat peut être invalidé par une
+     * inscription concurrente : seul
+     * {@link #inscrire(Enfant, Instrument, Jour)} fait foi.
+     *
+     * @param enfant L'enfant à inscrire.
+     *
+     * @param instrument L'instrument choisi, ou null pour ne vérifier que
+     *     l'enfant (et le jour).
+     *
+     * @param jour Le jour de la séance, ou null pour ne vérifier que l'enfant
+     *     (et l'instrument).
+     *
+     * @return {@link ResultatInscription#ACCEPTEE} si les règles vérifiées
+     *     sont respectées, le motif du refus sinon.
+     */
+    public static ResultatInscription verifier(final Enfant enfant, final Instrument instrument, final Jour jour) {
+        if (enfant.getNbSeances() >= Enfant.MAX_SEANCES) {
+            return ResultatInscription.SEANCES_EPUISEES;
+        }
+        if (instrument != null && enfant.estInscritA(instrument.getNom())) {
+            return ResultatInscription.INSTRUMENT_DEJA_CHOISI;
+        }
+        if (jour != null && enfant.estOccupe(jour)) {
+            return ResultatInscription.JOUR_OCCUPE;
+        }
+        return ResultatInscription.ACCEPTEE;
+    }
+
+    /**
+     * Inscrit un enfant à une séance si les règles d'inscription le
+     * permettent. La vérification et l'inscription sont atomiques.
+     *
+     * @param enfant L'enfant à inscrire.
+     *
+     * @param instrument L'instrument choisi.
+     *
+     * @param jour Le jour de la séance.
+     *
+     * @return {@link ResultatInscription#ACCEPTEE} si l'enfant a été inscrit,
+     *     {@link ResultatInscription#EN_ATTENTE} s'il a été placé en liste
+     *     d'attente, le motif du refus sinon.
+     */
+    public ResultatInscription inscrire(final Enfant enfant, final Instrument instrument, final Jour jour) {
+        return this.app.inscrire(enfant, instrument, jour);
+    }
+
+    /**
+     * Inscrit un enfant à une séance, l'enfant et l'instrument étant
+     * désignés par leur nom, sans tenir compte de la casse.
+     *
+     * @param nomEnfant Le nom de l'enfant à inscrire.
+     *
+     * @param nomInstrument Le nom de l'instrument choisi.
+     *
+     * @param jour Le jour de la séance.
+     *
+     * @return {@link ResultatInscription#ACCEPTEE} si l'enfant a été inscrit,
+     *     {@link ResultatInscription#EN_ATTENTE} s'il a été placé en liste
+     *     d'attente, le motif du refus sinon.
+     */
+    public ResultatInscription inscrire(final String nomEnfant, final String nomInstrument, final Jour jour) {
+        Enfant enfant = this.app.trouverEnfant(nomEnfant);
+        if (enfant == null) {
+            return ResultatInscription.ENFANT_INCONNU;
+        }
+        Instrument instrument = this.app.trouverInstrument(nomInstrument);
+        if (instrument == null) {
+            return ResultatInscription.INSTRUMENT_INCONNU;
+        }
+        return this.app.inscrire(enfant, instrument, jour);
+    }
+
+    /**
+     * Désinscrit un enfant d'un instrument, et le retire des listes
+     * d'attente de cet instrument. La place libérée revient au premier
+     * enfant en attente.
+     *
+     * @param enfant L'enfant à désinscrire.
+     *
+     * @param instrument L'instrument à quitter.
+     *
+     * @return {@link ResultatInscription#ACCEPTEE} si l'enfant a été
+     *     désinscrit, {@link ResultatInscription#NON_INSCRIT} sinon.
+     */
+    public ResultatInscription desinscrire(final Enfant enfant, final Instrument instrument) {
+        return this.app.desinscrire(enfant, instrument);
+    }
+
+    /**
+     * Désinscrit un enfant d'un instrument, l'enfant et l'instrument étant
+     * désignés par leur nom, sans tenir compte de la casse.
+     *
+     * @param nomEnfant Le nom de l'enfant à désinscrire.
+     *
+     * @param nomInstrument Le nom de l'instrument à quitter.
+     *
+     * @return {@link ResultatInscription#ACCEPTEE} si l'enfant a été
+     *     désinscrit, le motif du refus sinon.
+     */
+    public ResultatInscription desinscrire(final String nomEnfant, final String nomInstrument) {
+        Enfant enfant = this.app.trouverEnfant(nomEnfant);
+        if (enfant == null) {
+            return ResultatInscription.ENFANT_INCONNU;
+        }
+        Instrument instrument = this.app.trouverInstrument(nomInstrument);
+        if (instrument == null) {
+            return ResultatInscription.INSTRUMENT_INCONNU;
+        }
+        return this.app.desinscrire(enfant, instrument);
+    }
+
+    /**
+     * Fixe le nombre de places d'un instrument un jour donné (voir
+     * {@link Application#fixerCapacite(Instrument, Jour, int)}).
+     *
+     * @param instrument L'instrument concerné.
+     *
+     * @param jour Le jour concerné.
+     *
+     * @param capacite Le nombre de places, positif ou nul, ou
+     *     {@link PlacesInstrument#ILLIMITEE}.
+     *
+     * @return Le nombre d'enfants inscrits depuis la liste d'attente.
+     */
+    public int fixerCapacite(final Instrument instrument, final Jour jour, final int capacite) {
+        return this.app.fixerCapacite(instrument, jour, capacite);
+    }
+
+    /**
+     * Donne le nombre de places encore libres d'une séance, en temps
+     * constant.
+     *
+     * @param instrument L'instrument concerné.
+     *
+     * @param jour Le jour concerné.
+     *
+     * @return Le nombre de places libres, ou
+     *     {@link PlacesInstrument#ILLIMITEE}.
+     */
+    public int placesRestantes(final Instrument instrument, final Jour jour) {
+        return instrument.getPlaces().getRestantes(jour);
+    }
+
+    /**
+     * Donne la liste d'attente d'une séance.
+     *
+     * @param instrument L'instrument concerné.
+     *
+     * @param jour Le jour concerné.
+     *
+     * @return Une copie de la liste d'attente, dans l'ordre d'arrivée.
+     */
+    public List<Enfant> listeAttente(final Instrument instrument, final Jour jour) {
+        return instrument.getPlaces().getAttente(jour);
+    }
+
+    /**
+     * Accède aux enfants qui peuvent encore s'inscrire à un instrument.
+     *
+     * @return Une vue non modifiable des enfants éligibles (voir
+     *     {@link Application#getEnfantsEligibles()}).
+     */
+    public Collection<Enfant> enfantsEligibles() {
+        return this.app.getEnfantsEligibles();
+    }
+
+    /**
+     * Accède aux instruments auxquels un enfant peut encore s'inscrire.
+     *
+     * @param enfant L'enfant considéré.
+     *
+     * @return Une vue non modifiable des instruments disponibles (voir
+     *     {@link Application#getInstrumentsDisponibles(Enfant)}).
+     */
+    public Collection<Instrument> instrumentsDisponibles(final Enfant enfant) {
+        return this.app.getInstrumentsDisponibles(enfant);
+    }
+
+    /**
+     * Donne les jours où un enfant n'a pas encore de séance.
+     *
+     * @param enfant L'enfant considéré.
+     *
+     * @return Les jours libres de l'enfant.
+     */
+    public Set<Jour> joursLibres(final Enfant enfant) {
+        Set<Jour> jours = EnumSet.allOf(Jour.class);
+        jours.removeAll(enfant.getJoursOccupes());
+        return jours;
+    }
+}
@@ -0,0 +1,823 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * La classe StockSeances range toutes les séances de l'{@link Application}
+ * dans des tableaux de types primitifs (« structure de tableaux »).
+ * <p>
+ * Chaque {@link Enfant} et chaque {@link Instrument} enregistré reçoit un
+ * identifiant entier, qui indice :
+ * <ul>
+ *   <li>côté enfant, {@value Enfant#MAX_SEANCES} cases réservées contenant
+ *       l'identifiant de l'instrument et l'ordinal du {@link Jour} de chaque
+ *       séance, ainsi qu'un masque des jours occupés ;</li>
+ *   <li>côté instrument, deux tableaux extensibles contenant l'identifiant
+ *       de l'enfant et l'ordinal du jour de chaque séance.</li>
+ * </ul>
+ * Une séance coûte ainsi une dizaine d'octets au lieu d'un objet et de deux
+ * références, et les parcours par enfant ou par instrument lisent des zones
+ * contiguës de la mémoire.
+ * <p>
+ * Des compteurs sont tenus à jour par chaque ajout et chaque retrait : le
+ * nombre de séances par jour, par instrument et par jour, et le nombre
+ * d'enfants ayant 0 à {@value Enfant#MAX_SEANCES} séances. Les agrégats
+ * (occupation, répartition des enfants) se lisent ainsi en temps constant,
+ * sans parcourir les séances.
+ * <p>
+ * Les objets {@link Seance} ne sont plus stockés : les listes renvoyées par
+ * {@link #seancesEnfant(int)} et {@link #seancesInstrument(int)} les
+ * fabriquent à la lecture.
+ * <p>
+ * Accès concurrents : les enfants sont rangés par pages de
+ * {@value StockSeances#TAILLE_PAGE}, qui ne sont jamais recopiées. Seul le
+ * répertoire des pages grandit, si bien qu'un agrandissement ne peut pas
+ * perdre l'écriture d'une autre tâche. Les cases d'un enfant ne sont
+ * modifiées que par {@link #ajouter(int, int, Jour, long)},
+ * {@link #retirer(int, int, long)} et {@link #compacter()}, qui doivent
+ * s'exécuter sous le moniteur de l'enfant : deux inscriptions d'enfants
+ * différents ne partagent aucun verrou côté enfant. Côté instrument, les
+ * cases sont protégées par un moniteur propre à chaque instrument.
+ * Les lectures faites sans le moniteur de l'enfant sont faiblement
+ * cohérentes.
+ * <p>
+ * Chaque séance est estampillée, des deux côtés, de la version de la
+ * mutation qui l'a créée et de celle qui l'a retirée (voir
+ * {@link HorlogeVersions}) : un {@link Instantane} ne retient que les
+ * séances créées et non retirées à sa version, ce qui lui donne une vue
+ * cohérente sans rien recopier. Un retrait ne déplace donc aucune séance :
+ * il marque sa case, qui reste lisible par les instantanés plus anciens.
+ * Les cases retirées sont supprimées plus tard, lorsqu'aucun instantané
+ * n'est ouvert (voir {@link #ouvrirLecture()}) : une mutation n'attend
+ * jamais la fermeture d'un instantané. Un enfant dont les cases réservées
+ * sont toutes occupées par des séances retirées reçoit des cases
+ * supplémentaires, rangées à part.
+ */
+final class StockSeances {
+
+    private static final int CAPACITE_INITIALE = 16;
+    private static final Jour[] JOURS = Jour.values();
+    private static final int BITS_PAGE = 10;
+    private static final int TAILLE_PAGE = 1 << StockSeances.BITS_PAGE;
+    private static final int MASQUE_PAGE = StockSeances.TAILLE_PAGE - 1;
+
+    /**
+     * Cases de {@value StockSeances#TAILLE_PAGE} enfants consécutifs.
+     */
+    private static final class PageEnfants {
+        final Enfant[] enfants = new Enfant[StockSeances.TAILLE_PAGE];
+        final int[] instruments = new int[StockSeances.TAILLE_PAGE * Enfant.MAX_SEANCES];
+        final byte[] jours = new byte[StockSeances.TAILLE_PAGE * Enfant.MAX_SEANCES];
+        final long[] versions = new long[StockSeances.TAILLE_PAGE * Enfant.MAX_SEANCES];
+        final long[] retraits = new long[StockSeances.TAILLE_PAGE * Enfant.MAX_SEANCES];
+        // séances en cours, et cases occupées, y compris par des séances
+        // retirées
+        final byte[] nbSeances = new byte[StockSeances.TAILLE_PAGE];
+        final byte[] nbCases = new byte[StockSeances.TAILLE_PAGE];
+        final byte[] masqueJours = new byte[StockSeances.TAILLE_PAGE];
+    }
+
+    /**
+     * Cases d'un enfant au-delà de ses {@value Enfant#MAX_SEANCES} cases
+     * réservées. Elles ne sont jamais agrandies sur place : une lecture
+     * concurrente voit toujours des tableaux complets.
+     */
+    private static final class CasesSupplementaires {
+        final int[] instruments;
+        final byte[] jours;
+        final long[] versions;
+        final long[] retraits;
+
+        CasesSupplementaires(final int capacite) {
+            this.instruments = new int[capacite];
+            this.jours = new byte[capacite];
+            this.versions = new long[capacite];
+            this.retraits = new long[capacite];
+        }
+
+        CasesSupplementaires(final CasesSupplementaires anciennes, final int capacite) {
+            this.instruments = Arrays.copyOf(anciennes.instruments, capacite);
+            this.jours = Arrays.copyOf(anciennes.jours, capacite);
+            this.versions = Arrays.copyOf(anciennes.versions, capacite);
+            this.retraits = Arrays.copyOf(anciennes.retraits, capacite);
+        }
+    }
+
+    /**
+     * Séances d'un instrument ; l'objet sert aussi de moniteur.
+     */
+    private static final class SeancesInstrument {
+        final Instrument instrument;
+        int[] enfants = new int[StockSeances.CAPACITE_INITIALE];
+        byte[] jours = new byte[StockSeances.CAPACITE_INITIALE];
+        long[] versions = new long[StockSeances.CAPACITE_INITIALE];
+        long[] retraits = new long[StockSeances.CAPACITE_INITIALE];
+        int nbCases = 0;
+        int nb = 0;
+        final int[] nbParJour = new int[StockSeances.JOURS.length];
+
+        SeancesInstrument(final Instrument instrument) {
+            this.instrument = instrument;
+        }
+    }
+
+    private final HorlogeVersions horloge;
+
+    private volatile PageEnfants[] pagesEnfants = new PageEnfants[0];
+    private int nbEnfants = 0;
+    private final Map<Integer, CasesSupplementaires> supplementaires = new ConcurrentHashMap<>();
+
+    private volatile SeancesInstrument[] instruments = new SeancesInstrument[StockSeances.CAPACITE_INITIALE];
+    private int nbInstruments = 0;
+
+    private final AtomicIntegerArray nbSeancesParJour = new AtomicIntegerArray(StockSeances.JOURS.length);
+    private final AtomicIntegerArray nbEnfantsParNbSeances = new AtomicIntegerArray(Enfant.MAX_SEANCES + 1);
+
+    // identifiants des enfants et des instruments qui ont des cases retirées
+    private final Set<Integer> enfantsACompacter = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> instrumentsACompacter = ConcurrentHashMap.newKeySet();
+
+    // le moniteur protège le nombre d'instantanés ouverts ; il est pris en
+    // dernier, après les moniteurs d'enfant et d'instrument
+    private final Object lecteurs = new Object();
+    private int nbLecteurs = 0;
+
+    /**
+     * Prépare un stock vide.
+     *
+     * @param horloge L'horloge des versions de l'application.
+     */
+    StockSeances(final HorlogeVersions horloge) {
+        this.horloge = horloge;
+    }
+
+    /**
+     * Enregistre l'ouverture d'un {@link Instantane} : tant qu'il n'est pas
+     * fermé par {@link #fermerLecture()}, aucune case n'est déplacée.
+     *
+     * @return La version publiée, que l'instantané observe.
+     */
+    long ouvrirLecture() {
+        synchronized (this.lecteurs) {
+            ++this.nbLecteurs;
+            return this.horloge.versionPubliee();
+        }
+    }
+
+    /**
+     * Enregistre la fermeture d'un {@link Instantane}.
+     */
+    void fermerLecture() {
+        synchronized (this.lecteurs) {
+            --this.nbLecteurs;
+        }
+    }
+
+    /**
+     * Attribue un identifiant à un enfant.
+     *
+     * @param enfant L'enfant à enregistrer.
+     *
+     * @return L'identifiant attribué.
+     */
+    synchronized int enregistrerEnfant(final Enfant enfant) {
+        int id = this.nbEnfants++;
+        if ((id >>> StockSeances.BITS_PAGE) == this.pagesEnfants.length) {
+            PageEnfants[] pages = Arrays.copyOf(this.pagesEnfants, this.pagesEnfants.length + 1);
+            pages[pages.length - 1] = new PageEnfants();
+            this.pagesEnfants = pages;
+        }
+        this.page(id).enfants[id & StockSeances.MASQUE_PAGE] = enfant;
+        this.nbEnfantsParNbSeances.incrementAndGet(0);
+        return id;
+    }
+
+    /**
+     * Attribue un identifiant à un instrument.
+     *
+     * @param instrument L'instrument à enregistrer.
+     *
+     * @return L'identifiant attribué.
+     */
+    synchronized int enregistrerInstrument(final Instrument instrument) {
+        int id = this.nbInstruments++;
+        SeancesInstrument[] tableau = this.instruments;
+        if (id == tableau.length) {
+            tableau = Arrays.copyOf(tableau, tableau.length * 2);
+        }
+        tableau[id] = new SeancesInstrument(instrument);
+        this.instruments = tableau;
+        return id;
+    }
+
+    private PageEnfants page(final int idEnfant) {
+        return this.pagesEnfants[idEnfant >>> StockSeances.BITS_PAGE];
+    }
+
+    /**
+     * Ajoute une séance.
+     * <p>
+     * L'appelant doit détenir le moniteur de l'enfant. Les règles
+     * d'inscription doivent avoir été vérifiées par l'appelant ; seule la
+     * limite de {@value Enfant#MAX_SEANCES} séances, qui conditionne la
+     * disposition des tableaux, est contrôlée.
+     *
+     * @param idEnfant L'identifiant de l'enfant.
+     *
+     * @param idInstrument L'identifiant de l'instrument.
+     *
+     * @param jour Le jour de la séance.
+     *
+     * @param version La version de la mutation, non nulle.
+     */
+    void ajouter(final int idEnfant, final int idInstrument, final Jour jour, final long version) {
+        PageEnfants page = this.page(idEnfant);
+        int i = idEnfant & StockSeances.MASQUE_PAGE;
+        int rang = page.nbSeances[i];
+        if (rang >= Enfant.MAX_SEANCES) {
+            throw new IllegalStateException("L'enfant a déjà " + Enfant.MAX_SEANCES + " séances.");
+        }
+        if (page.nbCases[i] > rang) {
+            this.compacterEnfant(idEnfant);
+        }
+        int c = page.nbCases[i];
+        if (c == Byte.MAX_VALUE) {
+            throw new IllegalStateException("Trop de séances retirées en attente de compaction.");
+        }
+        // une case libre porte la version 0 : elle reste invisible tant
+        // qu'elle est en cours d'écriture
+        if (c < Enfant.MAX_SEANCES) {
+            int k = i * Enfant.MAX_SEANCES + c;
+            page.instruments[k] = idInstrument;
+            page.jours[k] = (byte) jour.ordinal();
+            page.versions[k] = version;
+        } else {
+            CasesSupplementaires cases = this.casesSupplementaires(idEnfant, c - Enfant.MAX_SEANCES + 1);
+            int k = c - Enfant.MAX_SEANCES;
+            cases.instruments[k] = idInstrument;
+            cases.jours[k] = (byte) jour.ordinal();
+            cases.versions[k] = version;
+        }
+        page.masqueJours[i] |= (byte) (1 << jour.ordinal());
+        page.nbCases[i] = (byte) (c + 1);
+        page.nbSeances[i] = (byte) (rang + 1);
+
+        SeancesInstrument seances = this.instruments[idInstrument];
+        synchronized (seances) {
+            if (seances.nbCases == seances.enfants.length && seances.nb < seances.nbCases) {
+                this.compacterInstrument(idInstrument, seances);
+            }
+            int nb = seances.nbCases;
+            if (nb == seances.enfants.length) {
+                seances.enfants = Arrays.copyOf(seances.enfants, nb * 2);
+                seances.jours = Arrays.copyOf(seances.jours, nb * 2);
+                seances.versions = Arrays.copyOf(seances.versions, nb * 2);
+                seances.retraits = Arrays.copyOf(seances.retraits, nb * 2);
+            }
+            seances.enfants[nb] = idEnfant;
+            seances.jours[nb] = (byte) jour.ordinal();
+            seances.versions[nb] = version;
+            seances.nbCases = nb + 1;
+            ++seances.nb;
+            ++seances.nbParJour[jour.ordinal()];
+        }
+
+        this.nbSeancesParJour.incrementAndGet(jour.ordinal());
+        this.nbEnfantsParNbSeances.decrementAndGet(rang);
+        this.nbEnfantsParNbSeances.incrementAndGet(rang + 1);
+    }
+
+    /**
+     * Donne les cases supplémentaires d'un enfant, agrandies si besoin.
+     * L'appelant détient le moniteur de l'enfant.
+     */
+    private CasesSupplementaires casesSupplementaires(final int idEnfant, final int nbNecessaires) {
+        CasesSupplementaires cases = this.supplementaires.get(idEnfant);
+        if (cases == null) {
+            cases = new CasesSupplementaires(Enfant.MAX_SEANCES);
+            this.supplementaires.put(idEnfant, cases);
+        } else if (cases.versions.length < nbNecessaires) {
+            cases = new CasesSupplementaires(cases, cases.versions.length * 2);
+            this.supplementaires.put(idEnfant, cases);
+        }
+        return cases;
+    }
+
+    /**
+     * Retire la séance d'un enfant pour un instrument. La séance n'est pas
+     * effacée mais marquée de la version du retrait, des deux côtés : les
+     * instantanés antérieurs continuent de la voir. Sa case est libérée par
+     * une compaction ultérieure.
+     * <p>
+     * L'appelant doit détenir le moniteur de l'enfant.
+     *
+     * @param idEnfant L'identifiant de l'enfant.
+     *
+     * @param idInstrument L'identifiant de l'instrument.
+     *
+     * @param version La version de la mutation, non nulle.
+     *
+     * @return Le jour de la séance retirée, ou null si l'enfant n'était pas
+     *     inscrit à l'instrument.
+     */
+    Jour retirer(final int idEnfant, final int idInstrument, final long version) {
+        PageEnfants page = this.page(idEnfant);
+        int i = idEnfant & StockSeances.MASQUE_PAGE;
+        int nbCases = page.nbCases[i];
+        int c = 0;
+        while (c < nbCases && (this.retrait(idEnfant, c) != 0 || this.instrumentCase(idEnfant, c) != idInstrument)) {
+            ++c;
+        }
+        if (c == nbCases) {
+            return null;
+        }
+        Jour jour = this.jour(idEnfant, c);
+        if (c < Enfant.MAX_SEANCES) {
+            page.retraits[i * Enfant.MAX_SEANCES + c] = version;
+        } else {
+            this.supplementaires.get(idEnfant).retraits[c - Enfant.MAX_SEANCES] = version;
+        }
+        int nbAvant = page.nbSeances[i];
+        page.masqueJours[i] &= (byte) ~(1 << jour.ordinal());
+        page.nbSeances[i] = (byte) (nbAvant - 1);
+        this.enfantsACompacter.add(idEnfant);
+
+        SeancesInstrument seances = this.instruments[idInstrument];
+        synchronized (seances) {
+            int k = 0;
+            while (k < seances.nbCases && (seances.retraits[k] != 0 || seances.enfants[k] != idEnfant)) {
+                ++k;
+            }
+            if (k < seances.nbCases) {
+                seances.retraits[k] = version;
+                --seances.nb;
+                --seances.nbParJour[jour.ordinal()];
+                this.instrumentsACompacter.add(idInstrument);
+            }
+        }
+
+        this.nbSeancesParJour.decrementAndGet(jour.ordinal());
+        this.nbEnfantsParNbSeances.decrementAndGet(nbAvant);
+        this.nbEnfantsParNbSeances.incrementAndGet(nbAvant - 1);
+        return jour;
+    }
+
+    /**
+     * Supprime les séances retirées des cases des enfants et des
+     * instruments, si aucun instantané n'est ouvert. Les retraits non encore
+     * publiés, ou ceux qu'un instantané ouvert entre-temps empêche de
+     * supprimer, restent à compacter.
+     * <p>
+     * L'appelant ne doit détenir aucun moniteur d'enfant ni d'instrument.
+     */
+    void compacter() {
+        for (Integer idEnfant : this.enfantsACompacter) {
+            Enfant enfant = this.enfantParId(idEnfant);
+            synchronized (enfant) {
+                this.compacterEnfant(idEnfant);
+            }
+        }
+        for (Integer idInstrument : this.instrumentsACompacter) {
+            SeancesInstrument seances = this.instruments[idInstrument];
+            synchronized (seances) {
+                this.compacterInstrument(idInstrument, seances);
+            }
+        }
+    }
+
+    /**
+     * Supprime les séances retirées d'un enfant, en conservant l'ordre des
+     * autres, si aucun instantané n'est ouvert. Les cases libérées sont
+     * remises à la version 0. L'appelant détient le moniteur de l'enfant.
+     */
+    private void compacterEnfant(final int idEnfant) {
+        PageEnfants page = this.page(idEnfant);
+        int i = idEnfant & StockSeances.MASQUE_PAGE;
+        synchronized (this.lecteurs) {
+            if (this.nbLecteurs > 0) {
+                return;
+            }
+            // un retrait non publié doit rester visible des instantanés
+            // ouverts avant sa publication
+            long publiee = this.horloge.versionPubliee();
+            int nbCases = page.nbCases[i];
+            int garde = 0;
+            for (int c = 0; c < nbCases; ++c) {
+                long retrait = this.retrait(idEnfant, c);
+                if (retrait != 0 && retrait <= publiee) {
+                    continue;
+                }
+                if (garde != c) {
+                    this.ecrireCase(idEnfant, garde, this.instrumentCase(idEnfant, c), this.jours(idEnfant, c),
+                                    this.version(idEnfant, c), retrait);
+                }
+                ++garde;
+            }
+            for (int c = garde; c < nbCases; ++c) {
+                this.ecrireCase(idEnfant, c, 0, (byte) 0, 0, 0);
+            }
+            page.nbCases[i] = (byte) garde;
+            if (garde <= Enfant.MAX_SEANCES) {
+                this.supplementaires.remove(idEnfant);
+            }
+            if (garde == page.nbSeances[i]) {
+                this.enfantsACompacter.remove(idEnfant);
+            }
+        }
+    }
+
+    private void ecrireCase(final int idEnfant, final int c, final int idInstrument, final byte jour,
+                            final long version, final long retrait) {
+        if (c < Enfant.MAX_SEANCES) {
+            PageEnfants page = this.page(idEnfant);
+            int k = (idEnfant & StockSeances.MASQUE_PAGE) * Enfant.MAX_SEANCES + c;
+            page.instruments[k] = idInstrument;
+            page.jours[k] = jour;
+            page.versions[k] = version;
+            page.retraits[k] = retrait;
+        } else {
+            CasesSupplementaires cases = this.supplementaires.get(idEnfant);
+            int k = c - Enfant.MAX_SEANCES;
+            cases.instruments[k] = idInstrument;
+            cases.jours[k] = jour;
+            cases.versions[k] = version;
+            cases.retraits[k] = retrait;
+        }
+    }
+
+    /**
+     * Supprime les séances retirées d'un instrument, en conservant l'ordre
+     * des autres, si aucun instantané n'est ouvert. L'appelant détient le
+     * moniteur de l'instrument.
+     */
+    private void compacterInstrument(final int idInstrument, final SeancesInstrument seances) {
+        synchronized (this.lecteurs) {
+            if (this.nbLecteurs > 0) {
+                return;
+            }
+            long publiee = this.horloge.versionPubliee();
+            int garde = 0;
+            for (int k = 0; k < seances.nbCases; ++k) {
+                long retrait = seances.retraits[k];
+                if (retrait != 0 && retrait <= publiee) {
+                    continue;
+                }
+                seances.enfants[garde] = seances.enfants[k];
+                seances.jours[garde] = seances.jours[k];
+                seances.versions[garde] = seances.versions[k];
+                seances.retraits[garde] = retrait;
+                ++garde;
+            }
+            Arrays.fill(seances.versions, garde, seances.nbCases, 0);
+            Arrays.fill(seances.retraits, garde, seances.nbCases, 0);
+            seances.nbCases = garde;
+            if (garde == seances.nb) {
+                this.instrumentsACompacter.remove(idInstrument);
+            }
+        }
+    }
+
+    /**
+     * @return Le nombre total de séances.
+     */
+    int getNbSeances() {
+        int nb = 0;
+        for (int ordinal = 0; ordinal < StockSeances.JOURS.length; ++ordinal) {
+            nb += this.nbSeancesParJour.get(ordinal);
+        }
+        return nb;
+    }
+
+    /**
+     * @param jour Un jour de la semaine.
+     *
+     * @return Le nombre de séances ce jour-là.
+     */
+    int getNbSeances(final Jour jour) {
+        return this.nbSeancesParJour.get(jour.ordinal());
+    }
+
+    /**
+     * @param nbSeances Un nombre de séances, entre 0 et
+     *     {@value Enfant#MAX_SEANCES}.
+     *
+     * @return Le nombre d'enfants qui ont exactement ce nombre de séances.
+     */
+    int getNbEnfants(final int nbSeances) {
+        return this.nbEnfantsParNbSeances.get(nbSeances);
+    }
+
+    /**
+     * @return Le nombre d'enfants enregistrés.
+     */
+    synchronized int getNbEnfants() {
+        return this.nbEnfants;
+    }
+
+    /**
+     * @return Le nombre d'instruments enregistrés.
+     */
+    synchronized int getNbInstruments() {
+        return this.nbInstruments;
+    }
+
+    int nbSeancesEnfant(final int idEnfant) {
+        return this.page(idEnfant).nbSeances[idEnfant & StockSeances.MASQUE_PAGE];
+    }
+
+    int nbSeancesInstrument(final int idInstrument) {
+        SeancesInstrument seances = this.instruments[idInstrument];
+        synchronized (seances) {
+            return seances.nb;
+        }
+    }
+
+    /**
+     * Donne le nombre de séances d'un instrument un jour donné, sans
+     * parcourir ses séances.
+     */
+    int nbSeancesInstrument(final int idInstrument, final Jour jour) {
+        SeancesInstrument seances = this.instruments[idInstrument];
+        synchronized (seances) {
+            return seances.nbParJour[jour.ordinal()];
+        }
+    }
+
+    /**
+     * Indique si l'enfant a une séance ce jour-là.
+     */
+    boolean estOccupe(final int idEnfant, final Jour jour) {
+        return (this.page(idEnfant).masqueJours[idEnfant & StockSeances.MASQUE_PAGE] & (1 << jour.ordinal())) != 0;
+    }
+
+    /**
+     * Donne les jours occupés par l'enfant.
+     */
+    Set<Jour> joursOccupes(final int idEnfant) {
+        Set<Jour> jours = EnumSet.noneOf(Jour.class);
+        for (Jour jour : Jour.values()) {
+            if (this.estOccupe(idEnfant, jour)) {
+                jours.add(jour);
+            }
+        }
+        return jours;
+    }
+
+    /**
+     * Indique si l'enfant a une séance en cours de l'instrument.
+     */
+    boolean estInscritA(final int idEnfant, final int idInstrument) {
+        for (int c = 0, nb = this.nbCasesEnfant(idEnfant); c < nb; ++c) {
+            if (this.instrumentCase(idEnfant, c) == idInstrument && this.retrait(idEnfant, c) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Donne le nombre de cases occupées par les séances d'un enfant, y
+     * compris par des séances retirées mais pas encore compactées.
+     */
+    int nbCasesEnfant(final int idEnfant) {
+        return this.page(idEnfant).nbCases[idEnfant & StockSeances.MASQUE_PAGE];
+    }
+
+    /**
+     * Donne la case de la séance en cours de rang indiqué d'un enfant.
+     */
+    private int caseEnCours(final int idEnfant, final int rang) {
+        int vus = 0;
+        for (int c = 0, nb = this.nbCasesEnfant(idEnfant); c < nb; ++c) {
+            if (this.retrait(idEnfant, c) == 0 && vus++ == rang) {
+                return c;
+            }
+        }
+        throw new IndexOutOfBoundsException("Rang : " + rang);
+    }
+
+    private int instrumentCase(final int idEnfant, final int c) {
+        if (c < Enfant.MAX_SEANCES) {
+            return this.page(idEnfant).instruments[(idEnfant & StockSeances.MASQUE_PAGE) * Enfant.MAX_SEANCES + c];
+        }
+        CasesSupplementaires cases = this.supplementaires.get(idEnfant);
+        return (cases == null || c - Enfant.MAX_SEANCES >= cases.instruments.length)
+                ? -1 : cases.instruments[c - Enfant.MAX_SEANCES];
+    }
+
+    private byte jours(final int idEnfant, final int c) {
+        if (c < Enfant.MAX_SEANCES) {
+            return this.page(idEnfant).jours[(idEnfant & StockSeances.MASQUE_PAGE) * Enfant.MAX_SEANCES + c];
+        }
+        return this.supplementaires.get(idEnfant).jours[c - Enfant.MAX_SEANCES];
+    }
+
+    /**
+     * Donne l'instrument de la séance de la case indiquée d'un enfant.
+     */
+    Instrument instrument(final int idEnfant, final int c) {
+        return this.instruments[this.instrumentCase(idEnfant, c)].instrument;
+    }
+
+    /**
+     * Donne le jour de la séance de la case indiquée d'un enfant.
+     */
+    Jour jour(final int idEnfant, final int c) {
+        return StockSeances.JOURS[this.jours(idEnfant, c)];
+    }
+
+    /**
+     * Donne la version de la séance de la case indiquée d'un enfant ; 0 si
+     * la séance est en cours d'écriture.
+     */
+    long version(final int idEnfant, final int c) {
+        if (c < Enfant.MAX_SEANCES) {
+            return this.page(idEnfant).versions[(idEnfant & StockSeances.MASQUE_PAGE) * Enfant.MAX_SEANCES + c];
+        }
+        // des cases supplémentaires lues sans le moniteur de l'enfant
+        // peuvent être celles d'avant un agrandissement
+        CasesSupplementaires cases = this.supplementaires.get(idEnfant);
+        return (cases == null || c - Enfant.MAX_SEANCES >= cases.versions.length)
+                ? 0 : cases.versions[c - Enfant.MAX_SEANCES];
+    }
+
+    /**
+     * Donne la version du retrait de la séance de la case indiquée d'un
+     * enfant ; 0 si la séance est en cours.
+     */
+    long retrait(final int idEnfant, final int c) {
+        if (c < Enfant.MAX_SEANCES) {
+            return this.page(idEnfant).retraits[(idEnfant & StockSeances.MASQUE_PAGE) * Enfant.MAX_SEANCES + c];
+        }
+        CasesSupplementaires cases = this.supplementaires.get(idEnfant);
+        return (cases == null || c - Enfant.MAX_SEANCES >= cases.retraits.length)
+                ? 0 : cases.retraits[c - Enfant.MAX_SEANCES];
+    }
+
+    /**
+     * Donne l'enfant d'identifiant indiqué ; null s'il est en cours
+     * d'enregistrement.
+     */
+    Enfant enfantParId(final int idEnfant) {
+        return this.page(idEnfant).enfants[idEnfant & StockSeances.MASQUE_PAGE];
+    }
+
+    /**
+     * Donne l'instrument d'identifiant indiqué.
+     */
+    Instrument instrumentParId(final int idInstrument) {
+        return this.instruments[idInstrument].instrument;
+    }
+
+    /**
+     * Lit les séances d'un enfant visibles à une version donnée (voir
+     * {@link Instantane}), sans construire de {@link Seance}.
+     *
+     * @param idEnfant L'identifiant de l'enfant.
+     *
+     * @param version La version observée.
+     *
+     * @param instruments Reçoit l'identifiant de l'instrument de chaque
+     *     séance ; au moins {@value Enfant#MAX_SEANCES} cases.
+     *
+     * @param jours Reçoit l'ordinal du jour de chaque séance ; au moins
+     *     {@value Enfant#MAX_SEANCES} cases.
+     *
+     * @return Le nombre de séances lues, dans l'ordre d'inscription.
+     */
+    int lireSeances(final int idEnfant, final long version, final int[] instruments, final byte[] jours) {
+        int nb = 0;
+        for (int c = 0, nbCases = this.nbCasesEnfant(idEnfant); c < nbCases && nb < Enfant.MAX_SEANCES; ++c) {
+            if (Instantane.estVisible(this.version(idEnfant, c), this.retrait(idEnfant, c), version)) {
+                instruments[nb] = this.instrumentCase(idEnfant, c);
+                jours[nb] = this.jours(idEnfant, c);
+                ++nb;
+            }
+        }
+        return nb;
+    }
+
+    /**
+     * Donne le nombre de cases occupées par les séances d'un instrument, y
+     * compris par des séances retirées mais pas encore compactées.
+     */
+    int nbCasesInstrument(final int idInstrument) {
+        SeancesInstrument seances = this.instruments[idInstrument];
+        synchronized (seances) {
+            return seances.nbCases;
+        }
+    }
+
+    /**
+     * Donne l'enfant de la séance de la case indiquée d'un instrument.
+     */
+    Enfant enfant(final int idInstrument, final int c) {
+        SeancesInstrument seances = this.instruments[idInstrument];
+        int idEnfant;
+        synchronized (seances) {
+            idEnfant = seances.enfants[c];
+        }
+        return this.enfantParId(idEnfant);
+    }
+
+    /**
+     * Donne le jour de la séance de la case indiquée d'un instrument.
+     */
+    Jour jourInstrument(final int idInstrument, final int c) {
+        SeancesInstrument seances = this.instruments[idInstrument];
+        synchronized (seances) {
+            return StockSeances.JOURS[seances.jours[c]];
+        }
+    }
+
+    /**
+     * Donne la version de la séance de la case indiquée d'un instrument.
+     */
+    long versionInstrument(final int idInstrument, final int c) {
+        SeancesInstrument seances = this.instruments[idInstrument];
+        synchronized (seances) {
+            return seances.versions[c];
+        }
+    }
+
+    /**
+     * Donne la version du retrait de la séance de la case indiquée d'un
+     * instrument ; 0 si la séance est en cours.
+     */
+    long retraitInstrument(final int idInstrument, final int c) {
+        SeancesInstrument seances = this.instruments[idInstrument];
+        synchronized (seances) {
+            return seances.retraits[c];
+        }
+    }
+
+    /**
+     * Donne une vue des séances en cours d'un enfant, dans l'ordre
+     * d'inscription.
+     */
+    List<Seance> seancesEnfant(final int idEnfant) {
+        return new AbstractList<Seance>() {
+
+            @Override
+            public Seance get(int rang) {
+                if (rang < 0 || rang >= this.size()) {
+                    throw new IndexOutOfBoundsException("Rang : " + rang);
+                }
+                int c = StockSeances.this.caseEnCours(idEnfant, rang);
+                return new Seance(
+                        StockSeances.this.jour(idEnfant, c),
+                        StockSeances.this.enfantParId(idEnfant),
+                        StockSeances.this.instrument(idEnfant, c)
+                );
+            }
+
+            @Override
+            public int size() {
+                return StockSeances.this.nbSeancesEnfant(idEnfant);
+            }
+        };
+    }
+
+    /**
+     * Donne l'instrument de la séance en cours de rang indiqué d'un enfant.
+     */
+    Instrument instrumentEnCours(final int idEnfant, final int rang) {
+        return this.instrument(idEnfant, this.caseEnCours(idEnfant, rang));
+    }
+
+    /**
+     * Donne les séances en cours d'un instrument, dans l'ordre d'inscription.
+     * La liste est une copie : les cases d'un instrument pouvant être
+     * compactées, une vue indicée par rang ne resterait pas cohérente.
+     */
+    List<Seance> seancesInstrument(final int idInstrument) {
+        SeancesInstrument seances = this.instruments[idInstrument];
+        int[] enfants;
+        byte[] jours;
+        int nb = 0;
+        synchronized (seances) {
+            enfants = new int[seances.nb];
+            jours = new byte[seances.nb];
+            for (int k = 0; k < seances.nbCases; ++k) {
+                if (seances.retraits[k] == 0) {
+                    enfants[nb] = seances.enfants[k];
+                    jours[nb] = seances.jours[k];
+                    ++nb;
+                }
+            }
+        }
+        Seance[] liste = new Seance[nb];
+        for (int k = 0; k < nb; ++k) {
+            liste[k] = new Seance(StockSeances.JOURS[jours[k]], this.enfantParId(enfants[k]), seances.instrument);
+        }
+        return Collections.unmodifiableList(Arrays.asList(liste));
+    }
+}
@@ -0,0 +1,117 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Accès concurrents : des tâches qui inscrivent et désinscrivent en même
+ * temps sur des instruments partagés laissent un état cohérent.
+ */
+class ApplicationTest {
+
+    private static final int NB_TACHES = 8;
+    private static final int NB_OPERATIONS = 20_000;
+    private static final int NB_ENFANTS = 300;
+    private static final int NB_INSTRUMENTS = 6;
+
+    @Test
+    void lesInscriptionsConcurrentesRespectentLesRegles() throws Exception {
+        Application app = new Application();
+        List<Enfant> enfants = new ArrayList<>();
+        List<Instrument> instruments = new ArrayList<>();
+        for (int i = 0; i < ApplicationTest.NB_INSTRUMENTS; ++i) {
+            app.nouvelInstrument("instrument" + i);
+            instruments.add(app.getInstrument("instrument" + i));
+        }
+        for (int i = 0; i < ApplicationTest.NB_ENFANTS; ++i) {
+            app.nouvelEnfant("enfant" + i);
+            enfants.add(app.getEnfant("enfant" + i));
+        }
+        // la moitié des instruments a peu de places, pour solliciter les
+        // réservations et les listes d'attente
+        for (int i = 0; i < ApplicationTest.NB_INSTRUMENTS / 2; ++i) {
+            for (Jour jour : Jour.values()) {
+                app.fixerCapacite(instruments.get(i), jour, 5);
+            }
+        }
+
+        ExecutorService taches = Executors.newFixedThreadPool(ApplicationTest.NB_TACHES);
+        CountDownLatch depart = new CountDownLatch(1);
+        List<Future<Void>> resultats = new ArrayList<>();
+        try {
+            for (int t = 0; t < ApplicationTest.NB_TACHES; ++t) {
+                Random hasard = new Random(t);
+                Callable<Void> tache = () -> {
+                    depart.await();
+                    for (int op = 0; op < ApplicationTest.NB_OPERATIONS; ++op) {
+                        Enfant enfant = enfants.get(hasard.nextInt(enfants.size()));
+                        Instrument instrument = instruments.get(hasard.nextInt(instruments.size()));
+                        if (hasard.nextInt(3) == 0) {
+                            app.desinscrire(enfant, instrument);
+                        } else {
+                            Jour jour = Jour.values()[hasard.nextInt(Jour.values().length)];
+                            app.inscrire(enfant, instrument, jour);
+                        }
+                    }
+                    return null;
+                };
+                resultats.add(taches.submit(tache));
+            }
+            depart.countDown();
+            for (Future<Void> resultat : resultats) {
+                resultat.get(60, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            taches.shutdownNow();
+        }
+
+        int[][] parJour = new int[instruments.size()][Jour.values().length];
+        long nbSeances = 0;
+        for (Enfant enfant : enfants) {
+            List<Seance> seances = enfant.getSeances();
+            assertTrue(seances.size() <= Enfant.MAX_SEANCES, enfant.getNom());
+            Set<Jour> jours = EnumSet.noneOf(Jour.class);
+            Set<String> choisis = new HashSet<>();
+            for (Seance seance : seances) {
+                Jour jour = Jour.valueOfString(seance.getJour());
+                assertTrue(jours.add(jour), "deux séances le même jour pour " + enfant.getNom());
+                assertTrue(choisis.add(seance.getInstrument()), "instrument choisi deux fois par " + enfant.getNom());
+                ++parJour[app.getInstrument(seance.getInstrument()).getId()][jour.ordinal()];
+            }
+            nbSeances += seances.size();
+        }
+
+        long nbSeancesInstruments = 0;
+        for (Instrument instrument : instruments) {
+            PlacesInstrument places = instrument.getPlaces();
+            nbSeancesInstruments += instrument.getNbSeances();
+            for (Jour jour : Jour.values()) {
+                int inscrits = parJour[instrument.getId()][jour.ordinal()];
+                String seance = instrument.getNom() + " " + jour;
+                assertEquals(inscrits, instrument.getNbSeances(jour), seance);
+                assertEquals(inscrits, places.getOccupees(jour), seance);
+                assertTrue(inscrits <= places.getCapacite(jour), seance);
+                // une fois les tâches terminées, aucune place libre n'est
+                // laissée à un enfant qui attend
+                assertTrue(places.getNbEnAttente(jour) == 0 || places.getRestantes(jour) == 0, seance);
+                assertEquals(places.getAttente(jour).size(), places.getNbEnAttente(jour), seance);
+            }
+        }
+        assertEquals(nbSeances, nbSeancesInstruments);
+    }
+}
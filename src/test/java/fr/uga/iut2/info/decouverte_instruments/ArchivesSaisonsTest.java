@@ -0,0 +1,109 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Saisons : nom de l'année scolaire, clôture d'une saison, consultation des
+ * saisons archivées.
+ */
+class ArchivesSaisonsTest {
+
+    @TempDir
+    Path dossier;
+
+    /**
+     * Enregistre une saison « 2025-2026 » où Léa fait du piano le mercredi,
+     * le piano étant limité à deux places ce jour-là.
+     */
+    private Application peupler() throws Exception {
+        Application app = Persisteur.lireEtat(this.dossier);
+        app.getArchives().setSaisonCourante("2025-2026");
+        app.nouvelInstrument("piano");
+        app.nouvelEnfant("Léa");
+        Instrument piano = app.getInstrument("piano");
+        app.fixerCapacite(piano, Jour.MERCREDI, 2);
+        app.inscrire(app.getEnfant("Léa"), piano, Jour.MERCREDI);
+        Persisteur.enregistrer(app);
+        return app;
+    }
+
+    @Test
+    void nommeLAnneeScolaire() {
+        assertEquals("2025-2026", ArchivesSaisons.saisonParDefaut(LocalDate.of(2025, 9, 1)));
+        assertEquals("2025-2026", ArchivesSaisons.saisonParDefaut(LocalDate.of(2026, 8, 31)));
+        assertEquals("2026-2027", ArchivesSaisons.saisonParDefaut(LocalDate.of(2026, 10, 18)));
+    }
+
+    @Test
+    void refuseUnNomDeSaisonQuiNeSeraitPasUnNomDeFichier() {
+        for (String nom : new String[] {null, "", ".cache", "../bdd", "2025/2026", "saison 1"}) {
+            assertThrows(IllegalArgumentException.class, () -> ArchivesSaisons.verifierNom(nom), nom);
+        }
+        ArchivesSaisons.verifierNom("2025-2026");
+        ArchivesSaisons.verifierNom("été_2026");
+    }
+
+    @Test
+    void archiveLaSaisonCloseEtGardeLesCapacites() throws Exception {
+        Application app = this.peupler();
+        String attendu;
+        try (Instantane instantane = app.instantane()) {
+            attendu = Etats.decrire(instantane);
+        }
+
+        Application suivante = Persisteur.cloreSaison(app, "2026-2027");
+
+        assertEquals("2026-2027", suivante.getSaison());
+        assertEquals(Collections.singletonList("2025-2026"), suivante.getSaisonsArchivees());
+        assertNull(suivante.getEnfant("Léa"));
+        assertEquals(2, suivante.getInstrument("piano").getPlaces().getCapacite(Jour.MERCREDI));
+        Path archive = this.dossier.resolve(ArchivesSaisons.NOM_DOSSIER).resolve("2025-2026.bdd.gz");
+        assertTrue(Files.isRegularFile(archive));
+        try (Instantane instantane = suivante.instantane("2025-2026")) {
+            assertEquals(attendu, Etats.decrire(instantane));
+        }
+        suivante.getJournal().close();
+
+        // la saison courante et les archives survivent à un redémarrage
+        Application relue = Persisteur.lireEtat(this.dossier);
+        assertEquals("2026-2027", relue.getSaison());
+        assertNotNull(relue.getInstrument("piano"));
+        try (Instantane instantane = relue.instantane("2025-2026")) {
+            assertEquals(attendu, Etats.decrire(instantane));
+        }
+        relue.getJournal().close();
+    }
+
+    @Test
+    void refuseUneSaisonExistanteOuInconnue() throws Exception {
+        Application app = this.peupler();
+
+        assertThrows(IllegalArgumentException.class, () -> Persisteur.cloreSaison(app, "2025-2026"));
+        assertThrows(IllegalArgumentException.class, () -> Persisteur.cloreSaison(app, "../2026"));
+        Application suivante = Persisteur.cloreSaison(app, "2026-2027");
+        assertThrows(IllegalArgumentException.class, () -> Persisteur.cloreSaison(suivante, "2025-2026"));
+
+        assertThrows(IllegalArgumentException.class, () -> suivante.instantane("1999-2000"));
+        assertThrows(IllegalArgumentException.class, () -> suivante.instantane("../bdd"));
+        // null désigne la saison courante
+        try (Instantane instantane = suivante.instantane(null)) {
+            assertTrue(instantane.getEnfants().isEmpty());
+        }
+        suivante.getJournal().close();
+
+        Application sansDossier = new Application();
+        assertEquals(Collections.emptyList(), sansDossier.getSaisonsArchivees());
+        assertThrows(IllegalArgumentException.class, () -> sansDossier.instantane("2025-2026"));
+    }
+}
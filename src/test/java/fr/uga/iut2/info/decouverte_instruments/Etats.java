@@ -0,0 +1,93 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Descriptions textuelles d'un état, pour comparer deux applications.
+ * <p>
+ * C'est une classe utilitaire, toutes les méthodes sont statiques.
+ * La classe n'a pas vocation à être instanciée.
+ */
+final class Etats {
+
+    private Etats() {
+        // interdit l'instanciation de la classe utilitaire via un constructeur privé
+        throw new IllegalStateException("Classe utilitaire.");
+    }
+
+    /**
+     * Décrit les séances, les capacités et les listes d'attente, dans un
+     * ordre indépendant de celui des dictionnaires.
+     */
+    static String decrire(final Application app) {
+        TreeMap<String, List<String>> etat = Etats.seances(app);
+        for (Instrument instrument : app.getInstruments().values()) {
+            List<String> places = new ArrayList<>();
+            for (Jour jour : Jour.values()) {
+                places.add(jour + " " + instrument.getPlaces().getCapacite(jour)
+                        + " " + Etats.noms(instrument.getPlaces().getAttente(jour)));
+            }
+            etat.put("instrument " + instrument.getNom(), places);
+        }
+        return etat.toString();
+    }
+
+    /**
+     * Décrit les séances visibles dans un instantané, côté enfant et côté
+     * instrument.
+     */
+    static String decrire(final Instantane instantane) {
+        TreeMap<String, List<String>> etat = new TreeMap<>();
+        for (Enfant enfant : instantane.getEnfants()) {
+            List<String> seances = new ArrayList<>();
+            for (Seance seance : instantane.getSeances(enfant)) {
+                seances.add(seance.getInstrument() + " " + seance.getJour());
+            }
+            seances.sort(null);
+            etat.put("enfant " + enfant.getNom(), seances);
+        }
+        for (Instrument instrument : instantane.getInstruments()) {
+            List<String> seances = new ArrayList<>();
+            for (Seance seance : instantane.getSeances(instrument)) {
+                seances.add(seance.getEnfant() + " " + seance.getJour());
+            }
+            seances.sort(null);
+            etat.put("instrument " + instrument.getNom(), seances);
+        }
+        return etat.toString();
+    }
+
+    /**
+     * Décrit les séances seules, que contiennent tous les formats
+     * d'instantané.
+     */
+    static String decrireSeances(final Application app) {
+        return Etats.seances(app).toString();
+    }
+
+    private static TreeMap<String, List<String>> seances(final Application app) {
+        TreeMap<String, List<String>> etat = new TreeMap<>();
+        for (Enfant enfant : app.getEnfants().values()) {
+            List<String> seances = new ArrayList<>();
+            for (Seance seance : enfant.getSeances()) {
+                seances.add(seance.getInstrument() + " " + seance.getJour());
+            }
+            seances.sort(null);
+            etat.put("enfant " + enfant.getNom(), seances);
+        }
+        for (Instrument instrument : app.getInstruments().values()) {
+            etat.put("instrument " + instrument.getNom(), new ArrayList<>());
+        }
+        return etat;
+    }
+
+    static List<String> noms(final List<Enfant> enfants) {
+        List<String> noms = new ArrayList<>();
+        for (Enfant enfant : enfants) {
+            noms.add(enfant.getNom());
+        }
+        return noms;
+    }
+}
@@ -0,0 +1,125 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Mode lot : la sortie standard ne contient que les résultats des
+ * commandes, les erreurs et les messages de la persistance vont sur la
+ * sortie d'erreur.
+ */
+class ExecutionLotTest {
+
+    @TempDir
+    Path dossier;
+
+    private final ByteArrayOutputStream sortie = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream erreurs = new ByteArrayOutputStream();
+    private PrintStream sortieStandard;
+    private PrintStream sortieErreur;
+
+    @BeforeEach
+    void capturer() {
+        this.sortieStandard = System.out;
+        this.sortieErreur = System.err;
+        System.setOut(new PrintStream(this.sortie, true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(this.erreurs, true, StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void restaurer() {
+        System.setOut(this.sortieStandard);
+        System.setErr(this.sortieErreur);
+    }
+
+    private ExecutionLot executer(final Application app, final String... lignes) throws IOException {
+        ExecutionLot lot = new ExecutionLot(app, System.err);
+        lot.executer(new BufferedReader(new StringReader(String.join("\n", lignes))));
+        return lot;
+    }
+
+    private String sortie() {
+        return this.sortie.toString(StandardCharsets.UTF_8);
+    }
+
+    private String erreurs() {
+        return this.erreurs.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void nEcritQueLesListesSurLaSortieStandard() throws IOException {
+        Application app = new Application();
+
+        ExecutionLot lot = this.executer(app,
+                "# création",
+                "1 violon",
+                "CREER_ENFANT Léa",
+                "",
+                "3 Léa violon samedi",
+                "3 Léa violon mercredi",
+                "42",
+                "5 csv");
+
+        assertEquals(4, lot.getNbExecutees());
+        assertEquals(2, lot.getNbErreurs());
+        assertTrue(this.sortie().contains("Léa"), this.sortie());
+        assertTrue(this.sortie().contains("violon"), this.sortie());
+        assertEquals(Arrays.asList(
+                "Ligne 6 : " + ResultatInscription.INSTRUMENT_DEJA_CHOISI.getMotif() + ".",
+                "Ligne 7 : commande inconnue « 42 »."), Arrays.asList(this.erreurs().split("\\R")));
+    }
+
+    @Test
+    void sArreteALaCommandeQuitter() throws IOException {
+        Application app = new Application();
+
+        ExecutionLot lot = this.executer(app,
+                "1 violon",
+                "QUITTER",
+                "1 piano");
+
+        assertEquals(2, lot.getNbExecutees());
+        assertEquals(null, app.getInstrument("piano"));
+    }
+
+    @Test
+    void neCompactePasLeJournalEnCoursDeRoute() throws Exception {
+        Application app = Persisteur.lireEtat(this.dossier);
+        String[] lignes = new String[Journal.SEUIL_COMPACTION + 10];
+        for (int i = 0; i < lignes.length; ++i) {
+            lignes[i] = "2 enfant" + i;
+        }
+
+        this.executer(app, lignes);
+
+        assertEquals(lignes.length, app.getJournal().getNbEnregistrements());
+        app.getJournal().close();
+    }
+
+    @Test
+    void ecritLesMessagesDeLaPersistanceSurLaSortieDErreur() throws Exception {
+        Application app = Persisteur.lireEtat(this.dossier);
+        this.executer(app, "1 violon", "2 Léa", "3 Léa violon samedi");
+        Persisteur.sauverEtat(app);
+        Application relue = Persisteur.lireEtat(this.dossier);
+        Application suivante = Persisteur.cloreSaison(relue, "2099-2100");
+        suivante.getJournal().close();
+
+        assertEquals("", this.sortie());
+        assertTrue(this.erreurs().contains("Sauvegarde de l'état réussie."), this.erreurs());
+        assertTrue(this.erreurs().contains("archivée"), this.erreurs());
+    }
+}
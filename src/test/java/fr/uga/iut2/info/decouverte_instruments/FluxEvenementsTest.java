@@ -0,0 +1,146 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Flux d'événements : ordre des publications de l'application, attente,
+ * perte des événements écrasés et publications concurrentes.
+ */
+class FluxEvenementsTest {
+
+    private static List<String> lire(final FluxEvenements.Abonnement abonnement) {
+        List<String> lus = new ArrayList<>();
+        abonnement.drainer(evenement -> lus.add(evenement.toString()), Integer.MAX_VALUE);
+        return lus;
+    }
+
+    @Test
+    void publieLesMutationsDeLApplication() {
+        Application app = new Application();
+        try (FluxEvenements.Abonnement abonnement = app.getFlux().abonner()) {
+            app.nouvelInstrument("piano");
+            app.nouvelEnfant("Léa");
+            app.nouvelEnfant("Tom");
+            Instrument piano = app.getInstrument("piano");
+            app.fixerCapacite(piano, Jour.MERCREDI, 1);
+            app.inscrire(app.getEnfant("Léa"), piano, Jour.MERCREDI);
+            // refusée ou mise en attente : rien n'est publié
+            app.inscrire(app.getEnfant("Léa"), piano, Jour.SAMEDI);
+            app.inscrire(app.getEnfant("Tom"), piano, Jour.MERCREDI);
+            app.desinscrire(app.getEnfant("Léa"), piano);
+
+            assertEquals(Arrays.asList(
+                    "0 INSTRUMENT_CREE piano",
+                    "1 ENFANT_CREE Léa",
+                    "2 ENFANT_CREE Tom",
+                    "3 SEANCE_AJOUTEE Léa piano mercredi",
+                    "4 SEANCE_RETIREE Léa piano mercredi",
+                    "5 SEANCE_AJOUTEE Tom piano mercredi"), FluxEvenementsTest.lire(abonnement));
+            assertEquals(6, abonnement.getCurseur());
+            assertEquals(0, abonnement.getRetard());
+        }
+    }
+
+    @Test
+    void signaleLesEvenementsEcrases() {
+        FluxEvenements flux = new FluxEvenements(4);
+        try (FluxEvenements.Abonnement abonnement = flux.abonner()) {
+            for (int i = 0; i < 6; ++i) {
+                flux.publier(Evenement.Type.ENFANT_CREE, "enfant" + i, null, null);
+            }
+            assertEquals(6, abonnement.getRetard());
+
+            FluxEvenements.EvenementsPerdus perdus = assertThrows(FluxEvenements.EvenementsPerdus.class,
+                    () -> FluxEvenementsTest.lire(abonnement));
+
+            assertEquals(2, perdus.getNbPerdus());
+            assertEquals(Arrays.asList(
+                    "2 ENFANT_CREE enfant2",
+                    "3 ENFANT_CREE enfant3",
+                    "4 ENFANT_CREE enfant4",
+                    "5 ENFANT_CREE enfant5"), FluxEvenementsTest.lire(abonnement));
+        }
+    }
+
+    @Test
+    void attendLeProchainEvenement() throws Exception {
+        FluxEvenements flux = new FluxEvenements(8);
+        ExecutorService tache = Executors.newSingleThreadExecutor();
+        try (FluxEvenements.Abonnement abonnement = flux.abonner()) {
+            List<Evenement> lus = new ArrayList<>();
+            assertEquals(0, abonnement.drainer(lus::add, 10, 10, TimeUnit.MILLISECONDS));
+
+            tache.submit(() -> {
+                Thread.sleep(50);
+                flux.publier(Evenement.Type.INSTRUMENT_CREE, null, "harpe", null);
+                return null;
+            });
+
+            assertEquals(1, abonnement.drainer(lus::add, 10, 5, TimeUnit.SECONDS));
+            assertEquals("harpe", lus.get(0).getInstrument());
+        }
+        finally {
+            tache.shutdownNow();
+        }
+    }
+
+    @Test
+    void refuseUneCapaciteOuUnDepartInvalide() {
+        assertThrows(IllegalArgumentException.class, () -> new FluxEvenements(6));
+        FluxEvenements flux = new FluxEvenements(4);
+
+        assertThrows(IllegalArgumentException.class, () -> flux.abonner(1));
+        assertThrows(IllegalArgumentException.class, () -> flux.abonner(-1));
+    }
+
+    @Test
+    void transmetDansLOrdreLesPublicationsConcurrentes() throws Exception {
+        int nbTaches = 4;
+        int nbParTache = 5_000;
+        FluxEvenements flux = new FluxEvenements(FluxEvenements.CAPACITE_PAR_DEFAUT);
+        ExecutorService taches = Executors.newFixedThreadPool(nbTaches);
+        CountDownLatch depart = new CountDownLatch(1);
+        try (FluxEvenements.Abonnement abonnement = flux.abonner()) {
+            List<Future<?>> publications = new ArrayList<>();
+            for (int t = 0; t < nbTaches; ++t) {
+                String enfant = "enfant" + t;
+                publications.add(taches.submit(() -> {
+                    depart.await();
+                    for (int i = 0; i < nbParTache; ++i) {
+                        flux.publier(Evenement.Type.ENFANT_CREE, enfant, null, null);
+                    }
+                    return null;
+                }));
+            }
+            depart.countDown();
+
+            long attendu = 0;
+            while (attendu < nbTaches * nbParTache) {
+                List<Evenement> lus = new ArrayList<>();
+                assertTrue(abonnement.drainer(lus::add, 1000, 5, TimeUnit.SECONDS) > 0, "événement " + attendu);
+                for (Evenement evenement : lus) {
+                    assertEquals(attendu++, evenement.getSequence());
+                }
+            }
+            for (Future<?> publication : publications) {
+                publication.get(5, TimeUnit.SECONDS);
+            }
+            assertEquals(0, abonnement.getRetard());
+        }
+        finally {
+            taches.shutdownNow();
+        }
+    }
+}
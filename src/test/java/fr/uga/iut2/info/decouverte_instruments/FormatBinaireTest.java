@@ -0,0 +1,119 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Lecture des instantanés binaires, dans la version séquentielle d'origine
+ * comme dans la version courante à tables d'accès direct.
+ */
+class FormatBinaireTest {
+
+    @Test
+    void litLaVersionSequentielle() throws IOException {
+        ByteArrayOutputStream contenu = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(contenu)) {
+            out.writeInt(FormatBinaire.MAGIQUE);
+            out.writeShort(FormatBinaire.VERSION_SEQUENTIELLE);
+            out.writeInt(2);
+            out.writeUTF("piano");
+            out.writeUTF("violon");
+            out.writeInt(2);
+            out.writeUTF("Léa");
+            out.writeUTF("Tom");
+            out.writeInt(3);
+            FormatBinaireTest.ecrireSeance(out, 0, 0, Jour.MERCREDI);
+            FormatBinaireTest.ecrireSeance(out, 0, 1, Jour.SAMEDI);
+            FormatBinaireTest.ecrireSeance(out, 1, 1, Jour.SAMEDI);
+        }
+
+        Application app = FormatBinaire.lire(FormatBinaireTest.entree(contenu.toByteArray()));
+
+        Application attendue = new Application();
+        attendue.nouvelInstrument("piano");
+        attendue.nouvelInstrument("violon");
+        attendue.nouvelEnfant("Léa");
+        attendue.nouvelEnfant("Tom");
+        attendue.nouvelleSeance(attendue.getEnfant("Léa"), attendue.getInstrument("piano"), Jour.MERCREDI);
+        attendue.nouvelleSeance(attendue.getEnfant("Léa"), attendue.getInstrument("violon"), Jour.SAMEDI);
+        attendue.nouvelleSeance(attendue.getEnfant("Tom"), attendue.getInstrument("violon"), Jour.SAMEDI);
+        assertEquals(Etats.decrireSeances(attendue), Etats.decrireSeances(app));
+        assertEquals(2, app.getInstrument("violon").getNbSeances(Jour.SAMEDI));
+    }
+
+    @Test
+    void relitLaVersionCourante() throws IOException {
+        Application app = FormatBinaireTest.peupler();
+
+        Application relue = FormatBinaire.lire(FormatBinaireTest.entree(FormatBinaireTest.ecrire(app)));
+
+        assertEquals(Etats.decrireSeances(app), Etats.decrireSeances(relue));
+        // une séance retirée n'est pas écrite
+        assertEquals(1, relue.getInstrument("flûte").getNbSeances());
+    }
+
+    @Test
+    void refuseUneVersionInconnue() throws IOException {
+        ByteArrayOutputStream contenu = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(contenu)) {
+            out.writeInt(FormatBinaire.MAGIQUE);
+            out.writeShort(FormatBinaire.VERSION_PLACES + 1);
+        }
+
+        assertThrows(IOException.class,
+                () -> FormatBinaire.lire(FormatBinaireTest.entree(contenu.toByteArray())));
+    }
+
+    @Test
+    void refuseUnFichierQuiNEstPasUnInstantane() {
+        byte[] contenu = {'n', 'o', 'm', ';', 'j', 'o', 'u', 'r'};
+
+        assertThrows(IOException.class, () -> FormatBinaire.lire(FormatBinaireTest.entree(contenu)));
+    }
+
+    /**
+     * Crée trois instruments et trois enfants, dont une séance retirée.
+     */
+    static Application peupler() {
+        Application app = new Application();
+        app.nouvelInstrument("piano");
+        app.nouvelInstrument("violon");
+        app.nouvelInstrument("flûte");
+        app.nouvelEnfant("Léa");
+        app.nouvelEnfant("Tom");
+        app.nouvelEnfant("Zoé");
+        app.inscrire(app.getEnfant("Léa"), app.getInstrument("piano"), Jour.MERCREDI);
+        app.inscrire(app.getEnfant("Léa"), app.getInstrument("violon"), Jour.SAMEDI);
+        app.inscrire(app.getEnfant("Tom"), app.getInstrument("flûte"), Jour.VENDREDI);
+        app.inscrire(app.getEnfant("Zoé"), app.getInstrument("flûte"), Jour.VENDREDI);
+        app.inscrire(app.getEnfant("Zoé"), app.getInstrument("piano"), Jour.SAMEDI);
+        app.desinscrire(app.getEnfant("Zoé"), app.getInstrument("flûte"));
+        return app;
+    }
+
+    static byte[] ecrire(final Application app) throws IOException {
+        ByteArrayOutputStream contenu = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(contenu)) {
+            FormatBinaire.ecrire(app, out);
+        }
+        return contenu.toByteArray();
+    }
+
+    static DataInputStream entree(final byte[] contenu) {
+        return new DataInputStream(new ByteArrayInputStream(contenu));
+    }
+
+    private static void ecrireSeance(final DataOutputStream out, final int idEnfant, final int idInstrument,
+            final Jour jour) throws IOException {
+        out.writeInt(idEnfant);
+        out.writeInt(idInstrument);
+        out.writeByte(jour.ordinal());
+    }
+}
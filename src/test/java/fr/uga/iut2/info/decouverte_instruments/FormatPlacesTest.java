@@ -0,0 +1,74 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Fichier des places : capacités et listes d'attente, relues avec les
+ * séances et complétées par le journal.
+ */
+class FormatPlacesTest {
+
+    @TempDir
+    Path dossier;
+
+    /**
+     * Limite le piano à une place le mercredi, prise par Léa, Tom et Zoé
+     * attendant dans cet ordre.
+     */
+    private static void remplir(final Application app) {
+        app.nouvelInstrument("piano");
+        app.nouvelInstrument("violon");
+        for (String nom : new String[] {"Léa", "Tom", "Zoé"}) {
+            app.nouvelEnfant(nom);
+        }
+        Instrument piano = app.getInstrument("piano");
+        app.fixerCapacite(piano, Jour.MERCREDI, 1);
+        app.fixerCapacite(app.getInstrument("violon"), Jour.SAMEDI, 0);
+        for (String nom : new String[] {"Léa", "Tom", "Zoé"}) {
+            app.inscrire(app.getEnfant(nom), piano, Jour.MERCREDI);
+        }
+    }
+
+    @Test
+    void relitLesCapacitesEtLesListesDAttente() throws IOException {
+        Application app = new Application();
+        FormatPlacesTest.remplir(app);
+        byte[] places = FormatPlaces.capturer(app);
+
+        Application relue = FormatBinaire.lire(FormatBinaireTest.entree(FormatBinaireTest.ecrire(app)));
+        FormatPlaces.lire(FormatBinaireTest.entree(places), relue);
+
+        assertEquals(Etats.decrire(app), Etats.decrire(relue));
+        PlacesInstrument piano = relue.getInstrument("piano").getPlaces();
+        assertEquals(1, piano.getOccupees(Jour.MERCREDI));
+        assertEquals(0, piano.getRestantes(Jour.MERCREDI));
+        assertEquals(Arrays.asList("Tom", "Zoé"), Etats.noms(piano.getAttente(Jour.MERCREDI)));
+        assertEquals(0, relue.getInstrument("violon").getPlaces().getCapacite(Jour.SAMEDI));
+    }
+
+    @Test
+    void rejoueLeJournalSurLesPlacesEnregistrees() throws Exception {
+        Application app = Persisteur.lireEtat(this.dossier);
+        FormatPlacesTest.remplir(app);
+        Persisteur.enregistrer(app);
+        // après l'instantané : Léa libère sa place, Tom est promu
+        app.desinscrire(app.getEnfant("Léa"), app.getInstrument("piano"));
+        String attendu = Etats.decrire(app);
+        app.getJournal().close();
+
+        Application relue = Persisteur.lireEtat(this.dossier);
+        relue.getJournal().close();
+
+        assertEquals(attendu, Etats.decrire(relue));
+        PlacesInstrument piano = relue.getInstrument("piano").getPlaces();
+        assertEquals(Collections.singletonList("Zoé"), Etats.noms(piano.getAttente(Jour.MERCREDI)));
+        assertEquals(1, piano.getOccupees(Jour.MERCREDI));
+    }
+}
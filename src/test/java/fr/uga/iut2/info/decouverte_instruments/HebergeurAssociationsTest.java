@@ -0,0 +1,205 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Hébergement de plusieurs associations : isolation, chargement à la
+ * demande, déchargement par budget et par inactivité, points d'accès HTTP.
+ */
+class HebergeurAssociationsTest {
+
+    // une association vide est estimée à 320 Kio : une seule tient
+    private static final long BUDGET_UNE_ASSOCIATION = 400L << 10;
+
+    @TempDir
+    Path racine;
+
+    private static void inscrire(final HebergeurAssociations hebergeur, final String association,
+            final String enfant, final String instrument, final Jour jour) throws IOException {
+        try (HebergeurAssociations.Acces acces = hebergeur.acceder(association)) {
+            Application app = acces.getApplication();
+            app.nouvelInstrument(instrument);
+            app.nouvelEnfant(enfant);
+            app.inscrire(app.getEnfant(enfant), app.getInstrument(instrument), jour);
+        }
+    }
+
+    private static String decrire(final HebergeurAssociations hebergeur, final String association)
+            throws IOException {
+        try (HebergeurAssociations.Acces acces = hebergeur.acceder(association)) {
+            return Etats.decrireSeances(acces.getApplication());
+        }
+    }
+
+    @Test
+    void isoleLesAssociations() throws IOException {
+        try (HebergeurAssociations hebergeur = new HebergeurAssociations(this.racine, 1L << 30, 600)) {
+            assertTrue(hebergeur.creer("harmonie-voiron"));
+            assertTrue(hebergeur.creer("fanfare"));
+            assertFalse(hebergeur.creer("fanfare"));
+            assertEquals(Arrays.asList("fanfare", "harmonie-voiron"), hebergeur.lister());
+            assertFalse(hebergeur.estChargee("fanfare"));
+
+            HebergeurAssociationsTest.inscrire(hebergeur, "fanfare", "Léa", "trompette", Jour.SAMEDI);
+            HebergeurAssociationsTest.inscrire(hebergeur, "harmonie-voiron", "Léa", "piano", Jour.MERCREDI);
+
+            assertTrue(hebergeur.estChargee("fanfare"));
+            try (HebergeurAssociations.Acces acces = hebergeur.acceder("fanfare")) {
+                assertEquals("fanfare", acces.getNom());
+                assertEquals(1, acces.getApplication().getEnfant("Léa").getSeances().size());
+                assertNull(acces.getApplication().getInstrument("piano"));
+            }
+        }
+    }
+
+    @Test
+    void refuseUnNomInvalideOuUneAssociationInconnue() throws IOException {
+        try (HebergeurAssociations hebergeur = new HebergeurAssociations(this.racine, 1L << 30, 600)) {
+            assertThrows(IllegalArgumentException.class, () -> hebergeur.creer("../fanfare"));
+            assertThrows(IllegalArgumentException.class, () -> hebergeur.acceder("fanfare"));
+            assertThrows(IllegalArgumentException.class, () -> hebergeur.acceder(".."));
+            assertEquals(Collections.emptyList(), hebergeur.lister());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new HebergeurAssociations(this.racine, 0, 600));
+        assertThrows(IllegalArgumentException.class, () -> new HebergeurAssociations(this.racine, 1, 0));
+    }
+
+    @Test
+    void dechargeLaMoinsRecemmentUtiliseeAuDelaDuBudget() throws IOException {
+        try (HebergeurAssociations hebergeur = new HebergeurAssociations(
+                this.racine, HebergeurAssociationsTest.BUDGET_UNE_ASSOCIATION, 600)) {
+            hebergeur.creer("a");
+            hebergeur.creer("b");
+            HebergeurAssociationsTest.inscrire(hebergeur, "a", "Léa", "piano", Jour.MERCREDI);
+            String etatA = HebergeurAssociationsTest.decrire(hebergeur, "a");
+
+            HebergeurAssociationsTest.inscrire(hebergeur, "b", "Tom", "violon", Jour.SAMEDI);
+
+            assertFalse(hebergeur.estChargee("a"));
+            assertTrue(hebergeur.estChargee("b"));
+            assertTrue(hebergeur.getOctetsEstimes() <= HebergeurAssociationsTest.BUDGET_UNE_ASSOCIATION);
+            // l'association déchargée a été enregistrée
+            assertEquals(etatA, HebergeurAssociationsTest.decrire(hebergeur, "a"));
+            assertFalse(hebergeur.estChargee("b"));
+
+            // une association utilisée n'est pas déchargée, quitte à dépasser
+            // le budget
+            try (HebergeurAssociations.Acces acces = hebergeur.acceder("a")) {
+                HebergeurAssociationsTest.decrire(hebergeur, "b");
+                assertTrue(hebergeur.estChargee("a"));
+                assertTrue(hebergeur.estChargee("b"));
+            }
+
+            StringBuilder mesures = new StringBuilder();
+            hebergeur.ecrirePrometheus(mesures);
+            assertTrue(mesures.toString().contains("associations_dechargements_total{motif=\"budget\"} 2"),
+                    mesures.toString());
+        }
+    }
+
+    @Test
+    void dechargeUneAssociationInactive() throws Exception {
+        try (HebergeurAssociations hebergeur = new HebergeurAssociations(this.racine, 1L << 30, 1)) {
+            hebergeur.creer("fanfare");
+            hebergeur.demarrer();
+            HebergeurAssociationsTest.inscrire(hebergeur, "fanfare", "Léa", "trompette", Jour.SAMEDI);
+            String etat = HebergeurAssociationsTest.decrire(hebergeur, "fanfare");
+
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (hebergeur.estChargee("fanfare") && System.nanoTime() < limite) {
+                Thread.sleep(100);
+            }
+
+            assertFalse(hebergeur.estChargee("fanfare"));
+            assertEquals(0, hebergeur.getOctetsEstimes());
+            assertEquals(etat, HebergeurAssociationsTest.decrire(hebergeur, "fanfare"));
+        }
+    }
+
+    @Test
+    void enregistreToutALaFermeture() throws IOException {
+        HebergeurAssociations hebergeur = new HebergeurAssociations(this.racine, 1L << 30, 600);
+        hebergeur.creer("fanfare");
+        HebergeurAssociations.Acces acces = hebergeur.acceder("fanfare");
+        Application app = acces.getApplication();
+        app.nouvelInstrument("tuba");
+
+        // même utilisée, l'association est enregistrée
+        hebergeur.close();
+        acces.close();
+
+        assertThrows(IllegalStateException.class, () -> hebergeur.acceder("fanfare"));
+        try (HebergeurAssociations relu = new HebergeurAssociations(this.racine, 1L << 30, 600);
+                HebergeurAssociations.Acces relue = relu.acceder("fanfare")) {
+            assertTrue(relue.getApplication().getInstruments().containsKey("tuba"));
+        }
+    }
+
+    @Test
+    void sertLesAssociationsEnHttp() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        try (HebergeurAssociations hebergeur = new HebergeurAssociations(this.racine, 1L << 30, 600)) {
+            ServeurHttp serveur = new ServeurHttp(hebergeur,
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            serveur.demarrer();
+            try {
+                String base = "http://127.0.0.1:" + serveur.getPort();
+                HttpRequest creation = HttpRequest.newBuilder(URI.create(base + "/associations"))
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"nom\": \"fanfare\"}", StandardCharsets.UTF_8))
+                        .build();
+                assertEquals(201, client.send(creation, HttpResponse.BodyHandlers.ofString()).statusCode());
+                assertEquals(409, client.send(creation, HttpResponse.BodyHandlers.ofString()).statusCode());
+                HttpRequest instrument = HttpRequest.newBuilder(URI.create(base + "/associations/fanfare/instruments"))
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"nom\": \"tuba\"}", StandardCharsets.UTF_8))
+                        .build();
+                assertEquals(201, client.send(instrument, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+                HttpResponse<String> liste = client.send(
+                        HttpRequest.newBuilder(URI.create(base + "/associations")).GET().build(),
+                        HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                assertEquals(200, liste.statusCode());
+                assertEquals("{\"association\":\"fanfare\",\"etat\":\"chargee\"}\n", liste.body());
+
+                for (String chemin : new String[] {
+                        "/associations/inconnue/instruments", "/associations/fanfare/inconnu", "/associationsX"}) {
+                    HttpResponse<String> refus = client.send(
+                            HttpRequest.newBuilder(URI.create(base + chemin)).GET().build(),
+                            HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                    assertEquals(404, refus.statusCode(), chemin);
+                }
+                // hors des associations, les points d'accès d'une application
+                // n'existent pas
+                assertEquals(404, client.send(HttpRequest.newBuilder(URI.create(base + "/instruments")).GET().build(),
+                        HttpResponse.BodyHandlers.ofString()).statusCode());
+
+                HttpResponse<String> mesures = client.send(
+                        HttpRequest.newBuilder(URI.create(base + "/metriques")).GET().build(),
+                        HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+                assertEquals(200, mesures.statusCode());
+                assertTrue(mesures.body().contains("associations_chargees 1"), mesures.body());
+            }
+            finally {
+                serveur.arreter(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Import en masse : découpage des lignes, règles d'inscription, fichier des
+ * rejets et demandes confiées au planificateur.
+ */
+class ImportMasseTest {
+
+    @TempDir
+    Path dossier;
+
+    private List<String> importer(final Application app, final String... lignes) throws IOException {
+        Path source = this.dossier.resolve("import.csv");
+        Path rejets = this.dossier.resolve("rejets.csv");
+        Files.write(source, Arrays.asList(lignes), StandardCharsets.UTF_8);
+        ImportMasse importMasse = new ImportMasse(app);
+        importMasse.importer(source, rejets);
+        List<String> lignesRejetees = Files.readAllLines(rejets, StandardCharsets.UTF_8);
+        assertEquals(lignesRejetees.size(), importMasse.getNbRejetees());
+        return lignesRejetees;
+    }
+
+    @Test
+    void importeUnFichierPointVirguleAvecEntete() throws IOException {
+        Application app = new Application();
+
+        List<String> rejets = this.importer(app,
+                "type;nom;instrument;jour",
+                "instrument;violon",
+                "instrument;piano",
+                "enfant;\"Martin; Léa\"",
+                "enfant;Tom",
+                "inscription;\"martin; léa\";Violon;Samedi",
+                "inscription;\"Martin; Léa\";piano;samedi",
+                "inscription;Tom;violon;mercredi");
+
+        assertEquals(Collections.singletonList(
+                "inscription;\"Martin; Léa\";piano;samedi;enfant déjà inscrit à une séance ce jour-là"), rejets);
+        Enfant lea = app.getEnfant("Martin; Léa");
+        assertNotNull(lea);
+        assertEquals(1, lea.getNbSeances());
+        assertTrue(lea.estInscritA("violon"));
+        assertTrue(app.getEnfant("Tom").estInscritA("violon"));
+        assertEquals(2, app.getInstrument("violon").getNbSeances());
+    }
+
+    @Test
+    void importeUnFichierTabuleEtRecopieLesRejets() throws IOException {
+        Application app = new Application();
+
+        List<String> rejets = this.importer(app,
+                "instrument\tflûte",
+                "instrument\tflûte",
+                "enfant\t",
+                "enfant\tZoé",
+                "inscription\tZoé\tflûte\tdimanche",
+                "inscription\tMax\tflûte\tmercredi",
+                "cours\tZoé",
+                "capacite\tflûte\tmercredi\tbeaucoup",
+                "inscription\tZoé\tflûte\tmercredi");
+
+        assertEquals(Arrays.asList(
+                "instrument\tflûte\tinstrument déjà existant",
+                "enfant\t\tnom vide",
+                "inscription\tZoé\tflûte\tdimanche\tjour inconnu",
+                "inscription\tMax\tflûte\tmercredi\tenfant inconnu",
+                "cours\tZoé\ttype de ligne inconnu",
+                "capacite\tflûte\tmercredi\tbeaucoup\tcapacité invalide"), rejets);
+        assertTrue(app.getEnfant("Zoé").estInscritA("flûte"));
+    }
+
+    @Test
+    void accepteUneInscriptionMiseEnAttente() throws IOException {
+        Application app = new Application();
+
+        List<String> rejets = this.importer(app,
+                "instrument,piano",
+                "enfant,Léa",
+                "enfant,Tom",
+                "capacite,piano,mercredi,1",
+                "inscription,Léa,piano,mercredi",
+                "inscription,Tom,piano,mercredi");
+
+        assertEquals(Collections.emptyList(), rejets);
+        PlacesInstrument places = app.getInstrument("piano").getPlaces();
+        assertEquals(1, places.getOccupees(Jour.MERCREDI));
+        assertEquals(Collections.singletonList("Tom"), Etats.noms(places.getAttente(Jour.MERCREDI)));
+    }
+
+    @Test
+    void planifieLesDemandesSansJour() throws IOException {
+        Application app = new Application();
+        ImportMasse importMasse = new ImportMasse(app);
+        Path source = this.dossier.resolve("demandes.csv");
+        Files.write(source, Arrays.asList(
+                "instrument;piano",
+                "instrument;violon",
+                "enfant;Léa",
+                "inscription;Léa;violon;mercredi",
+                "inscription;Léa;piano",
+                "inscription;Léa;harpe"), StandardCharsets.UTF_8);
+
+        importMasse.importer(source, this.dossier.resolve("rejets.csv"));
+
+        // la demande planifiée compte parmi les lignes appliquées
+        assertEquals(5, importMasse.getNbAcceptees());
+        assertEquals(1, importMasse.getNbRejetees());
+        Enfant lea = app.getEnfant("Léa");
+        assertEquals(2, lea.getNbSeances());
+        assertTrue(lea.estInscritA("piano"));
+        assertEquals(2, lea.getJoursOccupes().size());
+    }
+}
@@ -0,0 +1,144 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Isolation des instantanés : une désinscription ne les attend pas, ils
+ * continuent de voir l'état de leur ouverture, et leurs deux côtés (enfants
+ * et instruments) concordent pendant des écritures concurrentes.
+ */
+class InstantaneTest {
+
+    private Application app;
+    private Enfant lea;
+    private Instrument piano;
+    private ExecutorService tache;
+
+    @BeforeEach
+    void preparer() {
+        this.app = new Application();
+        this.app.nouvelInstrument("piano");
+        this.app.nouvelInstrument("violon");
+        this.app.nouvelInstrument("flûte");
+        this.app.nouvelEnfant("Léa");
+        this.app.nouvelEnfant("Tom");
+        this.lea = this.app.getEnfant("Léa");
+        this.piano = this.app.getInstrument("piano");
+        this.app.inscrire(this.lea, this.piano, Jour.MERCREDI);
+        this.app.inscrire(this.lea, this.app.getInstrument("violon"), Jour.SAMEDI);
+        this.app.inscrire(this.app.getEnfant("Tom"), this.piano, Jour.MERCREDI);
+        this.tache = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void arreter() {
+        this.tache.shutdownNow();
+    }
+
+    @Test
+    void laDesinscriptionNAttendPasLInstantane() throws Exception {
+        try (Instantane instantane = this.app.instantane()) {
+            String avant = Etats.decrire(instantane);
+
+            Future<ResultatInscription> retrait = this.tache.submit(
+                    () -> this.app.desinscrire(this.lea, this.piano));
+
+            // l'instantané est encore ouvert : la désinscription aboutit quand même
+            assertEquals(ResultatInscription.ACCEPTEE, retrait.get(5, TimeUnit.SECONDS));
+            assertEquals(avant, Etats.decrire(instantane));
+            assertEquals(2, instantane.getNbSeances(this.lea));
+            assertEquals(2, instantane.getNbSeances(this.piano));
+            assertEquals(1, this.lea.getNbSeances());
+            assertEquals(1, this.piano.getNbSeances());
+            try (Instantane suivant = this.app.instantane()) {
+                assertNotEquals(avant, Etats.decrire(suivant));
+                assertEquals(1, suivant.getNbSeances(this.lea));
+                assertEquals(1, suivant.getNbSeances(this.piano));
+            }
+        }
+    }
+
+    @Test
+    void lInstantaneIgnoreLaSeanceQuiRemplaceUnRetrait() throws Exception {
+        try (Instantane instantane = this.app.instantane()) {
+            String avant = Etats.decrire(instantane);
+
+            this.tache.submit(() -> {
+                this.app.desinscrire(this.lea, this.piano);
+                // le mercredi libéré accueille un autre instrument
+                return this.app.inscrire(this.lea, this.app.getInstrument("flûte"), Jour.MERCREDI);
+            }).get(5, TimeUnit.SECONDS);
+
+            assertEquals(avant, Etats.decrire(instantane));
+            assertEquals(2, this.lea.getNbSeances());
+            assertEquals(3, this.lea.getNbCases());
+        }
+    }
+
+    @Test
+    void laCompactionAttendLaFermetureDesInstantanes() throws Exception {
+        Instantane instantane = this.app.instantane();
+        this.app.desinscrire(this.lea, this.piano);
+
+        this.app.compacterSeances();
+        assertEquals(2, this.lea.getNbCases());
+        assertEquals(2, this.piano.getNbCases());
+
+        instantane.close();
+        this.app.compacterSeances();
+        assertEquals(1, this.lea.getNbCases());
+        assertEquals(1, this.piano.getNbCases());
+        assertEquals(1, this.lea.getNbSeances());
+    }
+
+    @Test
+    void lesDeuxCotesConcordentPendantDesEcrituresConcurrentes() throws Exception {
+        Instrument[] instruments = this.app.getInstruments().values().toArray(new Instrument[0]);
+        Enfant[] enfants = new Enfant[100];
+        for (int i = 0; i < enfants.length; ++i) {
+            this.app.nouvelEnfant("enfant" + i);
+            enfants[i] = this.app.getEnfant("enfant" + i);
+        }
+        // assez peu de mutations par enfant pour que ses séances retirées
+        // tiennent sans compaction, les instantanés se succédant sans pause
+        Future<?> ecrivain = this.tache.submit(() -> {
+            Random alea = new Random(42);
+            for (int n = 0; n < 4000; ++n) {
+                Enfant enfant = enfants[alea.nextInt(enfants.length)];
+                Instrument instrument = instruments[alea.nextInt(instruments.length)];
+                if (alea.nextBoolean()) {
+                    this.app.inscrire(enfant, instrument, Jour.values()[alea.nextInt(Jour.values().length)]);
+                } else {
+                    this.app.desinscrire(enfant, instrument);
+                }
+            }
+        });
+
+        boolean fini;
+        do {
+            fini = ecrivain.isDone();
+            try (Instantane instantane = this.app.instantane()) {
+                int coteEnfants = 0;
+                for (Enfant enfant : instantane.getEnfants()) {
+                    coteEnfants += instantane.getSeances(enfant).size();
+                }
+                int coteInstruments = 0;
+                for (Instrument instrument : instantane.getInstruments()) {
+                    coteInstruments += instantane.getSeances(instrument).size();
+                }
+                assertEquals(coteEnfants, coteInstruments);
+            }
+        } while (!fini);
+        ecrivain.get(5, TimeUnit.SECONDS);
+    }
+}
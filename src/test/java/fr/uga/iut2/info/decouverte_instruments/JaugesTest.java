@@ -0,0 +1,139 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Effectifs tenus à jour à chaque mutation : ils doivent toujours égaler un
+ * recomptage des séances.
+ */
+class JaugesTest {
+
+    private static final int NB_ENFANTS = 200;
+    private static final String[] INSTRUMENTS = {"piano", "violon", "flûte", "harpe"};
+
+    private static Application peupler() {
+        Application app = new Application();
+        for (String nom : JaugesTest.INSTRUMENTS) {
+            app.nouvelInstrument(nom);
+        }
+        for (int i = 0; i < JaugesTest.NB_ENFANTS; ++i) {
+            app.nouvelEnfant("enfant" + i);
+        }
+        app.fixerCapacite(app.getInstrument("harpe"), Jour.SAMEDI, 3);
+        return app;
+    }
+
+    private static void muter(final Application app, final long graine, final int nbMutations) {
+        Random alea = new Random(graine);
+        Jour[] jours = Jour.values();
+        for (int n = 0; n < nbMutations; ++n) {
+            Enfant enfant = app.getEnfant("enfant" + alea.nextInt(JaugesTest.NB_ENFANTS));
+            Instrument instrument = app.getInstrument(JaugesTest.INSTRUMENTS[alea.nextInt(JaugesTest.INSTRUMENTS.length)]);
+            if (alea.nextInt(3) > 0) {
+                app.inscrire(enfant, instrument, jours[alea.nextInt(jours.length)]);
+            } else {
+                app.desinscrire(enfant, instrument);
+            }
+        }
+    }
+
+    /**
+     * Compare les effectifs tenus à jour à un recomptage des séances de
+     * chaque enfant.
+     */
+    private static void verifier(final Application app) {
+        Metriques.Jauges jauges = app.jauges();
+        int[] parJour = new int[Jour.values().length];
+        int[] parNbSeances = new int[Enfant.MAX_SEANCES + 1];
+        int[][] parInstrumentEtJour = new int[JaugesTest.INSTRUMENTS.length][Jour.values().length];
+        for (Enfant enfant : app.getEnfants().values()) {
+            List<Seance> seances = enfant.getSeances();
+            ++parNbSeances[seances.size()];
+            for (Seance seance : seances) {
+                int jour = Jour.valueOfString(seance.getJour()).ordinal();
+                ++parJour[jour];
+                ++parInstrumentEtJour[List.of(JaugesTest.INSTRUMENTS).indexOf(seance.getInstrument())][jour];
+            }
+        }
+
+        assertEquals(JaugesTest.NB_ENFANTS, jauges.getNbEnfants());
+        assertEquals(JaugesTest.INSTRUMENTS.length, jauges.getNbInstruments());
+        long total = 0;
+        for (Jour jour : Jour.values()) {
+            assertEquals(parJour[jour.ordinal()], jauges.getNbSeances(jour), jour.toString());
+            total += parJour[jour.ordinal()];
+            for (int i = 0; i < JaugesTest.INSTRUMENTS.length; ++i) {
+                Instrument instrument = app.getInstrument(JaugesTest.INSTRUMENTS[i]);
+                assertEquals(parInstrumentEtJour[i][jour.ordinal()], instrument.getNbSeances(jour),
+                        instrument.getNom() + " " + jour);
+            }
+        }
+        assertEquals(total, jauges.getNbSeances());
+        for (int nb = 0; nb <= Enfant.MAX_SEANCES; ++nb) {
+            assertEquals(parNbSeances[nb], jauges.getNbEnfants(nb), nb + " séance(s)");
+        }
+        assertEquals(parNbSeances[0], jauges.getNbEnfantsSansSeance());
+        assertEquals(JaugesTest.NB_ENFANTS + JaugesTest.INSTRUMENTS.length + total, jauges.getNbObjets());
+    }
+
+    @Test
+    void egalentUnRecomptageApresDesMutations() {
+        Application app = JaugesTest.peupler();
+
+        JaugesTest.muter(app, 1, 5_000);
+        JaugesTest.verifier(app);
+
+        app.compacterSeances();
+        JaugesTest.verifier(app);
+    }
+
+    @Test
+    void egalentUnRecomptageApresDesMutationsConcurrentes() throws Exception {
+        Application app = JaugesTest.peupler();
+        ExecutorService taches = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> resultats = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                long graine = t;
+                resultats.add(taches.submit(() -> JaugesTest.muter(app, graine, 5_000)));
+            }
+            for (Future<?> resultat : resultats) {
+                resultat.get(30, TimeUnit.SECONDS);
+            }
+        }
+        finally {
+            taches.shutdownNow();
+        }
+
+        JaugesTest.verifier(app);
+    }
+
+    @Test
+    void sontRecalculesAuChargement() throws Exception {
+        Application app = JaugesTest.peupler();
+        JaugesTest.muter(app, 7, 2_000);
+
+        Application relue = FormatBinaire.lire(FormatBinaireTest.entree(FormatBinaireTest.ecrire(app)));
+
+        assertEquals(app.jauges().getNbSeances(), relue.jauges().getNbSeances());
+        JaugesTest.verifier(relue);
+    }
+
+    @Test
+    void refusentUnNombreDeSeancesImpossible() {
+        Metriques.Jauges jauges = new Application().jauges();
+
+        assertThrows(IllegalArgumentException.class, () -> jauges.getNbEnfants(-1));
+        assertThrows(IllegalArgumentException.class, () -> jauges.getNbEnfants(Enfant.MAX_SEANCES + 1));
+    }
+}
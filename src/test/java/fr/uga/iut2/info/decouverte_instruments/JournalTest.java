@@ -0,0 +1,151 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Rejeu du journal : l'état relu d'un dossier sans instantané est celui
+ * qu'avaient produit les mutations journalisées.
+ */
+class JournalTest {
+
+    @TempDir
+    Path dossier;
+
+    @Test
+    void rejoueLesMutationsJournalisees() throws Exception {
+        Application app = Persisteur.lireEtat(this.dossier);
+        JournalTest.peupler(app);
+        String attendu = Etats.decrire(app);
+        app.getJournal().close();
+
+        Application relue = Persisteur.lireEtat(this.dossier);
+
+        assertEquals(attendu, Etats.decrire(relue));
+        assertEquals(6 + 6, relue.getJournal().getNbEnregistrements());
+        relue.getJournal().close();
+    }
+
+    @Test
+    void ignoreUnEnregistrementTronque() throws Exception {
+        Application app = Persisteur.lireEtat(this.dossier);
+        JournalTest.peupler(app);
+        String attendu = Etats.decrire(app);
+        app.getJournal().close();
+        Path journal = this.dossier.resolve("instruments.journal");
+        long tailleValide = Files.size(journal);
+        // début d'un ajout de séance interrompu par un arrêt brutal
+        Files.write(journal, new byte[] {3, 0, 8, 'L'}, StandardOpenOption.APPEND);
+
+        Application relue = Persisteur.lireEtat(this.dossier);
+
+        assertEquals(attendu, Etats.decrire(relue));
+        assertEquals(tailleValide, Files.size(journal));
+        relue.getJournal().close();
+    }
+
+    @Test
+    void rejoueLeJournalPosterieurALInstantane() throws Exception {
+        Application app = Persisteur.lireEtat(this.dossier);
+        app.nouvelInstrument("piano");
+        app.nouvelEnfant("Léa");
+        Persisteur.enregistrer(app);
+        app.inscrire(app.getEnfant("Léa"), app.getInstrument("piano"), Jour.SAMEDI);
+        String attendu = Etats.decrire(app);
+        app.getJournal().close();
+
+        Application relue = Persisteur.lireEtat(this.dossier);
+
+        assertEquals(attendu, Etats.decrire(relue));
+        assertEquals(1, relue.getJournal().getNbEnregistrements());
+        relue.getJournal().close();
+    }
+
+    @Test
+    void signaleUneSeanceRefuseeAuRejeu() throws Exception {
+        Application app = Persisteur.lireEtat(this.dossier);
+        app.nouvelInstrument("piano");
+        app.nouvelInstrument("violon");
+        app.nouvelEnfant("Léa");
+        app.inscrire(app.getEnfant("Léa"), app.getInstrument("piano"), Jour.MERCREDI);
+        String attendu = Etats.decrire(app);
+        app.getJournal().close();
+        Path journal = this.dossier.resolve("instruments.journal");
+
+        // une séance déjà présente est ignorée sans bruit
+        Files.write(journal, JournalTest.seanceAjoutee("Léa", "piano", Jour.MERCREDI), StandardOpenOption.APPEND);
+        String erreurs = JournalTest.relireErreurs(this.dossier, attendu);
+        assertFalse(erreurs.contains("ignorée"), erreurs);
+
+        // une séance qui enfreint les règles est écartée, mais signalée
+        Files.write(journal, JournalTest.seanceAjoutee("Léa", "violon", Jour.MERCREDI), StandardOpenOption.APPEND);
+        erreurs = JournalTest.relireErreurs(this.dossier, attendu);
+        assertTrue(erreurs.contains("séance de Léa (violon, mercredi) ignorée au rejeu"), erreurs);
+    }
+
+    /**
+     * Relit le dossier, vérifie l'état obtenu et renvoie ce que le rejeu a
+     * écrit sur la sortie d'erreur.
+     */
+    private static String relireErreurs(final Path dossier, final String attendu) throws Exception {
+        ByteArrayOutputStream erreurs = new ByteArrayOutputStream();
+        PrintStream sortieErreur = System.err;
+        System.setErr(new PrintStream(erreurs, true, StandardCharsets.UTF_8));
+        try {
+            Application relue = Persisteur.lireEtat(dossier);
+            relue.getJournal().close();
+            assertEquals(attendu, Etats.decrire(relue));
+        }
+        finally {
+            System.setErr(sortieErreur);
+        }
+        return erreurs.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Code un enregistrement d'ajout de séance, comme le fait le journal.
+     */
+    private static byte[] seanceAjoutee(final String enfant, final String instrument, final Jour jour)
+            throws IOException {
+        ByteArrayOutputStream contenu = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(contenu)) {
+            out.writeByte(3);
+            out.writeUTF(enfant);
+            out.writeUTF(instrument);
+            out.writeByte(jour.ordinal());
+        }
+        return contenu.toByteArray();
+    }
+
+    /**
+     * Journalise six créations et six mutations de séances ou d'attente.
+     */
+    private static void peupler(final Application app) throws IOException {
+        app.nouvelInstrument("piano");
+        app.nouvelInstrument("violon");
+        app.nouvelEnfant("Léa");
+        app.nouvelEnfant("Tom");
+        app.nouvelEnfant("Zoé");
+        app.nouvelEnfant("Max");
+        Instrument piano = app.getInstrument("piano");
+        Instrument violon = app.getInstrument("violon");
+        app.fixerCapacite(piano, Jour.MERCREDI, 1);
+        assertEquals(ResultatInscription.ACCEPTEE, app.inscrire(app.getEnfant("Léa"), piano, Jour.MERCREDI));
+        assertEquals(ResultatInscription.EN_ATTENTE, app.inscrire(app.getEnfant("Tom"), piano, Jour.MERCREDI));
+        assertEquals(ResultatInscription.ACCEPTEE, app.inscrire(app.getEnfant("Zoé"), violon, Jour.SAMEDI));
+        assertEquals(ResultatInscription.ACCEPTEE, app.inscrire(app.getEnfant("Léa"), violon, Jour.VENDREDI));
+        assertEquals(ResultatInscription.ACCEPTEE, app.desinscrire(app.getEnfant("Zoé"), violon));
+    }
+}
@@ -0,0 +1,88 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Persistance segmentée : relecture, réécriture des seuls segments modifiés
+ * et refus d'un dossier incomplet.
+ */
+class PersistanceSegmenteeTest {
+
+    @TempDir
+    Path dossier;
+
+    private int ecrire(final PersistanceSegmentee persistance, final Application app) throws IOException {
+        try (Instantane instantane = app.instantane()) {
+            return persistance.ecrire(instantane);
+        }
+    }
+
+    private Application relire() throws IOException {
+        Application relue = new Application();
+        PersistanceSegmentee.lire(this.dossier, relue);
+        return relue;
+    }
+
+    @Test
+    void relitLesSegments() throws IOException {
+        Application app = FormatBinaireTest.peupler();
+
+        assertEquals(4, this.ecrire(new PersistanceSegmentee(this.dossier, 4), app));
+
+        Application relue = this.relire();
+        assertEquals(Etats.decrireSeances(app), Etats.decrireSeances(relue));
+        // les listes des instruments sont reconstruites au chargement
+        assertEquals(2, relue.getInstrument("piano").getNbSeances());
+        assertEquals(1, relue.getInstrument("flûte").getNbSeances());
+    }
+
+    @Test
+    void neReecritQueLesSegmentsModifies() throws IOException {
+        Application app = FormatBinaireTest.peupler();
+        PersistanceSegmentee persistance = new PersistanceSegmentee(this.dossier, 4);
+        this.ecrire(persistance, app);
+
+        assertEquals(0, this.ecrire(persistance, app));
+
+        app.inscrire(app.getEnfant("Tom"), app.getInstrument("violon"), Jour.MERCREDI);
+        assertEquals(1, this.ecrire(persistance, app));
+
+        // un nouvel instrument ne réécrit que le manifeste
+        app.nouvelInstrument("harpe");
+        assertEquals(0, this.ecrire(persistance, app));
+
+        Application relue = this.relire();
+        assertEquals(Etats.decrireSeances(app), Etats.decrireSeances(relue));
+        assertNotNull(relue.getInstrument("harpe"));
+    }
+
+    @Test
+    void reprendUnDossierRelu() throws IOException {
+        this.ecrire(new PersistanceSegmentee(this.dossier, 4), FormatBinaireTest.peupler());
+        Application relue = new Application();
+        PersistanceSegmentee persistance = PersistanceSegmentee.lire(this.dossier, relue);
+
+        // les segments relus sont considérés comme à jour
+        assertEquals(0, this.ecrire(persistance, relue));
+        relue.desinscrire(relue.getEnfant("Léa"), relue.getInstrument("piano"));
+        assertEquals(1, this.ecrire(persistance, relue));
+
+        assertEquals(Etats.decrireSeances(relue), Etats.decrireSeances(this.relire()));
+    }
+
+    @Test
+    void refuseUnDossierIncomplet() throws IOException {
+        this.ecrire(new PersistanceSegmentee(this.dossier, 4), FormatBinaireTest.peupler());
+        Files.delete(this.dossier.resolve("segment-002.bdd"));
+
+        assertThrows(IOException.class, this::relire);
+    }
+}
@@ -0,0 +1,158 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Capacités et listes d'attente : les places libérées reviennent aux enfants
+ * dans leur ordre d'arrivée, en passant ceux qui ne peuvent plus être
+ * inscrits.
+ */
+class PlacesInstrumentTest {
+
+    private Application app;
+    private Instrument piano;
+
+    @BeforeEach
+    void preparer() {
+        this.app = new Application();
+        this.app.nouvelInstrument("piano");
+        this.app.nouvelInstrument("violon");
+        for (String nom : Arrays.asList("Léa", "Tom", "Zoé", "Max")) {
+            this.app.nouvelEnfant(nom);
+        }
+        this.piano = this.app.getInstrument("piano");
+        this.app.fixerCapacite(this.piano, Jour.MERCREDI, 1);
+    }
+
+    private ResultatInscription inscrire(final String enfant) {
+        return this.app.inscrire(this.app.getEnfant(enfant), this.piano, Jour.MERCREDI);
+    }
+
+    private ResultatInscription desinscrire(final String enfant) {
+        return this.app.desinscrire(this.app.getEnfant(enfant), this.piano);
+    }
+
+    private boolean estInscrit(final String enfant) {
+        return this.app.getEnfant(enfant).estInscritA("piano");
+    }
+
+    @Test
+    void metEnAttenteDansLOrdreDArrivee() {
+        assertEquals(ResultatInscription.ACCEPTEE, this.inscrire("Léa"));
+        assertEquals(ResultatInscription.EN_ATTENTE, this.inscrire("Tom"));
+        assertEquals(ResultatInscription.EN_ATTENTE, this.inscrire("Zoé"));
+        assertEquals(ResultatInscription.EN_ATTENTE, this.inscrire("Max"));
+        assertEquals(ResultatInscription.DEJA_EN_ATTENTE, this.inscrire("Tom"));
+
+        assertEquals(Arrays.asList("Tom", "Zoé", "Max"),
+                Etats.noms(this.piano.getPlaces().getAttente(Jour.MERCREDI)));
+    }
+
+    @Test
+    void promeutLePremierEnAttente() {
+        this.inscrire("Léa");
+        this.inscrire("Tom");
+        this.inscrire("Zoé");
+
+        assertEquals(ResultatInscription.ACCEPTEE, this.desinscrire("Léa"));
+        assertTrue(this.estInscrit("Tom"));
+        assertFalse(this.estInscrit("Zoé"));
+
+        this.desinscrire("Tom");
+        assertTrue(this.estInscrit("Zoé"));
+        assertEquals(Collections.emptyList(), this.piano.getPlaces().getAttente(Jour.MERCREDI));
+        assertEquals(1, this.piano.getPlaces().getOccupees(Jour.MERCREDI));
+    }
+
+    @Test
+    void passeLEnfantQuiNEstPlusEligible() {
+        this.inscrire("Léa");
+        this.inscrire("Tom");
+        this.inscrire("Zoé");
+        // Tom a entre-temps pris son mercredi avec un autre instrument
+        this.app.inscrire(this.app.getEnfant("Tom"), this.app.getInstrument("violon"), Jour.MERCREDI);
+
+        this.desinscrire("Léa");
+
+        assertFalse(this.estInscrit("Tom"));
+        assertTrue(this.estInscrit("Zoé"));
+        assertEquals(Collections.emptyList(), this.piano.getPlaces().getAttente(Jour.MERCREDI));
+    }
+
+    @Test
+    void lAugmentationDeCapacitePromeutDansLOrdre() {
+        this.inscrire("Léa");
+        this.inscrire("Tom");
+        this.inscrire("Zoé");
+        this.inscrire("Max");
+
+        assertEquals(2, this.app.fixerCapacite(this.piano, Jour.MERCREDI, 3));
+
+        assertTrue(this.estInscrit("Tom"));
+        assertTrue(this.estInscrit("Zoé"));
+        assertFalse(this.estInscrit("Max"));
+        assertEquals(Collections.singletonList("Max"),
+                Etats.noms(this.piano.getPlaces().getAttente(Jour.MERCREDI)));
+    }
+
+    @Test
+    void laDesinscriptionDUnEnfantEnAttenteNeLibereAucunePlace() {
+        this.inscrire("Léa");
+        this.inscrire("Tom");
+        this.inscrire("Zoé");
+
+        assertEquals(ResultatInscription.ACCEPTEE, this.desinscrire("Tom"));
+
+        assertTrue(this.estInscrit("Léa"));
+        assertFalse(this.estInscrit("Zoé"));
+        assertEquals(Collections.singletonList("Zoé"),
+                Etats.noms(this.piano.getPlaces().getAttente(Jour.MERCREDI)));
+        assertEquals(ResultatInscription.NON_INSCRIT, this.desinscrire("Tom"));
+    }
+
+    @Test
+    void laBaisseDeCapaciteNeDesinscritPersonne() {
+        this.app.fixerCapacite(this.piano, Jour.MERCREDI, 2);
+        this.inscrire("Léa");
+        this.inscrire("Tom");
+
+        assertEquals(0, this.app.fixerCapacite(this.piano, Jour.MERCREDI, 1));
+
+        assertTrue(this.estInscrit("Léa"));
+        assertTrue(this.estInscrit("Tom"));
+        assertEquals(0, this.piano.getPlaces().getRestantes(Jour.MERCREDI));
+        assertEquals(ResultatInscription.EN_ATTENTE, this.inscrire("Zoé"));
+        // la première place libérée ramène l'effectif à la capacité
+        this.desinscrire("Léa");
+        assertFalse(this.estInscrit("Zoé"));
+        this.desinscrire("Tom");
+        assertTrue(this.estInscrit("Zoé"));
+    }
+
+    @Test
+    void neLimiteQueLeJourConcerne() {
+        this.inscrire("Léa");
+
+        assertEquals(ResultatInscription.ACCEPTEE,
+                this.app.inscrire(this.app.getEnfant("Tom"), this.piano, Jour.SAMEDI));
+        assertEquals(PlacesInstrument.ILLIMITEE, this.piano.getPlaces().getCapacite(Jour.SAMEDI));
+    }
+
+    @Test
+    void analyseLesCapacitesSaisies() {
+        assertEquals(12, PlacesInstrument.analyserCapacite(" 12 "));
+        assertEquals(PlacesInstrument.ILLIMITEE, PlacesInstrument.analyserCapacite("Illimitée"));
+        assertEquals(PlacesInstrument.ILLIMITEE, PlacesInstrument.analyserCapacite("illimitee"));
+        assertEquals("illimitée", PlacesInstrument.formaterCapacite(PlacesInstrument.ILLIMITEE));
+        assertThrows(IllegalArgumentException.class, () -> PlacesInstrument.analyserCapacite("-1"));
+        assertThrows(IllegalArgumentException.class, () -> PlacesInstrument.analyserCapacite("beaucoup"));
+    }
+}
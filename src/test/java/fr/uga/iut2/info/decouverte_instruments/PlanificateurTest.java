@@ -0,0 +1,154 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Planification des demandes sans jour : règles d'inscription, capacités,
+ * priorité des enfants les plus contraints, et application vérifiée.
+ */
+class PlanificateurTest {
+
+    private Application app;
+    private Instrument piano;
+    private Planificateur planificateur;
+
+    @BeforeEach
+    void preparer() {
+        this.app = new Application();
+        for (String nom : new String[] {"piano", "violon", "flûte", "harpe"}) {
+            this.app.nouvelInstrument(nom);
+        }
+        for (String nom : new String[] {"Léa", "Tom", "Zoé"}) {
+            this.app.nouvelEnfant(nom);
+        }
+        this.piano = this.app.getInstrument("piano");
+        this.planificateur = new Planificateur();
+    }
+
+    private Enfant enfant(final String nom) {
+        return this.app.getEnfant(nom);
+    }
+
+    private void demander(final String enfant, final String instrument) {
+        this.planificateur.ajouterDemande(this.enfant(enfant), this.app.getInstrument(instrument), enfant + " " + instrument);
+    }
+
+    private List<String> rejets() {
+        List<String> rejets = new ArrayList<>();
+        this.planificateur.getRejets().forEach((demande, motif) -> rejets.add(demande.getOrigine() + " : " + motif));
+        return rejets;
+    }
+
+    /**
+     * Ne laisse au piano qu'une place, le mercredi.
+     */
+    private void limiterPiano() {
+        this.app.fixerCapacite(this.piano, Jour.MERCREDI, 1);
+        this.app.fixerCapacite(this.piano, Jour.VENDREDI, 0);
+        this.app.fixerCapacite(this.piano, Jour.SAMEDI, 0);
+    }
+
+    @Test
+    void attribueUnJourDistinctAChaqueDemande() {
+        this.demander("Léa", "piano");
+        this.demander("Léa", "violon");
+        this.demander("Léa", "flûte");
+        this.demander("Léa", "violon");
+        this.demander("Tom", "harpe");
+
+        this.planificateur.planifier();
+
+        assertEquals(4, this.planificateur.appliquer(this.app));
+        assertEquals(Collections.singletonList("Léa violon : demande en double"), this.rejets());
+        assertEquals(EnumSet.allOf(Jour.class), this.enfant("Léa").getJoursOccupes());
+        assertTrue(this.enfant("Tom").estInscritA("harpe"));
+    }
+
+    @Test
+    void respecteLesJoursDejaOccupesEtLesInscriptionsExistantes() {
+        this.app.inscrire(this.enfant("Léa"), this.app.getInstrument("violon"), Jour.MERCREDI);
+        this.app.inscrire(this.enfant("Léa"), this.app.getInstrument("flûte"), Jour.SAMEDI);
+        this.demander("Léa", "piano");
+        this.demander("Léa", "violon");
+
+        this.planificateur.planifier();
+        this.planificateur.appliquer(this.app);
+
+        assertEquals(Collections.singletonList("Léa violon : " + ResultatInscription.INSTRUMENT_DEJA_CHOISI.getMotif()),
+                this.rejets());
+        assertEquals(EnumSet.allOf(Jour.class), this.enfant("Léa").getJoursOccupes());
+    }
+
+    @Test
+    void serviLEnfantLePlusContraintEnPremier() {
+        this.limiterPiano();
+        // Zoé n'a plus que le mercredi de libre, Tom a tous ses jours
+        this.app.inscrire(this.enfant("Zoé"), this.app.getInstrument("violon"), Jour.VENDREDI);
+        this.app.inscrire(this.enfant("Zoé"), this.app.getInstrument("flûte"), Jour.SAMEDI);
+        this.demander("Tom", "piano");
+        this.demander("Zoé", "piano");
+
+        this.planificateur.planifier();
+
+        assertEquals(1, this.planificateur.appliquer(this.app));
+        assertTrue(this.enfant("Zoé").estInscritA("piano"));
+        assertEquals(Collections.singletonList("Tom piano : aucun jour disponible"), this.rejets());
+    }
+
+    @Test
+    void neProposePasUneSeanceDontLaListeDAttenteEstOccupee() {
+        this.limiterPiano();
+        this.app.inscrire(this.enfant("Léa"), this.piano, Jour.MERCREDI);
+        this.app.inscrire(this.enfant("Tom"), this.piano, Jour.MERCREDI);
+        this.app.fixerCapacite(this.piano, Jour.MERCREDI, 1);
+        this.demander("Zoé", "piano");
+
+        this.planificateur.planifier();
+
+        assertEquals(0, this.planificateur.appliquer(this.app));
+        assertEquals(Collections.singletonList("Zoé piano : aucun jour disponible"), this.rejets());
+    }
+
+    @Test
+    void rejetteUneSeancePriseEntreLaPlanificationEtLApplication() {
+        this.limiterPiano();
+        this.demander("Léa", "piano");
+        this.planificateur.planifier();
+        assertEquals(1, this.planificateur.getAffectations().size());
+
+        // une inscription ordinaire prend la dernière place entre-temps
+        this.app.inscrire(this.enfant("Tom"), this.piano, Jour.MERCREDI);
+
+        assertEquals(0, this.planificateur.appliquer(this.app));
+        assertEquals(Collections.emptyList(), this.planificateur.getAffectations());
+        assertEquals(Collections.singletonList("Léa piano : " + ResultatInscription.SEANCE_COMPLETE.getMotif()),
+                this.rejets());
+        assertFalse(this.enfant("Léa").estInscritA("piano"));
+        assertEquals(1, this.piano.getPlaces().getOccupees(Jour.MERCREDI));
+        assertEquals(Collections.emptyList(), this.piano.getPlaces().getAttente(Jour.MERCREDI));
+    }
+
+    @Test
+    void rejetteUnJourPrisAilleursEntreLaPlanificationEtLApplication() {
+        this.demander("Léa", "piano");
+        this.planificateur.planifier();
+        Jour jour = Jour.valueOfString(this.planificateur.getAffectations().get(0).getJour());
+
+        this.app.inscrire(this.enfant("Léa"), this.app.getInstrument("violon"), jour);
+
+        assertEquals(0, this.planificateur.appliquer(this.app));
+        assertEquals(Collections.singletonList("Léa piano : " + ResultatInscription.JOUR_OCCUPE.getMotif()),
+                this.rejets());
+        assertEquals(1, this.enfant("Léa").getNbSeances());
+        assertEquals(0, this.piano.getNbSeances());
+    }
+}
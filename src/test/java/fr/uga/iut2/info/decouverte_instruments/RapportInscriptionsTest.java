@@ -0,0 +1,107 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Listes d'inscriptions dans les trois formats, et rapport d'occupation.
+ */
+class RapportInscriptionsTest {
+
+    private static final String FIN = System.lineSeparator();
+
+    private Application app;
+
+    @BeforeEach
+    void preparer() {
+        this.app = new Application();
+        this.app.nouvelInstrument("piano");
+        this.app.nouvelInstrument("violon");
+        this.app.nouvelEnfant("Léa");
+        this.app.nouvelEnfant("Martin; \"Tom\"");
+        this.app.inscrire(this.app.getEnfant("Léa"), this.app.getInstrument("piano"), Jour.MERCREDI);
+        this.app.inscrire(this.app.getEnfant("Léa"), this.app.getInstrument("violon"), Jour.SAMEDI);
+    }
+
+    private String enfants(final RapportInscriptions.Format format) throws IOException {
+        StringWriter out = new StringWriter();
+        try (Instantane instantane = this.app.instantane()) {
+            new RapportInscriptions(out, format).ecrireEnfants(instantane);
+        }
+        return out.toString();
+    }
+
+    private String instruments(final RapportInscriptions.Format format) throws IOException {
+        StringWriter out = new StringWriter();
+        try (Instantane instantane = this.app.instantane()) {
+            new RapportInscriptions(out, format).ecrireInstruments(instantane);
+        }
+        return out.toString();
+    }
+
+    @Test
+    void ecritLesEnfantsEnCsv() throws IOException {
+        assertEquals("enfant;instrument;jour\n"
+                + "Léa;piano;mercredi\n"
+                + "Léa;violon;samedi\n"
+                + "\"Martin; \"\"Tom\"\"\";;\n", this.enfants(RapportInscriptions.Format.CSV));
+    }
+
+    @Test
+    void ecritLesInstrumentsEnJsonl() throws IOException {
+        assertEquals("{\"instrument\":\"piano\",\"seances\":[{\"jour\":\"mercredi\",\"enfant\":\"Léa\"}]}\n"
+                + "{\"instrument\":\"violon\",\"seances\":[{\"jour\":\"samedi\",\"enfant\":\"Léa\"}]}\n",
+                this.instruments(RapportInscriptions.Format.JSONL));
+    }
+
+    @Test
+    void ecritLesEnfantsEnTexte() throws IOException {
+        assertEquals("===== Liste des inscriptions par enfant =====" + FIN
+                + "· Léa" + FIN
+                + "   - [mercredi] piano" + FIN
+                + "   - [samedi] violon" + FIN
+                + FIN
+                + "· Martin; \"Tom\"" + FIN
+                + FIN, this.enfants(RapportInscriptions.Format.TEXTE));
+    }
+
+    @Test
+    void ignoreLesMutationsPosterieuresALInstantane() throws IOException {
+        StringWriter out = new StringWriter();
+        try (Instantane instantane = this.app.instantane()) {
+            this.app.desinscrire(this.app.getEnfant("Léa"), this.app.getInstrument("piano"));
+            this.app.inscrire(this.app.getEnfant("Martin; \"Tom\""), this.app.getInstrument("piano"), Jour.VENDREDI);
+            new RapportInscriptions(out, RapportInscriptions.Format.CSV).ecrireInstruments(instantane);
+        }
+
+        assertEquals("instrument;jour;enfant\n"
+                + "piano;mercredi;Léa\n"
+                + "violon;samedi;Léa\n", out.toString());
+        assertEquals("instrument;jour;enfant\n"
+                + "piano;vendredi;\"Martin; \"\"Tom\"\"\"\n"
+                + "violon;samedi;Léa\n", this.instruments(RapportInscriptions.Format.CSV));
+    }
+
+    @Test
+    void ecritLOccupationDesSeances() throws IOException {
+        Instrument piano = this.app.getInstrument("piano");
+        this.app.fixerCapacite(piano, Jour.MERCREDI, 1);
+        this.app.inscrire(this.app.getEnfant("Martin; \"Tom\""), piano, Jour.MERCREDI);
+        this.app.fixerCapacite(this.app.getInstrument("violon"), Jour.SAMEDI, 4);
+        StringWriter out = new StringWriter();
+
+        RapportOccupation.ecrire(out, this.app.getInstruments().values(), this.app.jauges());
+
+        assertEquals("Occupation des séances (inscrits/capacité, +en attente) :" + FIN
+                + "Instrument  mercredi            vendredi            samedi" + FIN
+                + "piano       1/1 complet +1      0                   0" + FIN
+                + "violon      0                   0                   1/4" + FIN
+                + "Séances : 2 (mercredi 1, vendredi 0, samedi 1)" + FIN
+                + "Enfants : 2, dont 1 sans séance, 0 avec 1 séance, 1 avec 2 séances, 0 avec 3 séances" + FIN,
+                out.toString());
+    }
+}
@@ -0,0 +1,86 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Recherche de noms : normalisation, classement des préfixes, des mots
+ * suivants et des noms approchés.
+ */
+class RechercheNomsTest {
+
+    @TempDir
+    Path dossier;
+
+    private RechercheNoms recherche;
+
+    @BeforeEach
+    void indexer() {
+        this.recherche = new RechercheNoms();
+        for (String nom : new String[] {"Martin", "Léa Martin", "Marc", "Jean-Édouard", "Maëlle", "Zoé"}) {
+            this.recherche.ajouter(nom);
+        }
+    }
+
+    @Test
+    void normaliseSansCasseNiAccents() {
+        assertEquals("jean edouard", RechercheNoms.normaliser("  Jean-Édouard "));
+        assertEquals("maelle", RechercheNoms.normaliser("MAËLLE"));
+        assertEquals("", RechercheNoms.normaliser("--"));
+    }
+
+    @Test
+    void classeLesPrefixesAvantLesMotsSuivants() {
+        assertEquals(Arrays.asList("Maëlle", "Marc", "Martin", "Léa Martin"), this.recherche.rechercher("ma", 10));
+        // faute de dix préfixes, « marc » est à une lettre de « mart »
+        assertEquals(Arrays.asList("Martin", "Léa Martin", "Marc"), this.recherche.rechercher("MART", 10));
+        assertEquals(Collections.singletonList("Jean-Édouard"), this.recherche.rechercher("edou", 10));
+        assertEquals(Arrays.asList("Maëlle", "Marc"), this.recherche.rechercher("ma", 2));
+    }
+
+    @Test
+    void proposeLesNomsApproches() {
+        this.recherche.ajouter("violon");
+        this.recherche.ajouter("violoncelle");
+
+        assertEquals(Collections.singletonList("violon"), this.recherche.rechercher("violin", 10));
+        // les noms d'un même terme approché sont dans l'ordre alphabétique
+        assertEquals(Arrays.asList("Léa Martin", "Martin"), this.recherche.rechercher("martn", 10));
+        // l'initiale est supposée juste
+        assertEquals(Collections.emptyList(), this.recherche.rechercher("ziolon", 10));
+        // une saisie de moins de trois caractères n'est pas approchée
+        assertEquals(Collections.emptyList(), this.recherche.rechercher("zx", 10));
+    }
+
+    @Test
+    void neProposeRienPourUneSaisieVide() {
+        assertEquals(Collections.emptyList(), this.recherche.rechercher(" - ", 10));
+        assertEquals(Collections.emptyList(), this.recherche.rechercher("ma", 0));
+        this.recherche.ajouter("Marc");
+        assertEquals(6, this.recherche.taille());
+    }
+
+    @Test
+    void chercheDansUnInstantaneSansMaterialiserLesEnfants() throws Exception {
+        Application app = Persisteur.lireEtat(this.dossier);
+        app.nouvelInstrument("violon");
+        for (String nom : new String[] {"Zoé", "Zoë Martin", "Tom"}) {
+            app.nouvelEnfant(nom);
+        }
+        Persisteur.enregistrer(app);
+        app.getJournal().close();
+
+        Application relue = Persisteur.lireEtat(this.dossier);
+
+        assertEquals(Arrays.asList("Zoé", "Zoë Martin"), relue.rechercherEnfants("zoe", 5));
+        assertEquals(Collections.singletonList("violon"), relue.rechercherInstruments("Vio", 5));
+        assertEquals(0, relue.jaugesChargees().getNbEnfants());
+        relue.getJournal().close();
+    }
+}
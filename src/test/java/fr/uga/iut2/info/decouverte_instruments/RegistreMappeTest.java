@@ -0,0 +1,93 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Chargement paresseux : seuls les enfants et les instruments demandés sont
+ * matérialisés, avec des séances complètes.
+ */
+class RegistreMappeTest {
+
+    @TempDir
+    Path dossier;
+
+    private Application app;
+    private Application relue;
+
+    @BeforeEach
+    void projeter() throws IOException {
+        this.app = FormatBinaireTest.peupler();
+        Path instantane = this.dossier.resolve("instantane.bin");
+        Files.write(instantane, FormatBinaireTest.ecrire(this.app));
+        this.relue = new Application();
+        this.relue.setSource(RegistreMappe.ouvrir(instantane));
+    }
+
+    @Test
+    void neMaterialiseQueLEnfantDemande() {
+        assertEquals(0, this.relue.jaugesChargees().getNbEnfants());
+
+        Enfant lea = this.relue.getEnfant("Léa");
+
+        assertNotNull(lea);
+        assertEquals(1, this.relue.jaugesChargees().getNbEnfants());
+        assertEquals(Arrays.asList("piano", "violon"), RegistreMappeTest.trier(lea.getInstruments()));
+        assertNull(this.relue.getEnfant("Max"));
+        assertEquals(1, this.relue.jaugesChargees().getNbEnfants());
+    }
+
+    @Test
+    void materialiseUnInstrumentAvecTousSesInscrits() {
+        Instrument piano = this.relue.getInstrument("piano");
+
+        assertEquals(2, piano.getNbSeances());
+        assertEquals(2, this.relue.jaugesChargees().getNbEnfants());
+    }
+
+    @Test
+    void trouveUnNomSansTenirCompteDeLaCasse() {
+        Enfant zoe = this.relue.trouverEnfant("ZOÉ");
+
+        assertNotNull(zoe);
+        assertEquals("Zoé", zoe.getNom());
+        assertEquals(1, zoe.getNbSeances());
+    }
+
+    @Test
+    void chargeToutAvantUnParcours() {
+        this.relue.getEnfant("Tom");
+
+        assertEquals(Etats.decrireSeances(this.app), Etats.decrireSeances(this.relue));
+        assertEquals(3, this.relue.jaugesChargees().getNbEnfants());
+    }
+
+    @Test
+    void refuseLaVersionSequentielle() throws IOException {
+        Path ancien = this.dossier.resolve("ancien.bin");
+        byte[] contenu = FormatBinaireTest.ecrire(this.app);
+        contenu[Integer.BYTES + 1] = (byte) FormatBinaire.VERSION_SEQUENTIELLE;
+        Files.write(ancien, contenu);
+
+        assertThrows(IOException.class, () -> RegistreMappe.ouvrir(ancien));
+    }
+
+    private static List<String> trier(final Iterable<String> noms) {
+        List<String> tries = new ArrayList<>();
+        noms.forEach(tries::add);
+        tries.sort(null);
+        return tries;
+    }
+}
@@ -0,0 +1,162 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Requêtes sur les séances : analyse du texte, filtres, projection,
+ * regroupement et écriture du résultat.
+ */
+class RequeteTest {
+
+    private Application app;
+
+    /**
+     * Léa fait du piano le mercredi et du violon le samedi, Tom du violon le
+     * samedi et de la flûte le vendredi, Zoé du piano le samedi ; « Léa
+     * Martin » n'a aucune séance.
+     */
+    @BeforeEach
+    void peupler() {
+        this.app = new Application();
+        for (String nom : new String[] {"piano", "violon", "flûte"}) {
+            this.app.nouvelInstrument(nom);
+        }
+        for (String nom : new String[] {"Léa", "Tom", "Zoé", "Léa Martin"}) {
+            this.app.nouvelEnfant(nom);
+        }
+        this.inscrire("Léa", "piano", Jour.MERCREDI);
+        this.inscrire("Léa", "violon", Jour.SAMEDI);
+        this.inscrire("Tom", "violon", Jour.SAMEDI);
+        this.inscrire("Tom", "flûte", Jour.VENDREDI);
+        this.inscrire("Zoé", "piano", Jour.SAMEDI);
+    }
+
+    private void inscrire(final String enfant, final String instrument, final Jour jour) {
+        this.app.inscrire(this.app.getEnfant(enfant), this.app.getInstrument(instrument), jour);
+    }
+
+    private List<String> executer(final String texte) {
+        try (Instantane instantane = this.app.instantane()) {
+            List<String> lignes = new ArrayList<>();
+            for (Requete.Ligne ligne : Requete.analyser(texte).executer(instantane)) {
+                lignes.add(ligne.toString());
+            }
+            return lignes;
+        }
+    }
+
+    @Test
+    void retientToutesLesSeancesSansCritere() {
+        assertEquals(Arrays.asList(
+                "Léa ; piano ; mercredi (1)",
+                "Léa ; violon ; samedi (1)",
+                "Tom ; flûte ; vendredi (1)",
+                "Tom ; violon ; samedi (1)",
+                "Zoé ; piano ; samedi (1)"), this.executer(""));
+    }
+
+    @Test
+    void filtreLesSeancesEtLesEnfants() {
+        assertEquals(Arrays.asList("Léa (1)", "Tom (1)"), this.executer("instrument=violon jour=samedi afficher=enfant"));
+        // seule Léa a une séance le mercredi et une le samedi
+        assertEquals(Collections.singletonList("Léa (2)"), this.executer("jours=mercredi,samedi afficher=enfant"));
+        assertEquals(Arrays.asList("Léa ; violon (1)", "Tom ; violon (1)"),
+                this.executer("instruments=violon instrument=violon afficher=enfant,instrument"));
+        assertEquals(Arrays.asList("mercredi (1)", "samedi (1)"), this.executer("enfant=Léa afficher=jour"));
+        assertEquals(Collections.emptyList(), this.executer("enfant=\"Léa Martin\""));
+        assertEquals(Collections.emptyList(), this.executer("instrument=harpe"));
+    }
+
+    @Test
+    void regroupeParNombreDecroissant() {
+        assertEquals(Arrays.asList(
+                "violon ; samedi (2)",
+                "flûte ; vendredi (1)",
+                "piano ; mercredi (1)",
+                "piano ; samedi (1)"), this.executer("par=instrument,jour"));
+        assertEquals(Arrays.asList("violon ; samedi (2)", "flûte ; vendredi (1)"),
+                this.executer("par=instrument,jour max=2"));
+        // les jours sont dans l'ordre de la semaine, non alphabétique
+        assertEquals(Arrays.asList("mercredi (1)", "vendredi (1)", "samedi (3)"), this.executer("afficher=jour"));
+        assertEquals(Arrays.asList("flûte ; violon (1)", "piano ; violon (1)"), this.executer("par=paire max=10"));
+    }
+
+    @Test
+    void compteCommeLesJauges() {
+        Application grande = new Application();
+        String[] instruments = {"piano", "violon", "flûte", "harpe"};
+        for (String nom : instruments) {
+            grande.nouvelInstrument(nom);
+        }
+        Random alea = new Random(3);
+        for (int i = 0; i < 5_000; ++i) {
+            grande.nouvelEnfant("enfant" + i);
+            Enfant enfant = grande.getEnfant("enfant" + i);
+            for (Jour jour : Jour.values()) {
+                if (alea.nextBoolean()) {
+                    grande.inscrire(enfant, grande.getInstrument(instruments[alea.nextInt(instruments.length)]), jour);
+                }
+            }
+        }
+
+        List<Requete.Ligne> lignes;
+        try (Instantane instantane = grande.instantane()) {
+            lignes = Requete.analyser("afficher=jour").executer(instantane);
+        }
+
+        Metriques.Jauges jauges = grande.jauges();
+        assertEquals(Jour.values().length, lignes.size());
+        for (Requete.Ligne ligne : lignes) {
+            Jour jour = Jour.valueOfString(ligne.getValeurs().get(0));
+            assertEquals(jauges.getNbSeances(jour), ligne.getNombre(), jour.toString());
+        }
+    }
+
+    @Test
+    void interrogeLInstantaneTelQuIlEtaitALOuverture() {
+        try (Instantane instantane = this.app.instantane()) {
+            this.inscrire("Léa Martin", "flûte", Jour.VENDREDI);
+            this.app.desinscrire(this.app.getEnfant("Léa"), this.app.getInstrument("violon"));
+
+            assertEquals(5, Requete.analyser("").executer(instantane).size());
+        }
+        assertEquals(Arrays.asList("Léa Martin ; flûte ; vendredi (1)", "Tom ; flûte ; vendredi (1)"),
+                this.executer("instrument=flûte"));
+    }
+
+    @Test
+    void ecritLeResultat() throws IOException {
+        Requete requete = Requete.analyser("par=enfant max=2");
+        StringWriter out = new StringWriter();
+        try (Instantane instantane = this.app.instantane()) {
+            requete.ecrire(out, requete.executer(instantane));
+        }
+
+        String fin = System.lineSeparator();
+        assertEquals("enfant ; nombre" + fin + "Léa ; 2" + fin + "Tom ; 2" + fin + "2 ligne(s)." + fin, out.toString());
+
+        out = new StringWriter();
+        Requete.analyser("afficher=paire").ecrire(out, Collections.emptyList());
+        assertEquals("instrument ; instrument" + fin + "0 ligne(s)." + fin, out.toString());
+    }
+
+    @Test
+    void refuseUnTexteInvalide() {
+        for (String texte : new String[] {
+                "enfant", "=Léa", "enfant=", "couleur=rouge", "jour=dimanche", "afficher=age", "afficher=paire,jour",
+                "max=0", "max=dix", "enfant=\"Léa"}) {
+            assertThrows(IllegalArgumentException.class, () -> Requete.analyser(texte), texte);
+        }
+    }
+}
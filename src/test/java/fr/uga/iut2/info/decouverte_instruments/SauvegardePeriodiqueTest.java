@@ -0,0 +1,55 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Sauvegarde en arrière-plan : déclenchement par le seuil de mutations et
+ * compaction du journal.
+ */
+class SauvegardePeriodiqueTest {
+
+    @TempDir
+    Path dossier;
+
+    @Test
+    void enregistreDesQueLeSeuilEstAtteint() throws Exception {
+        Application app = Persisteur.lireEtat(this.dossier);
+        Journal journal = app.getJournal();
+        String etat;
+        try (SauvegardePeriodique sauvegarde = new SauvegardePeriodique(app, 3600, 5)) {
+            sauvegarde.demarrer();
+            app.nouvelInstrument("violon");
+            for (String nom : new String[] {"Léa", "Tom", "Zoé"}) {
+                app.nouvelEnfant(nom);
+                app.inscrire(app.getEnfant(nom), app.getInstrument("violon"), Jour.SAMEDI);
+            }
+            etat = Etats.decrire(app);
+
+            // l'intervalle d'une heure n'est pas écoulé : seul le seuil déclenche
+            long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (journal.getNbEnregistrements() > 0 && System.nanoTime() < limite) {
+                Thread.sleep(50);
+            }
+            assertEquals(0, journal.getNbEnregistrements());
+        }
+        journal.close();
+
+        Application relue = Persisteur.lireEtat(this.dossier);
+        relue.getJournal().close();
+        assertEquals(etat, Etats.decrire(relue));
+    }
+
+    @Test
+    void refuseUnIntervalleOuUnSeuilNul() {
+        Application app = new Application();
+
+        assertThrows(IllegalArgumentException.class, () -> new SauvegardePeriodique(app, 0, 5));
+        assertThrows(IllegalArgumentException.class, () -> new SauvegardePeriodique(app, 60, 0));
+    }
+}
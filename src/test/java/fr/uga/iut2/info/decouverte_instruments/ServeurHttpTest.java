@@ -0,0 +1,111 @@
+package fr.uga.iut2.info.decouverte_instruments;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Points d'accès du serveur HTTP : statuts, corps des réponses et chemins
+ * refusés.
+ */
+class ServeurHttpTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private Application app;
+    private ServeurHttp serveur;
+
+    @BeforeEach
+    void demarrer() throws IOException {
+        this.app = new Application();
+        this.serveur = new ServeurHttp(this.app, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        this.serveur.demarrer();
+    }
+
+    @AfterEach
+    void arreter() {
+        this.serveur.arreter(0);
+    }
+
+    private URI uri(final String chemin) {
+        return URI.create("http://127.0.0.1:" + this.serveur.getPort() + chemin);
+    }
+
+    private HttpResponse<String> get(final String chemin) throws IOException, InterruptedException {
+        return this.client.send(HttpRequest.newBuilder(this.uri(chemin)).GET().build(),
+                HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    private HttpResponse<String> post(final String chemin, final String json)
+            throws IOException, InterruptedException {
+        HttpRequest requete = HttpRequest.newBuilder(this.uri(chemin))
+                .POST(HttpRequest.BodyPublishers.ofString(json, StandardCharsets.UTF_8))
+                .build();
+        return this.client.send(requete, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void creeEtInscritPuisListe() throws Exception {
+        assertEquals(201, this.post("/instruments", "{\"nom\": \"violon\"}").statusCode());
+        assertEquals(201, this.post("/enfants", "{\"nom\": \"Léa\"}").statusCode());
+        assertEquals(409, this.post("/enfants", "{\"nom\": \"Léa\"}").statusCode());
+
+        HttpResponse<String> inscription = this.post("/inscriptions",
+                "{\"enfant\": \"léa\", \"instrument\": \"Violon\", \"jour\": \"Samedi\"}");
+
+        assertEquals(201, inscription.statusCode());
+        assertEquals("{\"enfant\":\"Léa\",\"instrument\":\"violon\",\"jour\":\"samedi\"}", inscription.body());
+        HttpResponse<String> liste = this.get("/enfants");
+        assertEquals(200, liste.statusCode());
+        assertEquals("{\"enfant\":\"Léa\",\"seances\":[{\"jour\":\"samedi\",\"instrument\":\"violon\"}]}\n",
+                liste.body());
+    }
+
+    @Test
+    void traduitLesReglesDInscriptionEnStatuts() throws Exception {
+        this.post("/instruments", "{\"nom\": \"piano\"}");
+        this.post("/enfants", "{\"nom\": \"Léa\"}");
+        this.post("/enfants", "{\"nom\": \"Tom\"}");
+        assertEquals(200, this.post("/capacites",
+                "{\"instrument\": \"piano\", \"jour\": \"mercredi\", \"capacite\": \"1\"}").statusCode());
+
+        assertEquals(201, this.post("/inscriptions",
+                "{\"enfant\": \"Léa\", \"instrument\": \"piano\", \"jour\": \"mercredi\"}").statusCode());
+        assertEquals(202, this.post("/inscriptions",
+                "{\"enfant\": \"Tom\", \"instrument\": \"piano\", \"jour\": \"mercredi\"}").statusCode());
+        assertEquals(409, this.post("/inscriptions",
+                "{\"enfant\": \"Léa\", \"instrument\": \"piano\", \"jour\": \"samedi\"}").statusCode());
+        assertEquals(404, this.post("/inscriptions",
+                "{\"enfant\": \"Max\", \"instrument\": \"piano\", \"jour\": \"samedi\"}").statusCode());
+        assertEquals(400, this.post("/inscriptions",
+                "{\"enfant\": \"Léa\", \"instrument\": \"piano\", \"jour\": \"dimanche\"}").statusCode());
+        assertEquals(400, this.post("/inscriptions", "{\"enfant\": ").statusCode());
+        assertEquals(405, this.get("/inscriptions").statusCode());
+    }
+
+    @Test
+    void refuseLesCheminsQuiProlongentUnPointDAcces() throws Exception {
+        assertEquals(404, this.get("/enfants/foo").statusCode());
+        assertEquals(404, this.get("/instruments/").statusCode());
+        assertEquals(404, this.get("/metriquesXYZ").statusCode());
+        assertEquals(404, this.get("/saisons/2024-2025").statusCode());
+        assertEquals("{\"erreur\":\"ressource inconnue\"}", this.get("/").body());
+
+        HttpResponse<String> reponse = this.post("/instrumentsXYZ", "{\"nom\": \"violon\"}");
+        assertEquals(404, reponse.statusCode());
+        assertEquals("{\"erreur\":\"ressource inconnue\"}", reponse.body());
+        assertEquals(404, this.post("/inscriptionsXYZ",
+                "{\"enfant\": \"Léa\", \"instrument\": \"violon\", \"jour\": \"samedi\"}").statusCode());
+        assertNull(this.app.getInstrument("violon"));
+    }
+}